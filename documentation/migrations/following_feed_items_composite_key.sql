@@ -0,0 +1,45 @@
+-- Moves following_feed_items to the compact schema keyed by (feed_owner_id, posted_at, post_id).
+--
+-- Run this against PostgreSQL BEFORE starting a version with the new FollowingFeedItem mapping.
+-- ddl-auto=update can add columns but never changes a primary key, so without it the old table keeps its UUID key
+-- and the new inserts fail on the missing posted_at value.
+--
+-- The table is locked in EXCLUSIVE mode for the copy: feed pages can still be read, but writes wait until it commits.
+-- Fan-outs that time out in the meantime stay in the feed outbox and are retried by FeedOutboxWorker.
+-- Duplicate (feed_owner_id, post_id) rows can't exist because of the old unique constraint, so nothing is lost.
+
+BEGIN;
+
+LOCK TABLE following_feed_items IN EXCLUSIVE MODE;
+
+-- The key is added after the copy, building it once over sorted rows is much faster than maintaining it per row.
+CREATE TABLE following_feed_items_compact (
+    feed_owner_id BIGINT                      NOT NULL,
+    posted_at     TIMESTAMP(6) WITH TIME ZONE NOT NULL,
+    post_id       UUID                        NOT NULL
+);
+
+INSERT INTO following_feed_items_compact (feed_owner_id, posted_at, post_id)
+SELECT f.feed_owner_id, p.posted_at, f.post_id
+FROM following_feed_items f
+JOIN posts p ON p.post_id = f.post_id
+ORDER BY f.feed_owner_id, p.posted_at, f.post_id;
+
+ALTER TABLE following_feed_items_compact
+    ADD CONSTRAINT following_feed_items_compact_pkey PRIMARY KEY (feed_owner_id, posted_at, post_id);
+
+DROP TABLE following_feed_items;
+
+ALTER TABLE following_feed_items_compact RENAME TO following_feed_items;
+ALTER TABLE following_feed_items RENAME CONSTRAINT following_feed_items_compact_pkey TO following_feed_items_pkey;
+
+ALTER TABLE following_feed_items
+    ADD CONSTRAINT fk_following_feed_items_feed_owner FOREIGN KEY (feed_owner_id) REFERENCES users (id),
+    ADD CONSTRAINT fk_following_feed_items_post FOREIGN KEY (post_id) REFERENCES posts (post_id);
+
+-- Used by the age based deletes of FeedRetentionEngine.
+CREATE INDEX idx_following_feed_items_posted_at ON following_feed_items (posted_at);
+
+COMMIT;
+
+ANALYZE following_feed_items;
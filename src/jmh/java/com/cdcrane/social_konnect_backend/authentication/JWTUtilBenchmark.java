@@ -0,0 +1,59 @@
+package com.cdcrane.social_konnect_backend.authentication;
+
+import io.jsonwebtoken.Claims;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of issuing a JWT on login and of validating one on every authenticated request,
+ * both for a token seen before (verified token cache hit) and a new one (full signature check).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class JWTUtilBenchmark {
+
+    private final Authentication auth = new UsernamePasswordAuthenticationToken("benchmark_user", null, AuthorityUtils.createAuthorityList("ROLE_USER"));
+
+    private JWTUtil jwtUtil;
+
+    private String cachedJwt;
+
+    @Setup
+    public void setUp() {
+
+        jwtUtil = new JWTUtil(new SimpleMeterRegistry());
+
+        ReflectionTestUtils.setField(jwtUtil, "jwtSecret", "a-benchmark-secret-that-is-long-enough-for-hmac-sha-256");
+        ReflectionTestUtils.setField(jwtUtil, "jwtIssuer", "benchmark");
+        ReflectionTestUtils.setField(jwtUtil, "jwtExpirationInMs", 8 * 60 * 60 * 1000);
+        ReflectionTestUtils.setField(jwtUtil, "verifiedCacheMaxSize", 100_000L);
+        ReflectionTestUtils.invokeMethod(jwtUtil, "initializeSecretKey");
+
+        cachedJwt = jwtUtil.createNewJwt(auth).token();
+        jwtUtil.validateJwt(cachedJwt);
+    }
+
+    @Benchmark
+    public String createNewJwt() {
+        return jwtUtil.createNewJwt(auth).token();
+    }
+
+    @Benchmark
+    public Claims validateCachedJwt() {
+        return jwtUtil.validateJwt(cachedJwt);
+    }
+
+    // Every token is new, so each validation verifies the signature and parses the claims.
+    @Benchmark
+    public Claims createAndValidateNewJwt() {
+        return jwtUtil.validateJwt(jwtUtil.createNewJwt(auth).token());
+    }
+
+}
@@ -0,0 +1,53 @@
+package com.cdcrane.social_konnect_backend.config.file_handling;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of detecting the real type of an uploaded file from its content, reading its first bytes like an upload does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LocalFileHandlerBenchmark {
+
+    // The start of each format, detection only looks at the first bytes of the file.
+    private static final Map<String, byte[]> HEADERS = Map.of(
+            "png", new byte[]{(byte) 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A, 0, 0, 0, 0x0D, 'I', 'H', 'D', 'R'},
+            "jpeg", new byte[]{(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0, 0, 0x10, 'J', 'F', 'I', 'F', 0},
+            "mp4", new byte[]{0, 0, 0, 0x18, 'f', 't', 'y', 'p', 'm', 'p', '4', '2', 0, 0, 0, 0, 'm', 'p', '4', '2', 'i', 's', 'o', 'm'}
+    );
+
+    @Param({"png", "jpeg", "mp4"})
+    public String type;
+
+    private LocalFileHandler fileHandler;
+
+    private MockMultipartFile file;
+
+    @Setup
+    public void setUp() {
+
+        fileHandler = new LocalFileHandler(1);
+
+        // Pad to a realistic upload size, the content after the header doesn't matter for detection.
+        byte[] content = Arrays.copyOf(HEADERS.get(type), 512 * 1024);
+
+        file = new MockMultipartFile("file", "upload." + type, null, content);
+    }
+
+    @Benchmark
+    public String detectMimeType() throws IOException {
+
+        try (InputStream in = file.getInputStream()) {
+            return fileHandler.detectMimeType(in.readNBytes(LocalFileHandler.DETECTION_BYTES));
+        }
+    }
+
+}
@@ -0,0 +1,62 @@
+package com.cdcrane.social_konnect_backend.config.filter;
+
+import com.cdcrane.social_konnect_backend.config.filter.rate_limit.ClientIpResolver;
+import com.cdcrane.social_konnect_backend.config.filter.rate_limit.LocalRateLimitBucketStore;
+import com.cdcrane.social_konnect_backend.config.filter.rate_limit.RateLimitPolicyRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of rate limiting one anonymous API request through the filter: matching the route, finding the bucket of the
+ * client and taking a token from it, with many threads at once.
+ * A small pool of clients means threads keep hitting the same buckets (and most requests are rejected), a large one spreads them out.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(8)
+public class RateLimiterFilterBenchmark {
+
+    private static final FilterChain NO_OP_CHAIN = (request, response) -> {};
+
+    @Param({"16", "100000"})
+    public int clients;
+
+    private RateLimiterFilter filter;
+
+    // Only read by the filter, so the threads can share them.
+    private MockHttpServletRequest[] requests;
+
+    @Setup
+    public void setUp() {
+
+        filter = new RateLimiterFilter(new LocalRateLimitBucketStore(), new ClientIpResolver(List.of()),
+                new RateLimitPolicyRegistry(), new SimpleMeterRegistry());
+
+        requests = new MockHttpServletRequest[clients];
+        for (int i = 0; i < clients; i++) {
+            requests[i] = new MockHttpServletRequest("GET", "/api/like/count/7b1c6f0e-2a4d-4a7e-9a51-0c4b2f2d9e11");
+            requests[i].setRemoteAddr("10." + ((i >> 16) & 0xFF) + "." + ((i >> 8) & 0xFF) + "." + (i & 0xFF));
+        }
+    }
+
+    @Benchmark
+    public int doFilter() throws IOException, ServletException {
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(requests[ThreadLocalRandom.current().nextInt(clients)], response, NO_OP_CHAIN);
+
+        return response.getStatus();
+    }
+
+}
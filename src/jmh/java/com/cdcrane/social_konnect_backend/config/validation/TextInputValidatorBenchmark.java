@@ -0,0 +1,26 @@
+package com.cdcrane.social_konnect_backend.config.validation;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of cleaning a caption or comment before it is saved.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TextInputValidatorBenchmark {
+
+    @Param({
+            "Just a plain caption with no markup at all, like most posts have.",
+            "Check <b>this</b> out <a href=\"https://example.com\">here</a> <script>alert('x')</script><img src=x onerror=alert(1)>"
+    })
+    public String input;
+
+    @Benchmark
+    public String removeHtmlTagsAllowBasic() {
+        return TextInputValidator.removeHtmlTagsAllowBasic(input);
+    }
+
+}
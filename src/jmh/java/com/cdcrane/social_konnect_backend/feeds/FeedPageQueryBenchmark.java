@@ -0,0 +1,253 @@
+package com.cdcrane.social_konnect_backend.feeds;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of reading one page of a following feed, from the old feed table keyed by a random UUID (joined to posts for
+ * the order) and from the compact table keyed by (feed_owner_id, posted_at, post_id).
+ * Needs a PostgreSQL database, by default the one from docker-compose.yml, set BENCHMARK_DB_URL, BENCHMARK_DB_USER
+ * and BENCHMARK_DB_PASSWORD to use another. The tables are created in a feed_benchmark schema and loaded once, later
+ * runs with the same row count reuse them. Loading 10M rows takes a few minutes.
+ * Not part of the default benchmark run, use -Djmh.args="FeedPageQuery -f 1 -wi 3 -i 5" to run it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FeedPageQueryBenchmark {
+
+    private static final int PAGE_SIZE = 20;
+
+    private static final int OWNERS = 10_000;
+
+    // Prime, so every owner gets a different mix of posts.
+    private static final int POSTS = 1_000_003;
+
+    private static final String LEGACY_FIRST_PAGE_SQL = """
+            SELECT p.posted_at, p.post_id FROM feed_benchmark.legacy_feed_items f
+            JOIN feed_benchmark.posts p ON p.post_id = f.post_id
+            WHERE f.feed_owner_id = ? ORDER BY p.posted_at DESC, p.post_id DESC LIMIT ?
+            """;
+
+    private static final String LEGACY_CURSOR_PAGE_SQL = """
+            SELECT p.posted_at, p.post_id FROM feed_benchmark.legacy_feed_items f
+            JOIN feed_benchmark.posts p ON p.post_id = f.post_id
+            WHERE f.feed_owner_id = ? AND (p.posted_at, p.post_id) < (?, ?)
+            ORDER BY p.posted_at DESC, p.post_id DESC LIMIT ?
+            """;
+
+    private static final String COMPACT_FIRST_PAGE_SQL = """
+            SELECT posted_at, post_id FROM feed_benchmark.compact_feed_items
+            WHERE feed_owner_id = ? ORDER BY posted_at DESC, post_id DESC LIMIT ?
+            """;
+
+    private static final String COMPACT_CURSOR_PAGE_SQL = """
+            SELECT posted_at, post_id FROM feed_benchmark.compact_feed_items
+            WHERE feed_owner_id = ? AND (posted_at, post_id) < (?, ?)
+            ORDER BY posted_at DESC, post_id DESC LIMIT ?
+            """;
+
+    // Where a reader ten pages deep would be, the same key is used for both tables.
+    private static final String CURSOR_SQL = """
+            SELECT posted_at, post_id FROM feed_benchmark.compact_feed_items
+            WHERE feed_owner_id = ? ORDER BY posted_at DESC, post_id DESC LIMIT 1 OFFSET ?
+            """;
+
+    @Param("10000000")
+    private long rows;
+
+    private Connection connection;
+
+    private PreparedStatement legacyFirstPage;
+    private PreparedStatement legacyCursorPage;
+    private PreparedStatement compactFirstPage;
+    private PreparedStatement compactCursorPage;
+
+    private final List<Timestamp> cursorPostedAt = new ArrayList<>();
+    private final List<UUID> cursorPostId = new ArrayList<>();
+
+    @Setup
+    public void setUp() throws SQLException {
+
+        connection = DriverManager.getConnection(
+                env("BENCHMARK_DB_URL", "jdbc:postgresql://localhost:5432/socialkonnect"),
+                env("BENCHMARK_DB_USER", "postgres"),
+                env("BENCHMARK_DB_PASSWORD", "password"));
+
+        if (loadedRows() != rows) {
+            load();
+        }
+
+        legacyFirstPage = connection.prepareStatement(LEGACY_FIRST_PAGE_SQL);
+        legacyCursorPage = connection.prepareStatement(LEGACY_CURSOR_PAGE_SQL);
+        compactFirstPage = connection.prepareStatement(COMPACT_FIRST_PAGE_SQL);
+        compactCursorPage = connection.prepareStatement(COMPACT_CURSOR_PAGE_SQL);
+
+        try (PreparedStatement cursor = connection.prepareStatement(CURSOR_SQL)) {
+
+            for (int owner = 0; owner < OWNERS; owner++) {
+
+                cursor.setLong(1, owner);
+                cursor.setInt(2, PAGE_SIZE * 10);
+
+                try (ResultSet rs = cursor.executeQuery()) {
+                    rs.next();
+                    cursorPostedAt.add(rs.getTimestamp(1));
+                    cursorPostId.add(rs.getObject(2, UUID.class));
+                }
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Benchmark
+    public int legacyFirstPage() throws SQLException {
+
+        legacyFirstPage.setLong(1, randomOwner());
+        legacyFirstPage.setInt(2, PAGE_SIZE);
+
+        return read(legacyFirstPage);
+    }
+
+    @Benchmark
+    public int legacyCursorPage() throws SQLException {
+
+        int owner = randomOwner();
+
+        legacyCursorPage.setLong(1, owner);
+        legacyCursorPage.setTimestamp(2, cursorPostedAt.get(owner));
+        legacyCursorPage.setObject(3, cursorPostId.get(owner));
+        legacyCursorPage.setInt(4, PAGE_SIZE);
+
+        return read(legacyCursorPage);
+    }
+
+    @Benchmark
+    public int compactFirstPage() throws SQLException {
+
+        compactFirstPage.setLong(1, randomOwner());
+        compactFirstPage.setInt(2, PAGE_SIZE);
+
+        return read(compactFirstPage);
+    }
+
+    @Benchmark
+    public int compactCursorPage() throws SQLException {
+
+        int owner = randomOwner();
+
+        compactCursorPage.setLong(1, owner);
+        compactCursorPage.setTimestamp(2, cursorPostedAt.get(owner));
+        compactCursorPage.setObject(3, cursorPostId.get(owner));
+        compactCursorPage.setInt(4, PAGE_SIZE);
+
+        return read(compactCursorPage);
+    }
+
+    private static int randomOwner() {
+        return ThreadLocalRandom.current().nextInt(OWNERS);
+    }
+
+    private static int read(PreparedStatement statement) throws SQLException {
+
+        int count = 0;
+
+        try (ResultSet rs = statement.executeQuery()) {
+            while (rs.next()) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    private long loadedRows() throws SQLException {
+
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT obj_description(to_regclass('feed_benchmark.compact_feed_items'), 'pg_class')")) {
+
+            // Set once loading is done, a load that was cut short has none.
+            String comment = rs.next() ? rs.getString(1) : null;
+
+            return comment == null ? -1 : Long.parseLong(comment);
+        }
+    }
+
+    /**
+     * Create both tables the way the entities map them, and give every owner rows / OWNERS posts.
+     * Row r belongs to owner r % OWNERS and holds post r % POSTS, so no owner has the same post twice.
+     */
+    private void load() throws SQLException {
+
+        try (Statement statement = connection.createStatement()) {
+
+            statement.execute("DROP SCHEMA IF EXISTS feed_benchmark CASCADE");
+            statement.execute("CREATE SCHEMA feed_benchmark");
+
+            statement.execute("""
+                    CREATE TABLE feed_benchmark.posts (
+                        post_id UUID PRIMARY KEY,
+                        user_id BIGINT NOT NULL,
+                        caption VARCHAR(255),
+                        posted_at TIMESTAMP(6) WITH TIME ZONE NOT NULL)
+                    """);
+            statement.execute("""
+                    INSERT INTO feed_benchmark.posts
+                    SELECT md5(n::text)::uuid, n % 50000, 'Post ' || n, now() - n * interval '1 second'
+                    FROM generate_series(0, %d) n
+                    """.formatted(POSTS - 1));
+
+            statement.execute("""
+                    CREATE TABLE feed_benchmark.legacy_feed_items (
+                        id UUID PRIMARY KEY,
+                        feed_owner_id BIGINT NOT NULL,
+                        post_id UUID NOT NULL,
+                        created_at TIMESTAMP(6) WITH TIME ZONE NOT NULL,
+                        CONSTRAINT uk_legacy_feed_owner_post UNIQUE (feed_owner_id, post_id))
+                    """);
+            statement.execute("""
+                    INSERT INTO feed_benchmark.legacy_feed_items
+                    SELECT gen_random_uuid(), r %% %d, md5((r %% %d)::text)::uuid, now()
+                    FROM generate_series(0, %d) r
+                    """.formatted(OWNERS, POSTS, rows - 1));
+
+            statement.execute("""
+                    CREATE TABLE feed_benchmark.compact_feed_items (
+                        feed_owner_id BIGINT NOT NULL,
+                        posted_at TIMESTAMP(6) WITH TIME ZONE NOT NULL,
+                        post_id UUID NOT NULL,
+                        PRIMARY KEY (feed_owner_id, posted_at, post_id))
+                    """);
+            statement.execute("""
+                    INSERT INTO feed_benchmark.compact_feed_items
+                    SELECT f.feed_owner_id, p.posted_at, f.post_id
+                    FROM feed_benchmark.legacy_feed_items f JOIN feed_benchmark.posts p ON p.post_id = f.post_id
+                    """);
+
+            // Index only scans of the compact table need an up to date visibility map.
+            statement.execute("VACUUM ANALYZE feed_benchmark.posts");
+            statement.execute("VACUUM ANALYZE feed_benchmark.legacy_feed_items");
+            statement.execute("VACUUM ANALYZE feed_benchmark.compact_feed_items");
+
+            statement.execute("COMMENT ON TABLE feed_benchmark.compact_feed_items IS '" + rows + "'");
+        }
+    }
+
+    private static String env(String name, String defaultValue) {
+
+        String value = System.getenv(name);
+
+        return value == null || value.isBlank() ? defaultValue : value;
+    }
+
+}
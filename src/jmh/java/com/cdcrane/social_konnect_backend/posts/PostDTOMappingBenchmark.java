@@ -0,0 +1,79 @@
+package com.cdcrane.social_konnect_backend.posts;
+
+import com.cdcrane.social_konnect_backend.posts.dto.PostDTOWithLiked;
+import com.cdcrane.social_konnect_backend.posts.dto.PostMetadataDTO;
+import com.cdcrane.social_konnect_backend.posts.dto.PostRowDTO;
+import com.cdcrane.social_konnect_backend.posts.post_media.PostMedia;
+import com.cdcrane.social_konnect_backend.posts.post_media.dto.PostMediaDTO;
+import com.cdcrane.social_konnect_backend.users.ApplicationUser;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of mapping a page of posts to PostDTOWithLiked, from entities and from projection rows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PostDTOMappingBenchmark {
+
+    private static final int PAGE_SIZE = 20;
+
+    private final List<Post> posts = new ArrayList<>();
+
+    private final List<PostRowDTO> rows = new ArrayList<>();
+
+    private final List<List<PostMediaDTO>> media = new ArrayList<>();
+
+    @Setup
+    public void setUp() {
+
+        ApplicationUser user = ApplicationUser.builder().id(1L).username("benchmark_user").profilePictureUrl("http://localhost:8080/media/pfp.png").build();
+
+        for (int i = 0; i < PAGE_SIZE; i++) {
+
+            UUID id = UUID.randomUUID();
+            Instant postedAt = Instant.now().minusSeconds(i);
+
+            List<PostMedia> postMedia = List.of(
+                    PostMedia.builder().mediaUrl("http://localhost:8080/media/" + i + "a.png").mediaType("IMAGE").build(),
+                    PostMedia.builder().mediaUrl("http://localhost:8080/media/" + i + "b.mp4").mediaType("VIDEO").build());
+
+            posts.add(Post.builder().id(id).caption("Post " + i).postedAt(postedAt).user(user).postMedia(postMedia).build());
+
+            rows.add(new PostRowDTO(id, "Post " + i, postedAt, user.getUsername(), user.getProfilePictureUrl()));
+            media.add(postMedia.stream().map(PostMediaDTO::new).toList());
+        }
+    }
+
+    @Benchmark
+    public List<PostDTOWithLiked> mapEntities() {
+
+        List<PostDTOWithLiked> result = new ArrayList<>(PAGE_SIZE);
+
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            result.add(new PostDTOWithLiked(posts.get(i), (i & 1) == 0));
+        }
+
+        return result;
+    }
+
+    @Benchmark
+    public List<PostDTOWithLiked> mapRowsWithMetadata() {
+
+        List<PostDTOWithLiked> result = new ArrayList<>(PAGE_SIZE);
+
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            PostRowDTO row = rows.get(i);
+            result.add(new PostDTOWithLiked(row, media.get(i), (i & 1) == 0, new PostMetadataDTO(row.postId(), 10L, 2L)));
+        }
+
+        return result;
+    }
+
+}
@@ -4,14 +4,12 @@ import com.cdcrane.social_konnect_backend.authentication.events.RegisterVerifica
 import com.cdcrane.social_konnect_backend.config.email.EmailUseCase;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.context.event.EventListener;
-import org.springframework.scheduling.annotation.Async;
-import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
 
 @Component
 @Slf4j
-@EnableAsync
 public class AuthEventListener {
 
     private final EmailUseCase emailUseCase;
@@ -21,8 +19,10 @@ public class AuthEventListener {
         this.emailUseCase = emailUseCase;
     }
 
-    @Async
-    @EventListener
+    /**
+     * Queue the email in the transaction that created the code, it is sent in the background once that commits.
+     */
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT, fallbackExecution = true)
     public void listenForRegisterVerificationCodeCreated(RegisterVerificationCodeCreatedEvent event) {
 
         emailUseCase.sendSignupVerificationEmail(event.getEmail(), event.getUsername(), event.getVerificationCode());
@@ -0,0 +1,22 @@
+package com.cdcrane.social_konnect_backend.authentication;
+
+import org.springframework.security.core.AuthenticatedPrincipal;
+
+/**
+ * The principal stored in the SecurityContext for JWT authenticated requests.
+ * Holds the identity of the user so services don't have to look the user up again.
+ * @param id The ID of the user.
+ * @param username The username of the user.
+ * @param profilePictureUrl The profile picture URL of the user, may be null.
+ */
+public record AuthenticatedUser(long id, String username, String profilePictureUrl) implements AuthenticatedPrincipal {
+
+    /**
+     * Used by Authentication.getName(), so existing code reading the name still gets the username.
+     */
+    @Override
+    public String getName() {
+        return username;
+    }
+
+}
@@ -1,10 +1,16 @@
 package com.cdcrane.social_konnect_backend.authentication;
 
 import com.cdcrane.social_konnect_backend.authentication.dto.JwtData;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.authentication.BadCredentialsException;
@@ -14,7 +20,11 @@ import org.springframework.stereotype.Component;
 
 import javax.crypto.SecretKey;
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Date;
+import java.util.HexFormat;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 @Component
@@ -29,10 +39,24 @@ public class JWTUtil {
     @Value("${jwt.expiration}")
     private int jwtExpirationInMs;
 
+    @Value("${jwt.verified-cache.max-size:100000}")
+    private long verifiedCacheMaxSize;
+
+    private final MeterRegistry meterRegistry;
+
     private SecretKey secretKey;
 
+    private JwtParser jwtParser;
+
+    // Tokens that already passed verification, keyed by a digest of the token so the full token isn't held in memory.
+    private Cache<String, Claims> verifiedTokens;
+
+    public JWTUtil(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
     /**
-     * To generate the SecretKey once after construction, instead of each time in the methods.
+     * To generate the SecretKey, parser and verified token cache once after construction, instead of each time in the methods.
      */
     @PostConstruct
     private void initializeSecretKey() {
@@ -43,6 +67,35 @@ public class JWTUtil {
 
         secretKey = Keys.hmacShaKeyFor(jwtSecret.getBytes(StandardCharsets.UTF_8));
 
+        // The parser is immutable and thread safe, so one can be shared by all requests.
+        jwtParser = Jwts.parser().verifyWith(secretKey).build();
+
+        verifiedTokens = Caffeine.newBuilder()
+                .maximumSize(verifiedCacheMaxSize)
+                .expireAfter(new Expiry<String, Claims>() {
+
+                    // Each entry lives until its token expires.
+                    @Override
+                    public long expireAfterCreate(String key, Claims claims, long currentTime) {
+                        long millisLeft = claims.getExpiration().getTime() - System.currentTimeMillis();
+                        return TimeUnit.MILLISECONDS.toNanos(Math.max(0, millisLeft));
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, Claims claims, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, Claims claims, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, verifiedTokens, "auth.jwt.verified");
+
     }
 
     /**
@@ -73,14 +126,35 @@ public class JWTUtil {
 
     /**
      * Validates a provided JWT against the secret key and returns the associated claims.
+     * Tokens seen before are served from the verified token cache, skipping the signature check and claim parsing.
      * @param jwt The JWT token must be without the "Bearer " prefix.
      * @return The Claims object obtained from the JWT.
      */
     public Claims validateJwt(String jwt){
 
+        String digest = digest(jwt);
+
+        Claims cached = verifiedTokens.getIfPresent(digest);
+
+        if (cached != null) {
+
+            // The cache expires entries at the same time, but check again so an entry is never used even a moment late.
+            if (cached.getExpiration().getTime() <= System.currentTimeMillis()) {
+                verifiedTokens.invalidate(digest);
+                throw new BadCredentialsException("JWT token expired");
+            }
+
+            return cached;
+        }
+
         try {
 
-            Claims claims = Jwts.parser().verifyWith(secretKey).build().parseSignedClaims(jwt).getPayload();
+            Claims claims = jwtParser.parseSignedClaims(jwt).getPayload();
+
+            // Tokens without an expiry are never issued by us, don't keep them around.
+            if (claims.getExpiration() != null) {
+                verifiedTokens.put(digest, claims);
+            }
 
             return claims;
 
@@ -97,4 +171,18 @@ public class JWTUtil {
 
     }
 
+    private static String digest(String jwt) {
+
+        try {
+
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(jwt.getBytes(StandardCharsets.UTF_8));
+
+            return HexFormat.of().formatHex(hash);
+
+        } catch (NoSuchAlgorithmException e) {
+            // Every JVM is required to support SHA-256.
+            throw new IllegalStateException(e);
+        }
+    }
+
 }
@@ -51,7 +51,7 @@ public class PasswordResetService implements PasswordResetUseCase {
 
         passwordResetRepository.save(reset);
 
-        // Use non-async call since UX is not as important as on sign-up.
+        // Only queued here, the email is sent in the background once the reset session is committed.
         emailUseCase.sendForgotPasswordVerificationEmail(user.getEmail(), user.getUsername(), reset.getResetCode(), reset.getId());
 
         return reset.getId();
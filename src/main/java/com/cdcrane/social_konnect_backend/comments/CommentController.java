@@ -1,8 +1,10 @@
 package com.cdcrane.social_konnect_backend.comments;
 
+import com.cdcrane.social_konnect_backend.authentication.AuthenticatedUser;
 import com.cdcrane.social_konnect_backend.comments.dto.AddCommentDTO;
 import com.cdcrane.social_konnect_backend.comments.dto.CommentCountDTO;
 import com.cdcrane.social_konnect_backend.comments.dto.CommentDataDTO;
+import com.cdcrane.social_konnect_backend.config.SecurityUtils;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotNull;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -19,10 +21,12 @@ import java.util.UUID;
 public class CommentController {
 
     private final CommentUseCase commentUseCase;
+    private final SecurityUtils securityUtils;
 
     @Autowired
-    public CommentController(CommentUseCase commentUseCase) {
+    public CommentController(CommentUseCase commentUseCase, SecurityUtils securityUtils) {
         this.commentUseCase = commentUseCase;
+        this.securityUtils = securityUtils;
     }
 
     @PostMapping
@@ -30,7 +34,10 @@ public class CommentController {
 
         Comment comment = commentUseCase.addCommentToPostByPostId(addCommentDTO);
 
-        return ResponseEntity.ok(new CommentDataDTO(comment.getId(), comment.getContent(), comment.getCreatedAt(), comment.getUser().getUsername(), comment.getUser().getProfilePictureUrl()));
+        // The saved comment only holds a reference to its author, so use the identity from the security context.
+        AuthenticatedUser me = securityUtils.getCurrentUser();
+
+        return ResponseEntity.ok(new CommentDataDTO(comment.getId(), comment.getContent(), comment.getCreatedAt(), me.username(), me.profilePictureUrl()));
 
     }
 
@@ -1,12 +1,15 @@
 package com.cdcrane.social_konnect_backend.comments;
 
+import com.cdcrane.social_konnect_backend.authentication.AuthenticatedUser;
 import com.cdcrane.social_konnect_backend.comments.dto.AddCommentDTO;
 import com.cdcrane.social_konnect_backend.config.SecurityUtils;
 import com.cdcrane.social_konnect_backend.config.exceptions.ActionNotPermittedException;
 import com.cdcrane.social_konnect_backend.config.exceptions.ResourceNotFoundException;
 import com.cdcrane.social_konnect_backend.config.validation.TextInputValidator;
 import com.cdcrane.social_konnect_backend.posts.Post;
+import com.cdcrane.social_konnect_backend.posts.PostCounterBuffer;
 import com.cdcrane.social_konnect_backend.posts.PostRepository;
+import com.cdcrane.social_konnect_backend.posts.dto.PostMetadataDTO;
 import com.cdcrane.social_konnect_backend.users.ApplicationUser;
 import jakarta.transaction.Transactional;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -21,13 +24,15 @@ public class CommentService implements CommentUseCase {
 
     private final PostRepository postRepository;
     private final CommentRepository commentRepository;
+    private final PostCounterBuffer counterBuffer;
 
     private final SecurityUtils securityUtils;
 
     @Autowired
-    public CommentService(PostRepository postRepository, CommentRepository commentRepository, SecurityUtils securityUtils) {
+    public CommentService(PostRepository postRepository, CommentRepository commentRepository, SecurityUtils securityUtils, PostCounterBuffer counterBuffer) {
         this.postRepository = postRepository;
         this.commentRepository = commentRepository;
+        this.counterBuffer = counterBuffer;
         this.securityUtils = securityUtils;
     }
 
@@ -42,7 +47,7 @@ public class CommentService implements CommentUseCase {
 
         //String username = SecurityContextHolder.getContext().getAuthentication().getName();
 
-        ApplicationUser user = securityUtils.getCurrentAuth();
+        ApplicationUser user = securityUtils.getCurrentUserReference();
 
         Post post = postRepository.findById(addCommentDTO.postId())
                 .orElseThrow(() -> new RuntimeException("Post with id " + addCommentDTO.postId() + " not found, cannot add comment."));
@@ -56,7 +61,12 @@ public class CommentService implements CommentUseCase {
         comment.setUser(user);
         comment.setPost(post);
 
-        return commentRepository.save(comment);
+        Comment saved = commentRepository.save(comment);
+
+        // Recorded once the transaction commits.
+        counterBuffer.recordComment(post.getId(), 1);
+
+        return saved;
 
     }
 
@@ -68,19 +78,21 @@ public class CommentService implements CommentUseCase {
     @Transactional
     public void deleteComment(UUID commentId) {
 
-        ApplicationUser user = securityUtils.getCurrentAuth();
+        AuthenticatedUser user = securityUtils.getCurrentUser();
 
         Comment comment = commentRepository.findById(commentId)
                 .orElseThrow(() -> new ResourceNotFoundException("Comment with id " + commentId + " not found, cannot delete comment."));
 
         // Make sure the currently authed user is the creator of the comment.
-        if (comment.getUser().getId() != user.getId()) {
-            throw new ActionNotPermittedException("User " + user.getUsername() + " is not allowed to delete comment with id "
+        if (comment.getUser().getId() != user.id()) {
+            throw new ActionNotPermittedException("User " + user.username() + " is not allowed to delete comment with id "
                     + commentId
                     + " as it does not belong to them. (Only the user who created the comment can delete it.)");
         }
 
         commentRepository.delete(comment);
+
+        counterBuffer.recordComment(comment.getPost().getId(), -1);
     }
 
     /**
@@ -91,10 +103,11 @@ public class CommentService implements CommentUseCase {
     @Override
     public int getCommentCountByPostId(UUID postId) {
 
-        postRepository.findById(postId)
+        PostMetadataDTO counters = postRepository.getStoredCountersByPostId(postId)
+                .map(counterBuffer::withPending)
                 .orElseThrow(() -> new ResourceNotFoundException("Post with id " + postId + " not found, cannot get comment count."));
 
-        return commentRepository.countByPostId(postId);
+        return Math.toIntExact(counters.comments());
 
     }
 
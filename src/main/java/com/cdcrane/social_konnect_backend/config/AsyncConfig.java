@@ -0,0 +1,86 @@
+package com.cdcrane.social_konnect_backend.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The executors @Async listeners run on. Each kind of background work gets its own fixed size pool with a bounded queue,
+ * so a burst of one kind (e.g. fanning out a post to many followers) can't hold up the others or grow memory without bound.
+ * Every executor exports the executor.* metrics tagged with its name. The media executor also counts the tasks it drops
+ * in executor.rejected, the feed and email executors drop surplus polls by design and lose nothing when they do.
+ */
+@Configuration
+@EnableAsync
+@Slf4j
+public class AsyncConfig {
+
+    public static final String FEED_EXECUTOR = "feedExecutor";
+    public static final String MEDIA_EXECUTOR = "mediaExecutor";
+    public static final String EMAIL_EXECUTOR = "emailExecutor";
+
+    private final MeterRegistry meterRegistry;
+
+    public AsyncConfig(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Drains the feed outbox, the threads are how many drains (and so fan-outs) run at once on this instance.
+     * A drain is triggered on every poll, one waits while all threads are busy and the rest are dropped.
+     * The events stay in the outbox, so nothing is lost.
+     */
+    @Bean(name = FEED_EXECUTOR, destroyMethod = "shutdown")
+    public ExecutorService feedExecutor(@Value("${app.async.feed.threads:4}") int threads) {
+        return boundedExecutor("feed", threads, 1, new ThreadPoolExecutor.DiscardPolicy());
+    }
+
+    /**
+     * Image variants. Best effort, the original is served until they exist, so tasks are dropped when the queue is full.
+     */
+    @Bean(name = MEDIA_EXECUTOR, destroyMethod = "shutdown")
+    public ExecutorService mediaExecutor(@Value("${app.async.media.threads:2}") int threads,
+                                         @Value("${app.async.media.queue-capacity:500}") int queueCapacity) {
+        Counter rejected = Counter.builder("executor.rejected")
+                .description("Tasks the executor turned away because its queue was full")
+                .tag("name", "media")
+                .register(meterRegistry);
+
+        return boundedExecutor("media", threads, queueCapacity, (task, executor) -> {
+            rejected.increment();
+            log.warn("Media executor is saturated, dropped a task. Variants will be missing for the affected media.");
+        });
+    }
+
+    /**
+     * Drains the email outbox. One thread, and one queued drain is enough since a drain sends everything that is due,
+     * further triggers while one is waiting are dropped. Emails stay in the outbox, so nothing is lost.
+     */
+    @Bean(name = EMAIL_EXECUTOR, destroyMethod = "shutdown")
+    public ExecutorService emailExecutor() {
+        return boundedExecutor("email", 1, 1, new ThreadPoolExecutor.DiscardPolicy());
+    }
+
+    private ExecutorService boundedExecutor(String name, int threads, int queueCapacity, RejectedExecutionHandler whenFull) {
+
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                new CustomizableThreadFactory(name + "-async-"),
+                whenFull);
+
+        return ExecutorServiceMetrics.monitor(meterRegistry, executor, name);
+    }
+
+}
@@ -0,0 +1,15 @@
+package com.cdcrane.social_konnect_backend.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Runs the @Scheduled jobs, on the scheduler Spring Boot configures from spring.task.scheduling.*.
+ * The pool has several threads, so the nightly bulk jobs (feed retention, counter reconcile) don't hold up
+ * the frequent ones (counter flushes, outbox polls) for as long as they run.
+ * Jobs that do their work on an AsyncConfig executor only take a scheduler thread to hand it over.
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
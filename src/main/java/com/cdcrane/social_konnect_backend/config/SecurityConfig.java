@@ -3,9 +3,12 @@ package com.cdcrane.social_konnect_backend.config;
 import com.cdcrane.social_konnect_backend.authentication.JWTUtil;
 import com.cdcrane.social_konnect_backend.config.exceptionhandlers.CustomAccessDeniedHandler;
 import com.cdcrane.social_konnect_backend.config.exceptionhandlers.CustomAuthEntryPoint;
+import com.cdcrane.social_konnect_backend.config.filter.ClientIpRateLimiterFilter;
 import com.cdcrane.social_konnect_backend.config.filter.JWTTokenValidatorFilter;
 import com.cdcrane.social_konnect_backend.config.filter.RateLimiterFilter;
+import com.cdcrane.social_konnect_backend.users.UserSummaryCache;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -24,7 +27,9 @@ public class SecurityConfig {
 
     private final JWTUtil jwtUtil;
     private final CorsConfig corsConfig;
+    private final ClientIpRateLimiterFilter clientIpRateLimiterFilter;
     private final RateLimiterFilter rateLimiterFilter;
+    private final UserSummaryCache userSummaryCache;
 
     public static final String[] PUBLIC_URIS = {
             "/error",
@@ -36,14 +41,18 @@ public class SecurityConfig {
             "/api/auth/resetpassword/verify",
             "/api/auth/resetpassword/submitnew",
             "/api/auth/exists/**",
-            "/media/**"
+            "/media/**",
+            "/api/media/objects/**" // Presigned uploads, authorized by the signature in the URL.
     };
 
     @Autowired
-    public SecurityConfig(JWTUtil jwtUtil, CorsConfig corsConfig, RateLimiterFilter rateLimiterFilter) {
+    public SecurityConfig(JWTUtil jwtUtil, CorsConfig corsConfig, ClientIpRateLimiterFilter clientIpRateLimiterFilter,
+                          RateLimiterFilter rateLimiterFilter, UserSummaryCache userSummaryCache) {
         this.jwtUtil = jwtUtil;
         this.corsConfig = corsConfig;
+        this.clientIpRateLimiterFilter = clientIpRateLimiterFilter;
         this.rateLimiterFilter = rateLimiterFilter;
+        this.userSummaryCache = userSummaryCache;
     }
 
     @Bean
@@ -61,8 +70,11 @@ public class SecurityConfig {
         http.formLogin(AbstractHttpConfigurer::disable);
         http.httpBasic(AbstractHttpConfigurer::disable);
 
-        http.addFilterBefore(rateLimiterFilter, ExceptionTranslationFilter.class);
-        http.addFilterAfter(new JWTTokenValidatorFilter(jwtUtil), ExceptionTranslationFilter.class);
+        // Before the JWT filter, so requests it rejects are limited too.
+        http.addFilterBefore(clientIpRateLimiterFilter, ExceptionTranslationFilter.class);
+        http.addFilterAfter(new JWTTokenValidatorFilter(jwtUtil, userSummaryCache), ExceptionTranslationFilter.class);
+        // After the JWT filter, so authenticated requests are limited per user instead of per IP.
+        http.addFilterAfter(rateLimiterFilter, JWTTokenValidatorFilter.class);
 
         // Exception handling for AuthenticationExceptions and AccessDeniedExceptions.
         http.exceptionHandling(ehc -> ehc.authenticationEntryPoint(new CustomAuthEntryPoint()));
@@ -75,6 +87,25 @@ public class SecurityConfig {
         return http.build();
     }
 
+    /**
+     * The rate limiters are beans so they can be injected here, stop Spring Boot from also adding them to the servlet filters,
+     * where they would run a second time outside the security chain.
+     */
+    @Bean
+    public FilterRegistrationBean<RateLimiterFilter> rateLimiterFilterRegistration() {
+        FilterRegistrationBean<RateLimiterFilter> registration = new FilterRegistrationBean<>(rateLimiterFilter);
+        registration.setEnabled(false);
+        return registration;
+    }
+
+    // Same as above.
+    @Bean
+    public FilterRegistrationBean<ClientIpRateLimiterFilter> clientIpRateLimiterFilterRegistration() {
+        FilterRegistrationBean<ClientIpRateLimiterFilter> registration = new FilterRegistrationBean<>(clientIpRateLimiterFilter);
+        registration.setEnabled(false);
+        return registration;
+    }
+
     @Bean
     public AuthenticationManager authenticationManager(
             AuthenticationConfiguration config) throws Exception {
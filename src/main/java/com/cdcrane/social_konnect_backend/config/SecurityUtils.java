@@ -1,9 +1,11 @@
 package com.cdcrane.social_konnect_backend.config;
 
+import com.cdcrane.social_konnect_backend.authentication.AuthenticatedUser;
 import com.cdcrane.social_konnect_backend.users.ApplicationUser;
 import com.cdcrane.social_konnect_backend.users.UserRepository;
-import com.cdcrane.social_konnect_backend.users.exceptions.UserNotFoundException;
+import com.cdcrane.social_konnect_backend.users.UserSummaryCache;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
 
@@ -13,18 +15,64 @@ import java.security.SecureRandom;
 public class SecurityUtils {
 
     private final UserRepository userRepository;
+    private final UserSummaryCache userSummaryCache;
 
     @Autowired
-    public SecurityUtils(UserRepository userRepository) {
+    public SecurityUtils(UserRepository userRepository, UserSummaryCache userSummaryCache) {
         this.userRepository = userRepository;
+        this.userSummaryCache = userSummaryCache;
     }
 
-    public ApplicationUser getCurrentAuth() {
+    /**
+     * Get the identity of the current user from the SecurityContext, without a database query.
+     * The JWT filter sets an AuthenticatedUser principal, other authentication types are resolved through the user summary cache.
+     * @return The current user's ID, username and profile picture.
+     */
+    public AuthenticatedUser getCurrentUser() {
+
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
 
-        String username = SecurityContextHolder.getContext().getAuthentication().getName();
+        if (auth.getPrincipal() instanceof AuthenticatedUser user) {
+            return user;
+        }
 
-        ApplicationUser user = this.userRepository.findByUsername(username)
+        String username = auth.getName();
+
+        return userSummaryCache.getByUsername(username)
                 .orElseThrow(() -> new RuntimeException("User with username " + username + " not found."));
+    }
+
+    public long getCurrentUserId() {
+        return getCurrentUser().id();
+    }
+
+    public String getCurrentUsername() {
+        return getCurrentUser().username();
+    }
+
+    /**
+     * Get a reference to the current user for setting relationships (post creator, like owner, etc.), without loading the user.
+     * Only the ID of the returned user can be read outside a transaction.
+     * @return A lazy reference to the current ApplicationUser.
+     */
+    public ApplicationUser getCurrentUserReference() {
+        return userRepository.getReferenceById(getCurrentUserId());
+    }
+
+    /**
+     * Load the full ApplicationUser entity of the current user, only needed when the user itself is read or modified.
+     * Prefer getCurrentUser() or getCurrentUserReference() where possible.
+     * @return The current ApplicationUser.
+     */
+    public ApplicationUser getCurrentAuth() {
+
+        long id = getCurrentUserId();
+
+        ApplicationUser user = this.userRepository.findById(id);
+
+        if (user == null) {
+            throw new RuntimeException("User with id " + id + " not found.");
+        }
 
         return user;
 
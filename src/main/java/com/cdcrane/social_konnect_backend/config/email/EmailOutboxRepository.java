@@ -0,0 +1,24 @@
+package com.cdcrane.social_konnect_backend.config.email;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+public interface EmailOutboxRepository extends JpaRepository<EmailOutboxMessage, UUID> {
+
+    /**
+     * Lock the emails that are due, oldest first. Rows locked by another worker are skipped instead of waited for,
+     * so several instances can drain the outbox at the same time without sending an email twice.
+     * @param now The current time.
+     * @param limit The maximum number of emails to return.
+     * @return The due emails, locked until the end of the transaction.
+     */
+    @Query(value = "SELECT * FROM email_outbox WHERE status = 'PENDING' AND next_attempt_at <= :now " +
+            "ORDER BY next_attempt_at LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<EmailOutboxMessage> lockDueMessages(@Param("now") Instant now, @Param("limit") int limit);
+
+}
@@ -0,0 +1,11 @@
+package com.cdcrane.social_konnect_backend.config.email;
+
+public enum EmailOutboxStatus {
+
+    // Waiting to be sent, or to be retried after a failed attempt.
+    PENDING,
+
+    // Gave up after the maximum number of attempts, kept for inspection.
+    FAILED
+
+}
@@ -0,0 +1,288 @@
+package com.cdcrane.social_konnect_backend.config.email;
+
+import com.cdcrane.social_konnect_backend.config.AsyncConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
+import javax.mail.Session;
+import javax.mail.Transport;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.UUID;
+
+/**
+ * Sends the emails in the outbox. Due emails are claimed in batches, sent over one SMTP connection that is kept open
+ * between batches while there is mail to send, and retried with exponential backoff when sending fails.
+ * Claiming uses SKIP LOCKED and pushes the next attempt of the claimed emails past the send timeout,
+ * so any number of instances can run this without sending an email twice.
+ */
+@Component
+@Slf4j
+public class EmailOutboxWorker {
+
+    private final EmailOutboxRepository outboxRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    private final Counter emailsSent;
+    private final Counter emailsFailed;
+
+    @Value("${spring.mail.username}")
+    private String senderEmail;
+
+    @Value("${spring.mail.password}")
+    private String senderPassword;
+
+    @Value("${spring.mail.host}")
+    private String mailHost;
+
+    @Value("${spring.mail.port}")
+    private int mailPort;
+
+    @Value("${app.email.smtp.auth:true}")
+    private boolean smtpAuth;
+
+    @Value("${app.email.smtp.starttls:true}")
+    private boolean smtpStartTls;
+
+    // How long an open connection is kept without anything to send.
+    @Value("${app.email.smtp.idle-timeout:PT30S}")
+    private Duration connectionIdleTimeout;
+
+    @Value("${app.email.outbox.batch-size:50}")
+    private int batchSize;
+
+    @Value("${app.email.outbox.max-attempts:5}")
+    private int maxAttempts;
+
+    // Doubled after every failed attempt.
+    @Value("${app.email.outbox.retry-backoff:PT30S}")
+    private Duration retryBackoff;
+
+    // A claimed batch is left alone by other workers for this long, it must be sent by then.
+    @Value("${app.email.outbox.send-timeout:PT5M}")
+    private Duration sendTimeout;
+
+    private Session session;
+
+    private Transport transport;
+
+    private Instant lastSend = Instant.EPOCH;
+
+    public EmailOutboxWorker(EmailOutboxRepository outboxRepository, TransactionTemplate transactionTemplate, MeterRegistry meterRegistry) {
+        this.outboxRepository = outboxRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.emailsSent = Counter.builder("email.outbox.sent")
+                .description("Emails sent from the outbox")
+                .register(meterRegistry);
+        this.emailsFailed = Counter.builder("email.outbox.failed")
+                .description("Emails given up on after the maximum number of attempts")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Send due emails until the outbox has none left.
+     * Runs on the email executor, so slow SMTP servers never hold up the other scheduled tasks.
+     */
+    @Async(AsyncConfig.EMAIL_EXECUTOR)
+    @Scheduled(fixedDelayString = "${app.email.outbox.poll-interval-ms:1000}")
+    public synchronized void drain() {
+
+        while (true) {
+
+            List<EmailOutboxMessage> batch = claimBatch();
+
+            if (batch.isEmpty()) {
+                closeIfIdle();
+                return;
+            }
+
+            send(batch);
+
+            if (batch.size() < batchSize) {
+                return;
+            }
+        }
+    }
+
+    private List<EmailOutboxMessage> claimBatch() {
+
+        return transactionTemplate.execute(status -> {
+
+            Instant now = Instant.now();
+
+            List<EmailOutboxMessage> due = outboxRepository.lockDueMessages(now, batchSize);
+
+            // Flushed on commit, from then on other workers don't see these until the send timeout has passed.
+            for (EmailOutboxMessage message : due) {
+                message.setAttempts(message.getAttempts() + 1);
+                message.setNextAttemptAt(now.plus(sendTimeout));
+            }
+
+            return due;
+        });
+    }
+
+    private void send(List<EmailOutboxMessage> batch) {
+
+        List<UUID> sent = new ArrayList<>();
+        List<EmailOutboxMessage> failed = new ArrayList<>();
+
+        for (int i = 0; i < batch.size(); i++) {
+
+            EmailOutboxMessage message = batch.get(i);
+
+            try {
+
+                Transport connection = connection();
+
+                MimeMessage mime = toMimeMessage(message);
+                connection.sendMessage(mime, mime.getAllRecipients());
+
+                sent.add(message.getId());
+                lastSend = Instant.now();
+
+            } catch (SendFailedException e) {
+
+                // Rejected by the server for this email only, e.g. an invalid address.
+                message.setLastError(e.toString());
+                failed.add(message);
+
+            } catch (MessagingException e) {
+
+                // The connection is broken or the server is down, the rest of the batch would fail the same way.
+                log.warn("SMTP connection failed, retrying {} emails later: {}", batch.size() - i, e.toString());
+                close();
+
+                for (EmailOutboxMessage unsent : batch.subList(i, batch.size())) {
+                    unsent.setLastError(e.toString());
+                    failed.add(unsent);
+                }
+
+                break;
+            }
+        }
+
+        complete(sent, failed);
+    }
+
+    private void complete(List<UUID> sent, List<EmailOutboxMessage> failed) {
+
+        Instant now = Instant.now();
+
+        for (EmailOutboxMessage message : failed) {
+
+            if (message.getAttempts() >= maxAttempts) {
+
+                log.error("Giving up on email {} to {} after {} attempts: {}", message.getId(), message.getRecipient(),
+                        message.getAttempts(), message.getLastError());
+                message.setStatus(EmailOutboxStatus.FAILED);
+                emailsFailed.increment();
+
+            } else {
+
+                message.setNextAttemptAt(now.plus(retryBackoff.multipliedBy(1L << Math.min(message.getAttempts() - 1, 16))));
+            }
+
+            if (message.getLastError() != null && message.getLastError().length() > 1000) {
+                message.setLastError(message.getLastError().substring(0, 1000));
+            }
+        }
+
+        transactionTemplate.executeWithoutResult(status -> {
+            outboxRepository.deleteAllByIdInBatch(sent);
+            outboxRepository.saveAll(failed);
+        });
+
+        emailsSent.increment(sent.size());
+    }
+
+    private MimeMessage toMimeMessage(EmailOutboxMessage message) throws MessagingException {
+
+        MimeMessage mime = new MimeMessage(session());
+        mime.setFrom(new InternetAddress(senderEmail));
+        mime.setRecipients(Message.RecipientType.TO, InternetAddress.parse(message.getRecipient()));
+        mime.setSubject(message.getSubject());
+        mime.setContent(message.getHtmlBody(), "text/html; charset=utf-8");
+
+        return mime;
+    }
+
+    /**
+     * @return The open SMTP connection, connecting first if there is none or the server closed it.
+     */
+    private Transport connection() throws MessagingException {
+
+        if (transport != null && transport.isConnected()) {
+            return transport;
+        }
+
+        close();
+
+        Transport connecting = session().getTransport("smtp");
+        // JavaMail logs in whenever credentials are given, whatever mail.smtp.auth says.
+        if (smtpAuth) {
+            connecting.connect(mailHost, mailPort, senderEmail, senderPassword);
+        } else {
+            connecting.connect(mailHost, mailPort, null, null);
+        }
+
+        transport = connecting;
+
+        return transport;
+    }
+
+    private Session session() {
+
+        if (session == null) {
+
+            Properties props = new Properties();
+            props.put("mail.smtp.auth", String.valueOf(smtpAuth));
+            props.put("mail.smtp.starttls.enable", String.valueOf(smtpStartTls));
+            props.put("mail.smtp.host", mailHost);
+            props.put("mail.smtp.port", String.valueOf(mailPort));
+
+            session = Session.getInstance(props);
+        }
+
+        return session;
+    }
+
+    private void closeIfIdle() {
+
+        if (transport != null && Instant.now().isAfter(lastSend.plus(connectionIdleTimeout))) {
+            close();
+        }
+    }
+
+    @PreDestroy
+    synchronized void close() {
+
+        if (transport == null) {
+            return;
+        }
+
+        try {
+            transport.close();
+        } catch (MessagingException e) {
+            log.debug("Closing SMTP connection failed: {}", e.toString());
+        }
+
+        transport = null;
+    }
+
+}
@@ -4,222 +4,67 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import javax.mail.*;
-import javax.mail.internet.InternetAddress;
-import javax.mail.internet.MimeMessage;
-import java.util.Properties;
+import java.time.Instant;
+import java.util.Map;
 import java.util.UUID;
 
+/**
+ * Renders emails and puts them in the outbox, EmailOutboxWorker sends them in the background.
+ * Called inside a transaction, the email is only sent if the transaction commits.
+ */
 @Service
 @Slf4j
 public class EmailService implements EmailUseCase {
 
-    @Value("${spring.mail.username}")
-    private String senderEmail;
+    private static final EmailTemplate SIGNUP_VERIFICATION = EmailTemplate.load("email/signup-verification.html");
+    private static final EmailTemplate FORGOT_PASSWORD = EmailTemplate.load("email/forgot-password.html");
 
-    @Value("${spring.mail.password}")
-    private String senderPassword;
-
-    @Value("${spring.mail.host}")
-    private String mailHost;
-
-    @Value("${spring.mail.port}")
-    private int mailPort;
+    private final EmailOutboxRepository outboxRepository;
 
     @Value("${app.frontend-base-url}")
     private String baseUrl;
 
-    private Properties prepareProperties() {
-
-        Properties props = new Properties();
-        props.put("mail.smtp.auth", "true");
-        props.put("mail.smtp.starttls.enable", "true");
-        props.put("mail.smtp.host", mailHost);
-        props.put("mail.smtp.port", String.valueOf(mailPort));
-
-        return props;
+    public EmailService(EmailOutboxRepository outboxRepository) {
+        this.outboxRepository = outboxRepository;
     }
 
     @Override
     public void sendSignupVerificationEmail(String email, String username, int verificationCode) {
 
-        Properties props = prepareProperties();
-
-        Session session = Session.getInstance(props, new Authenticator() {
-                    @Override
-                    protected PasswordAuthentication getPasswordAuthentication() {
-                        return new PasswordAuthentication(senderEmail, senderPassword);
-                    }
-                }
-        );
-
         String verificationUrl = baseUrl + "/auth/register?username=" + username;
 
-        try {
-
-            Message message = new MimeMessage(session);
-            message.setFrom(new InternetAddress(senderEmail));
-            message.setRecipients(Message.RecipientType.TO, InternetAddress.parse(email));
-            message.setSubject("Social Konnect Verification Code");
-
-            String html = """
-            <!DOCTYPE html>
-            <html>
-            <head>
-              <meta charset="UTF-8">
-            </head>
-            <body style="margin:0; padding:0; font-family: Arial, Helvetica, sans-serif; background-color: #ffffff;">
-              <table align="center" width="100%%" cellpadding="0" cellspacing="0" border="0">
-                <tr>
-                  <td align="center" style="padding: 40px 20px;">
-                    <table width="600" cellpadding="0" cellspacing="0" border="0" style="max-width:600px; width:100%%;">
-                      <!-- Title -->
-                      <tr>
-                        <td align="center" style="font-size: 28px; font-weight: bold; color: #56A5FF; padding-bottom: 20px;">
-                          Social Konnect
-                        </td>
-                      </tr>
-                      <!-- Greeting -->
-                      <tr>
-                        <td align="center" style="font-size: 18px; padding-bottom: 15px;">
-                          Welcome to Social Konnect %s,
-                        </td>
-                      </tr>
-                      <!-- Code -->
-                      <tr>
-                        <td align="center" style="font-size: 18px; padding: 10px 20px; background-color: #f4f4f4; border-radius: 6px;">
-                          Your verification code is: <b style="font-size: 22px; color: #333;">%d</b>
-                        </td>
-                      </tr>
-                      <!-- Button with URL -->
-                      <tr>
-                        <td align="center" style="padding-top: 30px; padding-bottom: 20px;">
-                          <a href="%s"
-                             style="display:inline-block; padding: 12px 24px; font-size: 16px;
-                                    color: #ffffff; background-color: #56A5FF; text-decoration: none;
-                                    border-radius: 6px; font-weight: bold;">
-                            Verify My Account
-                          </a>
-                        </td>
-                      </tr>
-                      <!-- Footer -->
-                      <tr>
-                        <td align="center" style="font-size: 14px; color: #888; padding-top: 20px;">
-                          This code will expire in 10 minutes.
-                        </td>
-                      </tr>
-                    </table>
-                  </td>
-                </tr>
-              </table>
-            </body>
-            </html>
-            """.formatted(username, verificationCode, verificationUrl);
-
-
-            message.setContent(html, "text/html; charset=utf-8");
-
-            Transport.send(message);
-
-            log.info("Email sent to {}", email);
-
-        } catch (MessagingException e) {
-
-            throw new RuntimeException("Email failed to send to " + email + " ." + e);
-
-        }
-
+        enqueue(email, "Social Konnect Verification Code", SIGNUP_VERIFICATION.render(Map.of(
+                "username", username,
+                "code", String.valueOf(verificationCode),
+                "url", verificationUrl)));
     }
 
     @Override
     public void sendForgotPasswordVerificationEmail(String email, String username, int verificationCode, UUID resetSessionId) {
 
-        Properties props = prepareProperties();
+        String verificationUrl = baseUrl + "/auth/forgot-password?reset-id=" + username;
 
-        Session session = Session.getInstance(props, new Authenticator() {
-                    @Override
-                    protected PasswordAuthentication getPasswordAuthentication() {
-                        return new PasswordAuthentication(senderEmail, senderPassword);
-                    }
-                }
-        );
+        enqueue(email, "Social Konnect Verification Code", FORGOT_PASSWORD.render(Map.of(
+                "username", username,
+                "code", String.valueOf(verificationCode),
+                "url", verificationUrl)));
+    }
 
-        String verificationUrl = baseUrl + "/auth/forgot-password?reset-id=" + username;
+    private void enqueue(String recipient, String subject, String html) {
+
+        Instant now = Instant.now();
 
-        try {
-
-            Message message = new MimeMessage(session);
-            message.setFrom(new InternetAddress(senderEmail));
-            message.setRecipients(Message.RecipientType.TO, InternetAddress.parse(email));
-            message.setSubject("Social Konnect Verification Code");
-
-            String html = """
-            <!DOCTYPE html>
-            <html>
-            <head>
-              <meta charset="UTF-8">
-            </head>
-            <body style="margin:0; padding:0; font-family: Arial, Helvetica, sans-serif; background-color: #ffffff;">
-              <table align="center" width="100%%" cellpadding="0" cellspacing="0" border="0">
-                <tr>
-                  <td align="center" style="padding: 40px 20px;">
-                    <table width="600" cellpadding="0" cellspacing="0" border="0" style="max-width:600px; width:100%%;">
-                      <!-- Title -->
-                      <tr>
-                        <td align="center" style="font-size: 28px; font-weight: bold; color: #56A5FF; padding-bottom: 20px;">
-                          Social Konnect
-                        </td>
-                      </tr>
-                      <!-- Greeting -->
-                      <tr>
-                        <td align="center" style="font-size: 18px; padding-bottom: 15px;">
-                          Welcome back to Social Konnect %s,
-                        </td>
-                      </tr>
-                      <!-- Code -->
-                      <tr>
-                        <td align="center" style="font-size: 18px; padding: 10px 20px; background-color: #f4f4f4; border-radius: 6px;">
-                          Your verification code is: <b style="font-size: 22px; color: #333;">%d</b>
-                        </td>
-                      </tr>
-                      <!-- Button with URL -->
-                      <tr>
-                        <td align="center" style="padding-top: 30px; padding-bottom: 20px;">
-                          <a href="%s"
-                             style="display:inline-block; padding: 12px 24px; font-size: 16px;
-                                    color: #ffffff; background-color: #56A5FF; text-decoration: none;
-                                    border-radius: 6px; font-weight: bold;">
-                            Give verification code
-                          </a>
-                        </td>
-                      </tr>
-                      <!-- Footer -->
-                      <tr>
-                        <td align="center" style="font-size: 14px; color: #888; padding-top: 20px;">
-                          This code will expire in 10 minutes.
-                        </td>
-                      </tr>
-                    </table>
-                  </td>
-                </tr>
-              </table>
-            </body>
-            </html>
-            """.formatted(username, verificationCode, verificationUrl);
-
-
-            message.setContent(html, "text/html; charset=utf-8");
-
-            Transport.send(message);
-
-            log.info("Email sent to {}", email);
-
-        } catch (MessagingException e) {
-
-            throw new RuntimeException("Email failed to send to " + email + " ." + e);
-
-        }
+        outboxRepository.save(EmailOutboxMessage.builder()
+                .recipient(recipient)
+                .subject(subject)
+                .htmlBody(html)
+                .status(EmailOutboxStatus.PENDING)
+                .attempts(0)
+                .nextAttemptAt(now)
+                .createdAt(now)
+                .build());
 
+        log.info("Email to {} queued.", recipient);
     }
 
 }
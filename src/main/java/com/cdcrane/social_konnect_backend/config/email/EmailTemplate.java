@@ -0,0 +1,107 @@
+package com.cdcrane.social_konnect_backend.config.email;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.web.util.HtmlUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An HTML email template with {{name}} placeholders, split into its literal parts once when loaded,
+ * so rendering is only appending the parts and the escaped values.
+ */
+final class EmailTemplate {
+
+    private static final String OPEN = "{{";
+    private static final String CLOSE = "}}";
+
+    // literals[i] comes before placeholders[i], the last literal comes after the last placeholder.
+    private final String[] literals;
+    private final String[] placeholders;
+
+    private final int literalLength;
+
+    private EmailTemplate(List<String> literals, List<String> placeholders) {
+        this.literals = literals.toArray(String[]::new);
+        this.placeholders = placeholders.toArray(String[]::new);
+        this.literalLength = literals.stream().mapToInt(String::length).sum();
+    }
+
+    /**
+     * @param source The template text.
+     * @return The compiled template.
+     * @throws IllegalArgumentException If a placeholder is not closed.
+     */
+    static EmailTemplate compile(String source) {
+
+        List<String> literals = new ArrayList<>();
+        List<String> placeholders = new ArrayList<>();
+
+        int position = 0;
+
+        while (true) {
+
+            int open = source.indexOf(OPEN, position);
+
+            if (open < 0) {
+                literals.add(source.substring(position));
+                return new EmailTemplate(literals, placeholders);
+            }
+
+            int close = source.indexOf(CLOSE, open + OPEN.length());
+
+            if (close < 0) {
+                throw new IllegalArgumentException("Unclosed placeholder at " + open + " in email template.");
+            }
+
+            literals.add(source.substring(position, open));
+            placeholders.add(source.substring(open + OPEN.length(), close).trim());
+
+            position = close + CLOSE.length();
+        }
+    }
+
+    /**
+     * @param resource The classpath location of the template, e.g. email/signup-verification.html.
+     * @return The compiled template.
+     */
+    static EmailTemplate load(String resource) {
+
+        try (InputStream in = new ClassPathResource(resource).getInputStream()) {
+
+            return compile(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+
+        } catch (IOException e) {
+            throw new UncheckedIOException("Email template " + resource + " could not be loaded.", e);
+        }
+    }
+
+    /**
+     * @param values The value of each placeholder, HTML escaped when inserted.
+     * @return The rendered HTML.
+     * @throws IllegalArgumentException If a placeholder has no value.
+     */
+    String render(Map<String, String> values) {
+
+        StringBuilder html = new StringBuilder(literalLength + 64 * placeholders.length);
+
+        for (int i = 0; i < placeholders.length; i++) {
+
+            String value = values.get(placeholders[i]);
+
+            if (value == null) {
+                throw new IllegalArgumentException("No value for email template placeholder " + placeholders[i] + ".");
+            }
+
+            html.append(literals[i]).append(HtmlUtils.htmlEscape(value));
+        }
+
+        return html.append(literals[literals.length - 1]).toString();
+    }
+
+}
@@ -3,7 +3,10 @@ package com.cdcrane.social_konnect_backend.config.exceptionhandlers;
 import com.cdcrane.social_konnect_backend.authentication.exception.InvalidVerificationCodeException;
 import com.cdcrane.social_konnect_backend.authentication.password_reset.exceptions.ResetInvalidException;
 import com.cdcrane.social_konnect_backend.config.exceptions.ActionNotPermittedException;
+import com.cdcrane.social_konnect_backend.config.exceptions.BatchTooLargeException;
 import com.cdcrane.social_konnect_backend.config.exceptions.FileTypeNotValidException;
+import com.cdcrane.social_konnect_backend.config.exceptions.InvalidCursorException;
+import com.cdcrane.social_konnect_backend.config.exceptions.ObjectTooLargeException;
 import com.cdcrane.social_konnect_backend.config.exceptions.ResourceNotFoundException;
 import com.cdcrane.social_konnect_backend.config.exceptions.UsernameNotValidException;
 import com.cdcrane.social_konnect_backend.config.responses.ExceptionErrorResponse;
@@ -211,6 +214,57 @@ public class GlobalExceptionHandler {
         return ResponseEntity.status(HttpStatus.NOT_FOUND).body(error);
     }
 
+    /**
+     * Handle pagination cursors that could not be decoded.
+     * @param ex Exception thrown.
+     * @return Response explaining problem.
+     */
+    @ExceptionHandler(InvalidCursorException.class)
+    public ResponseEntity<ExceptionErrorResponse> handleInvalidCursorException(InvalidCursorException ex) {
+
+        ExceptionErrorResponse error = ExceptionErrorResponse.builder()
+                .message(ex.getMessage())
+                .responseCode(HttpStatus.BAD_REQUEST.value())
+                .timestamp(System.currentTimeMillis())
+                .build();
+
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(error);
+    }
+
+    /**
+     * Handle batch requests asking for more items than allowed in one go.
+     * @param ex Exception thrown.
+     * @return Response explaining problem.
+     */
+    @ExceptionHandler(BatchTooLargeException.class)
+    public ResponseEntity<ExceptionErrorResponse> handleBatchTooLargeException(BatchTooLargeException ex) {
+
+        ExceptionErrorResponse error = ExceptionErrorResponse.builder()
+                .message(ex.getMessage())
+                .responseCode(HttpStatus.BAD_REQUEST.value())
+                .timestamp(System.currentTimeMillis())
+                .build();
+
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(error);
+    }
+
+    /**
+     * Handle uploads larger than allowed.
+     * @param ex Exception thrown.
+     * @return Response explaining problem.
+     */
+    @ExceptionHandler(ObjectTooLargeException.class)
+    public ResponseEntity<ExceptionErrorResponse> handleObjectTooLargeException(ObjectTooLargeException ex) {
+
+        ExceptionErrorResponse error = ExceptionErrorResponse.builder()
+                .message(ex.getMessage())
+                .responseCode(HttpStatus.PAYLOAD_TOO_LARGE.value())
+                .timestamp(System.currentTimeMillis())
+                .build();
+
+        return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body(error);
+    }
+
     @ExceptionHandler(UsernameNotValidException.class)
     public ResponseEntity<ExceptionErrorResponse> handleUsernameNotValidException(UsernameNotValidException ex) {
 
@@ -0,0 +1,8 @@
+package com.cdcrane.social_konnect_backend.config.exceptions;
+
+public class BatchTooLargeException extends RuntimeException {
+
+    public BatchTooLargeException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,8 @@
+package com.cdcrane.social_konnect_backend.config.exceptions;
+
+public class InvalidCursorException extends RuntimeException {
+
+    public InvalidCursorException(String message) {
+        super(message);
+    }
+}
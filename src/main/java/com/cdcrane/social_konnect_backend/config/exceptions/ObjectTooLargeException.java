@@ -0,0 +1,8 @@
+package com.cdcrane.social_konnect_backend.config.exceptions;
+
+public class ObjectTooLargeException extends RuntimeException {
+
+    public ObjectTooLargeException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,211 @@
+package com.cdcrane.social_konnect_backend.config.file_handling;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Stores post media under the SHA-256 of its content, so the same file uploaded any number of times is kept once on disk.
+ * Blobs are spread over two levels of directories (ab/cd/abcd...png) and reference counted in media_blobs,
+ * a blob and its file are only removed when the last PostMedia using it is deleted, once that delete has committed.
+ * Since the content of a URL never changes, media URLs can be cached forever.
+ */
+@Component
+@ConditionalOnProperty(name = "app.media.storage", havingValue = "content-addressed")
+@Slf4j
+public class ContentAddressedFileHandler extends LocalFileHandler {
+
+    private static final Pattern BLOB_FILE_NAME = Pattern.compile("[0-9a-f]{2}/[0-9a-f]{2}/([0-9a-f]{64})(\\.\\w+)?");
+
+    private final MediaBlobRepository blobRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate newTransactionTemplate;
+
+    public ContentAddressedFileHandler(@Value("${app.media.upload-concurrency:4}") int uploadConcurrency,
+                                       MediaBlobRepository blobRepository, TransactionTemplate transactionTemplate) {
+        super(uploadConcurrency);
+        this.blobRepository = blobRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.newTransactionTemplate = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        this.newTransactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /**
+     * Hash the file while streaming it to a temp file, then either keep it as a new blob or drop it if the blob already exists.
+     * The reference is taken before the file is put in place, so a concurrent delete of the last reference can't remove it.
+     * @param file The MultipartFile to save.
+     * @return A HashMap with file information, being fileName and mimeType.
+     */
+    @Override
+    protected Map<String, String> storeFile(MultipartFile file) {
+
+        String originalName = file.getOriginalFilename() == null ? "no_name_file" : file.getOriginalFilename();
+
+        try (DigestInputStream in = new DigestInputStream(file.getInputStream(), sha256())) {
+
+            StagedUpload staged = stageUpload(in, originalName, POST_MEDIA_TYPES);
+
+            String digest = HexFormat.of().formatHex(in.getMessageDigest().digest());
+            String fileName = blobFileName(digest, staged.mimeType());
+
+            try {
+                acquireReference(digest, fileName, staged);
+            } catch (RuntimeException e) {
+                Files.deleteIfExists(staged.tempFile());
+                throw e;
+            }
+
+            try {
+
+                Path target = uploadDir.resolve(fileName);
+
+                if (Files.exists(target)) {
+                    // Already stored, the copy is not needed.
+                    Files.delete(staged.tempFile());
+                } else {
+                    Files.createDirectories(target.getParent());
+                    moveIntoPlace(staged.tempFile(), target);
+                }
+
+            } catch (IOException | RuntimeException e) {
+
+                Files.deleteIfExists(staged.tempFile());
+                releaseReference(digest, fileName);
+                throw e;
+            }
+
+            Map<String, String> fileInfo = new HashMap<>();
+            fileInfo.put("filename", fileName);
+            fileInfo.put("mimeType", mediaTypeOf(staged.mimeType()));
+
+            return fileInfo;
+
+        } catch (IOException e) {
+
+            throw new RuntimeException(e.toString());
+        }
+    }
+
+    /**
+     * Drop one reference to a blob, the file is only deleted when no PostMedia uses it anymore.
+     * Files stored before content addressing was enabled are deleted directly.
+     * @param fileName The stored file name of the media.
+     */
+    @Override
+    public void deleteFile(String fileName) {
+
+        Matcher matcher = BLOB_FILE_NAME.matcher(fileName);
+
+        if (!matcher.matches()) {
+            super.deleteFile(fileName);
+            return;
+        }
+
+        releaseReference(matcher.group(1), fileName);
+    }
+
+    private void acquireReference(String digest, String fileName, StagedUpload staged) {
+
+        try {
+
+            transactionTemplate.executeWithoutResult(status -> insertOrIncrement(digest, fileName, staged));
+
+        } catch (DataIntegrityViolationException e) {
+
+            // Another upload of the same content inserted the blob first, it exists now.
+            transactionTemplate.executeWithoutResult(status -> blobRepository.incrementRefCount(digest));
+        }
+    }
+
+    private void insertOrIncrement(String digest, String fileName, StagedUpload staged) {
+
+        if (blobRepository.incrementRefCount(digest) > 0) {
+            return;
+        }
+
+        blobRepository.insertBlob(digest, fileName, staged.mimeType(), staged.size());
+    }
+
+    /**
+     * Drop a reference in the caller's transaction, or a new one if there is none. The file can only be deleted once
+     * that has committed, deleting it before would lose the content of a post whose delete is rolled back.
+     */
+    private void releaseReference(String digest, String fileName) {
+
+        transactionTemplate.executeWithoutResult(status -> {
+
+            if (blobRepository.decrementRefCount(digest) == 0) {
+                log.warn("Tried to release media blob {} which does not exist.", digest);
+                return;
+            }
+
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    deleteIfUnreferenced(digest, fileName);
+                }
+            });
+        });
+    }
+
+    /**
+     * Remove a blob and its file if no upload took a new reference since it was released.
+     * A blob left behind by a failure here is reused by the next upload of the same content.
+     */
+    private void deleteIfUnreferenced(String digest, String fileName) {
+
+        try {
+
+            // In a new transaction, the one that released the reference has already committed.
+            // The row stays locked until commit, so no upload can take a new reference while the file is deleted.
+            newTransactionTemplate.executeWithoutResult(status -> {
+                if (blobRepository.deleteIfUnreferenced(digest) > 0) {
+                    super.deleteFile(fileName);
+                }
+            });
+
+        } catch (RuntimeException e) {
+
+            log.warn("Could not delete unreferenced media blob {}: {}", digest, e.toString());
+        }
+    }
+
+    /**
+     * @param digest The hex SHA-256 of the content.
+     * @param mimeType The detected type, for the extension.
+     * @return The path of the blob relative to the uploads directory, sharded by the first two bytes of the digest.
+     */
+    static String blobFileName(String digest, String mimeType) {
+        return digest.substring(0, 2) + "/" + digest.substring(2, 4) + "/" + digest + extensionOf(mimeType);
+    }
+
+    private static MessageDigest sha256() {
+
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every JVM is required to support SHA-256.
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
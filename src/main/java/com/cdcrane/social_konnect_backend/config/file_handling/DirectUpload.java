@@ -0,0 +1,35 @@
+package com.cdcrane.social_konnect_backend.config.file_handling;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.Instant;
+
+/**
+ * A key handed out for a presigned direct upload. Only the user it was issued to can attach it to a post, and only once.
+ */
+@Entity
+@Table(name = "direct_uploads", indexes = @Index(name = "idx_direct_uploads_expires_at", columnList = "expires_at"))
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+@Builder
+public class DirectUpload {
+
+    @Id
+    @Column(name = "object_key")
+    private String objectKey;
+
+    @Column(name = "owner_id", nullable = false)
+    private long ownerId;
+
+    // After this the key can no longer be claimed, and the row is purged.
+    @Column(name = "expires_at", nullable = false)
+    private Instant expiresAt;
+
+    // Set when the key is attached to a post.
+    @Column(name = "claimed_at")
+    private Instant claimedAt;
+
+}
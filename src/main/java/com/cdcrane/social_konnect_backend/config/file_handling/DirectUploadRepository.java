@@ -0,0 +1,34 @@
+package com.cdcrane.social_konnect_backend.config.file_handling;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+
+public interface DirectUploadRepository extends JpaRepository<DirectUpload, String> {
+
+    /**
+     * Mark a key as used, if it was issued to the user, has not expired and was not claimed before.
+     * One conditional update, so two requests can never both claim the same key.
+     * @param objectKey The key of the upload.
+     * @param ownerId The user claiming it.
+     * @param now The current time.
+     * @return 1 if the key was claimed, 0 if it can't be.
+     */
+    @Modifying
+    @Query("UPDATE DirectUpload u SET u.claimedAt = :now " +
+            "WHERE u.objectKey = :objectKey AND u.ownerId = :ownerId AND u.claimedAt IS NULL AND u.expiresAt > :now")
+    int claim(@Param("objectKey") String objectKey, @Param("ownerId") long ownerId, @Param("now") Instant now);
+
+    /**
+     * Remove expired keys. A claimed key can't be claimed again without its row either, so claimed ones go too.
+     * @param before Keys that expired before this are removed.
+     * @return The number of rows removed.
+     */
+    @Modifying
+    @Query("DELETE FROM DirectUpload u WHERE u.expiresAt < :before")
+    int deleteExpiredBefore(@Param("before") Instant before);
+
+}
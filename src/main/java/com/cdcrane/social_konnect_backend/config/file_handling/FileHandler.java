@@ -1,5 +1,7 @@
 package com.cdcrane.social_konnect_backend.config.file_handling;
 
+import com.cdcrane.social_konnect_backend.config.exceptions.ActionNotPermittedException;
+import com.cdcrane.social_konnect_backend.config.file_handling.object_storage.PresignedUpload;
 import com.cdcrane.social_konnect_backend.posts.post_media.PostMedia;
 import org.springframework.web.multipart.MultipartFile;
 
@@ -13,4 +15,24 @@ public interface FileHandler {
 
     String saveNewProfilePicture(MultipartFile file);
 
+    /**
+     * Let a client upload a post media file straight to storage, only supported by object storage.
+     * @param contentType The type of the file the client will upload.
+     * @param ownerId The user the upload is for, only they can claim it.
+     * @return Where to upload the file.
+     */
+    default PresignedUpload createDirectUpload(String contentType, long ownerId) {
+        throw new ActionNotPermittedException("Direct uploads are not supported by the configured media storage.");
+    }
+
+    /**
+     * Check files uploaded with createDirectUpload and turn them into media for a post.
+     * @param keys The keys returned by createDirectUpload.
+     * @param ownerId The user creating the post, every key must have been issued to them and not claimed before.
+     * @return A list of PostMedia in the order of the keys.
+     */
+    default List<PostMedia> claimDirectUploads(List<String> keys, long ownerId) {
+        throw new ActionNotPermittedException("Direct uploads are not supported by the configured media storage.");
+    }
+
 }
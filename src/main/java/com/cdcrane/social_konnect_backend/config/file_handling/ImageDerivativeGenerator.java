@@ -0,0 +1,203 @@
+package com.cdcrane.social_konnect_backend.config.file_handling;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Creates the MediaVariant copies of a stored image, downscaled and re-encoded as JPEG.
+ * Only formats the JDK can decode (JPEG, PNG, GIF, BMP) get variants, other images are served as uploaded.
+ * So are images with more than max-pixels pixels, a small file can declare huge dimensions and would fill the heap when decoded.
+ */
+@Component
+@Slf4j
+public class ImageDerivativeGenerator {
+
+    @Value("${app.media.upload-dir:uploads}")
+    private Path uploadDir;
+
+    @Value("${app.media.derivatives.jpeg-quality:0.8}")
+    private float jpegQuality;
+
+    // Decoded at 4 bytes a pixel, so this bounds the memory one image takes.
+    @Value("${app.media.derivatives.max-pixels:40000000}")
+    private long maxPixels;
+
+    /**
+     * Write the requested variants of an image next to it, skipping any that already exist.
+     * A variant that would not be smaller than the previous one reuses its file instead of writing the same image again.
+     * @param fileName The stored file name of the original, relative to the uploads directory.
+     * @param variants The variants to create.
+     * @return The file name of each variant, empty if the image can't be decoded or is too large.
+     */
+    public Map<MediaVariant, String> generate(String fileName, Collection<MediaVariant> variants) throws IOException {
+
+        Map<MediaVariant, String> result = new EnumMap<>(MediaVariant.class);
+
+        BufferedImage original = read(fileName);
+
+        if (original == null) {
+            return result;
+        }
+
+        String previousFileName = null;
+        Dimension previousSize = null;
+
+        for (MediaVariant variant : MediaVariant.values()) {
+
+            if (!variants.contains(variant)) {
+                continue;
+            }
+
+            Dimension size = fitWithin(original.getWidth(), original.getHeight(), variant.maxDimension());
+
+            // The image is smaller than this variant, so it would be the same as the last one.
+            if (size.equals(previousSize)) {
+                result.put(variant, previousFileName);
+                continue;
+            }
+
+            String variantFileName = variant.fileNameFor(fileName);
+            Path target = uploadDir.resolve(variantFileName);
+
+            // Stored content never changes, so an existing variant is already right, e.g. for a deduplicated blob.
+            if (!Files.exists(target)) {
+                writeJpeg(scale(original, size), target);
+            }
+
+            result.put(variant, variantFileName);
+            previousFileName = variantFileName;
+            previousSize = size;
+        }
+
+        return result;
+    }
+
+    /**
+     * Decode an image, after checking the dimensions in its header against the pixel limit.
+     * @return The image, null if the format can't be decoded or the image has too many pixels.
+     */
+    private BufferedImage read(String fileName) throws IOException {
+
+        try (ImageInputStream in = ImageIO.createImageInputStream(uploadDir.resolve(fileName).toFile())) {
+
+            Iterator<ImageReader> readers = in == null ? null : ImageIO.getImageReaders(in);
+
+            if (readers == null || !readers.hasNext()) {
+                log.debug("No derivatives for {}, the format can't be decoded.", fileName);
+                return null;
+            }
+
+            ImageReader reader = readers.next();
+
+            try {
+
+                reader.setInput(in, true, true);
+
+                long pixels = (long) reader.getWidth(0) * reader.getHeight(0);
+
+                if (pixels > maxPixels) {
+                    log.warn("No derivatives for {}, {}x{} is more than {} pixels.", fileName, reader.getWidth(0), reader.getHeight(0), maxPixels);
+                    return null;
+                }
+
+                return reader.read(0);
+
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    static Dimension fitWithin(int width, int height, int maxDimension) {
+
+        double scale = Math.min(1.0, (double) maxDimension / Math.max(width, height));
+
+        return new Dimension(Math.max(1, (int) Math.round(width * scale)), Math.max(1, (int) Math.round(height * scale)));
+    }
+
+    /**
+     * Downscale in steps of at most half, a single bilinear step to a much smaller size skips most source pixels and looks grainy.
+     * Drawn onto an RGB image with a white background, since JPEG has no transparency.
+     */
+    private static BufferedImage scale(BufferedImage source, Dimension size) {
+
+        BufferedImage current = source;
+        int width = source.getWidth();
+        int height = source.getHeight();
+
+        do {
+
+            width = Math.max(size.width, width / 2);
+            height = Math.max(size.height, height / 2);
+
+            BufferedImage next = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+
+            Graphics2D g = next.createGraphics();
+
+            try {
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                g.setColor(Color.WHITE);
+                g.fillRect(0, 0, width, height);
+                g.drawImage(current, 0, 0, width, height, null);
+            } finally {
+                g.dispose();
+            }
+
+            current = next;
+
+        } while (width != size.width || height != size.height);
+
+        return current;
+    }
+
+    private void writeJpeg(BufferedImage image, Path target) throws IOException {
+
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(jpegQuality);
+
+        // Written next to the target and moved into place, so a half written variant is never served.
+        Path temp = Files.createTempFile(target.getParent(), "variant_", ".part");
+
+        try {
+
+            try (ImageOutputStream out = ImageIO.createImageOutputStream(temp.toFile())) {
+                writer.setOutput(out);
+                writer.write(null, new IIOImage(image, null, null), param);
+            }
+
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+
+        } catch (IOException | RuntimeException e) {
+
+            Files.deleteIfExists(temp);
+            throw e;
+
+        } finally {
+            writer.dispose();
+        }
+    }
+
+}
@@ -2,78 +2,181 @@ package com.cdcrane.social_konnect_backend.config.file_handling;
 
 import com.cdcrane.social_konnect_backend.config.exceptions.FileTypeNotValidException;
 import com.cdcrane.social_konnect_backend.posts.post_media.PostMedia;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.tika.Tika;
+import org.apache.tika.mime.MimeTypeException;
+import org.apache.tika.mime.MimeTypes;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
 
 /**
  * Class to handle uploaded files in MultipartFile format and store them locally.
  */
 @Component
+@ConditionalOnProperty(name = "app.media.storage", havingValue = "local", matchIfMissing = true)
 @Slf4j
 public class LocalFileHandler implements FileHandler {
 
+    // Enough for the magic bytes of every allowed image and video type.
+    protected static final int DETECTION_BYTES = 8 * 1024;
+
+    private static final long TRANSFER_CHUNK_BYTES = 1024 * 1024;
+
+    protected static final Predicate<String> POST_MEDIA_TYPES =
+            type -> FileHandlerConstants.ALLOWED_IMAGE_TYPES.contains(type) || FileHandlerConstants.ALLOWED_VIDEO_TYPES.contains(type);
+
     @Value("${app.backend-base-url}")
-    private String backendBaseUrl;
+    protected String backendBaseUrl;
+
+    @Value("${app.media.upload-dir:uploads}")
+    protected Path uploadDir;
+
+    // Thread safe, and building one loads the whole MIME type registry, so one is shared by all uploads.
+    private final Tika tika = new Tika();
+
+    // Uploads are mostly waiting on disk and network IO, so each file gets a virtual thread and the permits bound the real work.
+    private final ExecutorService uploadExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Semaphore uploadPermits;
+
+    public LocalFileHandler(@Value("${app.media.upload-concurrency:4}") int uploadConcurrency) {
+        this.uploadPermits = new Semaphore(uploadConcurrency);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        uploadExecutor.shutdown();
+    }
 
     /**
-     * Take a list of MultipartFile, validate them, and call saveFile method to handle saving to the local filesystem.
+     * Take a list of MultipartFile, validate and store them in parallel, at most uploadConcurrency at a time across all requests.
+     * Either every file is stored or none is, files already written are deleted if any one of them fails.
      * @param files The list of MultipartFile to store.
-     * @return A list of PostMedia, which can be added to a Post entity before persisting.
+     * @return A list of PostMedia in the order of the files, which can be added to a Post entity before persisting.
      */
     @Override
     public List<PostMedia> saveFiles(List<MultipartFile> files) {
 
-        // Log failed files
-        List<String> errors = new ArrayList<>();
+        List<MultipartFile> toStore = new ArrayList<>();
+
+        for (MultipartFile file : files) {
+
+            if (file.isEmpty()) {
+                log.warn("File upload skipped for file: {} , cause it is empty .", file.getOriginalFilename());
+                continue;
+            }
+
+            toStore.add(file);
+        }
+
+        // Set by the first failing file, so files still waiting for a permit are not written at all.
+        AtomicBoolean failed = new AtomicBoolean();
+
+        List<Future<PostMedia>> results = toStore.stream()
+                .map(file -> uploadExecutor.submit(() -> storeWithPermit(file, failed)))
+                .toList();
 
         // Create media objects, will be persisted when saving the associated post.
         List<PostMedia> media = new ArrayList<>();
+        RuntimeException failure = null;
 
-        for  (MultipartFile file : files) {
+        // Wait for every file, even after a failure, so nothing is written after the cleanup below.
+        for (Future<PostMedia> result : results) {
 
-            if(file.isEmpty()) {
-                errors.add(file.getOriginalFilename() + " is empty");
-                continue;
-            }
+            try {
 
-            Map<String, String> fileInfo = storeFile(file);
+                PostMedia stored = result.get();
 
-            String fileUrl = backendBaseUrl + "/media/" + fileInfo.get("filename");
+                if (stored != null) {
+                    media.add(stored);
+                }
 
+            } catch (ExecutionException e) {
 
-            media.add(PostMedia.builder()
-                    .mediaType(fileInfo.get("mimeType"))
-                    .mediaUrl(fileUrl)
-                    .fileName(fileInfo.get("filename"))
-                    .build());
+                if (failure == null) {
+                    failure = e.getCause() instanceof RuntimeException re ? re : new RuntimeException(e.getCause());
+                }
+
+            } catch (InterruptedException e) {
+
+                Thread.currentThread().interrupt();
+                failed.set(true);
 
+                if (failure == null) {
+                    failure = new RuntimeException("Interrupted while storing uploaded files", e);
+                }
+            }
         }
 
-        // TODO: Implement real error/exception handling for the file saving.
-        for (String error : errors) {
-            log.warn("File upload failed for file: {} , cause {} .", error, error);
+        if (failure != null) {
+
+            for (PostMedia stored : media) {
+                deleteFile(stored.getFileName());
+            }
+
+            throw failure;
         }
 
         return media;
 
     }
 
+    private PostMedia storeWithPermit(MultipartFile file, AtomicBoolean failed) throws InterruptedException {
+
+        uploadPermits.acquire();
+
+        try {
+
+            if (failed.get()) {
+                return null;
+            }
+
+            Map<String, String> fileInfo = storeFile(file);
+
+            return PostMedia.builder()
+                    .mediaType(fileInfo.get("mimeType"))
+                    .mediaUrl(mediaUrl(fileInfo.get("filename")))
+                    .fileName(fileInfo.get("filename"))
+                    .build();
+
+        } catch (RuntimeException e) {
+
+            failed.set(true);
+            throw e;
+
+        } finally {
+            uploadPermits.release();
+        }
+    }
+
     /**
      * Handle the saving in the local filesystem of each file.
      * @param file The validated MultipartFile to save.
      * @return A HashMap with file information, being fileName and mimeType.
      */
-    private Map<String, String> storeFile(MultipartFile file) {
+    protected Map<String, String> storeFile(MultipartFile file) {
 
         try {
 
@@ -85,61 +188,166 @@ public class LocalFileHandler implements FileHandler {
                 originalName = "no_name_file";
             }
 
-            // For checking and validating file type, much more accurate than the native support.
-            Tika tika = new Tika();
-            String mimeType = tika.detect(file.getInputStream());
-            String actualType;
+            // Remove all spaces from original name
+            // Generate unique name even if files with same name are uploaded twice, or stored in parallel in the same millisecond.
+            String fileName = System.currentTimeMillis() + "_" + Integer.toHexString(ThreadLocalRandom.current().nextInt()) + "_" + originalName.replace(" ", "");
+
+            String mimeType = streamToUploads(file, originalName, fileName, POST_MEDIA_TYPES);
+
+            fileInfo.put("filename", fileName);
+            fileInfo.put("mimeType", mediaTypeOf(mimeType));
+
+            return fileInfo;
+
+        } catch (IOException e) {
+
+            throw new RuntimeException(e.toString());
+        }
+
+
+    }
+
+    /**
+     * Write an upload into the uploads directory in one pass over its stream, see stageUpload.
+     * @param file The uploaded file.
+     * @param originalName The name of the file as uploaded, for the error message.
+     * @param fileName The name to store the file under.
+     * @param typeAllowed Checks the detected MIME type.
+     * @return The detected MIME type.
+     * @throws FileTypeNotValidException If the detected type is not allowed.
+     */
+    private String streamToUploads(MultipartFile file, String originalName, String fileName, Predicate<String> typeAllowed) throws IOException {
+
+        try (InputStream in = file.getInputStream()) {
+
+            StagedUpload staged = stageUpload(in, originalName, typeAllowed);
+
+            moveIntoPlace(staged.tempFile(), uploadDir.resolve(fileName));
+
+            return staged.mimeType();
+        }
+    }
+
+    /**
+     * Copy an upload into a temp file in the uploads directory, reading its stream only once.
+     * The type is detected from the first bytes, so a rejected file is never written. The rest of the stream
+     * is then copied through a FileChannel. Moving the temp file into place afterward means a half written file is never served.
+     * @param in The stream of the upload, read to the end.
+     * @param originalName The name of the file as uploaded, for the error message.
+     * @param typeAllowed Checks the detected MIME type.
+     * @return The temp file and the detected MIME type, the caller must move or delete the temp file.
+     * @throws FileTypeNotValidException If the detected type is not allowed.
+     */
+    protected StagedUpload stageUpload(InputStream in, String originalName, Predicate<String> typeAllowed) throws IOException {
 
-            if (FileHandlerConstants.ALLOWED_IMAGE_TYPES.contains(mimeType)) {
+        byte[] head = in.readNBytes(DETECTION_BYTES);
 
-                actualType = FileHandlerConstants.IMAGE_TYPE;
+        String mimeType = tika.detect(head);
 
-            } else if (FileHandlerConstants.ALLOWED_VIDEO_TYPES.contains(mimeType)) {
+        if (!typeAllowed.test(mimeType)) {
+            throw new FileTypeNotValidException("File type not supported: " + mimeType + " for file: " + originalName + " .");
+        }
 
-                actualType = FileHandlerConstants.VIDEO_TYPE;
+        // Create dir if it doesn't exist
+        Files.createDirectories(uploadDir);
 
-            } else {
+        // In the same directory as the target, so the move is a rename on the same filesystem.
+        Path temp = Files.createTempFile(uploadDir, "upload_", ".part");
 
-                throw new FileTypeNotValidException("File type not supported: " + mimeType + " for file: " + originalName + " .");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE);
+             ReadableByteChannel rest = Channels.newChannel(in)) {
 
+            ByteBuffer headBuffer = ByteBuffer.wrap(head);
+            while (headBuffer.hasRemaining()) {
+                out.write(headBuffer);
             }
 
+            long position = head.length;
+            long transferred;
+            while ((transferred = out.transferFrom(rest, position, TRANSFER_CHUNK_BYTES)) > 0) {
+                position += transferred;
+            }
 
-            // Remove all spaces from original name
-            originalName = originalName.replace(" ", "");
+            return new StagedUpload(temp, mimeType, position);
 
-            // Generate unique name even if files with same name are uploaded twice.
-            String fileName = System.currentTimeMillis() + "_" + originalName;
+        } catch (IOException | RuntimeException e) {
 
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+    }
 
-            Path upload = Paths.get("uploads/", fileName);
+    /**
+     * Atomically move a staged temp file to its final path, deleting the temp file if that fails.
+     * @param tempFile The file returned by stageUpload.
+     * @param target Where the file should end up, its directory must exist.
+     */
+    protected void moveIntoPlace(Path tempFile, Path target) throws IOException {
 
-            // Create dir if it doesn't exist
-            Files.createDirectories(upload.getParent());
+        try {
 
-            Files.copy(file.getInputStream(), upload, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(tempFile, target, StandardCopyOption.ATOMIC_MOVE);
 
-            fileInfo.put("filename", fileName);
-            fileInfo.put("mimeType", actualType);
+        } catch (IOException | RuntimeException e) {
 
-            return fileInfo;
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+    }
 
-        } catch (IOException e) {
+    /**
+     * @param fileName The stored file name, relative to the uploads directory.
+     * @return The public URL the file is served under.
+     */
+    protected String mediaUrl(String fileName) {
+        return backendBaseUrl + "/media/" + fileName;
+    }
 
-            throw new RuntimeException(e.toString());
+    /**
+     * @param mimeType A detected MIME type.
+     * @return The usual extension for the type including the dot, e.g. ".png", or an empty string if there is none.
+     */
+    protected static String extensionOf(String mimeType) {
+
+        try {
+            return MimeTypes.getDefaultMimeTypes().forName(mimeType).getExtension();
+        } catch (MimeTypeException e) {
+            return "";
         }
+    }
 
+    /**
+     * @param mimeType A detected MIME type allowed for post media.
+     * @return IMAGE or VIDEO, as stored on PostMedia.
+     */
+    protected static String mediaTypeOf(String mimeType) {
 
+        return FileHandlerConstants.ALLOWED_IMAGE_TYPES.contains(mimeType)
+                ? FileHandlerConstants.IMAGE_TYPE
+                : FileHandlerConstants.VIDEO_TYPE;
+    }
+
+    /**
+     * @param head The first DETECTION_BYTES of a file, or all of it if it is shorter.
+     * @return The MIME type detected from the content.
+     */
+    protected String detectMimeType(byte[] head) {
+        return tika.detect(head);
     }
 
     public void deleteFile(String fileName) {
 
         try {
 
-            Path file = Paths.get("uploads/" + fileName);
+            Path file = uploadDir.resolve(fileName);
 
             Files.delete(file);
 
+            // Any downscaled copies go with the original.
+            for (MediaVariant variant : MediaVariant.values()) {
+                Files.deleteIfExists(uploadDir.resolve(variant.fileNameFor(fileName)));
+            }
+
         } catch (IOException e) {
 
             log.warn("File deletion failed for file: {} , cause {} .", fileName, e.getMessage());
@@ -158,31 +366,13 @@ public class LocalFileHandler implements FileHandler {
                 originalName = "profile_picture";
             }
 
-            // For checking and validating file type, much more accurate than the native support.
-            Tika tika = new Tika();
-            String mimeType = tika.detect(file.getInputStream());
-            String actualType;
-
-            if (!FileHandlerConstants.ALLOWED_IMAGE_TYPES.contains(mimeType)) {
-
-                throw new FileTypeNotValidException("File type not supported: " + mimeType + " for file: " + originalName + " .");
-
-            }
-
             // Remove all spaces from original name
-            originalName = originalName.replace(" ", "");
-
             // Generate unique name even if files with same name are uploaded twice.
-            String fileName = System.currentTimeMillis() + "_profile_picture_" + originalName;
-
-            Path upload = Paths.get("uploads/", fileName);
-
-            // Create dir if it doesn't exist
-            Files.createDirectories(upload.getParent());
+            String fileName = System.currentTimeMillis() + "_profile_picture_" + originalName.replace(" ", "");
 
-            Files.copy(file.getInputStream(), upload, StandardCopyOption.REPLACE_EXISTING);
+            streamToUploads(file, originalName, fileName, FileHandlerConstants.ALLOWED_IMAGE_TYPES::contains);
 
-            return backendBaseUrl + "/media/" + fileName;
+            return mediaUrl(fileName);
 
 
         } catch (IOException e) {
@@ -0,0 +1,37 @@
+package com.cdcrane.social_konnect_backend.config.file_handling;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+/**
+ * A stored file of the content-addressed media store, shared by every PostMedia row with the same content.
+ */
+@Entity
+@Table(name = "media_blobs")
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+@Builder
+public class MediaBlob {
+
+    // Hex SHA-256 of the content.
+    @Id
+    @Column(name = "digest", length = 64)
+    private String digest;
+
+    // Relative to the uploads directory.
+    @Column(name = "file_name", nullable = false)
+    private String fileName;
+
+    @Column(name = "mime_type", nullable = false)
+    private String mimeType;
+
+    @Column(name = "size_bytes", nullable = false)
+    private long sizeBytes;
+
+    // The number of PostMedia rows using this blob, it is deleted when this reaches 0.
+    @Column(name = "ref_count", nullable = false)
+    private long refCount;
+
+}
@@ -0,0 +1,43 @@
+package com.cdcrane.social_konnect_backend.config.file_handling;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+public interface MediaBlobRepository extends JpaRepository<MediaBlob, String> {
+
+    /**
+     * Add a reference to an existing blob. Relative, so concurrent uploads of the same content never lose a reference.
+     * @param digest The digest of the blob.
+     * @return 1 if the blob exists, 0 if it still needs to be inserted.
+     */
+    @Modifying
+    @Query("UPDATE MediaBlob b SET b.refCount = b.refCount + 1 WHERE b.digest = :digest")
+    int incrementRefCount(@Param("digest") String digest);
+
+    /**
+     * Insert a new blob with one reference. A plain insert rather than save(), which would merge the assigned digest
+     * into a blob inserted concurrently by another upload and reset its reference count.
+     * @throws org.springframework.dao.DataIntegrityViolationException If the blob was inserted by another upload first.
+     */
+    @Modifying
+    @Query(value = "INSERT INTO media_blobs (digest, file_name, mime_type, size_bytes, ref_count) " +
+            "VALUES (:digest, :fileName, :mimeType, :sizeBytes, 1)", nativeQuery = true)
+    int insertBlob(@Param("digest") String digest, @Param("fileName") String fileName,
+                   @Param("mimeType") String mimeType, @Param("sizeBytes") long sizeBytes);
+
+    @Modifying
+    @Query("UPDATE MediaBlob b SET b.refCount = b.refCount - 1 WHERE b.digest = :digest")
+    int decrementRefCount(@Param("digest") String digest);
+
+    /**
+     * Remove a blob once nothing references it, in the same transaction as the decrement.
+     * @param digest The digest of the blob.
+     * @return 1 if the blob was removed, so its file should be deleted too.
+     */
+    @Modifying
+    @Query("DELETE FROM MediaBlob b WHERE b.digest = :digest AND b.refCount <= 0")
+    int deleteIfUnreferenced(@Param("digest") String digest);
+
+}
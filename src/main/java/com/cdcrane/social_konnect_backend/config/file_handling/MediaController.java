@@ -0,0 +1,231 @@
+package com.cdcrane.social_konnect_backend.config.file_handling;
+
+import com.cdcrane.social_konnect_backend.config.exceptions.ResourceNotFoundException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Serves stored media from the uploads directory.
+ * Stored files never change once they are in place (every upload gets a new name, blobs are named by their content),
+ * so responses carry a strong ETag and may be cached forever. Single byte ranges are supported so videos can be seeked,
+ * and the file is handed to the container to send straight from the page cache where it supports that.
+ */
+@RestController
+public class MediaController {
+
+    private static final String MEDIA_PATH_PREFIX = "/media/";
+
+    private static final String CACHE_FOREVER = "public, max-age=31536000, immutable";
+
+    private static final Pattern CONTENT_DIGEST = Pattern.compile("([0-9a-f]{64})(_\\w+)?\\.\\w+$");
+
+    // Set by Tomcat when the connector can send a file with sendfile, see org.apache.tomcat.util.net.Constants.
+    private static final String SENDFILE_SUPPORTED_ATTR = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME_ATTR = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START_ATTR = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END_ATTR = "org.apache.tomcat.sendfile.end";
+
+    // Below this, copying is cheaper than setting up sendfile.
+    private static final long SENDFILE_MIN_BYTES = 48 * 1024;
+
+    private final Path uploadDir;
+
+    public MediaController(@Value("${app.media.upload-dir:uploads}") Path uploadDir) {
+        this.uploadDir = uploadDir.toAbsolutePath().normalize();
+    }
+
+    @RequestMapping(value = "/media/**", method = {RequestMethod.GET, RequestMethod.HEAD})
+    public void getMedia(HttpServletRequest request, HttpServletResponse response) throws IOException {
+
+        Path file = resolve((String) request.getAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE));
+
+        BasicFileAttributes attributes;
+
+        try {
+            attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (IOException e) {
+            throw new ResourceNotFoundException("Media not found.");
+        }
+
+        if (!attributes.isRegularFile()) {
+            throw new ResourceNotFoundException("Media not found.");
+        }
+
+        long length = attributes.size();
+        String eTag = eTagOf(file, attributes);
+
+        response.setHeader(HttpHeaders.ETAG, eTag);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, CACHE_FOREVER);
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+        if (matches(request.getHeader(HttpHeaders.IF_NONE_MATCH), eTag)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        response.setContentType(MediaTypeFactory.getMediaType(file.getFileName().toString())
+                .orElse(MediaType.APPLICATION_OCTET_STREAM)
+                .toString());
+
+        long start = 0;
+        long end = length - 1;
+
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+
+        // A range is only valid for the version of the file the client has, otherwise the whole file is sent.
+        if (rangeHeader != null && (ifRange == null || ifRange.equals(eTag))) {
+
+            List<HttpRange> ranges;
+
+            try {
+                ranges = HttpRange.parseRanges(rangeHeader);
+            } catch (IllegalArgumentException e) {
+                ranges = List.of();
+            }
+
+            // Players only ask for one range, several ranges are answered with the whole file.
+            if (ranges.size() == 1) {
+
+                HttpRange range = ranges.getFirst();
+
+                if (length == 0 || !satisfiable(range, length)) {
+                    response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                    response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                    return;
+                }
+
+                start = range.getRangeStart(length);
+                end = range.getRangeEnd(length);
+
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+            }
+        }
+
+        long count = end - start + 1;
+
+        response.setContentLengthLong(count);
+
+        if (RequestMethod.HEAD.name().equals(request.getMethod()) || count <= 0) {
+            return;
+        }
+
+        if (count >= SENDFILE_MIN_BYTES && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED_ATTR))) {
+
+            // The container writes the file to the socket once this method returns, without copying it through the JVM.
+            request.setAttribute(SENDFILE_FILENAME_ATTR, file.toString());
+            request.setAttribute(SENDFILE_START_ATTR, start);
+            request.setAttribute(SENDFILE_END_ATTR, end + 1);
+            return;
+        }
+
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+
+            long position = start;
+            long remaining = count;
+
+            while (remaining > 0) {
+
+                long sent = in.transferTo(position, remaining, out);
+
+                if (sent <= 0) {
+                    break;
+                }
+
+                position += sent;
+                remaining -= sent;
+            }
+        }
+    }
+
+    /**
+     * Map the request path to a file in the uploads directory.
+     * @throws ResourceNotFoundException If the path points outside the uploads directory, or to an upload still being written.
+     */
+    private Path resolve(String requestPath) {
+
+        if (requestPath == null || !requestPath.startsWith(MEDIA_PATH_PREFIX)) {
+            throw new ResourceNotFoundException("Media not found.");
+        }
+
+        Path file = uploadDir.resolve(requestPath.substring(MEDIA_PATH_PREFIX.length())).normalize();
+
+        if (!file.startsWith(uploadDir) || file.getFileName().toString().endsWith(".part")) {
+            throw new ResourceNotFoundException("Media not found.");
+        }
+
+        return file;
+    }
+
+    /**
+     * Content-addressed files and their variants are tagged with the digest of the content.
+     * Other stored files never change once written, so their size and modification time identify the content just as well.
+     */
+    private static String eTagOf(Path file, BasicFileAttributes attributes) {
+
+        Matcher matcher = CONTENT_DIGEST.matcher(file.getFileName().toString());
+
+        if (matcher.matches()) {
+            return "\"" + matcher.group(1) + (matcher.group(2) == null ? "" : matcher.group(2)) + "\"";
+        }
+
+        return "\"" + Long.toHexString(attributes.size()) + "-" + Long.toHexString(attributes.lastModifiedTime().toMillis()) + "\"";
+    }
+
+    private static boolean matches(String ifNoneMatch, String eTag) {
+
+        if (ifNoneMatch == null) {
+            return false;
+        }
+
+        for (String candidate : ifNoneMatch.split(",")) {
+
+            String tag = candidate.trim();
+
+            // If-None-Match uses the weak comparison.
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+
+            if (tag.equals("*") || tag.equals(eTag)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static boolean satisfiable(HttpRange range, long length) {
+
+        try {
+            return range.getRangeStart(length) < length && range.getRangeStart(length) <= range.getRangeEnd(length);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+}
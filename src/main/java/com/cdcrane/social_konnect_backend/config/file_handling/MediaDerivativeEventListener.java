@@ -0,0 +1,126 @@
+package com.cdcrane.social_konnect_backend.config.file_handling;
+
+import com.cdcrane.social_konnect_backend.config.AsyncConfig;
+import com.cdcrane.social_konnect_backend.posts.events.PostCreatedEvent;
+import com.cdcrane.social_konnect_backend.posts.post_media.PostMedia;
+import com.cdcrane.social_konnect_backend.posts.post_media.PostMediaRepository;
+import com.cdcrane.social_konnect_backend.users.UserRepository;
+import com.cdcrane.social_konnect_backend.users.UserSummaryCache;
+import com.cdcrane.social_konnect_backend.users.events.ProfilePictureChangedEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Generates downscaled variants of uploaded images in the background, so the upload request never waits for image processing.
+ * Until they exist, the original is served.
+ */
+@Component
+@Slf4j
+public class MediaDerivativeEventListener {
+
+    private final ImageDerivativeGenerator derivativeGenerator;
+    private final PostMediaRepository postMediaRepository;
+    private final UserRepository userRepository;
+    private final UserSummaryCache userSummaryCache;
+
+    @Value("${app.backend-base-url}")
+    private String backendBaseUrl;
+
+    public MediaDerivativeEventListener(ImageDerivativeGenerator derivativeGenerator, PostMediaRepository postMediaRepository,
+                                        UserRepository userRepository, UserSummaryCache userSummaryCache) {
+        this.derivativeGenerator = derivativeGenerator;
+        this.postMediaRepository = postMediaRepository;
+        this.userRepository = userRepository;
+        this.userSummaryCache = userSummaryCache;
+    }
+
+    /**
+     * Create the thumbnail, feed and full size variants of every image of a new post and store their URLs on its media.
+     * @param event The received event.
+     */
+    @Async(AsyncConfig.MEDIA_EXECUTOR)
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void listenForPostCreatedAndGenerateVariants(PostCreatedEvent event) {
+
+        List<PostMedia> media = event.post().getPostMedia();
+
+        if (media == null) {
+            return;
+        }
+
+        for (PostMedia pm : media) {
+
+            if (!FileHandlerConstants.IMAGE_TYPE.equals(pm.getMediaType())) {
+                continue;
+            }
+
+            try {
+
+                Map<MediaVariant, String> variants = derivativeGenerator.generate(pm.getFileName(), EnumSet.allOf(MediaVariant.class));
+
+                if (variants.isEmpty()) {
+                    continue;
+                }
+
+                postMediaRepository.setVariantUrls(pm.getId(),
+                        mediaUrl(variants.get(MediaVariant.THUMBNAIL)),
+                        mediaUrl(variants.get(MediaVariant.FEED)),
+                        mediaUrl(variants.get(MediaVariant.FULL)));
+
+            } catch (IOException | RuntimeException e) {
+
+                // The original is still served, so this only costs bandwidth.
+                log.warn("Generating variants failed for file: {} , cause {} .", pm.getFileName(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Replace a new profile picture with its thumbnail, avatars are never shown larger than that.
+     * The profile picture is saved without a transaction, so this also runs when there is none.
+     * @param event The received event.
+     */
+    @Async(AsyncConfig.MEDIA_EXECUTOR)
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void listenForProfilePictureChangedAndGenerateThumbnail(ProfilePictureChangedEvent event) {
+
+        String prefix = mediaUrl("");
+
+        if (event.profilePictureUrl() == null || !event.profilePictureUrl().startsWith(prefix)) {
+            return;
+        }
+
+        String fileName = event.profilePictureUrl().substring(prefix.length());
+
+        try {
+
+            String thumbnail = derivativeGenerator.generate(fileName, EnumSet.of(MediaVariant.THUMBNAIL)).get(MediaVariant.THUMBNAIL);
+
+            if (thumbnail == null) {
+                return;
+            }
+
+            if (userRepository.replaceProfilePictureUrl(event.userId(), event.profilePictureUrl(), mediaUrl(thumbnail)) > 0) {
+                userSummaryCache.invalidate(event.username());
+            }
+
+        } catch (IOException | RuntimeException e) {
+
+            log.warn("Generating thumbnail failed for profile picture: {} , cause {} .", fileName, e.getMessage());
+        }
+    }
+
+    private String mediaUrl(String fileName) {
+        return backendBaseUrl + "/media/" + fileName;
+    }
+
+}
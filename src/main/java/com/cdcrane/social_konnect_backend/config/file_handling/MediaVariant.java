@@ -0,0 +1,39 @@
+package com.cdcrane.social_konnect_backend.config.file_handling;
+
+/**
+ * Downscaled copies of uploaded images, so cards and avatars don't download the full upload.
+ * Ordered from smallest to largest.
+ */
+public enum MediaVariant {
+
+    THUMBNAIL("thumb", 320),
+    FEED("feed", 1080),
+    FULL("full", 2048);
+
+    private final String suffix;
+    private final int maxDimension;
+
+    MediaVariant(String suffix, int maxDimension) {
+        this.suffix = suffix;
+        this.maxDimension = maxDimension;
+    }
+
+    public int maxDimension() {
+        return maxDimension;
+    }
+
+    /**
+     * @param fileName The stored file name of the original, relative to the uploads directory.
+     * @return The file name of this variant, next to the original. Variants are always JPEG.
+     */
+    public String fileNameFor(String fileName) {
+
+        int dot = fileName.lastIndexOf('.');
+        int slash = fileName.lastIndexOf('/');
+
+        String base = dot > slash ? fileName.substring(0, dot) : fileName;
+
+        return base + "_" + suffix + ".jpg";
+    }
+
+}
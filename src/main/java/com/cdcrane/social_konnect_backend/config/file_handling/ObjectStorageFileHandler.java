@@ -0,0 +1,255 @@
+package com.cdcrane.social_konnect_backend.config.file_handling;
+
+import com.cdcrane.social_konnect_backend.config.exceptions.ActionNotPermittedException;
+import com.cdcrane.social_konnect_backend.config.exceptions.FileTypeNotValidException;
+import com.cdcrane.social_konnect_backend.config.exceptions.ObjectTooLargeException;
+import com.cdcrane.social_konnect_backend.config.exceptions.ResourceNotFoundException;
+import com.cdcrane.social_konnect_backend.config.file_handling.object_storage.ObjectStorageClient;
+import com.cdcrane.social_konnect_backend.config.file_handling.object_storage.PresignedUpload;
+import com.cdcrane.social_konnect_backend.config.file_handling.object_storage.StoredObject;
+import com.cdcrane.social_konnect_backend.posts.post_media.PostMedia;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * Stores media in object storage, so any number of backend instances share it and it is served without the backend.
+ * Uploads through the API are validated and staged in the local uploads directory, then streamed to storage.
+ * Clients can also upload post media straight to storage with a presigned URL, the files are validated when the post is created.
+ * Every key handed out is recorded with its owner, so a post can only use direct uploads its creator was issued, each once.
+ */
+@Component
+@ConditionalOnProperty(name = "app.media.storage", havingValue = "object")
+@Slf4j
+public class ObjectStorageFileHandler extends LocalFileHandler {
+
+    private static final String MEDIA_KEY_PREFIX = "media/";
+
+    private static final Pattern MEDIA_KEY = Pattern.compile("media/[0-9a-f-]{36}\\.\\w+");
+
+    private final ObjectStorageClient storageClient;
+    private final DirectUploadRepository directUploadRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${app.media.object-storage.upload-url-ttl:PT15M}")
+    private Duration uploadUrlTtl;
+
+    // How long after its upload URL expires a direct upload can still be attached to a post.
+    @Value("${app.media.object-storage.claim-window:PT1H}")
+    private Duration claimWindow;
+
+    @Value("${app.media.object-storage.max-upload-size:10MB}")
+    private DataSize maxUploadSize;
+
+    public ObjectStorageFileHandler(@Value("${app.media.upload-concurrency:4}") int uploadConcurrency, ObjectStorageClient storageClient,
+                                    DirectUploadRepository directUploadRepository, TransactionTemplate transactionTemplate) {
+        super(uploadConcurrency);
+        this.storageClient = storageClient;
+        this.directUploadRepository = directUploadRepository;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    /**
+     * Validate the file while staging it locally, then upload it under a new random key.
+     * @param file The MultipartFile to save.
+     * @return A HashMap with file information, being fileName (the object key) and mimeType.
+     */
+    @Override
+    protected Map<String, String> storeFile(MultipartFile file) {
+
+        UploadedObject uploaded = upload(file, "no_name_file", POST_MEDIA_TYPES, MEDIA_KEY_PREFIX);
+
+        Map<String, String> fileInfo = new HashMap<>();
+        fileInfo.put("filename", uploaded.key());
+        fileInfo.put("mimeType", mediaTypeOf(uploaded.mimeType()));
+
+        return fileInfo;
+    }
+
+    @Override
+    public String saveNewProfilePicture(MultipartFile file) {
+
+        UploadedObject uploaded = upload(file, "profile_picture", FileHandlerConstants.ALLOWED_IMAGE_TYPES::contains, "profile_pictures/");
+
+        return mediaUrl(uploaded.key());
+    }
+
+    @Override
+    protected String mediaUrl(String fileName) {
+        return storageClient.publicUrl(fileName);
+    }
+
+    @Override
+    public void deleteFile(String fileName) {
+
+        try {
+
+            storageClient.deleteObject(fileName);
+
+        } catch (IOException e) {
+
+            log.warn("File deletion failed for file: {} , cause {} .", fileName, e.getMessage());
+
+        }
+    }
+
+    /**
+     * Create a presigned URL for uploading one post media file straight to storage.
+     * @param contentType The type of the file, must be an allowed image or video type.
+     * @param ownerId The user the upload is for.
+     * @return Where to upload the file, and the key to pass when creating the post.
+     */
+    @Override
+    public PresignedUpload createDirectUpload(String contentType, long ownerId) {
+
+        if (contentType == null || !POST_MEDIA_TYPES.test(contentType)) {
+            throw new FileTypeNotValidException("File type not supported: " + contentType + " .");
+        }
+
+        PresignedUpload upload = storageClient.presignUpload(newKey(MEDIA_KEY_PREFIX, contentType), contentType, uploadUrlTtl);
+
+        directUploadRepository.save(DirectUpload.builder()
+                .objectKey(upload.key())
+                .ownerId(ownerId)
+                .expiresAt(upload.expiresAt().plus(claimWindow))
+                .build());
+
+        return upload;
+    }
+
+    /**
+     * Claim files uploaded directly to storage, then validate them like uploads through the API, using only their first bytes.
+     * The keys are claimed together in one transaction, if any of them was not issued to the user or was claimed
+     * before, none are. A file that fails validation is deleted from storage.
+     * @param keys The keys returned by createDirectUpload.
+     * @param ownerId The user creating the post.
+     * @return A list of PostMedia in the order of the keys.
+     */
+    @Override
+    public List<PostMedia> claimDirectUploads(List<String> keys, long ownerId) {
+
+        for (String key : keys) {
+
+            if (key == null || !MEDIA_KEY.matcher(key).matches()) {
+                throw new FileTypeNotValidException("Not a direct upload key: " + key + " .");
+            }
+        }
+
+        transactionTemplate.executeWithoutResult(status -> {
+
+            Instant now = Instant.now();
+
+            for (String key : keys) {
+
+                if (directUploadRepository.claim(key, ownerId, now) == 0) {
+                    throw new ActionNotPermittedException("Upload " + key + " was not issued to you, has expired or is already used.");
+                }
+            }
+        });
+
+        List<PostMedia> media = new ArrayList<>();
+
+        for (String key : keys) {
+
+            try {
+
+                StoredObject object = storageClient.headObject(key)
+                        .orElseThrow(() -> new ResourceNotFoundException("No uploaded file found for key " + key + " ."));
+
+                if (object.size() > maxUploadSize.toBytes()) {
+                    storageClient.deleteObject(key);
+                    throw new ObjectTooLargeException("Uploaded file " + key + " is larger than the limit of " + maxUploadSize + ".");
+                }
+
+                // The type the client claimed is not trusted, the content is checked the same way as for API uploads.
+                String mimeType = detectMimeType(storageClient.readHead(key, DETECTION_BYTES));
+
+                if (!POST_MEDIA_TYPES.test(mimeType)) {
+                    storageClient.deleteObject(key);
+                    throw new FileTypeNotValidException("File type not supported: " + mimeType + " for file: " + key + " .");
+                }
+
+                media.add(PostMedia.builder()
+                        .mediaType(mediaTypeOf(mimeType))
+                        .mediaUrl(mediaUrl(key))
+                        .fileName(key)
+                        .build());
+
+            } catch (IOException e) {
+
+                throw new RuntimeException(e.toString());
+            }
+        }
+
+        return media;
+    }
+
+    /**
+     * Remove the records of direct uploads that can no longer be claimed.
+     */
+    @Scheduled(fixedDelayString = "${app.media.object-storage.purge-interval-ms:3600000}")
+    public void purgeExpiredDirectUploads() {
+
+        int purged = transactionTemplate.execute(status -> directUploadRepository.deleteExpiredBefore(Instant.now()));
+
+        if (purged > 0) {
+            log.info("Purged {} expired direct uploads.", purged);
+        }
+    }
+
+    /**
+     * Stage an upload locally while checking its type, then send it to storage and remove the staged copy.
+     * @return The key of the new object and the detected MIME type.
+     */
+    private UploadedObject upload(MultipartFile file, String defaultName, Predicate<String> typeAllowed, String keyPrefix) {
+
+        String originalName = file.getOriginalFilename() == null ? defaultName : file.getOriginalFilename();
+
+        try (InputStream in = file.getInputStream()) {
+
+            StagedUpload staged = stageUpload(in, originalName, typeAllowed);
+
+            try {
+
+                String key = newKey(keyPrefix, staged.mimeType());
+
+                storageClient.putObject(key, staged.tempFile(), staged.mimeType());
+
+                return new UploadedObject(key, staged.mimeType());
+
+            } finally {
+                Files.deleteIfExists(staged.tempFile());
+            }
+
+        } catch (IOException e) {
+
+            throw new RuntimeException(e.toString());
+        }
+    }
+
+    private static String newKey(String prefix, String mimeType) {
+        return prefix + UUID.randomUUID() + extensionOf(mimeType);
+    }
+
+    private record UploadedObject(String key, String mimeType) {
+    }
+
+}
@@ -0,0 +1,12 @@
+package com.cdcrane.social_konnect_backend.config.file_handling;
+
+import java.nio.file.Path;
+
+/**
+ * An upload fully written to a temp file, but not yet moved to where it is served from.
+ * @param tempFile The temp file, in the uploads directory.
+ * @param mimeType The MIME type detected from the content.
+ * @param size The size of the file in bytes.
+ */
+public record StagedUpload(Path tempFile, String mimeType, long size) {
+}
@@ -0,0 +1,209 @@
+package com.cdcrane.social_konnect_backend.config.file_handling.object_storage;
+
+import com.cdcrane.social_konnect_backend.config.exceptions.ObjectTooLargeException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Optional;
+
+/**
+ * Stand-in for object storage that keeps objects in a local directory, for development, tests and single node setups.
+ * By default that is the uploads directory, so objects are served by MediaController under /media/{key}.
+ * Presigned uploads go to FileSystemObjectUploadController, authorized by an HMAC of the key, type and expiry like an S3 presigned URL.
+ */
+@Component
+@ConditionalOnProperty(name = "app.media.object-storage.provider", havingValue = "filesystem", matchIfMissing = true)
+public class FileSystemObjectStorageClient implements ObjectStorageClient {
+
+    static final String UPLOAD_PATH = "/api/media/objects/";
+
+    private final Path root;
+    private final String backendBaseUrl;
+    private final SecretKeySpec signingKey;
+
+    public FileSystemObjectStorageClient(@Value("${app.media.object-storage.filesystem.root:${app.media.upload-dir:uploads}}") Path root,
+                                         @Value("${app.backend-base-url}") String backendBaseUrl,
+                                         @Value("${app.media.object-storage.filesystem.signing-secret:${jwt.secret}}") String signingSecret) {
+        this.root = root.toAbsolutePath().normalize();
+        this.backendBaseUrl = backendBaseUrl;
+        this.signingKey = new SecretKeySpec(("object-upload:" + signingSecret).getBytes(StandardCharsets.UTF_8), "HmacSHA256");
+    }
+
+    @Override
+    public void putObject(String key, Path file, String contentType) throws IOException {
+
+        try (InputStream in = Files.newInputStream(file)) {
+            write(key, in, Long.MAX_VALUE, true);
+        }
+    }
+
+    /**
+     * Write a new object from a stream, through a temp file so a partly written object is never visible.
+     * Used for presigned uploads, an object is written once so a URL that is still valid can't replace it after it was claimed.
+     * @param key The key of the object.
+     * @param in The content.
+     * @param maxBytes The largest object accepted.
+     * @return The size of the object.
+     * @throws ObjectTooLargeException If the content is larger than maxBytes, nothing is stored.
+     * @throws FileAlreadyExistsException If there already is an object under the key, it is left as it is.
+     */
+    public long writeObject(String key, InputStream in, long maxBytes) throws IOException {
+        return write(key, in, maxBytes, false);
+    }
+
+    private long write(String key, InputStream in, long maxBytes, boolean replace) throws IOException {
+
+        Path target = resolve(key);
+
+        Files.createDirectories(target.getParent());
+
+        if (!replace && Files.exists(target)) {
+            throw new FileAlreadyExistsException(key);
+        }
+
+        Path temp = Files.createTempFile(target.getParent(), "object_", ".part");
+
+        try {
+
+            long size;
+
+            try (var out = Files.newOutputStream(temp)) {
+
+                // One byte more than allowed is enough to know the object is too large.
+                size = in.transferTo(new LimitedOutputStream(out, maxBytes));
+            }
+
+            if (replace) {
+
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+            } else {
+
+                // An atomic move replaces an existing file on most systems, creating a link fails instead, also when two uploads race.
+                Files.createLink(target, temp);
+                Files.delete(temp);
+            }
+
+            return size;
+
+        } catch (IOException | RuntimeException e) {
+
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+    }
+
+    @Override
+    public Optional<StoredObject> headObject(String key) throws IOException {
+
+        Path file = resolve(key);
+
+        if (!Files.isRegularFile(file)) {
+            return Optional.empty();
+        }
+
+        String contentType = MediaTypeFactory.getMediaType(key).orElse(MediaType.APPLICATION_OCTET_STREAM).toString();
+
+        return Optional.of(new StoredObject(key, Files.size(file), contentType));
+    }
+
+    @Override
+    public byte[] readHead(String key, int maxBytes) throws IOException {
+
+        try (InputStream in = Files.newInputStream(resolve(key))) {
+            return in.readNBytes(maxBytes);
+        }
+    }
+
+    @Override
+    public void deleteObject(String key) throws IOException {
+        Files.deleteIfExists(resolve(key));
+    }
+
+    @Override
+    public PresignedUpload presignUpload(String key, String contentType, Duration ttl) {
+
+        Instant expiresAt = Instant.now().plus(ttl);
+        long expires = expiresAt.getEpochSecond();
+
+        String url = backendBaseUrl + UPLOAD_PATH + key
+                + "?expires=" + expires
+                + "&signature=" + URLEncoder.encode(sign(key, contentType, expires), StandardCharsets.UTF_8);
+
+        return new PresignedUpload(key, url, "PUT", contentType, Instant.ofEpochSecond(expires));
+    }
+
+    /**
+     * @param key The key from the upload URL.
+     * @param contentType The Content-Type the client sent.
+     * @param expires The expiry from the upload URL, in epoch seconds.
+     * @param signature The signature from the upload URL.
+     * @return If the upload URL was created by presignUpload for this key and type and has not expired.
+     */
+    public boolean isValidUpload(String key, String contentType, long expires, String signature) {
+
+        if (signature == null || contentType == null || Instant.now().getEpochSecond() > expires) {
+            return false;
+        }
+
+        // Constant time, so the signature can't be guessed byte by byte.
+        return MessageDigest.isEqual(sign(key, contentType, expires).getBytes(StandardCharsets.UTF_8),
+                signature.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public String publicUrl(String key) {
+        return backendBaseUrl + "/media/" + key;
+    }
+
+    private String sign(String key, String contentType, long expires) {
+
+        try {
+
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(signingKey);
+
+            byte[] signature = mac.doFinal((key + "\n" + contentType + "\n" + expires).getBytes(StandardCharsets.UTF_8));
+
+            return HexFormat.of().formatHex(signature);
+
+        } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+            // Every JVM is required to support HmacSHA256.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException If the key points outside the root directory.
+     */
+    private Path resolve(String key) {
+
+        Path file = root.resolve(key).normalize();
+
+        if (!file.startsWith(root) || file.equals(root)) {
+            throw new IllegalArgumentException("Invalid object key: " + key);
+        }
+
+        return file;
+    }
+
+}
@@ -0,0 +1,88 @@
+package com.cdcrane.social_konnect_backend.config.file_handling.object_storage;
+
+import com.cdcrane.social_konnect_backend.config.exceptions.ActionNotPermittedException;
+import com.cdcrane.social_konnect_backend.config.exceptions.ObjectTooLargeException;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileAlreadyExistsException;
+
+/**
+ * Receives presigned uploads for FileSystemObjectStorageClient, the way S3 would for S3ObjectStorageClient.
+ * Public, the signature in the URL is the authorization.
+ */
+@RestController
+@RequestMapping("/api/media/objects")
+@ConditionalOnProperty(name = "app.media.object-storage.provider", havingValue = "filesystem", matchIfMissing = true)
+public class FileSystemObjectUploadController {
+
+    private final FileSystemObjectStorageClient storageClient;
+
+    @Value("${app.media.object-storage.max-upload-size:10MB}")
+    private DataSize maxUploadSize;
+
+    public FileSystemObjectUploadController(FileSystemObjectStorageClient storageClient) {
+        this.storageClient = storageClient;
+    }
+
+    @PutMapping("/**")
+    public ResponseEntity<Void> uploadObject(HttpServletRequest request,
+                                             @RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
+                                             @RequestParam long expires,
+                                             @RequestParam String signature) throws IOException {
+
+        String path = (String) request.getAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE);
+        String key = path.substring(FileSystemObjectStorageClient.UPLOAD_PATH.length());
+
+        if (!storageClient.isValidUpload(key, mimeTypeOf(contentType), expires, signature)) {
+            throw new ActionNotPermittedException("Upload URL is invalid or has expired.");
+        }
+
+        if (request.getContentLengthLong() > maxUploadSize.toBytes()) {
+            throw new ObjectTooLargeException("Upload is larger than the limit of " + maxUploadSize + ".");
+        }
+
+        try (InputStream in = request.getInputStream()) {
+
+            storageClient.writeObject(key, in, maxUploadSize.toBytes());
+
+        } catch (FileAlreadyExistsException e) {
+
+            throw new ActionNotPermittedException("A file was already uploaded to this URL.");
+        }
+
+        return ResponseEntity.ok().build();
+    }
+
+    /**
+     * The type without parameters, the container adds a charset to the header once the request encoding is set.
+     */
+    private static String mimeTypeOf(String contentType) {
+
+        try {
+
+            MediaType mediaType = MediaType.parseMediaType(contentType);
+
+            return mediaType.getType() + "/" + mediaType.getSubtype();
+
+        } catch (InvalidMediaTypeException e) {
+
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,43 @@
+package com.cdcrane.social_konnect_backend.config.file_handling.object_storage;
+
+import com.cdcrane.social_konnect_backend.config.exceptions.ObjectTooLargeException;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Fails once more than a set number of bytes is written, so an upload of unknown size can be cut off early.
+ */
+class LimitedOutputStream extends FilterOutputStream {
+
+    private final long maxBytes;
+    private long written;
+
+    LimitedOutputStream(OutputStream out, long maxBytes) {
+        super(out);
+        this.maxBytes = maxBytes;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        count(1);
+        out.write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        count(len);
+        out.write(b, off, len);
+    }
+
+    private void count(int bytes) {
+
+        written += bytes;
+
+        if (written > maxBytes) {
+            throw new ObjectTooLargeException("Object is larger than the limit of " + maxBytes + " bytes.");
+        }
+    }
+
+}
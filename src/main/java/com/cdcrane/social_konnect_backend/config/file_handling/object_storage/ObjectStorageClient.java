@@ -0,0 +1,53 @@
+package com.cdcrane.social_konnect_backend.config.file_handling.object_storage;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * A bucket of objects addressed by key, shared by every backend instance.
+ * Keys use "/" as separator and never start with one, e.g. "media/3f2a....png".
+ */
+public interface ObjectStorageClient {
+
+    /**
+     * Upload a file, streamed from disk. Large files are sent in parts where the storage supports it.
+     * @param key The key to store the object under, an existing object is replaced.
+     * @param file The file to upload.
+     * @param contentType The MIME type served with the object.
+     */
+    void putObject(String key, Path file, String contentType) throws IOException;
+
+    /**
+     * @param key The key of the object.
+     * @return The size and type of the object, empty if it doesn't exist.
+     */
+    Optional<StoredObject> headObject(String key) throws IOException;
+
+    /**
+     * Read the start of an object, e.g. to detect its real type without downloading all of it.
+     * @param key The key of the object.
+     * @param maxBytes The number of bytes to read at most.
+     * @return The first bytes of the object.
+     */
+    byte[] readHead(String key, int maxBytes) throws IOException;
+
+    void deleteObject(String key) throws IOException;
+
+    /**
+     * Create a URL a client can upload an object to directly, so the bytes never pass through the backend.
+     * @param key The key the object will be stored under.
+     * @param contentType The Content-Type the client must send, it is part of the signature.
+     * @param ttl How long the URL can be used.
+     * @return The URL and how to use it.
+     */
+    PresignedUpload presignUpload(String key, String contentType, Duration ttl);
+
+    /**
+     * @param key The key of the object.
+     * @return The URL the object is publicly served under.
+     */
+    String publicUrl(String key);
+
+}
@@ -0,0 +1,16 @@
+package com.cdcrane.social_konnect_backend.config.file_handling.object_storage;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.time.Instant;
+
+/**
+ * Where and how a client uploads a file directly to object storage.
+ * The client sends a PUT to upload_url with the file as body and exactly this Content-Type, then passes the key when creating the post.
+ */
+public record PresignedUpload(@JsonProperty("key") String key,
+                              @JsonProperty("upload_url") String uploadUrl,
+                              @JsonProperty("method") String method,
+                              @JsonProperty("content_type") String contentType,
+                              @JsonProperty("expires_at") Instant expiresAt) {
+}
@@ -0,0 +1,170 @@
+package com.cdcrane.social_konnect_backend.config.file_handling.object_storage;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.S3AsyncClientBuilder;
+import software.amazon.awssdk.services.s3.S3Configuration;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.multipart.MultipartConfiguration;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+import software.amazon.awssdk.services.s3.presigner.model.PresignedPutObjectRequest;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Object storage on S3, or any S3 compatible service such as MinIO or R2 when an endpoint is set.
+ * Files above the multipart threshold are uploaded in parts read straight from disk, so an upload never sits in memory.
+ */
+@Component
+@ConditionalOnProperty(name = "app.media.object-storage.provider", havingValue = "s3")
+public class S3ObjectStorageClient implements ObjectStorageClient {
+
+    // Keys never change content, so whatever serves the bucket may cache objects forever.
+    private static final String CACHE_FOREVER = "public, max-age=31536000, immutable";
+
+    private final S3AsyncClient s3;
+    private final S3Presigner presigner;
+    private final String bucket;
+    private final String publicBaseUrl;
+
+    public S3ObjectStorageClient(@Value("${app.media.object-storage.s3.bucket}") String bucket,
+                                 @Value("${app.media.object-storage.s3.region:us-east-1}") String region,
+                                 @Value("${app.media.object-storage.s3.endpoint:}") String endpoint,
+                                 @Value("${app.media.object-storage.s3.access-key:}") String accessKey,
+                                 @Value("${app.media.object-storage.s3.secret-key:}") String secretKey,
+                                 @Value("${app.media.object-storage.s3.path-style-access:false}") boolean pathStyleAccess,
+                                 @Value("${app.media.object-storage.s3.public-base-url}") String publicBaseUrl,
+                                 @Value("${app.media.object-storage.s3.multipart-threshold:16MB}") DataSize multipartThreshold,
+                                 @Value("${app.media.object-storage.s3.part-size:8MB}") DataSize partSize) {
+
+        this.bucket = bucket;
+        this.publicBaseUrl = publicBaseUrl.endsWith("/") ? publicBaseUrl.substring(0, publicBaseUrl.length() - 1) : publicBaseUrl;
+
+        // Without keys the usual AWS sources are used, e.g. environment variables or an instance role.
+        AwsCredentialsProvider credentials = accessKey.isBlank()
+                ? DefaultCredentialsProvider.create()
+                : StaticCredentialsProvider.create(AwsBasicCredentials.create(accessKey, secretKey));
+
+        S3AsyncClientBuilder clientBuilder = S3AsyncClient.builder()
+                .region(Region.of(region))
+                .credentialsProvider(credentials)
+                .forcePathStyle(pathStyleAccess)
+                .multipartEnabled(true)
+                .multipartConfiguration(MultipartConfiguration.builder()
+                        .thresholdInBytes(multipartThreshold.toBytes())
+                        .minimumPartSizeInBytes(partSize.toBytes())
+                        .build());
+
+        S3Presigner.Builder presignerBuilder = S3Presigner.builder()
+                .region(Region.of(region))
+                .credentialsProvider(credentials)
+                .serviceConfiguration(S3Configuration.builder().pathStyleAccessEnabled(pathStyleAccess).build());
+
+        if (!endpoint.isBlank()) {
+            clientBuilder.endpointOverride(URI.create(endpoint));
+            presignerBuilder.endpointOverride(URI.create(endpoint));
+        }
+
+        this.s3 = clientBuilder.build();
+        this.presigner = presignerBuilder.build();
+    }
+
+    @PreDestroy
+    void close() {
+        presigner.close();
+        s3.close();
+    }
+
+    @Override
+    public void putObject(String key, Path file, String contentType) throws IOException {
+
+        join(() -> s3.putObject(r -> r.bucket(bucket).key(key).contentType(contentType).cacheControl(CACHE_FOREVER),
+                AsyncRequestBody.fromFile(file)).join());
+    }
+
+    @Override
+    public Optional<StoredObject> headObject(String key) throws IOException {
+
+        try {
+
+            HeadObjectResponse head = join(() -> s3.headObject(r -> r.bucket(bucket).key(key)).join());
+
+            return Optional.of(new StoredObject(key, head.contentLength(), head.contentType()));
+
+        } catch (IOException e) {
+
+            if (e.getCause() instanceof NoSuchKeyException
+                    || (e.getCause() instanceof S3Exception s3Exception && s3Exception.statusCode() == 404)) {
+                return Optional.empty();
+            }
+
+            throw e;
+        }
+    }
+
+    @Override
+    public byte[] readHead(String key, int maxBytes) throws IOException {
+
+        return join(() -> s3.getObject(r -> r.bucket(bucket).key(key).range("bytes=0-" + (maxBytes - 1)),
+                AsyncResponseTransformer.toBytes()).join().asByteArray());
+    }
+
+    @Override
+    public void deleteObject(String key) throws IOException {
+
+        join(() -> s3.deleteObject(r -> r.bucket(bucket).key(key)).join());
+    }
+
+    @Override
+    public PresignedUpload presignUpload(String key, String contentType, Duration ttl) {
+
+        PresignedPutObjectRequest presigned = presigner.presignPutObject(r -> r
+                .signatureDuration(ttl)
+                .putObjectRequest(o -> o.bucket(bucket).key(key).contentType(contentType).cacheControl(CACHE_FOREVER)));
+
+        return new PresignedUpload(key, presigned.url().toString(), "PUT", contentType, presigned.expiration());
+    }
+
+    @Override
+    public String publicUrl(String key) {
+        return publicBaseUrl + "/" + key;
+    }
+
+    /**
+     * Run a blocking call on the async client, turning its failures into IOExceptions with the S3 error as cause.
+     */
+    private static <T> T join(CallSupplier<T> call) throws IOException {
+
+        try {
+            return call.get();
+        } catch (CompletionException e) {
+            throw new IOException("Object storage request failed: " + e.getCause().getMessage(), e.getCause());
+        } catch (S3Exception e) {
+            throw new IOException("Object storage request failed: " + e.getMessage(), e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface CallSupplier<T> {
+        T get();
+    }
+
+}
@@ -0,0 +1,4 @@
+package com.cdcrane.social_konnect_backend.config.file_handling.object_storage;
+
+public record StoredObject(String key, long size, String contentType) {
+}
@@ -0,0 +1,82 @@
+package com.cdcrane.social_konnect_backend.config.filter;
+
+import com.cdcrane.social_konnect_backend.config.filter.rate_limit.ClientIpResolver;
+import com.cdcrane.social_konnect_backend.config.filter.rate_limit.RateLimitBucketStore;
+import com.cdcrane.social_konnect_backend.config.filter.rate_limit.RateLimitPolicy;
+import com.cdcrane.social_konnect_backend.config.filter.rate_limit.RateLimitPolicyRegistry;
+import io.github.bucket4j.ConsumptionProbe;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import jakarta.servlet.Filter;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+
+/**
+ * Limits all requests of a client IP with RateLimitPolicyRegistry.CLIENT_IP, before the JWT filter.
+ * Requests with a missing or bad token are rejected by the JWT filter and never reach RateLimiterFilter,
+ * so without this they could be sent as fast as the server answers them.
+ */
+@Component
+@Slf4j
+public class ClientIpRateLimiterFilter implements Filter {
+
+    private static final RateLimitPolicy POLICY = RateLimitPolicyRegistry.CLIENT_IP;
+
+    private final RateLimitBucketStore bucketStore;
+    private final ClientIpResolver clientIpResolver;
+
+    private final Counter rejections;
+
+    public ClientIpRateLimiterFilter(RateLimitBucketStore bucketStore, ClientIpResolver clientIpResolver, MeterRegistry meterRegistry) {
+        this.bucketStore = bucketStore;
+        this.clientIpResolver = clientIpResolver;
+        this.rejections = Counter.builder("ratelimit.rejected")
+                .description("Requests rejected by the rate limiter")
+                .tag("policy", POLICY.name())
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+
+        HttpServletRequest httpRequest = (HttpServletRequest) request;
+
+        // Static files, same as RateLimiterFilter.
+        if (httpRequest.getRequestURI().startsWith("/media/")) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        String client = "ip:" + clientIpResolver.resolve(httpRequest);
+
+        ConsumptionProbe probe;
+
+        try {
+
+            probe = bucketStore.resolve(POLICY.name() + ":" + client, POLICY::limits).tryConsumeAndReturnRemaining(1);
+
+        } catch (RuntimeException e) {
+
+            log.warn("Rate limit check failed for {}, letting the request through: {}", client, e.toString());
+            chain.doFilter(request, response);
+            return;
+        }
+
+        if (probe.isConsumed()) {
+            chain.doFilter(request, response);
+        } else {
+            rejections.increment();
+            RateLimiterFilter.reject((HttpServletResponse) response, probe);
+        }
+    }
+}
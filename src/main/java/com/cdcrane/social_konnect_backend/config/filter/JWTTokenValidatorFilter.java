@@ -1,7 +1,9 @@
 package com.cdcrane.social_konnect_backend.config.filter;
 
+import com.cdcrane.social_konnect_backend.authentication.AuthenticatedUser;
 import com.cdcrane.social_konnect_backend.authentication.JWTUtil;
 import com.cdcrane.social_konnect_backend.config.SecurityConfig;
+import com.cdcrane.social_konnect_backend.users.UserSummaryCache;
 import io.jsonwebtoken.Claims;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
@@ -21,13 +23,16 @@ import java.io.IOException;
 public class JWTTokenValidatorFilter extends OncePerRequestFilter {
 
     private final JWTUtil jwtUtil;
+    private final UserSummaryCache userSummaryCache;
 
-    public JWTTokenValidatorFilter(JWTUtil jwtUtil) {
+    public JWTTokenValidatorFilter(JWTUtil jwtUtil, UserSummaryCache userSummaryCache) {
         this.jwtUtil = jwtUtil;
+        this.userSummaryCache = userSummaryCache;
     }
 
     /**
      * Filter to extract JWT from the Authorization header and validate it using JWTUtil.
+     * The user's identity is resolved once here and stored as the principal, see SecurityUtils.getCurrentUser().
      * @param request The request attempting to be authorized.
      * @param response The response to be returned.
      * @param filterChain Parent filter chain.
@@ -48,8 +53,12 @@ public class JWTTokenValidatorFilter extends OncePerRequestFilter {
             String username = claims.get("username", String.class);
             String authorities = claims.get("authorities", String.class);
 
+            // Cached for a short time, so most requests don't hit the database for this.
+            AuthenticatedUser user = userSummaryCache.getByUsername(username)
+                    .orElseThrow(() -> new BadCredentialsException("The user of this token no longer exists."));
+
             // This constructor automatically sets authenticated to true, so no need to do it manually.
-            Authentication auth = new UsernamePasswordAuthenticationToken(username, null, AuthorityUtils.commaSeparatedStringToAuthorityList(authorities));
+            Authentication auth = new UsernamePasswordAuthenticationToken(user, null, AuthorityUtils.commaSeparatedStringToAuthorityList(authorities));
 
             SecurityContextHolder.getContext().setAuthentication(auth);
 
@@ -79,7 +88,8 @@ public class JWTTokenValidatorFilter extends OncePerRequestFilter {
             if (request.getRequestURI().startsWith("/media/") ||
                     request.getRequestURI().startsWith("/api/auth/exists/") ||
                     request.getRequestURI().startsWith("/api/auth/resetpassword/") ||
-                    request.getRequestURI().startsWith("/api/auth/send-code-again/")) {
+                    request.getRequestURI().startsWith("/api/auth/send-code-again/") ||
+                    request.getRequestURI().startsWith("/api/media/objects/")) { // Presigned uploads, the signature is the authorization.
                 return true;
             }
         }
@@ -1,8 +1,19 @@
 package com.cdcrane.social_konnect_backend.config.filter;
 
-import com.github.benmanes.caffeine.cache.Cache;
-import com.github.benmanes.caffeine.cache.Caffeine;
+import com.cdcrane.social_konnect_backend.authentication.AuthenticatedUser;
+import com.cdcrane.social_konnect_backend.config.filter.rate_limit.ClientIpResolver;
+import com.cdcrane.social_konnect_backend.config.filter.rate_limit.RateLimitBucketStore;
+import com.cdcrane.social_konnect_backend.config.filter.rate_limit.RateLimitPolicy;
+import com.cdcrane.social_konnect_backend.config.filter.rate_limit.RateLimitPolicyRegistry;
+import com.cdcrane.social_konnect_backend.config.filter.rate_limit.RateLimitRule;
 import io.github.bucket4j.Bucket;
+import io.github.bucket4j.ConsumptionProbe;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
 
 import jakarta.servlet.Filter;
@@ -14,31 +25,42 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 
 import java.io.IOException;
-import java.time.Duration;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 /**
- * This rate limiter filter works perfectly fine when the application is receiving requests directly from the client.
- * If there is a reverse proxy between the client and server, you must get the IP from the X-Forwarded-For header instead.
+ * Limits requests per client with the policies of RateLimitPolicyRegistry, each route costing a number of tokens.
+ * Runs after the JWT filter, so authenticated requests are limited per user and anonymous ones per client IP.
+ * Requests the JWT filter rejects never get here, ClientIpRateLimiterFilter limits those before it.
+ * The client IP is taken from X-Forwarded-For when the request comes through a trusted proxy (app.rate-limit.trusted-proxies),
+ * and the buckets are kept in the store chosen by app.rate-limit.store, either in memory or shared by all instances.
  */
 @Component
+@Slf4j
 public class RateLimiterFilter implements Filter {
 
-    // Caffeine cache with eviction of inactive IPs
-    private final Cache<String, Bucket> cache = Caffeine.newBuilder()
-            .expireAfterAccess(10, TimeUnit.MINUTES) // auto-evict if no requests for 10 minutes
-            .build();
+    private final RateLimitBucketStore bucketStore;
+    private final ClientIpResolver clientIpResolver;
+    private final RateLimitPolicyRegistry policyRegistry;
 
-    private Bucket createNewBucket() {
-        return Bucket.builder()
-                .addLimit(limit -> limit.capacity(20).refillGreedy(5, Duration.ofSeconds(1)))    // short-term
-                .addLimit(limit -> limit.capacity(300).refillGreedy(300, Duration.ofMinutes(5))) // long-term
-                .build();
+    private final Map<String, Counter> rejectionsByPolicy;
+
+    public RateLimiterFilter(RateLimitBucketStore bucketStore, ClientIpResolver clientIpResolver,
+                             RateLimitPolicyRegistry policyRegistry, MeterRegistry meterRegistry) {
+        this.bucketStore = bucketStore;
+        this.clientIpResolver = clientIpResolver;
+        this.policyRegistry = policyRegistry;
+        this.rejectionsByPolicy = policyRegistry.policies().stream()
+                .collect(Collectors.toMap(RateLimitPolicy::name, policy -> Counter.builder("ratelimit.rejected")
+                        .description("Requests rejected by the rate limiter")
+                        .tag("policy", policy.name())
+                        .register(meterRegistry), (a, b) -> a));
     }
 
-    // Lookup or create bucket per client IP
-    private Bucket resolveBucket(String ip) {
-        return cache.get(ip, k -> createNewBucket());
+    // Lookup or create the bucket of a client for a policy.
+    private Bucket resolveBucket(RateLimitPolicy policy, String client) {
+        return bucketStore.resolve(policy.name() + ":" + client, policy::limits);
     }
 
     @Override
@@ -55,17 +77,52 @@ public class RateLimiterFilter implements Filter {
             return;
         }
 
-        // Get the client IP and check if there is already a bucket for them in the cache.
-        String clientIp = ((HttpServletRequest) request).getRemoteAddr();
-        Bucket bucket = resolveBucket(clientIp);
+        RateLimitRule rule = policyRegistry.ruleFor(httpRequest.getMethod(), path);
+        String client = clientOf(httpRequest);
+
+        ConsumptionProbe probe;
+
+        try {
+
+            probe = resolveBucket(rule.policy(), client).tryConsumeAndReturnRemaining(rule.cost());
+
+        } catch (RuntimeException e) {
+
+            // A shared store that can't be reached shouldn't take the whole API down with it.
+            log.warn("Rate limit check failed for {}, letting the request through: {}", client, e.toString());
+            chain.doFilter(request, response);
+            return;
+        }
 
         // Check if they are currently rate-limited.
-        if (bucket.tryConsume(1)) {
+        if (probe.isConsumed()) {
             chain.doFilter(request, response);
         } else {
-            HttpServletResponse httpResp = (HttpServletResponse) response;
-            httpResp.setStatus(429);
-            httpResp.getWriter().write("Too many requests from your IP. Please slow down.");
+            rejectionsByPolicy.get(rule.policy().name()).increment();
+            reject((HttpServletResponse) response, probe);
         }
     }
+
+    /**
+     * Answer with 429 and when the client can try again.
+     */
+    static void reject(HttpServletResponse response, ConsumptionProbe probe) throws IOException {
+        response.setStatus(429);
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(TimeUnit.NANOSECONDS.toSeconds(probe.getNanosToWaitForRefill()) + 1));
+        response.getWriter().write("Too many requests. Please slow down.");
+    }
+
+    /**
+     * @return "user:<id>" for requests authenticated by the JWT filter, otherwise "ip:<client ip>".
+     */
+    private String clientOf(HttpServletRequest request) {
+
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+
+        if (auth != null && auth.getPrincipal() instanceof AuthenticatedUser user) {
+            return "user:" + user.id();
+        }
+
+        return "ip:" + clientIpResolver.resolve(request);
+    }
 }
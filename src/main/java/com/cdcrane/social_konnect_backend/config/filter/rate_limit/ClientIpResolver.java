@@ -0,0 +1,93 @@
+package com.cdcrane.social_konnect_backend.config.filter.rate_limit;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.web.util.matcher.IpAddressMatcher;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Finds the IP address of the client that sent a request.
+ * Behind a load balancer or reverse proxy, getRemoteAddr() is the address of the proxy, and the client is in X-Forwarded-For.
+ * X-Forwarded-For is only used when the request comes from a trusted proxy, since anyone can send the header.
+ */
+@Component
+public class ClientIpResolver {
+
+    private static final String FORWARDED_FOR_HEADER = "X-Forwarded-For";
+
+    private final List<IpAddressMatcher> trustedProxies;
+
+    /**
+     * @param trustedProxies Addresses or CIDR ranges of the proxies in front of the backend, e.g. 10.0.0.0/8.
+     */
+    public ClientIpResolver(@Value("${app.rate-limit.trusted-proxies:}") List<String> trustedProxies) {
+        this.trustedProxies = trustedProxies.stream()
+                .map(String::trim)
+                .filter(proxy -> !proxy.isEmpty())
+                .map(IpAddressMatcher::new)
+                .toList();
+    }
+
+    /**
+     * Each proxy appends the address it received the request from to X-Forwarded-For, so the header is read from the right,
+     * skipping our own proxies. The first address that isn't one of them is the client, anything left of it could be made up.
+     * @param request The incoming request.
+     * @return The IP address of the client.
+     */
+    public String resolve(HttpServletRequest request) {
+
+        String remoteAddr = request.getRemoteAddr();
+
+        if (!isTrusted(remoteAddr)) {
+            return remoteAddr;
+        }
+
+        String forwardedFor = request.getHeader(FORWARDED_FOR_HEADER);
+
+        if (forwardedFor == null || forwardedFor.isBlank()) {
+            return remoteAddr;
+        }
+
+        String[] hops = forwardedFor.split(",");
+        String client = remoteAddr;
+
+        for (int i = hops.length - 1; i >= 0; i--) {
+
+            String hop = hops[i].trim();
+
+            if (hop.isEmpty()) {
+                continue;
+            }
+
+            client = hop;
+
+            if (!isTrusted(hop)) {
+                break;
+            }
+        }
+
+        return client;
+    }
+
+    private boolean isTrusted(String address) {
+
+        for (IpAddressMatcher proxy : trustedProxies) {
+
+            try {
+
+                if (proxy.matches(address)) {
+                    return true;
+                }
+
+            } catch (IllegalArgumentException e) {
+                // Not an IP address (the matcher refuses host names), so not one of our proxies.
+                return false;
+            }
+        }
+
+        return false;
+    }
+
+}
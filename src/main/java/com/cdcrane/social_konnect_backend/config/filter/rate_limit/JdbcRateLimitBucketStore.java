@@ -0,0 +1,128 @@
+package com.cdcrane.social_konnect_backend.config.filter.rate_limit;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.github.bucket4j.Bucket;
+import io.github.bucket4j.BucketConfiguration;
+import io.github.bucket4j.distributed.jdbc.BucketTableSettings;
+import io.github.bucket4j.distributed.jdbc.PrimaryKeyMapper;
+import io.github.bucket4j.distributed.jdbc.SQLProxyConfiguration;
+import io.github.bucket4j.distributed.proxy.ProxyManager;
+import io.github.bucket4j.distributed.proxy.optimization.DelayParameters;
+import io.github.bucket4j.distributed.proxy.optimization.Optimization;
+import io.github.bucket4j.distributed.proxy.optimization.Optimizations;
+import io.github.bucket4j.postgresql.PostgreSQLSelectForUpdateBasedProxyManager;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Keeps buckets in a PostgreSQL table, so the limits hold across all instances of the backend.
+ * Each instance takes tokens from its local copy of a bucket and only writes them to the table once it has taken
+ * max-unsynchronized-tokens, or max-unsynchronized-timeout has passed, so most requests don't touch the database.
+ * A client can go over a limit by at most max-unsynchronized-tokens per instance before the instances catch up.
+ */
+@Component
+@ConditionalOnProperty(name = "app.rate-limit.store", havingValue = "jdbc")
+@Slf4j
+public class JdbcRateLimitBucketStore implements RateLimitBucketStore {
+
+    private static final String TABLE_NAME = "rate_limit_buckets";
+
+    // bucket4j only reads and writes id and state. updated_at is kept by a trigger so idle buckets can be purged.
+    private static final String CREATE_TABLE_SQL = """
+            CREATE TABLE IF NOT EXISTS rate_limit_buckets (
+                id VARCHAR(128) PRIMARY KEY,
+                state BYTEA,
+                updated_at TIMESTAMPTZ NOT NULL DEFAULT now()
+            )""";
+
+    private static final String CREATE_TOUCH_FUNCTION_SQL = """
+            CREATE OR REPLACE FUNCTION rate_limit_buckets_touch() RETURNS trigger AS $$
+            BEGIN
+                NEW.updated_at = now();
+                RETURN NEW;
+            END
+            $$ LANGUAGE plpgsql""";
+
+    private static final String CREATE_TOUCH_TRIGGER_SQL = """
+            CREATE OR REPLACE TRIGGER rate_limit_buckets_touch
+            BEFORE UPDATE ON rate_limit_buckets
+            FOR EACH ROW EXECUTE FUNCTION rate_limit_buckets_touch()""";
+
+    // Instances starting at the same time would otherwise race each other creating the function and trigger.
+    private static final String SCHEMA_LOCK_SQL = "SELECT pg_advisory_xact_lock(hashtext('rate_limit_buckets'))";
+
+    private static final String PURGE_SQL = "DELETE FROM rate_limit_buckets WHERE updated_at < now() - ? * interval '1 second'";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ProxyManager<String> proxyManager;
+    private final Optimization optimization;
+
+    @Value("${app.rate-limit.jdbc.idle-ttl:PT30M}")
+    private Duration idleTtl;
+
+    // The proxies hold the tokens taken locally since the last write, so the same proxy has to be reused for a client.
+    private final Cache<String, Bucket> proxies = Caffeine.newBuilder()
+            .expireAfterAccess(10, TimeUnit.MINUTES)
+            .build();
+
+    public JdbcRateLimitBucketStore(DataSource dataSource, JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                                    @Value("${app.rate-limit.jdbc.max-unsynchronized-tokens:5}") long maxUnsynchronizedTokens,
+                                    @Value("${app.rate-limit.jdbc.max-unsynchronized-timeout:PT1S}") Duration maxUnsynchronizedTimeout) {
+
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+
+        SQLProxyConfiguration<String> configuration = SQLProxyConfiguration.builder()
+                .withTableSettings(BucketTableSettings.customSettings(TABLE_NAME, "id", "state"))
+                .withPrimaryKeyMapper(PrimaryKeyMapper.STRING)
+                .build(dataSource);
+
+        this.proxyManager = new PostgreSQLSelectForUpdateBasedProxyManager<>(configuration);
+        this.optimization = Optimizations.delaying(new DelayParameters(maxUnsynchronizedTokens, maxUnsynchronizedTimeout));
+    }
+
+    @PostConstruct
+    void createTable() {
+
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.queryForList(SCHEMA_LOCK_SQL);
+            jdbcTemplate.execute(CREATE_TABLE_SQL);
+            jdbcTemplate.execute(CREATE_TOUCH_FUNCTION_SQL);
+            jdbcTemplate.execute(CREATE_TOUCH_TRIGGER_SQL);
+        });
+    }
+
+    @Override
+    public Bucket resolve(String key, Supplier<BucketConfiguration> configuration) {
+        return proxies.get(key, k -> proxyManager.builder()
+                .withOptimization(optimization)
+                .build(k, configuration));
+    }
+
+    /**
+     * Delete buckets nobody has used for a while. Every limit is refilled by then, so a new bucket is the same as the old one.
+     */
+    @Scheduled(fixedDelayString = "${app.rate-limit.jdbc.purge-interval-ms:600000}")
+    public void purgeIdleBuckets() {
+
+        int purged = jdbcTemplate.update(PURGE_SQL, idleTtl.toSeconds());
+
+        if (purged > 0) {
+            log.info("Purged {} idle rate limit buckets.", purged);
+        }
+    }
+
+}
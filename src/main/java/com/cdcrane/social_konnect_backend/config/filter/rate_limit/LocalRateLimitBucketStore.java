@@ -0,0 +1,42 @@
+package com.cdcrane.social_konnect_backend.config.filter.rate_limit;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.github.bucket4j.Bandwidth;
+import io.github.bucket4j.Bucket;
+import io.github.bucket4j.BucketConfiguration;
+import io.github.bucket4j.local.LocalBucketBuilder;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Keeps buckets in memory. Each instance of the backend enforces the limits on its own,
+ * so this is only correct when a single instance is running.
+ */
+@Component
+@ConditionalOnProperty(name = "app.rate-limit.store", havingValue = "local", matchIfMissing = true)
+public class LocalRateLimitBucketStore implements RateLimitBucketStore {
+
+    // Caffeine cache with eviction of inactive clients
+    private final Cache<String, Bucket> cache = Caffeine.newBuilder()
+            .expireAfterAccess(10, TimeUnit.MINUTES) // auto-evict if no requests for 10 minutes
+            .build();
+
+    @Override
+    public Bucket resolve(String key, Supplier<BucketConfiguration> configuration) {
+        return cache.get(key, k -> {
+
+            LocalBucketBuilder builder = Bucket.builder();
+
+            for (Bandwidth limit : configuration.get().getBandwidths()) {
+                builder.addLimit(limit);
+            }
+
+            return builder.build();
+        });
+    }
+
+}
@@ -0,0 +1,21 @@
+package com.cdcrane.social_konnect_backend.config.filter.rate_limit;
+
+import io.github.bucket4j.Bucket;
+import io.github.bucket4j.BucketConfiguration;
+
+import java.util.function.Supplier;
+
+/**
+ * Where the rate limit buckets of clients are kept.
+ */
+public interface RateLimitBucketStore {
+
+    /**
+     * Get the bucket for a key, creating it with the given configuration if there is none yet.
+     * @param key Identifies the client, e.g. "ip:203.0.113.7".
+     * @param configuration The limits of a new bucket, only called when the bucket doesn't exist yet.
+     * @return The bucket to take tokens from.
+     */
+    Bucket resolve(String key, Supplier<BucketConfiguration> configuration);
+
+}
@@ -0,0 +1,11 @@
+package com.cdcrane.social_konnect_backend.config.filter.rate_limit;
+
+import io.github.bucket4j.BucketConfiguration;
+
+/**
+ * A set of limits with its own bucket per client. Every route is charged to one policy, see RateLimitPolicyRegistry.
+ * @param name Used in the bucket keys and as the policy tag of the rejection counter.
+ * @param limits The limits of the bucket of each client.
+ */
+public record RateLimitPolicy(String name, BucketConfiguration limits) {
+}
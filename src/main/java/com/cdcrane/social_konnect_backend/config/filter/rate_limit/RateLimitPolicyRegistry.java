@@ -0,0 +1,88 @@
+package com.cdcrane.social_konnect_backend.config.filter.rate_limit;
+
+import io.github.bucket4j.BucketConfiguration;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.server.PathContainer;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * The rate limit policies and which routes are charged to them.
+ * Routes that cost the server more (bcrypt, emails, file uploads, feed generation) cost more tokens,
+ * so they can't be used to overload the server at the price of a cheap request.
+ */
+@Component
+public class RateLimitPolicyRegistry {
+
+    // Logins, registrations, password changes and resets. Hash passwords with bcrypt or send emails.
+    public static final RateLimitPolicy AUTH = new RateLimitPolicy("auth", BucketConfiguration.builder()
+            .addLimit(limit -> limit.capacity(20).refillGreedy(20, Duration.ofMinutes(1)))
+            .build());
+
+    // Requests that store files.
+    public static final RateLimitPolicy UPLOADS = new RateLimitPolicy("uploads", BucketConfiguration.builder()
+            .addLimit(limit -> limit.capacity(20).refillGreedy(20, Duration.ofMinutes(10)))
+            .build());
+
+    // Everything else.
+    public static final RateLimitPolicy API = new RateLimitPolicy("api", BucketConfiguration.builder()
+            .addLimit(limit -> limit.capacity(60).refillGreedy(20, Duration.ofSeconds(1)))      // short-term
+            .addLimit(limit -> limit.capacity(1200).refillGreedy(1200, Duration.ofMinutes(5))) // long-term
+            .build());
+
+    // Every request from a client IP, whatever the route. Checked before the JWT filter, so requests without a valid
+    // token are limited too, and loose enough for several users sharing an address.
+    public static final RateLimitPolicy CLIENT_IP = new RateLimitPolicy("client-ip", BucketConfiguration.builder()
+            .addLimit(limit -> limit.capacity(300).refillGreedy(600, Duration.ofMinutes(1)))
+            .build());
+
+    // First match wins, so more specific routes go first.
+    private final List<RateLimitRule> rules = List.of(
+            RateLimitRule.of(HttpMethod.POST, "/api/auth/login", AUTH, 2),
+            RateLimitRule.of(HttpMethod.POST, "/api/auth/register", AUTH, 5),
+            RateLimitRule.of(HttpMethod.POST, "/api/auth/verify", AUTH, 1),
+            RateLimitRule.of(HttpMethod.POST, "/api/auth/send-code-again/**", AUTH, 5),
+            RateLimitRule.of(HttpMethod.POST, "/api/auth/resetpassword/**", AUTH, 5),
+            RateLimitRule.of(HttpMethod.PUT, "/api/user/password", AUTH, 2),
+
+            RateLimitRule.of(HttpMethod.POST, "/api/post", UPLOADS, 5),
+            RateLimitRule.of(HttpMethod.PUT, "/api/user", UPLOADS, 5),
+            RateLimitRule.of(HttpMethod.POST, "/api/post/media/upload-url", UPLOADS, 1),
+            RateLimitRule.of(HttpMethod.PUT, "/api/media/objects/**", UPLOADS, 1),
+
+            RateLimitRule.of(HttpMethod.GET, "/api/feed/**", API, 3),
+            RateLimitRule.of(HttpMethod.GET, "/api/user/search/**", API, 3),
+            RateLimitRule.of(HttpMethod.GET, "/api/post", API, 2),
+            RateLimitRule.of(HttpMethod.GET, "/api/post/all-with-liked-check", API, 2),
+            RateLimitRule.of(HttpMethod.GET, "/**", API, 1),
+            RateLimitRule.of(null, "/**", API, 2)
+    );
+
+    /**
+     * @param method The HTTP method of the request.
+     * @param path The request path, without query string.
+     * @return The first rule matching the request, every request matches one.
+     */
+    public RateLimitRule ruleFor(String method, String path) {
+
+        PathContainer pathContainer = PathContainer.parsePath(path);
+
+        for (RateLimitRule rule : rules) {
+            if (rule.matches(method, pathContainer)) {
+                return rule;
+            }
+        }
+
+        throw new IllegalStateException("No rate limit rule for " + method + " " + path);
+    }
+
+    /**
+     * @return All policies, e.g. to register their metrics up front.
+     */
+    public List<RateLimitPolicy> policies() {
+        return List.of(AUTH, UPLOADS, API, CLIENT_IP);
+    }
+
+}
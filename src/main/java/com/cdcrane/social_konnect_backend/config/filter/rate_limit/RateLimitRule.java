@@ -0,0 +1,25 @@
+package com.cdcrane.social_konnect_backend.config.filter.rate_limit;
+
+import org.springframework.http.HttpMethod;
+import org.springframework.http.server.PathContainer;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+
+/**
+ * Charges requests to matching routes a number of tokens from a policy.
+ * @param method The HTTP method to match, null for any.
+ * @param pattern The path pattern to match, e.g. /api/auth/resetpassword/**.
+ * @param policy The policy whose bucket the tokens are taken from.
+ * @param cost The number of tokens a request costs, higher for more expensive routes.
+ */
+public record RateLimitRule(HttpMethod method, PathPattern pattern, RateLimitPolicy policy, long cost) {
+
+    public static RateLimitRule of(HttpMethod method, String pattern, RateLimitPolicy policy, long cost) {
+        return new RateLimitRule(method, PathPatternParser.defaultInstance.parse(pattern), policy, cost);
+    }
+
+    public boolean matches(String method, PathContainer path) {
+        return (this.method == null || this.method.matches(method)) && pattern.matches(path);
+    }
+
+}
@@ -0,0 +1,61 @@
+package com.cdcrane.social_konnect_backend.config.pagination;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * A page of results for cursor (keyset) pagination. Unlike Page there is no total count,
+ * so fetching a page deep in a list costs the same as fetching the first one.
+ * @param content The items on this page.
+ * @param nextCursor Pass this back to get the next page, null if there is none.
+ * @param hasNext If there are more items after this page.
+ */
+public record CursorPage<T>(List<T> content, String nextCursor, boolean hasNext) {
+
+    public static final int MAX_PAGE_SIZE = 50;
+
+    /**
+     * Build a page from rows that were fetched with a limit of size + 1.
+     * The extra row is only used to know if there is a next page, and is not returned.
+     * @param rows The rows fetched, at most size + 1.
+     * @param size The requested page size.
+     * @param cursorOf Creates the cursor pointing at a row.
+     * @return The page.
+     */
+    public static <T> CursorPage<T> fromRows(List<T> rows, int size, Function<T, PostCursor> cursorOf) {
+
+        boolean hasNext = rows.size() > size;
+        List<T> content = hasNext ? rows.subList(0, size) : rows;
+
+        String nextCursor = hasNext ? cursorOf.apply(content.getLast()).encode() : null;
+
+        return new CursorPage<>(content, nextCursor, hasNext);
+    }
+
+    public <R> CursorPage<R> map(Function<? super T, ? extends R> mapper) {
+        return new CursorPage<>(content.stream().<R>map(mapper).toList(), nextCursor, hasNext);
+    }
+
+    /**
+     * Replace the content of the page while keeping its cursor, e.g. when the items are loaded as a batch from keys.
+     * @param content The new content.
+     * @return The page with the new content.
+     */
+    public <R> CursorPage<R> withContent(List<R> content) {
+        return new CursorPage<>(content, nextCursor, hasNext);
+    }
+
+    public boolean isEmpty() {
+        return content.isEmpty();
+    }
+
+    /**
+     * Keep requested page sizes within sensible bounds.
+     * @param size The size requested by the client.
+     * @return The size to use.
+     */
+    public static int clampSize(int size) {
+        return Math.clamp(size, 1, MAX_PAGE_SIZE);
+    }
+
+}
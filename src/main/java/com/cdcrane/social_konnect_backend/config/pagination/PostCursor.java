@@ -0,0 +1,74 @@
+package com.cdcrane.social_konnect_backend.config.pagination;
+
+import com.cdcrane.social_konnect_backend.config.exceptions.InvalidCursorException;
+import com.cdcrane.social_konnect_backend.posts.Post;
+import com.cdcrane.social_konnect_backend.posts.dto.PostRowDTO;
+
+import java.nio.ByteBuffer;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * Position in a newest-first list of posts, the (postedAt, postId) of the last post the client has seen.
+ * Sent to clients as an opaque base64url string, so the format can change without breaking them.
+ * @param postedAt When the last seen post was posted.
+ * @param postId The ID of the last seen post, breaks ties between posts with the same postedAt.
+ */
+public record PostCursor(Instant postedAt, UUID postId) {
+
+    // epoch seconds (8) + nanos (4) + UUID (16)
+    private static final int ENCODED_BYTES = 28;
+
+    public static PostCursor of(Post post) {
+        return new PostCursor(post.getPostedAt(), post.getId());
+    }
+
+    public static PostCursor of(PostRowDTO row) {
+        return new PostCursor(row.postedAt(), row.postId());
+    }
+
+    /**
+     * @return The cursor as an opaque URL safe string.
+     */
+    public String encode() {
+
+        ByteBuffer buffer = ByteBuffer.allocate(ENCODED_BYTES)
+                .putLong(postedAt.getEpochSecond())
+                .putInt(postedAt.getNano())
+                .putLong(postId.getMostSignificantBits())
+                .putLong(postId.getLeastSignificantBits());
+
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array());
+    }
+
+    /**
+     * Decode a cursor that was previously returned to the client.
+     * @param cursor The opaque cursor string.
+     * @return The decoded cursor.
+     * @throws InvalidCursorException If the cursor was not created by encode().
+     */
+    public static PostCursor decode(String cursor) {
+
+        try {
+
+            byte[] bytes = Base64.getUrlDecoder().decode(cursor);
+
+            if (bytes.length != ENCODED_BYTES) {
+                throw new InvalidCursorException("The provided cursor is not valid.");
+            }
+
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+
+            Instant postedAt = Instant.ofEpochSecond(buffer.getLong(), buffer.getInt());
+            UUID postId = new UUID(buffer.getLong(), buffer.getLong());
+
+            return new PostCursor(postedAt, postId);
+
+        } catch (IllegalArgumentException | DateTimeException e) {
+            throw new InvalidCursorException("The provided cursor is not valid.");
+        }
+    }
+
+}
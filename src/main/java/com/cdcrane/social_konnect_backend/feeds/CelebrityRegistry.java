@@ -0,0 +1,62 @@
+package com.cdcrane.social_konnect_backend.feeds;
+
+import com.cdcrane.social_konnect_backend.follows.FollowRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Set;
+
+/**
+ * Keeps track of "celebrity" users, those with more followers than the configured threshold.
+ * Posts from these users are not fanned out to their followers' feeds, they are pulled and merged in at read time instead.
+ */
+@Component
+@Slf4j
+public class CelebrityRegistry {
+
+    private final FollowRepository followRepository;
+
+    @Value("${app.feed.celebrity.follower-threshold:10000}")
+    private long followerThreshold;
+
+    // Replaced as a whole on every refresh, so readers never see a partially built set.
+    private volatile Set<Long> celebrityIds = Set.of();
+
+    public CelebrityRegistry(FollowRepository followRepository) {
+        this.followRepository = followRepository;
+    }
+
+    /**
+     * Reload the set of celebrity user IDs from the follows table.
+     */
+    @Scheduled(initialDelay = 0, fixedDelayString = "${app.feed.celebrity.refresh-interval-ms:300000}")
+    public void refresh() {
+
+        Set<Long> refreshed = Set.copyOf(followRepository.getIdsOfUsersWithAtLeastXFollowers(followerThreshold));
+
+        if (!refreshed.equals(celebrityIds)) {
+            log.info("Celebrity registry refreshed, {} users have at least {} followers.", refreshed.size(), followerThreshold);
+        }
+
+        celebrityIds = refreshed;
+    }
+
+    /**
+     * Check if a user's posts should be pulled at read time instead of pushed to feeds.
+     * @param userId The ID of the user.
+     * @return True if the user is a celebrity.
+     */
+    public boolean isCelebrity(long userId) {
+        return celebrityIds.contains(userId);
+    }
+
+    /**
+     * @return An immutable snapshot of the current celebrity user IDs.
+     */
+    public Set<Long> getCelebrityIds() {
+        return celebrityIds;
+    }
+
+}
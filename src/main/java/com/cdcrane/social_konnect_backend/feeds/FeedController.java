@@ -1,11 +1,11 @@
 package com.cdcrane.social_konnect_backend.feeds;
 
+import com.cdcrane.social_konnect_backend.config.pagination.CursorPage;
 import com.cdcrane.social_konnect_backend.posts.dto.PostDTOWithLiked;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.Pageable;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 @RestController
@@ -19,9 +19,11 @@ public class FeedController {
     }
 
     @GetMapping("/following")
-    public ResponseEntity<Page<PostDTOWithLiked>> getCurrentUserFollowingFeedMostRecent(Pageable pageable) {
+    public ResponseEntity<CursorPage<PostDTOWithLiked>> getCurrentUserFollowingFeedMostRecent(@RequestParam(required = false) String cursor,
+                                                                                             @RequestParam(defaultValue = "10") int size,
+                                                                                             @RequestParam(defaultValue = "false") boolean withMetadata) {
 
-        Page<PostDTOWithLiked> posts = feedUseCase.getCurrentUserFollowingFeedMostRecent(pageable);
+        CursorPage<PostDTOWithLiked> posts = feedUseCase.getCurrentUserFollowingFeedMostRecent(cursor, CursorPage.clampSize(size), withMetadata);
 
         return ResponseEntity.ok(posts);
 
@@ -0,0 +1,200 @@
+package com.cdcrane.social_konnect_backend.feeds;
+
+import com.cdcrane.social_konnect_backend.config.pagination.PostCursor;
+import com.cdcrane.social_konnect_backend.follows.FollowRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Writes and removes following feed rows in bulk, without creating a FollowingFeedItem entity per row.
+ * Followers are read in keyset chunks and each chunk is written with a single JDBC batch.
+ * Rows that are already in the feed are skipped, so writing the same post to a feed again changes nothing.
+ */
+@Component
+@Slf4j
+public class FeedFanOutEngine {
+
+    private static final String INSERT_FEED_ITEM_SQL =
+            "INSERT INTO following_feed_items (feed_owner_id, posted_at, post_id) VALUES (?, ?, ?) ON CONFLICT DO NOTHING";
+
+    // Postgres has no DELETE ... LIMIT, so each chunk is picked by a limited subquery on the owner's feed.
+    private static final String DELETE_POSTS_BY_USER_SQL = """
+            DELETE FROM following_feed_items WHERE (feed_owner_id, posted_at, post_id) IN (
+                SELECT f.feed_owner_id, f.posted_at, f.post_id FROM following_feed_items f JOIN posts p ON p.post_id = f.post_id
+                WHERE f.feed_owner_id = ? AND p.user_id = ? LIMIT ?)
+            """;
+
+    private final FollowRepository followRepository;
+    private final JdbcTemplate jdbcTemplate;
+
+    private final Counter rowsWritten;
+    private final Counter chunksWritten;
+    private final Counter rowsDeleted;
+    private final Timer chunkTimer;
+    private final Timer fanOutTimer;
+
+    @Value("${app.feed.fan-out.chunk-size:1000}")
+    private int chunkSize;
+
+    @Value("${app.feed.cleanup.chunk-size:1000}")
+    private int deleteChunkSize;
+
+    public FeedFanOutEngine(FollowRepository followRepository, JdbcTemplate jdbcTemplate, MeterRegistry meterRegistry) {
+        this.followRepository = followRepository;
+        this.jdbcTemplate = jdbcTemplate;
+
+        this.rowsWritten = Counter.builder("feed.fanout.rows")
+                .description("Following feed rows written by the fan-out engine")
+                .register(meterRegistry);
+        this.chunksWritten = Counter.builder("feed.fanout.chunks")
+                .description("Follower chunks written by the fan-out engine")
+                .register(meterRegistry);
+        this.rowsDeleted = Counter.builder("feed.cleanup.rows")
+                .description("Following feed rows deleted when a user unfollows")
+                .register(meterRegistry);
+        this.chunkTimer = Timer.builder("feed.fanout.chunk.duration")
+                .description("Time taken to read and write one follower chunk")
+                .register(meterRegistry);
+        this.fanOutTimer = Timer.builder("feed.fanout.duration")
+                .description("Time taken to fan out one post to all followers")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Add a post to the following feed of every follower of the poster.
+     * @param postId The ID of the new post.
+     * @param postedAt When the post was posted, copied into the feed rows.
+     * @param posterId The ID of the user who created the post.
+     * @param onChunkWritten Called with the follower IDs of each chunk once its rows are written.
+     * @return The number of feed rows written, followers that already had the post are not counted.
+     */
+    public long fanOutPost(UUID postId, Instant postedAt, long posterId, Consumer<List<Long>> onChunkWritten) {
+
+        long started = System.nanoTime();
+
+        long lastFollowerId = Long.MIN_VALUE;
+        long written = 0;
+        int chunk = 0;
+
+        while (true) {
+
+            long chunkStarted = System.nanoTime();
+
+            List<Long> followerIds = followRepository.getIdsOfFollowersAfter(posterId, lastFollowerId, Limit.of(chunkSize));
+
+            if (followerIds.isEmpty()) {
+                break;
+            }
+
+            int inserted = inserted(jdbcTemplate.batchUpdate(INSERT_FEED_ITEM_SQL, followerIds, followerIds.size(), (ps, followerId) -> {
+                ps.setLong(1, followerId);
+                ps.setTimestamp(2, Timestamp.from(postedAt));
+                ps.setObject(3, postId);
+            }));
+
+            onChunkWritten.accept(followerIds);
+
+            chunk++;
+            written += inserted;
+            lastFollowerId = followerIds.getLast();
+
+            rowsWritten.increment(inserted);
+            chunksWritten.increment();
+            chunkTimer.record(System.nanoTime() - chunkStarted, TimeUnit.NANOSECONDS);
+
+            log.debug("Fan-out of post {} chunk {} wrote {} rows ({} total so far).", postId, chunk, inserted, written);
+
+            // A short chunk means there are no more followers to read.
+            if (followerIds.size() < chunkSize) {
+                break;
+            }
+        }
+
+        fanOutTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+
+        log.info("Fanned out post {} by user {} to {} followers in {} chunks.", postId, posterId, written, chunk);
+
+        return written;
+    }
+
+    /**
+     * Add a set of posts to a single user's following feed, with one JDBC batch.
+     * @param feedOwnerId The owner of the feed.
+     * @param posts The keys of the posts to add.
+     * @return The number of feed rows written, posts already in the feed are not counted.
+     */
+    public int addPostsToFeed(long feedOwnerId, List<PostCursor> posts) {
+
+        if (posts.isEmpty()) {
+            return 0;
+        }
+
+        int inserted = inserted(jdbcTemplate.batchUpdate(INSERT_FEED_ITEM_SQL, posts, posts.size(), (ps, post) -> {
+            ps.setLong(1, feedOwnerId);
+            ps.setTimestamp(2, Timestamp.from(post.postedAt()));
+            ps.setObject(3, post.postId());
+        }));
+
+        rowsWritten.increment(inserted);
+
+        return inserted;
+    }
+
+    /**
+     * Remove every post by a user from a single user's following feed, e.g. after an unfollow.
+     * Rows are deleted with set-based statements of at most the cleanup chunk size each, every one committed on its own,
+     * so removing a prolific user's posts never holds locks on a large part of the feed at once.
+     * @param feedOwnerId The owner of the feed.
+     * @param postedById The user whose posts are removed.
+     * @return The number of feed rows deleted.
+     */
+    public long removePostsByUserFromFeed(long feedOwnerId, long postedById) {
+
+        long deleted = 0;
+
+        while (true) {
+
+            int chunk = jdbcTemplate.update(DELETE_POSTS_BY_USER_SQL, feedOwnerId, postedById, deleteChunkSize);
+
+            deleted += chunk;
+            rowsDeleted.increment(chunk);
+
+            // A short chunk means there is nothing left to delete.
+            if (chunk < deleteChunkSize) {
+                return deleted;
+            }
+        }
+    }
+
+    /**
+     * Count the rows a batch inserted, statements skipped by ON CONFLICT report 0.
+     * A driver that doesn't report counts (SUCCESS_NO_INFO) is assumed to have inserted the row.
+     */
+    private static int inserted(int[][] batchCounts) {
+
+        int inserted = 0;
+
+        for (int[] counts : batchCounts) {
+            for (int count : counts) {
+                inserted += count == Statement.SUCCESS_NO_INFO ? 1 : Math.max(count, 0);
+            }
+        }
+
+        return inserted;
+    }
+
+}
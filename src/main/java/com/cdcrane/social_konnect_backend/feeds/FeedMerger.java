@@ -0,0 +1,62 @@
+package com.cdcrane.social_konnect_backend.feeds;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * K-way merge of feed sources that are each already sorted in feed order.
+ */
+public final class FeedMerger {
+
+    private FeedMerger() {
+    }
+
+    /**
+     * Merge several sorted lists into one sorted list, dropping duplicates.
+     * Only the head of each source is held in the heap, so the cost is O(limit * log k) for k sources.
+     * @param sources The lists to merge, each sorted according to the comparator.
+     * @param order The order the sources are sorted in.
+     * @param key Extracts the identity used to drop duplicates, e.g. the post ID.
+     * @param limit The maximum number of items to return.
+     * @return Up to limit items, in order.
+     */
+    public static <T, K> List<T> merge(List<List<T>> sources, Comparator<? super T> order, Function<? super T, K> key, int limit) {
+
+        PriorityQueue<Head<T>> heap = new PriorityQueue<>(Math.max(1, sources.size()), (a, b) -> order.compare(a.item, b.item));
+
+        for (List<T> source : sources) {
+            Iterator<T> it = source.iterator();
+            if (it.hasNext()) {
+                heap.add(new Head<>(it.next(), it));
+            }
+        }
+
+        List<T> merged = new ArrayList<>(Math.min(limit, 64));
+        Set<K> seen = new HashSet<>();
+
+        while (!heap.isEmpty() && merged.size() < limit) {
+
+            Head<T> head = heap.poll();
+
+            if (seen.add(key.apply(head.item))) {
+                merged.add(head.item);
+            }
+
+            if (head.rest.hasNext()) {
+                heap.add(new Head<>(head.rest.next(), head.rest));
+            }
+        }
+
+        return merged;
+    }
+
+    private record Head<T>(T item, Iterator<T> rest) {
+    }
+
+}
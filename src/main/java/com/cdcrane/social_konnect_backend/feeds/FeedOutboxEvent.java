@@ -0,0 +1,64 @@
+package com.cdcrane.social_konnect_backend.feeds;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * A change that following feeds still have to be updated for, processed by FeedOutboxWorker.
+ * Written in the same transaction as the post or follow that caused it, so the feeds are updated once that change
+ * is committed even if the server restarts before getting to it. Processed events are deleted from the outbox.
+ */
+@Entity
+@Table(name = "feed_outbox", indexes = @Index(name = "idx_feed_outbox_due", columnList = "status, next_attempt_at"))
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class FeedOutboxEvent {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    @Column(name = "feed_outbox_id")
+    private UUID id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "type", nullable = false, length = 32)
+    private FeedOutboxEventType type;
+
+    // The poster for POST_CREATED, the follower for USER_FOLLOWED and USER_UNFOLLOWED.
+    @Column(name = "user_id", nullable = false)
+    private long userId;
+
+    // The followed user, only set for USER_FOLLOWED and USER_UNFOLLOWED.
+    @Column(name = "target_user_id")
+    private Long targetUserId;
+
+    // Only set for POST_CREATED.
+    @Column(name = "post_id")
+    private UUID postId;
+
+    @Column(name = "posted_at")
+    private Instant postedAt;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 16)
+    private FeedOutboxStatus status;
+
+    @Column(name = "attempts", nullable = false)
+    private int attempts;
+
+    // When the event may be (re)tried. Pushed forward while a worker is processing it, so other workers leave it alone.
+    @Column(name = "next_attempt_at", nullable = false)
+    private Instant nextAttemptAt;
+
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt;
+
+    @Column(name = "last_error", length = 1000)
+    private String lastError;
+
+}
@@ -0,0 +1,7 @@
+package com.cdcrane.social_konnect_backend.feeds;
+
+public enum FeedOutboxEventType {
+    POST_CREATED,
+    USER_FOLLOWED,
+    USER_UNFOLLOWED
+}
@@ -0,0 +1,37 @@
+package com.cdcrane.social_konnect_backend.feeds;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+public interface FeedOutboxRepository extends JpaRepository<FeedOutboxEvent, UUID> {
+
+    /**
+     * Lock the feed events that are due, oldest first. Rows locked by another worker are skipped instead of waited for,
+     * so several instances can process the outbox at the same time.
+     * @param now The current time.
+     * @param limit The maximum number of events to return.
+     * @return The due events, locked until the end of the transaction.
+     */
+    @Query(value = "SELECT * FROM feed_outbox WHERE status = 'PENDING' AND next_attempt_at <= :now " +
+            "ORDER BY next_attempt_at LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<FeedOutboxEvent> lockDueEvents(@Param("now") Instant now, @Param("limit") int limit);
+
+    /**
+     * Remove events in a status that were recorded before a time, e.g. failed events kept for long enough to look into.
+     * @param status The status of the events to remove.
+     * @param before Events recorded before this are removed.
+     * @return The number of rows removed.
+     */
+    @Modifying
+    @Query("DELETE FROM FeedOutboxEvent e WHERE e.status = :status AND e.createdAt < :before")
+    int deleteByStatusCreatedBefore(@Param("status") FeedOutboxStatus status, @Param("before") Instant before);
+
+    long countByStatus(FeedOutboxStatus status);
+
+}
@@ -0,0 +1,6 @@
+package com.cdcrane.social_konnect_backend.feeds;
+
+public enum FeedOutboxStatus {
+    PENDING,
+    FAILED
+}
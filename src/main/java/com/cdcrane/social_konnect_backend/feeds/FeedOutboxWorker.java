@@ -0,0 +1,271 @@
+package com.cdcrane.social_konnect_backend.feeds;
+
+import com.cdcrane.social_konnect_backend.config.AsyncConfig;
+import com.cdcrane.social_konnect_backend.config.pagination.PostCursor;
+import com.cdcrane.social_konnect_backend.follows.FollowRepository;
+import com.cdcrane.social_konnect_backend.posts.PostRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Updates following feeds for the events in the feed outbox. Due events are claimed in batches with SKIP LOCKED,
+ * which pushes their next attempt past the lease, so any number of instances can share the work.
+ * An instance that dies mid-batch leaves its events to be claimed again once the lease runs out, so each event is
+ * processed at least once. Processing is idempotent: feed rows are inserted with ON CONFLICT DO NOTHING, and follow
+ * changes are checked against the current follows before they are applied.
+ * Events that fail max-attempts times are kept as FAILED for failed-retention, counted by the feed.outbox.failed.stored gauge.
+ */
+@Component
+@Slf4j
+public class FeedOutboxWorker {
+
+    // How many of a newly followed user's posts are added to the follower's feed.
+    static final int BACKFILL_POSTS = 5;
+
+    private final FeedOutboxRepository outboxRepository;
+    private final FollowRepository followRepository;
+    private final PostRepository postRepo;
+    private final FeedFanOutEngine fanOutEngine;
+    private final CelebrityRegistry celebrityRegistry;
+    private final FeedTimelineCache timelineCache;
+    private final TransactionTemplate transactionTemplate;
+
+    private final Counter eventsProcessed;
+    private final Counter eventsFailed;
+
+    // FAILED events still in the outbox as of the last purge.
+    private final AtomicLong failedEventsStored = new AtomicLong();
+
+    @Value("${app.feed.outbox.batch-size:20}")
+    private int batchSize;
+
+    @Value("${app.feed.outbox.max-attempts:10}")
+    private int maxAttempts;
+
+    // Doubled after every failed attempt.
+    @Value("${app.feed.outbox.retry-backoff:PT10S}")
+    private Duration retryBackoff;
+
+    // A claimed batch is left alone by other workers for this long, it should be processed by then.
+    @Value("${app.feed.outbox.lease:PT5M}")
+    private Duration lease;
+
+    @Value("${app.feed.outbox.failed-retention:P7D}")
+    private Duration failedRetention;
+
+    public FeedOutboxWorker(FeedOutboxRepository outboxRepository, FollowRepository followRepository, PostRepository postRepository,
+                            FeedFanOutEngine fanOutEngine, CelebrityRegistry celebrityRegistry, FeedTimelineCache timelineCache,
+                            TransactionTemplate transactionTemplate, MeterRegistry meterRegistry) {
+        this.outboxRepository = outboxRepository;
+        this.followRepository = followRepository;
+        this.postRepo = postRepository;
+        this.fanOutEngine = fanOutEngine;
+        this.celebrityRegistry = celebrityRegistry;
+        this.timelineCache = timelineCache;
+        this.transactionTemplate = transactionTemplate;
+        this.eventsProcessed = Counter.builder("feed.outbox.processed")
+                .description("Feed events processed from the outbox")
+                .register(meterRegistry);
+        this.eventsFailed = Counter.builder("feed.outbox.failed")
+                .description("Feed events given up on after the maximum number of attempts")
+                .register(meterRegistry);
+        Gauge.builder("feed.outbox.failed.stored", failedEventsStored, AtomicLong::get)
+                .description("Failed feed events kept in the outbox, updated by every purge")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Process due feed events until the outbox has none left.
+     * Runs on the feed executor, while there is a backlog every poll starts another drain until all its threads are busy.
+     * Each drain claims its own batches, so a large fan-out doesn't hold up the rest.
+     */
+    @Async(AsyncConfig.FEED_EXECUTOR)
+    @Scheduled(fixedDelayString = "${app.feed.outbox.poll-interval-ms:500}")
+    public void drain() {
+
+        while (true) {
+
+            List<FeedOutboxEvent> batch = claimBatch();
+
+            if (batch.isEmpty()) {
+                return;
+            }
+
+            process(batch);
+
+            if (batch.size() < batchSize) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Remove failed events older than the retention, and count the ones left for the feed.outbox.failed.stored gauge.
+     */
+    @Scheduled(fixedDelayString = "${app.feed.outbox.purge-interval-ms:3600000}")
+    public void purgeFailedEvents() {
+
+        int purged = transactionTemplate.execute(status ->
+                outboxRepository.deleteByStatusCreatedBefore(FeedOutboxStatus.FAILED, Instant.now().minus(failedRetention)));
+
+        if (purged > 0) {
+            log.info("Purged {} failed feed events.", purged);
+        }
+
+        failedEventsStored.set(outboxRepository.countByStatus(FeedOutboxStatus.FAILED));
+    }
+
+    private List<FeedOutboxEvent> claimBatch() {
+
+        return transactionTemplate.execute(status -> {
+
+            Instant now = Instant.now();
+
+            List<FeedOutboxEvent> due = outboxRepository.lockDueEvents(now, batchSize);
+
+            // Flushed on commit, from then on other workers don't see these until the lease has run out.
+            for (FeedOutboxEvent event : due) {
+                event.setAttempts(event.getAttempts() + 1);
+                event.setNextAttemptAt(now.plus(lease));
+            }
+
+            return due;
+        });
+    }
+
+    private void process(List<FeedOutboxEvent> batch) {
+
+        List<UUID> processed = new ArrayList<>();
+        List<FeedOutboxEvent> failed = new ArrayList<>();
+
+        for (FeedOutboxEvent event : batch) {
+
+            try {
+
+                switch (event.getType()) {
+                    case POST_CREATED -> fanOutPost(event);
+                    case USER_FOLLOWED -> backfillFollowedPosts(event);
+                    case USER_UNFOLLOWED -> removeUnfollowedPosts(event);
+                }
+
+                processed.add(event.getId());
+
+            } catch (RuntimeException e) {
+
+                log.warn("Processing feed event {} ({}) failed: {}", event.getId(), event.getType(), e.toString());
+                event.setLastError(e.toString());
+                failed.add(event);
+            }
+        }
+
+        complete(processed, failed);
+    }
+
+    /**
+     * Stream the poster's followers in chunks and write one feed row for each, see FeedFanOutEngine.
+     * Posts by celebrities are skipped, they are merged into feeds at read time by FeedService.
+     */
+    private void fanOutPost(FeedOutboxEvent event) {
+
+        UUID postId = event.getPostId();
+
+        if (celebrityRegistry.isCelebrity(event.getUserId())) {
+            log.debug("Skipping fan-out of post {}, user {} is a celebrity.", postId, event.getUserId());
+            return;
+        }
+
+        // Deleted before it was fanned out, there is nothing to add.
+        if (!postRepo.existsById(postId)) {
+            return;
+        }
+
+        // Once a chunk of feed rows is written, add the post to any of those followers' cached timelines.
+        fanOutEngine.fanOutPost(postId, event.getPostedAt(), event.getUserId(),
+                followerIds -> timelineCache.pushToCachedTimelines(followerIds, postId, event.getPostedAt()));
+    }
+
+    /**
+     * Add the BACKFILL_POSTS recent posts of the followed user to the follower's feed.
+     * Without this, the follower's feed would remain empty until the followed posts again.
+     */
+    private void backfillFollowedPosts(FeedOutboxEvent event) {
+
+        // Celebrity posts are pulled at read time, and an unfollow since then means there is nothing to add.
+        if (celebrityRegistry.isCelebrity(event.getTargetUserId())
+                || !followRepository.existsByFollowerIdAndFollowedId(event.getUserId(), event.getTargetUserId())) {
+            return;
+        }
+
+        List<PostCursor> recentPosts = postRepo.getRecentPostKeysByUserIds(List.of(event.getTargetUserId()), Limit.of(BACKFILL_POSTS));
+
+        int added = fanOutEngine.addPostsToFeed(event.getUserId(), recentPosts);
+
+        timelineCache.invalidate(event.getUserId());
+
+        log.info("Added {} posts to following feed for user {}.", added, event.getTargetUserId());
+    }
+
+    /**
+     * Remove all posts by the unfollowed user from the unfollower's feed.
+     */
+    private void removeUnfollowedPosts(FeedOutboxEvent event) {
+
+        // Followed again since then, the posts belong in the feed.
+        if (followRepository.existsByFollowerIdAndFollowedId(event.getUserId(), event.getTargetUserId())) {
+            return;
+        }
+
+        long removed = fanOutEngine.removePostsByUserFromFeed(event.getUserId(), event.getTargetUserId());
+
+        timelineCache.invalidate(event.getUserId());
+
+        log.info("Deleted {} posts from following feed for user {}.", removed, event.getTargetUserId());
+    }
+
+    private void complete(List<UUID> processed, List<FeedOutboxEvent> failed) {
+
+        Instant now = Instant.now();
+
+        for (FeedOutboxEvent event : failed) {
+
+            if (event.getAttempts() >= maxAttempts) {
+
+                log.error("Giving up on feed event {} ({}) after {} attempts: {}", event.getId(), event.getType(),
+                        event.getAttempts(), event.getLastError());
+                event.setStatus(FeedOutboxStatus.FAILED);
+                eventsFailed.increment();
+
+            } else {
+
+                event.setNextAttemptAt(now.plus(retryBackoff.multipliedBy(1L << Math.min(event.getAttempts() - 1, 16))));
+            }
+
+            if (event.getLastError() != null && event.getLastError().length() > 1000) {
+                event.setLastError(event.getLastError().substring(0, 1000));
+            }
+        }
+
+        transactionTemplate.executeWithoutResult(status -> {
+            outboxRepository.deleteAllByIdInBatch(processed);
+            outboxRepository.saveAll(failed);
+        });
+
+        eventsProcessed.increment(processed.size());
+    }
+
+}
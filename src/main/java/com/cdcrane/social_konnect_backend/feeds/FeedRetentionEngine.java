@@ -0,0 +1,183 @@
+package com.cdcrane.social_konnect_backend.feeds;
+
+import com.cdcrane.social_konnect_backend.config.pagination.PostCursor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Keeps the following feed table proportional to what users actually read. Each feed keeps its newest max-items posts
+ * and only posts younger than max-age, everything past that is deleted in batches of at most batch-size rows.
+ * The point each feed is cut at is its horizon. Feed rows past the horizon are not trusted (they may have been deleted,
+ * or written after the feed was cut), so FeedService pulls pages past it from the posts of the followed users instead.
+ */
+@Component
+@Slf4j
+public class FeedRetentionEngine {
+
+    private static final UUID MIN_UUID = new UUID(0, 0);
+
+    private static final String DELETE_EXPIRED_SQL = """
+            DELETE FROM following_feed_items WHERE (feed_owner_id, posted_at, post_id) IN (
+                SELECT feed_owner_id, posted_at, post_id FROM following_feed_items WHERE posted_at < ? LIMIT ?)
+            """;
+
+    private static final String NEXT_OWNERS_OVER_CAP_SQL = """
+            SELECT feed_owner_id FROM following_feed_items WHERE feed_owner_id > ?
+            GROUP BY feed_owner_id HAVING COUNT(*) > ? ORDER BY feed_owner_id LIMIT ?
+            """;
+
+    private static final String NTH_NEWEST_KEY_SQL = """
+            SELECT posted_at, post_id FROM following_feed_items
+            WHERE feed_owner_id = ? ORDER BY posted_at DESC, post_id DESC LIMIT 1 OFFSET ?
+            """;
+
+    private static final String DELETE_BEFORE_KEY_SQL = """
+            DELETE FROM following_feed_items WHERE (feed_owner_id, posted_at, post_id) IN (
+                SELECT feed_owner_id, posted_at, post_id FROM following_feed_items
+                WHERE feed_owner_id = ? AND (posted_at, post_id) < (?, ?) LIMIT ?)
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final FeedRetentionHorizonRepository horizonRepository;
+
+    private final Counter rowsDeleted;
+
+    // Should be at least the timeline cache capacity, or cached timelines are cut short.
+    @Value("${app.feed.retention.max-items:1000}")
+    private int maxItems;
+
+    @Value("${app.feed.retention.max-age:P30D}")
+    private Duration maxAge;
+
+    @Value("${app.feed.retention.batch-size:1000}")
+    private int batchSize;
+
+    public FeedRetentionEngine(JdbcTemplate jdbcTemplate, FeedRetentionHorizonRepository horizonRepository, MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.horizonRepository = horizonRepository;
+        this.rowsDeleted = Counter.builder("feed.retention.rows")
+                .description("Following feed rows deleted by the retention job")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Delete the feed rows past the age limit, then cap every feed that is over the item limit.
+     * @return The number of feed rows deleted.
+     */
+    @Scheduled(cron = "${app.feed.retention.cron:0 0 4 * * *}")
+    public long enforce() {
+
+        long expired = deleteExpired(Instant.now().minus(maxAge));
+        long capped = capFeeds();
+
+        if (expired + capped > 0) {
+            log.info("Feed retention deleted {} expired and {} over the cap of {} items.", expired, capped, maxItems);
+        }
+
+        return expired + capped;
+    }
+
+    /**
+     * Get the oldest post a user's following feed table can be trusted for.
+     * @param userId The feed owner.
+     * @return The horizon, posts after it in feed order have to be pulled.
+     */
+    public PostCursor horizonFor(long userId) {
+
+        PostCursor ageHorizon = new PostCursor(Instant.now().minus(maxAge), MIN_UUID);
+
+        return horizonRepository.findById(userId)
+                .map(h -> new PostCursor(h.getPostedAt(), h.getPostId()))
+                .filter(capHorizon -> FeedService.FEED_ORDER.compare(capHorizon, ageHorizon) < 0)
+                .orElse(ageHorizon);
+    }
+
+    private long deleteExpired(Instant cutoff) {
+
+        long deleted = 0;
+
+        while (true) {
+
+            int batch = jdbcTemplate.update(DELETE_EXPIRED_SQL, Timestamp.from(cutoff), batchSize);
+
+            deleted += batch;
+            rowsDeleted.increment(batch);
+
+            if (batch < batchSize) {
+                return deleted;
+            }
+        }
+    }
+
+    /**
+     * Walk the owners of feeds over the item limit by ID, and cut each one at its max-items newest post.
+     * The horizon is saved before deleting, so a run that stops half way never leaves a feed with a gap in it.
+     */
+    private long capFeeds() {
+
+        long lastOwnerId = Long.MIN_VALUE;
+        long deleted = 0;
+
+        while (true) {
+
+            List<Long> owners = jdbcTemplate.queryForList(NEXT_OWNERS_OVER_CAP_SQL, Long.class, lastOwnerId, maxItems, batchSize);
+
+            for (long ownerId : owners) {
+
+                List<PostCursor> nth = jdbcTemplate.query(NTH_NEWEST_KEY_SQL,
+                        (rs, i) -> new PostCursor(rs.getTimestamp(1).toInstant(), rs.getObject(2, UUID.class)),
+                        ownerId, maxItems - 1);
+
+                if (nth.isEmpty()) {
+                    continue;
+                }
+
+                PostCursor horizon = nth.getFirst();
+
+                horizonRepository.save(FeedRetentionHorizon.builder()
+                        .feedOwnerId(ownerId)
+                        .postedAt(horizon.postedAt())
+                        .postId(horizon.postId())
+                        .build());
+
+                deleted += deleteBefore(ownerId, horizon);
+            }
+
+            if (owners.size() < batchSize) {
+                return deleted;
+            }
+
+            lastOwnerId = owners.getLast();
+        }
+    }
+
+    private long deleteBefore(long ownerId, PostCursor horizon) {
+
+        Timestamp postedAt = Timestamp.from(horizon.postedAt());
+        long deleted = 0;
+
+        while (true) {
+
+            int batch = jdbcTemplate.update(DELETE_BEFORE_KEY_SQL, ownerId, postedAt, horizon.postId(), batchSize);
+
+            deleted += batch;
+            rowsDeleted.increment(batch);
+
+            if (batch < batchSize) {
+                return deleted;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,32 @@
+package com.cdcrane.social_konnect_backend.feeds;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * The oldest post kept in a user's following feed the last time FeedRetentionEngine capped it.
+ * Feed rows older than this may have been deleted, so FeedService pulls pages past it from the followed users' posts.
+ */
+@Entity
+@Table(name = "feed_retention_horizons")
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class FeedRetentionHorizon {
+
+    @Id
+    @Column(name = "feed_owner_id")
+    private Long feedOwnerId;
+
+    @Column(name = "posted_at", nullable = false)
+    private Instant postedAt;
+
+    @Column(name = "post_id", nullable = false)
+    private UUID postId;
+
+}
@@ -0,0 +1,6 @@
+package com.cdcrane.social_konnect_backend.feeds;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface FeedRetentionHorizonRepository extends JpaRepository<FeedRetentionHorizon, Long> {
+}
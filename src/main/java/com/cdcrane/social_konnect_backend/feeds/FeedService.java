@@ -2,19 +2,21 @@ package com.cdcrane.social_konnect_backend.feeds;
 
 import com.cdcrane.social_konnect_backend.config.SecurityUtils;
 import com.cdcrane.social_konnect_backend.config.exceptions.ResourceNotFoundException;
-import com.cdcrane.social_konnect_backend.posts.Post;
+import com.cdcrane.social_konnect_backend.config.pagination.CursorPage;
+import com.cdcrane.social_konnect_backend.config.pagination.PostCursor;
+import com.cdcrane.social_konnect_backend.follows.FollowRepository;
+import com.cdcrane.social_konnect_backend.posts.PostHydrator;
 import com.cdcrane.social_konnect_backend.posts.PostRepository;
 import com.cdcrane.social_konnect_backend.posts.dto.PostDTOWithLiked;
-import com.cdcrane.social_konnect_backend.posts.dto.PostLikeStatusDTO;
-import com.cdcrane.social_konnect_backend.users.ApplicationUser;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 
+import java.util.Comparator;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
-import java.util.stream.Collectors;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 
 @Service
@@ -23,46 +25,146 @@ public class FeedService implements FeedUseCase{
     private final SecurityUtils securityUtils;
     private final FollowingFeedRepository followingFeedRepository;
     private final PostRepository postRepository;
+    private final FollowRepository followRepository;
+    private final CelebrityRegistry celebrityRegistry;
+    private final FeedTimelineCache timelineCache;
+    private final PostHydrator postHydrator;
+    private final FeedRetentionEngine retentionEngine;
+    private final RecentFollowsOverlay recentFollowsOverlay;
 
-    public FeedService(SecurityUtils securityUtils, FollowingFeedRepository followingFeedRepository, PostRepository postRepository) {
+    // Newest first, ties broken by post ID the same way the database orders UUIDs (unsigned).
+    static final Comparator<PostCursor> FEED_ORDER = Comparator.comparing(PostCursor::postedAt).reversed()
+            .thenComparing((a, b) -> {
+                int cmp = Long.compareUnsigned(b.postId().getMostSignificantBits(), a.postId().getMostSignificantBits());
+                return cmp != 0 ? cmp : Long.compareUnsigned(b.postId().getLeastSignificantBits(), a.postId().getLeastSignificantBits());
+            });
+
+    public FeedService(SecurityUtils securityUtils, FollowingFeedRepository followingFeedRepository, PostRepository postRepository,
+                       FollowRepository followRepository, CelebrityRegistry celebrityRegistry, FeedTimelineCache timelineCache,
+                       PostHydrator postHydrator, FeedRetentionEngine retentionEngine,
+                       RecentFollowsOverlay recentFollowsOverlay) {
         this.securityUtils = securityUtils;
         this.followingFeedRepository = followingFeedRepository;
         this.postRepository = postRepository;
+        this.followRepository = followRepository;
+        this.celebrityRegistry = celebrityRegistry;
+        this.timelineCache = timelineCache;
+        this.postHydrator = postHydrator;
+        this.retentionEngine = retentionEngine;
+        this.recentFollowsOverlay = recentFollowsOverlay;
     }
 
     /**
      * Get the following feed for the current user.
-     * @param pageable Pagination data from the query params.
+     * Posts from followed celebrities are not in the pushed feed, so they are pulled and merged in here,
+     * and so are the posts of users followed so recently that the feed may not have them yet.
+     * @param cursor The nextCursor from the previous page, or null for the first page.
+     * @param size The number of posts to return.
+     * @param withMetadata If the like and comment counts should be embedded in each post.
      * @return A page of objects with Post information and if the current user has liked the post.
      */
-    public Page<PostDTOWithLiked> getCurrentUserFollowingFeedMostRecent(Pageable pageable) {
+    public CursorPage<PostDTOWithLiked> getCurrentUserFollowingFeedMostRecent(String cursor, int size, boolean withMetadata) {
+
+        long myId = securityUtils.getCurrentUserId();
 
-        ApplicationUser me = securityUtils.getCurrentAuth();
+        PostCursor after = cursor == null ? null : PostCursor.decode(cursor);
 
-        Page<Post> followingPosts =  followingFeedRepository.getFollowingPostsByUserId(me.getId(), pageable);
+        CursorPage<PostCursor> followingKeys = CursorPage.fromRows(getMergedFollowingPostKeys(myId, after, size + 1), size, Function.identity());
 
-        if (followingPosts.isEmpty()) {
+        // An empty page after a cursor just means the end of the feed was reached.
+        if (followingKeys.isEmpty() && after == null) {
             throw new ResourceNotFoundException("No posts found from users you are following.");
         }
 
         // Extract IDs
-        List<UUID> postIds = followingPosts.getContent().stream()
-                .map(Post::getId)
+        List<UUID> postIds = followingKeys.content().stream()
+                .map(PostCursor::postId)
                 .toList();
 
-        // Get like status of these posts
-        List<PostLikeStatusDTO> likeStatuses = postRepository.findLikeStatusByPostIds(postIds, me.getId());
+        // Only the posts on this page are loaded, with a constant number of queries.
+        List<PostDTOWithLiked> posts = postHydrator.hydrateByIds(postIds, myId, withMetadata);
+
+        // Some posts were deleted since the timeline was cached, rebuild it on the next read.
+        if (posts.size() != postIds.size() && after == null) {
+            timelineCache.invalidate(myId);
+        }
+
+        return followingKeys.withContent(posts);
+
+    }
+
+    /**
+     * Get the keys of posts from the pushed following feed, merged with posts from any celebrities the user follows
+     * and from users they just followed, see RecentFollowsOverlay.
+     * Both sources are read by keyset from the same cursor, so each only provides up to limit rows.
+     * The first page of the pushed feed comes from the in-memory timeline cache.
+     * The pushed feed is only kept up to its retention horizon, once a page reaches past that the rest is pulled
+     * from the posts of every followed user.
+     * @param userId The feed owner.
+     * @param after The cursor to continue from, null for the start of the feed.
+     * @param limit The maximum number of posts to return.
+     * @return Up to limit post keys, newest first.
+     */
+    private List<PostCursor> getMergedFollowingPostKeys(long userId, PostCursor after, int limit) {
+
+        PostCursor horizon = retentionEngine.horizonFor(userId);
+
+        List<PostCursor> pushed = getPushedPostKeys(userId, after, horizon, limit);
+
+        // Past the horizon, the posts of all followed users (celebrities included) are pulled from where the pushed feed stops.
+        if (pushed.size() < limit) {
+
+            PostCursor from = after == null || FEED_ORDER.compare(horizon, after) > 0 ? horizon : after;
+
+            List<PostCursor> older = postRepository.getFollowedUsersPostKeysBeforeCursor(userId, from.postedAt(), from.postId(), Limit.of(limit - pushed.size()));
+
+            if (!older.isEmpty()) {
+                pushed = Stream.concat(pushed.stream(), older.stream()).toList();
+            }
+        }
+
+        Set<Long> celebrities = celebrityRegistry.getCelebrityIds();
+
+        List<Long> followedCelebrities = celebrities.isEmpty()
+                ? List.of()
+                : followRepository.getFollowedIdsAmong(userId, celebrities);
+
+        List<PostCursor> recentlyFollowed = recentFollowsOverlay.getPostKeys(userId, after, limit);
+
+        // Nothing to merge, the pushed feed is the whole feed.
+        if (followedCelebrities.isEmpty() && recentlyFollowed.isEmpty()) {
+            return pushed;
+        }
+
+        List<PostCursor> pulled;
+
+        if (followedCelebrities.isEmpty()) {
+            pulled = List.of();
+        } else if (after == null) {
+            pulled = postRepository.getRecentPostKeysByUserIds(followedCelebrities, Limit.of(limit));
+        } else {
+            pulled = postRepository.getRecentPostKeysByUserIdsBeforeCursor(followedCelebrities, after.postedAt(), after.postId(), Limit.of(limit));
+        }
+
+        return FeedMerger.merge(List.of(pushed, pulled, recentlyFollowed), FEED_ORDER, PostCursor::postId, limit);
+    }
+
+    /**
+     * Read the pushed following feed from the cursor, leaving out anything past the retention horizon.
+     */
+    private List<PostCursor> getPushedPostKeys(long userId, PostCursor after, PostCursor horizon, int limit) {
 
-        Map<UUID, Boolean> likeStatusMap = likeStatuses.stream()
-                .collect(Collectors.toMap(
-                        PostLikeStatusDTO::postId,
-                        PostLikeStatusDTO::liked
-                ));
+        // The whole page would be past the horizon.
+        if (after != null && FEED_ORDER.compare(after, horizon) >= 0) {
+            return List.of();
+        }
 
-        return followingPosts.map(post -> {
-            boolean liked = likeStatusMap.getOrDefault(post.getId(), false);
-            return new PostDTOWithLiked(post, liked);
-        });
+        List<PostCursor> pushed = after == null
+                ? timelineCache.getNewestPostKeys(userId, limit)
+                : followingFeedRepository.getFollowingPostKeysByUserIdBeforeCursor(userId, after.postedAt(), after.postId(), Limit.of(limit));
 
+        return pushed.stream()
+                .filter(key -> FEED_ORDER.compare(key, horizon) <= 0)
+                .toList();
     }
 }
@@ -0,0 +1,124 @@
+package com.cdcrane.social_konnect_backend.feeds;
+
+import com.cdcrane.social_konnect_backend.config.pagination.PostCursor;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Keeps the most recent following feed post IDs of active users in memory, so the first page of the feed
+ * costs a cache hit instead of the feed join, the posts themselves are then loaded in one batch by PostHydrator.
+ * Kept up to date by FeedOutboxWorker as it processes the feed outbox: a fanned out post is pushed into the cached
+ * timelines of each chunk of followers once their feed rows are written, and a processed follow or unfollow invalidates
+ * the follower's timeline. FeedService also invalidates a timeline that lists posts deleted since it was loaded.
+ * All of this only reaches the instance that processed the event, so every timeline expires app.feed.timeline-cache.ttl
+ * (one minute by default) after it was loaded. That is how long another instance can keep serving a first page without
+ * a new post, or with the posts of a user who was unfollowed. Posts by celebrities are not cached, FeedService merges them in.
+ */
+@Component
+@Slf4j
+public class FeedTimelineCache {
+
+    private final FollowingFeedRepository followingFeedRepository;
+
+    private final Cache<Long, TimelineRingBuffer> timelines;
+
+    private final int capacity;
+
+    public FeedTimelineCache(FollowingFeedRepository followingFeedRepository, MeterRegistry meterRegistry,
+                             @Value("${app.feed.timeline-cache.capacity:200}") int capacity,
+                             @Value("${app.feed.timeline-cache.max-users:100000}") long maxUsers,
+                             @Value("${app.feed.timeline-cache.ttl:PT1M}") Duration ttl) {
+
+        this.followingFeedRepository = followingFeedRepository;
+        this.capacity = capacity;
+
+        this.timelines = Caffeine.newBuilder()
+                .maximumSize(maxUsers)
+                .expireAfterWrite(ttl) // Pushes change the buffer in place, so this counts from when it was loaded.
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, timelines, "feed.timeline");
+    }
+
+    /**
+     * Get the keys of the newest posts in a user's pushed following feed, from the cached timeline when possible.
+     * @param userId The feed owner.
+     * @param limit The number of posts wanted.
+     * @return Up to limit post keys, newest first.
+     */
+    public List<PostCursor> getNewestPostKeys(long userId, int limit) {
+
+        // Deeper than what is cached, read straight from the database.
+        if (limit > capacity) {
+            return followingFeedRepository.getFirstFollowingPostKeysByUserId(userId, Limit.of(limit));
+        }
+
+        TimelineRingBuffer timeline = timelines.get(userId, this::loadTimeline);
+
+        List<PostCursor> keys = timeline.newestKeys(limit);
+
+        // The buffer dropped older posts, so it can't tell what comes after these.
+        if (keys.size() < limit && !timeline.isComplete()) {
+            return followingFeedRepository.getFirstFollowingPostKeysByUserId(userId, Limit.of(limit));
+        }
+
+        return keys;
+    }
+
+    /**
+     * Add a new post to the cached timelines of the given users. Users without a cached timeline are skipped,
+     * their timeline will include the post when it is next loaded.
+     * @param feedOwnerIds The users whose feeds the post was added to.
+     * @param postId The new post.
+     * @param postedAt When it was posted.
+     */
+    public void pushToCachedTimelines(List<Long> feedOwnerIds, UUID postId, Instant postedAt) {
+
+        for (Long ownerId : feedOwnerIds) {
+
+            TimelineRingBuffer timeline = timelines.getIfPresent(ownerId);
+
+            if (timeline != null) {
+                timeline.add(postId, postedAt);
+            }
+        }
+    }
+
+    /**
+     * Drop a user's cached timeline, e.g. when the set of users they follow changes.
+     * @param userId The feed owner.
+     */
+    public void invalidate(long userId) {
+        timelines.invalidate(userId);
+    }
+
+    private TimelineRingBuffer loadTimeline(long userId) {
+
+        List<PostCursor> keys = followingFeedRepository.getFirstFollowingPostKeysByUserId(userId, Limit.of(capacity));
+
+        // Fewer rows than the capacity means this is the whole feed.
+        TimelineRingBuffer timeline = new TimelineRingBuffer(capacity, keys.size() < capacity);
+
+        // Add oldest first so every add lands at the newest end.
+        for (PostCursor key : keys.reversed()) {
+            timeline.add(key.postId(), key.postedAt());
+        }
+
+        log.debug("Loaded timeline of {} posts for user {}.", keys.size(), userId);
+
+        return timeline;
+    }
+
+}
@@ -4,15 +4,15 @@ import com.cdcrane.social_konnect_backend.posts.Post;
 import com.cdcrane.social_konnect_backend.users.ApplicationUser;
 import jakarta.persistence.*;
 import lombok.*;
-import org.springframework.data.annotation.CreatedDate;
-import org.springframework.data.jpa.domain.support.AuditingEntityListener;
-
-import java.time.Instant;
-import java.util.UUID;
 
+/**
+ * A post in a user's following feed. The row is its key (feed_owner_id, posted_at, post_id), with the post's postedAt
+ * copied in, so a feed page is a range scan of the primary key that never touches the posts table.
+ * Rows are written and deleted in bulk with JDBC, see FeedFanOutEngine and FeedRetentionEngine.
+ * Existing tables are moved to this layout with documentation/migrations/following_feed_items_composite_key.sql.
+ */
 @Entity
-@Table(name = "following_feed_items")
-@EntityListeners(AuditingEntityListener.class) // Need this for JPA auditing, allows the @CreatedDate annotation to work.
+@Table(name = "following_feed_items", indexes = @Index(name = "idx_following_feed_items_posted_at", columnList = "posted_at")) // For deleting expired rows.
 @AllArgsConstructor
 @NoArgsConstructor
 @Builder
@@ -20,18 +20,14 @@ import java.util.UUID;
 @Setter
 public class FollowingFeedItem {
 
-    @Id
-    @GeneratedValue(strategy = GenerationType.UUID)
-    private UUID id;
+    @EmbeddedId
+    private FollowingFeedItemId id;
 
-    @ManyToOne
-    @JoinColumn(name = "feed_owner_id")
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "feed_owner_id", insertable = false, updatable = false, foreignKey = @ForeignKey(name = "fk_following_feed_items_feed_owner"))
     private ApplicationUser feedOwner;
 
-    @ManyToOne
-    @JoinColumn(name = "post_id")
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "post_id", insertable = false, updatable = false, foreignKey = @ForeignKey(name = "fk_following_feed_items_post"))
     private Post post;
-
-    @CreatedDate
-    private Instant createdAt;
 }
@@ -0,0 +1,33 @@
+package com.cdcrane.social_konnect_backend.feeds;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Embeddable;
+import lombok.*;
+
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Key of a FollowingFeedItem, in the order of the primary key columns: a user's feed is one contiguous range,
+ * sorted the same way as the feed.
+ */
+@Embeddable
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+@EqualsAndHashCode
+public class FollowingFeedItemId implements Serializable {
+
+    @Column(name = "feed_owner_id", nullable = false)
+    private long feedOwnerId;
+
+    // Copied from the post, it never changes after the post is created.
+    @Column(name = "posted_at", nullable = false)
+    private Instant postedAt;
+
+    @Column(name = "post_id", nullable = false)
+    private UUID postId;
+
+}
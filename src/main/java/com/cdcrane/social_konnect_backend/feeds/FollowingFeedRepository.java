@@ -1,21 +1,30 @@
 package com.cdcrane.social_konnect_backend.feeds;
 
-import com.cdcrane.social_konnect_backend.posts.Post;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.Pageable;
+import com.cdcrane.social_konnect_backend.config.pagination.PostCursor;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.time.Instant;
 import java.util.List;
 import java.util.UUID;
 
 @Repository
-public interface FollowingFeedRepository extends JpaRepository<FollowingFeedItem, UUID> {
+public interface FollowingFeedRepository extends JpaRepository<FollowingFeedItem, FollowingFeedItemId> {
 
-    @Query("SELECT p FROM FollowingFeedItem ffi JOIN ffi.post p WHERE ffi.feedOwner.id = ?1 ORDER BY p.postedAt DESC")
-    Page<Post> getFollowingPostsByUserId(long userId, Pageable pageable);
+    // Only the sort keys, used to fill the in-memory timeline cache and to page through the feed without loading the posts.
+    // The keys are the primary key of the feed rows, so a page is read from the index alone.
+    // The posts that make it onto a page are loaded afterward by PostHydrator.
+    @Query("SELECT new com.cdcrane.social_konnect_backend.config.pagination.PostCursor(i.id.postedAt, i.id.postId) FROM FollowingFeedItem i WHERE i.id.feedOwnerId = ?1 ORDER BY i.id.postedAt DESC, i.id.postId DESC")
+    List<PostCursor> getFirstFollowingPostKeysByUserId(long userId, Limit limit);
+
+    // A row value comparison, so the database seeks straight to the cursor instead of filtering the rows before it.
+    @Query("""
+        SELECT new com.cdcrane.social_konnect_backend.config.pagination.PostCursor(i.id.postedAt, i.id.postId) FROM FollowingFeedItem i
+        WHERE i.id.feedOwnerId = ?1 AND (i.id.postedAt, i.id.postId) < (?2, ?3)
+        ORDER BY i.id.postedAt DESC, i.id.postId DESC
+    """)
+    List<PostCursor> getFollowingPostKeysByUserIdBeforeCursor(long userId, Instant postedAt, UUID postId, Limit limit);
 
-    @Query("SELECT i FROM FollowingFeedItem i WHERE i.feedOwner.id = ?1 AND i.post.user.id = ?2")
-    List<FollowingFeedItem> findByFeedOwnerIdAndFollowedUserId(long feedOwnerId, long followedUserId);
 }
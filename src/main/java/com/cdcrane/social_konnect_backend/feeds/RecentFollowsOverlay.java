@@ -0,0 +1,112 @@
+package com.cdcrane.social_konnect_backend.feeds;
+
+import com.cdcrane.social_konnect_backend.config.pagination.PostCursor;
+import com.cdcrane.social_konnect_backend.follows.events.UserFollowedEvent;
+import com.cdcrane.social_konnect_backend.follows.events.UserUnfollowedEvent;
+import com.cdcrane.social_konnect_backend.posts.PostRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Remembers who each user followed in the last few seconds, so their feed shows the followed users' posts right away
+ * instead of once FeedOutboxWorker has processed the follow. FeedService merges the same recent posts the backfill
+ * will add into the user's feed, and they are dropped as duplicates once the backfill has run.
+ * Only kept on the instance that handled the follow, which is where the follower's next request usually lands.
+ */
+@Component
+public class RecentFollowsOverlay {
+
+    private final PostRepository postRepository;
+
+    private final Cache<Long, Set<Long>> recentFollows;
+
+    public RecentFollowsOverlay(PostRepository postRepository, MeterRegistry meterRegistry,
+                                @Value("${app.feed.recent-follows.window:PT30S}") Duration window,
+                                @Value("${app.feed.recent-follows.max-users:10000}") long maxUsers) {
+
+        this.postRepository = postRepository;
+
+        this.recentFollows = Caffeine.newBuilder()
+                .expireAfterWrite(window)
+                .maximumSize(maxUsers)
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, recentFollows, "feed.recent_follows");
+    }
+
+    /**
+     * Start showing the followed user's recent posts in the follower's feed. Only runs once the follow is committed.
+     * @param event The event, which contains the IDs of the follower and followed users.
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void listenForUserFollowed(UserFollowedEvent event) {
+
+        recentFollows.asMap().compute(event.followerId(), (followerId, followed) -> {
+
+            Set<Long> updated = followed == null ? new HashSet<>() : new HashSet<>(followed);
+            updated.add(event.followedId());
+
+            return Set.copyOf(updated);
+        });
+    }
+
+    /**
+     * Stop showing the unfollowed user's posts, if they were followed within the window.
+     * @param event The event, which contains the IDs of the unfollower and unfollowed users.
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void listenForUserUnfollowed(UserUnfollowedEvent event) {
+
+        recentFollows.asMap().computeIfPresent(event.followerId(), (followerId, followed) -> {
+
+            Set<Long> updated = new HashSet<>(followed);
+            updated.remove(event.followedId());
+
+            return updated.isEmpty() ? null : Set.copyOf(updated);
+        });
+    }
+
+    /**
+     * Get the keys of the posts that following users in the window adds to a user's feed.
+     * @param userId The feed owner.
+     * @param after The cursor to continue from, null for the start of the feed.
+     * @param limit The maximum number of posts to return.
+     * @return Up to limit post keys after the cursor, newest first. Empty for users who followed nobody in the window.
+     */
+    public List<PostCursor> getPostKeys(long userId, PostCursor after, int limit) {
+
+        Set<Long> followed = recentFollows.getIfPresent(userId);
+
+        if (followed == null) {
+            return List.of();
+        }
+
+        List<PostCursor> keys = new ArrayList<>();
+
+        // One query per user, the backfill takes the newest posts of each followed user on its own.
+        for (long followedId : followed) {
+            keys.addAll(postRepository.getRecentPostKeysByUserIds(List.of(followedId), Limit.of(FeedOutboxWorker.BACKFILL_POSTS)));
+        }
+
+        return keys.stream()
+                .filter(key -> after == null || FeedService.FEED_ORDER.compare(key, after) > 0)
+                .sorted(FeedService.FEED_ORDER)
+                .limit(limit)
+                .toList();
+    }
+
+}
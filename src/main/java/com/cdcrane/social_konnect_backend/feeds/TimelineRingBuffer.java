@@ -0,0 +1,152 @@
+package com.cdcrane.social_konnect_backend.feeds;
+
+import com.cdcrane.social_konnect_backend.config.pagination.PostCursor;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Fixed size buffer of a user's most recent following feed post IDs, kept newest first.
+ * Entries are stored in primitive arrays (UUID halves and postedAt micros) so a cached timeline costs
+ * 24 bytes per post rather than an object per post. Once full, adding a post drops the oldest one.
+ */
+class TimelineRingBuffer {
+
+    private final long[] msb;
+    private final long[] lsb;
+    private final long[] postedAtMicros;
+
+    // Index of the oldest entry, entries run from here to (start + size - 1) % capacity, oldest to newest.
+    private int start;
+    private int size;
+
+    // True while the buffer holds every post in the feed, false once anything has been dropped from the end.
+    private boolean complete;
+
+    TimelineRingBuffer(int capacity, boolean complete) {
+        this.msb = new long[capacity];
+        this.lsb = new long[capacity];
+        this.postedAtMicros = new long[capacity];
+        this.complete = complete;
+    }
+
+    /**
+     * Add a post to the timeline, keeping it ordered by (postedAt, postId).
+     * New posts almost always belong at the newest end, so this is usually O(1).
+     * @param postId The ID of the post.
+     * @param postedAt When it was posted.
+     */
+    synchronized void add(UUID postId, Instant postedAt) {
+
+        long m = postId.getMostSignificantBits();
+        long l = postId.getLeastSignificantBits();
+        long t = toMicros(postedAt);
+
+        // Find the first position (from the newest end) that the new post is newer than.
+        int insertAt = size;
+        while (insertAt > 0) {
+            int i = physical(insertAt - 1);
+            if (msb[i] == m && lsb[i] == l) {
+                return; // Already present.
+            }
+            if (compare(t, m, l, i) > 0) {
+                break;
+            }
+            insertAt--;
+        }
+
+        int capacity = msb.length;
+
+        if (size == capacity) {
+            // Full and older than everything held, it would be dropped straight away.
+            if (insertAt == 0) {
+                complete = false;
+                return;
+            }
+            // Drop the oldest to make room.
+            start = (start + 1) % capacity;
+            size--;
+            insertAt--;
+            complete = false;
+        }
+
+        // Shift newer entries up by one to make room, then write.
+        for (int pos = size; pos > insertAt; pos--) {
+            int to = physical(pos);
+            int from = physical(pos - 1);
+            msb[to] = msb[from];
+            lsb[to] = lsb[from];
+            postedAtMicros[to] = postedAtMicros[from];
+        }
+
+        int i = physical(insertAt);
+        msb[i] = m;
+        lsb[i] = l;
+        postedAtMicros[i] = t;
+        size++;
+    }
+
+    /**
+     * @param limit The maximum number of IDs to return.
+     * @return Up to limit post IDs, newest first.
+     */
+    List<UUID> newest(int limit) {
+        return newestKeys(limit).stream()
+                .map(PostCursor::postId)
+                .toList();
+    }
+
+    /**
+     * @param limit The maximum number of keys to return.
+     * @return Up to limit (postedAt, postId) keys, newest first.
+     */
+    synchronized List<PostCursor> newestKeys(int limit) {
+
+        int n = Math.min(limit, size);
+        List<PostCursor> keys = new ArrayList<>(n);
+
+        for (int pos = size - 1; pos >= size - n; pos--) {
+            int i = physical(pos);
+            keys.add(new PostCursor(fromMicros(postedAtMicros[i]), new UUID(msb[i], lsb[i])));
+        }
+
+        return keys;
+    }
+
+    /**
+     * @return True if the buffer holds the whole feed, so a short read means the feed really is that short.
+     */
+    synchronized boolean isComplete() {
+        return complete;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    private int physical(int pos) {
+        return (start + pos) % msb.length;
+    }
+
+    // Same order as the feed queries: postedAt, then post ID compared unsigned like the database does.
+    private int compare(long t, long m, long l, int i) {
+        int cmp = Long.compare(t, postedAtMicros[i]);
+        if (cmp != 0) {
+            return cmp;
+        }
+        cmp = Long.compareUnsigned(m, msb[i]);
+        return cmp != 0 ? cmp : Long.compareUnsigned(l, lsb[i]);
+    }
+
+    private static long toMicros(Instant instant) {
+        return ChronoUnit.MICROS.between(Instant.EPOCH, instant);
+    }
+
+    private static Instant fromMicros(long micros) {
+        return Instant.EPOCH.plus(micros, ChronoUnit.MICROS);
+    }
+
+}
@@ -10,7 +10,9 @@ import java.time.Instant;
 import java.util.UUID;
 
 @Entity
-@Table(name = "follows", uniqueConstraints = @UniqueConstraint(columnNames = {"follower_id", "followed_id"}))
+@Table(name = "follows",
+        uniqueConstraints = @UniqueConstraint(columnNames = {"follower_id", "followed_id"}),
+        indexes = @Index(name = "idx_follows_followed_follower", columnList = "followed_id, follower_id")) // For reading the followers of a user in chunks during feed fan-out.
 @EntityListeners(AuditingEntityListener.class) // Need this for JPA auditing, allows the @CreatedDate annotation to work.
 @AllArgsConstructor
 @NoArgsConstructor
@@ -1,6 +1,7 @@
 package com.cdcrane.social_konnect_backend.follows;
 
 import com.cdcrane.social_konnect_backend.users.ApplicationUser;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
@@ -8,6 +9,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 
@@ -20,8 +22,33 @@ public interface FollowRepository extends JpaRepository<Follow, UUID> {
     @Query("SELECT COUNT(f) FROM Follow f WHERE f.follower.id = ?1")
     int getFollowingCountByUserId(long userId);
 
-    @Query("SELECT f.follower.id FROM Follow f WHERE f.followed.id = ?1")
-    List<Long> getIdsOfFollowers(Long userId);
+    /**
+     * Get one chunk of follower IDs, using the last follower ID of the previous chunk as the starting point (keyset),
+     * so each chunk is an index range scan instead of an ever-growing OFFSET.
+     * @param userId The user whose followers are wanted.
+     * @param lastFollowerId The last follower ID returned by the previous chunk.
+     * @param limit Maximum size of the chunk.
+     * @return The follower IDs, ascending.
+     */
+    @Query("SELECT f.follower.id FROM Follow f WHERE f.followed.id = ?1 AND f.follower.id > ?2 ORDER BY f.follower.id")
+    List<Long> getIdsOfFollowersAfter(long userId, long lastFollowerId, Limit limit);
+
+    /**
+     * Get the IDs of every user with at least the given number of followers.
+     * @param minFollowers The follower count threshold.
+     * @return The IDs of those users.
+     */
+    @Query("SELECT f.followed.id FROM Follow f GROUP BY f.followed.id HAVING COUNT(f) >= ?1")
+    List<Long> getIdsOfUsersWithAtLeastXFollowers(long minFollowers);
+
+    /**
+     * Of the given user IDs, get the ones that are followed by a specific user.
+     * @param followerId The user who may be following them.
+     * @param followedIds The candidate followed user IDs.
+     * @return The subset of followedIds that the follower follows.
+     */
+    @Query("SELECT f.followed.id FROM Follow f WHERE f.follower.id = ?1 AND f.followed.id IN ?2")
+    List<Long> getFollowedIdsAmong(long followerId, Collection<Long> followedIds);
 
     void deleteByFollowerIdAndFollowedId(long followerId, long followedId);
 
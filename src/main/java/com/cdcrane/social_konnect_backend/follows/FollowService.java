@@ -1,5 +1,6 @@
 package com.cdcrane.social_konnect_backend.follows;
 
+import com.cdcrane.social_konnect_backend.authentication.AuthenticatedUser;
 import com.cdcrane.social_konnect_backend.config.SecurityUtils;
 import com.cdcrane.social_konnect_backend.config.exceptions.ResourceNotFoundException;
 import com.cdcrane.social_konnect_backend.follows.events.UserFollowedEvent;
@@ -65,7 +66,8 @@ public class FollowService implements FollowUseCase {
     @Transactional
     public void followUser(String username) {
 
-        ApplicationUser currentUser = securityUtils.getCurrentAuth();
+        // Only a reference is needed to set the follower, the user is not loaded.
+        ApplicationUser currentUser = securityUtils.getCurrentUserReference();
         ApplicationUser targetUser = userRepository.findByUsername(username)
                 .orElseThrow(() -> new UserNotFoundException("User with username " + username + " not found. Cannot follow user."));
 
@@ -97,30 +99,30 @@ public class FollowService implements FollowUseCase {
     @Transactional
     public void unfollowUser(String username) {
 
-        ApplicationUser currentUser = securityUtils.getCurrentAuth();
+        long currentUserId = securityUtils.getCurrentUserId();
         ApplicationUser targetUser = userRepository.findByUsername(username)
                 .orElseThrow(() -> new UserNotFoundException("User with username " + username + " not found. Cannot unfollow user."));
 
-        if (!followRepository.existsByFollowerIdAndFollowedId(currentUser.getId(), targetUser.getId())) {
+        if (!followRepository.existsByFollowerIdAndFollowedId(currentUserId, targetUser.getId())) {
 
             throw new CannotFollowException("Cannot unfollow user " + username + " as you do not follow them.");
         }
 
-        followRepository.deleteByFollowerIdAndFollowedId(currentUser.getId(), targetUser.getId());
+        followRepository.deleteByFollowerIdAndFollowedId(currentUserId, targetUser.getId());
 
-        eventPublisher.publishEvent(new UserUnfollowedEvent(currentUser.getId(), targetUser.getId()));
+        eventPublisher.publishEvent(new UserUnfollowedEvent(currentUserId, targetUser.getId()));
 
     }
 
     @Override
     public Page<ApplicationUser> getMyFollowers(Pageable pageable) {
 
-        ApplicationUser me = securityUtils.getCurrentAuth();
+        AuthenticatedUser me = securityUtils.getCurrentUser();
 
-        Page<ApplicationUser> followers = followRepository.getFollowersByUserId(me.getId(), pageable);
+        Page<ApplicationUser> followers = followRepository.getFollowersByUserId(me.id(), pageable);
 
         if (followers.isEmpty()) {
-            throw new ResourceNotFoundException("No followers found for user " + me.getUsername());
+            throw new ResourceNotFoundException("No followers found for user " + me.username());
         }
 
         return followers;
@@ -130,12 +132,12 @@ public class FollowService implements FollowUseCase {
     @Override
     public Page<ApplicationUser> getMyFollowing(Pageable pageable) {
 
-        ApplicationUser me = securityUtils.getCurrentAuth();
+        AuthenticatedUser me = securityUtils.getCurrentUser();
 
-        Page<ApplicationUser> following = followRepository.getFollowingByUserId(me.getId(), pageable);
+        Page<ApplicationUser> following = followRepository.getFollowingByUserId(me.id(), pageable);
 
         if (following.isEmpty()) {
-            throw new ResourceNotFoundException("No followed users found for user " + me.getUsername());
+            throw new ResourceNotFoundException("No followed users found for user " + me.username());
         }
 
         return following;
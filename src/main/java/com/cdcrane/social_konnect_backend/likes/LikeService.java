@@ -1,11 +1,13 @@
 package com.cdcrane.social_konnect_backend.likes;
 
+import com.cdcrane.social_konnect_backend.authentication.AuthenticatedUser;
 import com.cdcrane.social_konnect_backend.config.SecurityUtils;
 import com.cdcrane.social_konnect_backend.config.exceptions.ActionNotPermittedException;
 import com.cdcrane.social_konnect_backend.config.exceptions.ResourceNotFoundException;
 import com.cdcrane.social_konnect_backend.posts.Post;
+import com.cdcrane.social_konnect_backend.posts.PostCounterBuffer;
 import com.cdcrane.social_konnect_backend.posts.PostRepository;
-import com.cdcrane.social_konnect_backend.users.ApplicationUser;
+import com.cdcrane.social_konnect_backend.posts.dto.PostMetadataDTO;
 import com.cdcrane.social_konnect_backend.users.dto.UsernameAndPfpDTO;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
@@ -19,12 +21,14 @@ public class LikeService implements LikeUseCase {
 
     private final LikeRepository likeRepository;
     private final PostRepository postRepository;
+    private final PostCounterBuffer counterBuffer;
     private final SecurityUtils securityUtils;
 
     @Autowired
-    public LikeService(LikeRepository likeRepository, PostRepository postRepository, SecurityUtils securityUtils) {
+    public LikeService(LikeRepository likeRepository, PostRepository postRepository, SecurityUtils securityUtils, PostCounterBuffer counterBuffer) {
         this.likeRepository = likeRepository;
         this.postRepository = postRepository;
+        this.counterBuffer = counterBuffer;
         this.securityUtils = securityUtils;
     }
 
@@ -40,20 +44,24 @@ public class LikeService implements LikeUseCase {
         Post post = postRepository.findById(postId)
                 .orElseThrow(() -> new ResourceNotFoundException("Post with id " + postId + " not found, cannot like post."));
 
-        ApplicationUser auth = securityUtils.getCurrentAuth();
+        AuthenticatedUser auth = securityUtils.getCurrentUser();
 
         // Make sure the user hasn't already liked the post.
-        if (likeRepository.existsByPostIdAndUserId(post.getId(), auth.getId())) {
+        if (likeRepository.existsByPostIdAndUserId(post.getId(), auth.id())) {
 
-            throw new ActionNotPermittedException("User " + auth.getUsername() + " is not allowed to like post with id more than once. (Only the user who has not liked the post can like it.)");
+            throw new ActionNotPermittedException("User " + auth.username() + " is not allowed to like post with id more than once. (Only the user who has not liked the post can like it.)");
         }
 
         Like like = Like.builder()
-                .user(auth)
+                .user(securityUtils.getCurrentUserReference())
                 .post(post)
                 .build();
 
-        return likeRepository.save(like);
+        Like saved = likeRepository.save(like);
+
+        counterBuffer.recordLike(post.getId(), 1);
+
+        return saved;
 
     }
 
@@ -64,13 +72,15 @@ public class LikeService implements LikeUseCase {
     @Override
     public void unlikePost(UUID postId) {
 
-        ApplicationUser auth = securityUtils.getCurrentAuth();
+        long authId = securityUtils.getCurrentUserId();
 
-        Like like = likeRepository.findByPostIdAndUserId(postId, auth.getId())
-                .orElseThrow(() -> new ResourceNotFoundException("Like with post id " + postId + " and user id " + auth.getId() + " not found, cannot unlike post."));
+        Like like = likeRepository.findByPostIdAndUserId(postId, authId)
+                .orElseThrow(() -> new ResourceNotFoundException("Like with post id " + postId + " and user id " + authId + " not found, cannot unlike post."));
 
         likeRepository.deleteById(like.getId());
 
+        counterBuffer.recordLike(postId, -1);
+
     }
 
     /**
@@ -81,10 +91,11 @@ public class LikeService implements LikeUseCase {
     @Override
     public int getLikeCountByPostId(UUID postId) {
 
-        postRepository.findById(postId)
+        PostMetadataDTO counters = postRepository.getStoredCountersByPostId(postId)
+                .map(counterBuffer::withPending)
                 .orElseThrow(() -> new ResourceNotFoundException("Post with id " + postId + " not found, cannot get like count."));
 
-        return likeRepository.countByPostId(postId);
+        return Math.toIntExact(counters.likes());
 
     }
 
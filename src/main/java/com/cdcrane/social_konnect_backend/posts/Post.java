@@ -8,15 +8,21 @@ import com.cdcrane.social_konnect_backend.users.ApplicationUser;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.ColumnDefault;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.jpa.domain.support.AuditingEntityListener;
 
 import java.time.Instant;
+import java.time.temporal.ChronoUnit;
 import java.util.List;
 import java.util.UUID;
 
 @Entity
-@Table(name = "posts")
+@Table(name = "posts", indexes = {
+        @Index(name = "idx_posts_posted_at_post_id", columnList = "posted_at DESC, post_id DESC"),
+        @Index(name = "idx_posts_user_posted_at_post_id", columnList = "user_id, posted_at DESC, post_id DESC") // For feed pages pulled from followed users' posts.
+})
 @EntityListeners(AuditingEntityListener.class) // Need this for JPA auditing, allows the @CreatedDate annotation to work.
 @AllArgsConstructor
 @NoArgsConstructor
@@ -36,13 +42,24 @@ public class Post {
 
     private String caption;
 
+    // Maintained by PostCounterBuffer with relative updates, so the entity never writes them.
+    @Column(name = "like_count", nullable = false, insertable = false, updatable = false)
+    @ColumnDefault("0")
+    private long likeCount;
+
+    @Column(name = "comment_count", nullable = false, insertable = false, updatable = false)
+    @ColumnDefault("0")
+    private long commentCount;
+
     @ManyToOne(fetch = FetchType.EAGER)
     @JoinColumn(name = "user_id")
     @JsonIgnoreProperties("posts")
     private ApplicationUser user;
 
+    // Loaded for up to a full page of posts per query, instead of one query per post.
     @OneToMany(fetch = FetchType.EAGER, cascade = CascadeType.ALL)
     @JoinColumn(name = "post_id")
+    @BatchSize(size = 50)
     private List<PostMedia> postMedia;
 
     @OneToMany(cascade = CascadeType.ALL, fetch = FetchType.LAZY)
@@ -54,9 +71,18 @@ public class Post {
     private List<Like> likes;
 
     // The instances where this post is referenced in a following feed item. Need this for the cascade delete.
-    @OneToMany(cascade = CascadeType.ALL, fetch = FetchType.LAZY)
-    @JoinColumn(name = "post_id")
+    @OneToMany(mappedBy = "post", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
     private List<FollowingFeedItem> followingFeedInstances;
 
+    /**
+     * The database stores timestamps with microsecond precision, truncate to match so the in-memory post
+     * (and any pagination cursor made from it) has the same postedAt as the row. Runs after the auditing listener.
+     */
+    @PrePersist
+    void truncatePostedAtToStoredPrecision() {
+        if (postedAt != null) {
+            postedAt = postedAt.truncatedTo(ChronoUnit.MICROS);
+        }
+    }
 
 }
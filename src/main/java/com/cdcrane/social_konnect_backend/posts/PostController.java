@@ -1,9 +1,11 @@
 package com.cdcrane.social_konnect_backend.posts;
 
+import com.cdcrane.social_konnect_backend.authentication.AuthenticatedUser;
 import com.cdcrane.social_konnect_backend.config.SecurityUtils;
+import com.cdcrane.social_konnect_backend.config.file_handling.object_storage.PresignedUpload;
+import com.cdcrane.social_konnect_backend.config.pagination.CursorPage;
 import com.cdcrane.social_konnect_backend.posts.dto.*;
 import com.cdcrane.social_konnect_backend.posts.post_media.dto.PostMediaDTO;
-import com.cdcrane.social_konnect_backend.users.ApplicationUser;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
@@ -71,19 +73,32 @@ public class PostController {
 
     }
 
+    // Get the metadata of several posts in one request, e.g. ?ids=a,b,c
+    @GetMapping("/metadata")
+    public ResponseEntity<List<PostMetadataWithLikedDTO>> getPostMetadataByPostIds(@RequestParam("ids") List<UUID> postIds){
+
+        List<PostMetadataWithLikedDTO> metadata = postUseCase.getPostMetadataWithLikedByPostIds(postIds);
+
+        return ResponseEntity.ok(metadata);
+
+    }
+
     @GetMapping("/all-with-liked-check")
-    public ResponseEntity<Page<PostDTOWithLiked>> getPostsWithLiked(@PageableDefault(size = 10) Pageable pageable){
+    public ResponseEntity<CursorPage<PostDTOWithLiked>> getPostsWithLiked(@RequestParam(required = false) String cursor,
+                                                                         @RequestParam(defaultValue = "10") int size,
+                                                                         @RequestParam(defaultValue = "false") boolean withMetadata){
 
-        Page<PostDTOWithLiked> posts = postUseCase.getPostsWithLiked(pageable);
+        CursorPage<PostDTOWithLiked> posts = postUseCase.getPostsWithLiked(cursor, CursorPage.clampSize(size), withMetadata);
 
         return ResponseEntity.ok(posts);
 
     }
 
     @GetMapping("/by-username-with-liked-check/{username}")
-    public ResponseEntity<Page<PostDTOWithLiked>> getPostsWithLikedByUsername(@PathVariable String username, @PageableDefault(size = 10) Pageable pageable){
+    public ResponseEntity<Page<PostDTOWithLiked>> getPostsWithLikedByUsername(@PathVariable String username, @PageableDefault(size = 10) Pageable pageable,
+                                                                              @RequestParam(defaultValue = "false") boolean withMetadata){
 
-        Page<PostDTOWithLiked> posts = postUseCase.getPostsWithLikedByUsername(username, pageable);
+        Page<PostDTOWithLiked> posts = postUseCase.getPostsWithLikedByUsername(username, pageable, withMetadata);
 
         return ResponseEntity.ok(posts);
 
@@ -92,12 +107,9 @@ public class PostController {
     @GetMapping("/user/{username}")
     public ResponseEntity<Page<PostDTO>> getPostsByUsername(@PathVariable String username, Pageable pageable){
 
-        Page<Post> posts = postUseCase.getPostsByUsername(username, pageable);
-
-        // Map each Post in the Page to PostDTO
-        var response = posts.map(this::convertPostToPostDTO);
+        Page<PostDTO> posts = postUseCase.getPostsByUsername(username, pageable);
 
-        return ResponseEntity.ok(response);
+        return ResponseEntity.ok(posts);
 
     }
 
@@ -119,22 +131,35 @@ public class PostController {
 
         Post savedPost = postUseCase.savePost(createPostDTO);
 
-        ApplicationUser auth = securityUtils.getCurrentAuth();
+        // The saved post only holds a reference to its creator, so use the identity from the security context.
+        AuthenticatedUser auth = securityUtils.getCurrentUser();
 
         // If just text post, return empty list.
         if(savedPost.getPostMedia() == null){
 
             // Return media as empty list
             return ResponseEntity.status(HttpStatus.CREATED).body(new PostDTO(savedPost.getId(), savedPost.getCaption(),
-                    List.of(), savedPost.getUser().getUsername(), savedPost.getPostedAt(), auth.getProfilePictureUrl()));
+                    List.of(), auth.username(), savedPost.getPostedAt(), auth.profilePictureUrl()));
 
         }
 
         // Otherwise return post with media.
         return ResponseEntity.status(HttpStatus.CREATED).body(new PostDTO(savedPost.getId(), savedPost.getCaption(),
                 savedPost.getPostMedia().stream()
-                        .map(m -> new PostMediaDTO(m.getMediaUrl(), m.getMediaType())).toList(),
-                savedPost.getUser().getUsername(), savedPost.getPostedAt(), auth.getProfilePictureUrl()));
+                        .map(PostMediaDTO::new).toList(),
+                auth.username(), savedPost.getPostedAt(), auth.profilePictureUrl()));
+
+    }
+
+
+    /**
+     * Get a presigned URL to upload one media file straight to object storage, pass the key when creating the post.
+     * @param contentType The type of the file that will be uploaded.
+     */
+    @PostMapping("/media/upload-url")
+    public ResponseEntity<PresignedUpload> createMediaUploadUrl(@RequestParam String contentType) {
+
+        return ResponseEntity.ok(postUseCase.createDirectMediaUpload(contentType));
 
     }
 
@@ -170,7 +195,7 @@ public class PostController {
 
         return new PostDTO(post.getId(), post.getCaption(),
                 post.getPostMedia().stream()
-                        .map(media -> new PostMediaDTO(media.getMediaUrl(), media.getMediaType())).collect(Collectors.toList()),
+                        .map(PostMediaDTO::new).collect(Collectors.toList()),
                 post.getUser().getUsername(), post.getPostedAt(), post.getUser().getProfilePictureUrl());
     }
 
@@ -0,0 +1,190 @@
+package com.cdcrane.social_konnect_backend.posts;
+
+import com.cdcrane.social_konnect_backend.posts.dto.PostMetadataDTO;
+import com.cdcrane.social_konnect_backend.posts.dto.PostMetadataWithLikedDTO;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Write-behind buffer for the like_count and comment_count columns on posts.
+ * Likes and comments add to an in-memory delta per post, and the deltas are flushed to the database
+ * on a schedule as one batch of "like_count = like_count + ?" updates, instead of one update per like.
+ */
+@Component
+@Slf4j
+public class PostCounterBuffer {
+
+    private static final String FLUSH_SQL =
+            "UPDATE posts SET like_count = like_count + ?, comment_count = comment_count + ? WHERE post_id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final ConcurrentHashMap<UUID, Delta> deltas = new ConcurrentHashMap<>();
+
+    private final Counter postsFlushed;
+
+    public PostCounterBuffer(JdbcTemplate jdbcTemplate, MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.postsFlushed = Counter.builder("posts.counters.flushed")
+                .description("Post counter rows updated by the write-behind flush")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Record a like being added (1) or removed (-1). Inside a transaction, the change is only recorded once it commits.
+     * @param postId The post that was liked or unliked.
+     * @param change The change in likes.
+     */
+    public void recordLike(UUID postId, long change) {
+        afterCommit(() -> deltaOf(postId, d -> d.likes.add(change)));
+    }
+
+    /**
+     * Record a comment being added (1) or removed (-1). Inside a transaction, the change is only recorded once it commits.
+     * @param postId The post that was commented on.
+     * @param change The change in comments.
+     */
+    public void recordComment(UUID postId, long change) {
+        afterCommit(() -> deltaOf(postId, d -> d.comments.add(change)));
+    }
+
+    /**
+     * @param postId The post in question.
+     * @return The like change not yet flushed to the database.
+     */
+    public long pendingLikes(UUID postId) {
+        Delta delta = deltas.get(postId);
+        return delta == null ? 0 : delta.likes.sum();
+    }
+
+    /**
+     * @param postId The post in question.
+     * @return The comment change not yet flushed to the database.
+     */
+    public long pendingComments(UUID postId) {
+        Delta delta = deltas.get(postId);
+        return delta == null ? 0 : delta.comments.sum();
+    }
+
+    /**
+     * Add the changes not yet flushed to counters read from the database.
+     * @param stored The counters as stored on the post row.
+     * @return The up-to-date counters.
+     */
+    public PostMetadataDTO withPending(PostMetadataDTO stored) {
+        return new PostMetadataDTO(stored.postId(),
+                stored.likes() + pendingLikes(stored.postId()),
+                stored.comments() + pendingComments(stored.postId()));
+    }
+
+    /**
+     * Add the changes not yet flushed to counters read from the database.
+     * @param stored The counters and like status as read from the database.
+     * @return The up-to-date counters, with the like status unchanged.
+     */
+    public PostMetadataWithLikedDTO withPending(PostMetadataWithLikedDTO stored) {
+        return new PostMetadataWithLikedDTO(stored.postId(),
+                stored.likes() + pendingLikes(stored.postId()),
+                stored.comments() + pendingComments(stored.postId()),
+                stored.liked());
+    }
+
+    /**
+     * Write all pending deltas to the database with a single JDBC batch.
+     * Synchronized with the reconciliation job so it never runs in the middle of a flush.
+     */
+    @Scheduled(fixedDelayString = "${app.posts.counters.flush-interval-ms:1000}")
+    public synchronized void flush() {
+
+        List<Object[]> updates = new ArrayList<>();
+
+        for (Map.Entry<UUID, Delta> entry : deltas.entrySet()) {
+
+            // Anything added after this point is left in the adder for the next flush.
+            long likes = entry.getValue().likes.sumThenReset();
+            long comments = entry.getValue().comments.sumThenReset();
+
+            if (likes != 0 || comments != 0) {
+                updates.add(new Object[]{likes, comments, entry.getKey()});
+            }
+        }
+
+        if (!updates.isEmpty()) {
+
+            try {
+
+                jdbcTemplate.batchUpdate(FLUSH_SQL, updates);
+                postsFlushed.increment(updates.size());
+
+                log.debug("Flushed counter changes for {} posts.", updates.size());
+
+            } catch (RuntimeException e) {
+
+                // Put the changes back so they are retried on the next flush.
+                for (Object[] update : updates) {
+                    UUID postId = (UUID) update[2];
+                    deltaOf(postId, d -> {
+                        d.likes.add((long) update[0]);
+                        d.comments.add((long) update[1]);
+                    });
+                }
+
+                log.warn("Failed to flush counter changes for {} posts, will retry: {}", updates.size(), e.toString());
+            }
+        }
+
+        // Drop entries with nothing pending, done under the map's per-key lock so no change can be lost.
+        for (UUID postId : deltas.keySet()) {
+            deltas.computeIfPresent(postId, (id, d) -> d.isZero() ? null : d);
+        }
+    }
+
+    private void deltaOf(UUID postId, Consumer<Delta> change) {
+
+        // compute() holds the per-key lock, so a change can't land on an entry that flush() is removing.
+        deltas.compute(postId, (id, d) -> {
+            Delta delta = d == null ? new Delta() : d;
+            change.accept(delta);
+            return delta;
+        });
+    }
+
+    private static void afterCommit(Runnable action) {
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private static final class Delta {
+
+        private final LongAdder likes = new LongAdder();
+        private final LongAdder comments = new LongAdder();
+
+        private boolean isZero() {
+            return likes.sum() == 0 && comments.sum() == 0;
+        }
+    }
+
+}
@@ -0,0 +1,86 @@
+package com.cdcrane.social_konnect_backend.posts;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Periodically recounts likes and comments and fixes any post whose stored counters have drifted,
+ * e.g. because deltas were lost when the application stopped before a flush.
+ * Posts are walked in batches by post ID so no single statement locks the whole table.
+ */
+@Component
+@Slf4j
+public class PostCounterReconciler {
+
+    private static final String NEXT_BATCH_SQL = "SELECT post_id FROM posts WHERE post_id > ? ORDER BY post_id LIMIT ?";
+
+    private static final String RECONCILE_SQL = """
+            UPDATE posts p
+            SET like_count = (SELECT COUNT(*) FROM likes l WHERE l.post_id = p.post_id),
+                comment_count = (SELECT COUNT(*) FROM comments c WHERE c.post_id = p.post_id)
+            WHERE p.post_id IN (:postIds)
+              AND (p.like_count <> (SELECT COUNT(*) FROM likes l WHERE l.post_id = p.post_id)
+                OR p.comment_count <> (SELECT COUNT(*) FROM comments c WHERE c.post_id = p.post_id))
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+    private final PostCounterBuffer counterBuffer;
+
+    @Value("${app.posts.counters.reconcile-batch-size:500}")
+    private int batchSize;
+
+    public PostCounterReconciler(JdbcTemplate jdbcTemplate, NamedParameterJdbcTemplate namedJdbcTemplate, PostCounterBuffer counterBuffer) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedJdbcTemplate = namedJdbcTemplate;
+        this.counterBuffer = counterBuffer;
+    }
+
+    /**
+     * Recount every post, batch by batch.
+     * @return The number of posts whose counters were corrected.
+     */
+    @Scheduled(cron = "${app.posts.counters.reconcile-cron:0 30 3 * * *}")
+    public int reconcile() {
+
+        UUID lastPostId = new UUID(0, 0);
+        int fixed = 0;
+
+        while (true) {
+
+            List<UUID> batch = jdbcTemplate.queryForList(NEXT_BATCH_SQL, UUID.class, lastPostId, batchSize);
+
+            if (batch.isEmpty()) {
+                break;
+            }
+
+            // Write pending deltas first, and hold the buffer's lock so no flush runs during the recount.
+            // A like recorded while this runs can still be counted twice, the next run corrects that.
+            synchronized (counterBuffer) {
+                counterBuffer.flush();
+                fixed += namedJdbcTemplate.update(RECONCILE_SQL, new MapSqlParameterSource("postIds", batch));
+            }
+
+            lastPostId = batch.getLast();
+
+            if (batch.size() < batchSize) {
+                break;
+            }
+        }
+
+        if (fixed > 0) {
+            log.warn("Counter reconciliation corrected {} posts.", fixed);
+        }
+
+        return fixed;
+    }
+
+}
@@ -0,0 +1,133 @@
+package com.cdcrane.social_konnect_backend.posts;
+
+import com.cdcrane.social_konnect_backend.posts.dto.PostDTO;
+import com.cdcrane.social_konnect_backend.posts.dto.PostDTOWithLiked;
+import com.cdcrane.social_konnect_backend.posts.dto.PostMetadataWithLikedDTO;
+import com.cdcrane.social_konnect_backend.posts.dto.PostRowDTO;
+import com.cdcrane.social_konnect_backend.posts.post_media.dto.PostMediaDTO;
+import com.cdcrane.social_konnect_backend.posts.post_media.dto.PostMediaRowDTO;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Turns a page of post rows into PostDTOWithLiked without loading Post entities.
+ * Media and the like status (with the counters, embedded when asked for) are each read with one query for the whole page,
+ * so the number of queries per page does not grow with the page size.
+ */
+@Component
+public class PostHydrator {
+
+    private final PostRepository postRepository;
+    private final PostCounterBuffer counterBuffer;
+
+    public PostHydrator(PostRepository postRepository, PostCounterBuffer counterBuffer) {
+        this.postRepository = postRepository;
+        this.counterBuffer = counterBuffer;
+    }
+
+    /**
+     * Load posts by ID and map them to DTOs, in the order of the given IDs.
+     * @param postIds The posts to load, e.g. the keys of a feed page.
+     * @param userId The user to check the like status for.
+     * @param withMetadata If the like and comment counts should be embedded.
+     * @return The DTOs, posts that no longer exist are left out.
+     */
+    public List<PostDTOWithLiked> hydrateByIds(List<UUID> postIds, long userId, boolean withMetadata) {
+
+        if (postIds.isEmpty()) {
+            return List.of();
+        }
+
+        Map<UUID, PostRowDTO> rowsById = postRepository.getPostRowsByIds(postIds).stream()
+                .collect(Collectors.toMap(PostRowDTO::postId, Function.identity()));
+
+        List<PostRowDTO> rows = postIds.stream()
+                .map(rowsById::get)
+                .filter(Objects::nonNull)
+                .toList();
+
+        return hydrate(rows, userId, withMetadata);
+    }
+
+    /**
+     * Map post rows to DTOs, adding their media and the like status of the user.
+     * @param rows The post rows, in the order they should be returned.
+     * @param userId The user to check the like status for.
+     * @param withMetadata If the like and comment counts should be embedded, they come from the same query as the like status.
+     * @return The DTOs, in the same order as the rows.
+     */
+    public List<PostDTOWithLiked> hydrate(List<PostRowDTO> rows, long userId, boolean withMetadata) {
+
+        if (rows.isEmpty()) {
+            return List.of();
+        }
+
+        List<UUID> postIds = rows.stream()
+                .map(PostRowDTO::postId)
+                .toList();
+
+        Map<UUID, List<PostMediaDTO>> mediaMap = getMediaMap(postIds);
+
+        // The counters are columns of the post, so reading them with the like status costs the same as leaving them out.
+        Map<UUID, PostMetadataWithLikedDTO> metadataMap = getMetadataWithLikedMap(postIds, userId);
+
+        return rows.stream()
+                .map(row -> {
+                    List<PostMediaDTO> media = mediaMap.getOrDefault(row.postId(), List.of());
+                    PostMetadataWithLikedDTO metadata = metadataMap.get(row.postId());
+                    return metadata == null
+                            ? new PostDTOWithLiked(row, media, false, null)
+                            : new PostDTOWithLiked(row, media, metadata.liked(), withMetadata ? metadata.getMetadata() : null);
+                })
+                .toList();
+    }
+
+    /**
+     * Map post rows to DTOs with their media, for listings without a like status.
+     * @param rows The post rows, in the order they should be returned.
+     * @return The DTOs, in the same order as the rows.
+     */
+    public List<PostDTO> hydrateWithoutLikeStatus(List<PostRowDTO> rows) {
+
+        if (rows.isEmpty()) {
+            return List.of();
+        }
+
+        Map<UUID, List<PostMediaDTO>> mediaMap = getMediaMap(rows.stream().map(PostRowDTO::postId).toList());
+
+        return rows.stream()
+                .map(row -> new PostDTO(row.postId(), row.caption(), mediaMap.getOrDefault(row.postId(), List.of()),
+                        row.username(), row.postedAt(), row.profilePictureUrl()))
+                .toList();
+    }
+
+    /**
+     * Get the stored counters of posts along with the like status of a user, with any buffered counter changes added.
+     * @param postIds The posts to get metadata for.
+     * @param userId The user to check the like status for.
+     * @return The metadata by post ID, posts that don't exist are missing.
+     */
+    public Map<UUID, PostMetadataWithLikedDTO> getMetadataWithLikedMap(Collection<UUID> postIds, long userId) {
+
+        return postRepository.findMetadataWithLikeStatusByPostIds(postIds, userId).stream()
+                .map(counterBuffer::withPending)
+                .collect(Collectors.toMap(PostMetadataWithLikedDTO::postId, Function.identity()));
+    }
+
+    private Map<UUID, List<PostMediaDTO>> getMediaMap(Collection<UUID> postIds) {
+
+        return postRepository.getMediaByPostIds(postIds).stream()
+                .collect(Collectors.groupingBy(
+                        PostMediaRowDTO::postId,
+                        Collectors.mapping(PostMediaDTO::new, Collectors.toList())
+                ));
+    }
+
+}
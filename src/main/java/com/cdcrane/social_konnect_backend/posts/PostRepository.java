@@ -1,14 +1,22 @@
 package com.cdcrane.social_konnect_backend.posts;
 
+import com.cdcrane.social_konnect_backend.config.pagination.PostCursor;
 import com.cdcrane.social_konnect_backend.posts.dto.PostLikeStatusDTO;
 import com.cdcrane.social_konnect_backend.posts.dto.PostMetadataDTO;
+import com.cdcrane.social_konnect_backend.posts.dto.PostMetadataWithLikedDTO;
+import com.cdcrane.social_konnect_backend.posts.dto.PostRowDTO;
+import com.cdcrane.social_konnect_backend.posts.post_media.dto.PostMediaRowDTO;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -16,38 +24,78 @@ import java.util.UUID;
 @Repository
 public interface PostRepository extends JpaRepository<Post, UUID> {
 
+    // The user is fetched with the page, media is loaded in batches (see Post.postMedia), so no query per post.
+    @EntityGraph(attributePaths = "user")
     @Query("SELECT p FROM Post p ORDER BY p.postedAt DESC ")
     Page<Post> getPostsOrderByPostedAt(Pageable pageable);
 
-    @Query("SELECT p FROM Post p WHERE p.user.username = ?1 ORDER BY p.postedAt DESC")
-    Page<Post> getPostsByUsernameOrderByPostedAt(String username, Pageable pageable);
+    // Keyset pagination, the first page and every page after a cursor.
+    // Posts are ordered by (postedAt, id) so the cursor points at exactly one position even when postedAt ties.
+    // Read as PostRowDTO projections, media is added by PostHydrator with one query for the whole page.
 
-    int countByUserId(long userId);
+    @Query("""
+        SELECT new com.cdcrane.social_konnect_backend.posts.dto.PostRowDTO(p.id, p.caption, p.postedAt, u.username, u.profilePictureUrl)
+        FROM Post p JOIN p.user u
+        ORDER BY p.postedAt DESC, p.id DESC
+    """)
+    List<PostRowDTO> getFirstPostRowsOrderByPostedAt(Limit limit);
 
     @Query("""
-        SELECT new com.cdcrane.social_konnect_backend.posts.dto.PostMetadataDTO(
-            p.id,
-            COUNT(DISTINCT l.id),
-            COUNT(DISTINCT c.id)
-        )
-        FROM Post p
-        LEFT JOIN Comment c ON c.post = p
-        LEFT JOIN Like l ON l.post = p
-        WHERE p.id = :postId
-        GROUP BY p.id
+        SELECT new com.cdcrane.social_konnect_backend.posts.dto.PostRowDTO(p.id, p.caption, p.postedAt, u.username, u.profilePictureUrl)
+        FROM Post p JOIN p.user u
+        WHERE p.postedAt < ?1 OR (p.postedAt = ?1 AND p.id < ?2)
+        ORDER BY p.postedAt DESC, p.id DESC
     """)
-    Optional<PostMetadataDTO> getPostMetadataByPostId(UUID postId);
+    List<PostRowDTO> getPostRowsBeforeCursorOrderByPostedAt(Instant postedAt, UUID postId, Limit limit);
+
+    @Query(value = """
+        SELECT new com.cdcrane.social_konnect_backend.posts.dto.PostRowDTO(p.id, p.caption, p.postedAt, u.username, u.profilePictureUrl)
+        FROM Post p JOIN p.user u
+        WHERE u.username = ?1
+        ORDER BY p.postedAt DESC
+    """, countQuery = "SELECT COUNT(p) FROM Post p WHERE p.user.username = ?1")
+    Page<PostRowDTO> getPostRowsByUsernameOrderByPostedAt(String username, Pageable pageable);
 
     @Query("""
-        SELECT new com.cdcrane.social_konnect_backend.posts.dto.PostLikeStatusDTO(
+        SELECT new com.cdcrane.social_konnect_backend.posts.dto.PostRowDTO(p.id, p.caption, p.postedAt, u.username, u.profilePictureUrl)
+        FROM Post p JOIN p.user u
+        WHERE p.id IN ?1
+    """)
+    List<PostRowDTO> getPostRowsByIds(Collection<UUID> postIds);
+
+    @Query("""
+        SELECT new com.cdcrane.social_konnect_backend.posts.post_media.dto.PostMediaRowDTO(p.id, m.mediaUrl, m.mediaType, m.thumbnailUrl, m.feedUrl, m.fullUrl)
+        FROM Post p JOIN p.postMedia m
+        WHERE p.id IN ?1
+    """)
+    List<PostMediaRowDTO> getMediaByPostIds(Collection<UUID> postIds);
+
+    int countByUserId(long userId);
+
+    // Counts the like and comment rows directly. Exact but expensive, reads use the stored counters instead.
+    /**
+     * Get the stored like and comment counters of a post, without counting rows.
+     * Changes still buffered in PostCounterBuffer are not included.
+     */
+    @Query("SELECT new com.cdcrane.social_konnect_backend.posts.dto.PostMetadataDTO(p.id, p.likeCount, p.commentCount) FROM Post p WHERE p.id = ?1")
+    Optional<PostMetadataDTO> getStoredCountersByPostId(UUID postId);
+
+    /**
+     * Get the stored counters of many posts along with the like status of one user, in a single query.
+     * Changes still buffered in PostCounterBuffer are not included.
+     */
+    @Query("""
+        SELECT new com.cdcrane.social_konnect_backend.posts.dto.PostMetadataWithLikedDTO(
             p.id,
+            p.likeCount,
+            p.commentCount,
             CASE WHEN l.id IS NOT NULL THEN true ELSE false END
         )
         FROM Post p
         LEFT JOIN Like l ON l.post.id = p.id AND l.user.id = :userId
         WHERE p.id IN :postIds
     """)
-    List<PostLikeStatusDTO> findLikeStatusByPostIds(@Param("postIds") List<UUID> postIds, @Param("userId") Long userId);
+    List<PostMetadataWithLikedDTO> findMetadataWithLikeStatusByPostIds(@Param("postIds") Collection<UUID> postIds, @Param("userId") Long userId);
 
     @Query("""
         SELECT new com.cdcrane.social_konnect_backend.posts.dto.PostLikeStatusDTO(
@@ -60,7 +108,25 @@ public interface PostRepository extends JpaRepository<Post, UUID> {
     """)
     PostLikeStatusDTO findLikeStatusByPostId(@Param("postId") UUID postId, @Param("userId") Long userId);
 
-    @Query("SELECT p FROM Post p WHERE p.user.id = ?1 ORDER BY p.postedAt DESC")
-    List<Post> getXRecentPostsByUsername(long userId, Pageable pageable);
+    // Only the sort keys, the posts that make it onto the feed page are loaded afterward by PostHydrator.
+
+    @Query("SELECT new com.cdcrane.social_konnect_backend.config.pagination.PostCursor(p.postedAt, p.id) FROM Post p WHERE p.user.id IN ?1 ORDER BY p.postedAt DESC, p.id DESC")
+    List<PostCursor> getRecentPostKeysByUserIds(Collection<Long> userIds, Limit limit);
+
+    @Query("""
+        SELECT new com.cdcrane.social_konnect_backend.config.pagination.PostCursor(p.postedAt, p.id) FROM Post p
+        WHERE p.user.id IN ?1 AND (p.postedAt < ?2 OR (p.postedAt = ?2 AND p.id < ?3))
+        ORDER BY p.postedAt DESC, p.id DESC
+    """)
+    List<PostCursor> getRecentPostKeysByUserIdsBeforeCursor(Collection<Long> userIds, Instant postedAt, UUID postId, Limit limit);
+
+    // Posts of every user the follower follows, for feed pages past what is kept in the following feed table.
+    @Query("""
+        SELECT new com.cdcrane.social_konnect_backend.config.pagination.PostCursor(p.postedAt, p.id) FROM Post p
+        WHERE p.user.id IN (SELECT f.followed.id FROM Follow f WHERE f.follower.id = ?1)
+        AND (p.postedAt < ?2 OR (p.postedAt = ?2 AND p.id < ?3))
+        ORDER BY p.postedAt DESC, p.id DESC
+    """)
+    List<PostCursor> getFollowedUsersPostKeysBeforeCursor(long followerId, Instant postedAt, UUID postId, Limit limit);
 
 }
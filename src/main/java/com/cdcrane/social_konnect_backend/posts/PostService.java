@@ -1,29 +1,43 @@
 package com.cdcrane.social_konnect_backend.posts;
 
+import com.cdcrane.social_konnect_backend.authentication.AuthenticatedUser;
 import com.cdcrane.social_konnect_backend.config.SecurityUtils;
 import com.cdcrane.social_konnect_backend.config.exceptions.ActionNotPermittedException;
+import com.cdcrane.social_konnect_backend.config.exceptions.BatchTooLargeException;
 import com.cdcrane.social_konnect_backend.config.exceptions.ResourceNotFoundException;
 import com.cdcrane.social_konnect_backend.config.file_handling.FileHandler;
+import com.cdcrane.social_konnect_backend.config.file_handling.object_storage.PresignedUpload;
+import com.cdcrane.social_konnect_backend.config.pagination.CursorPage;
+import com.cdcrane.social_konnect_backend.config.pagination.PostCursor;
 import com.cdcrane.social_konnect_backend.config.validation.TextInputValidator;
 import com.cdcrane.social_konnect_backend.posts.dto.CreatePostDTO;
+import com.cdcrane.social_konnect_backend.posts.dto.PostDTO;
 import com.cdcrane.social_konnect_backend.posts.dto.PostDTOWithLiked;
 import com.cdcrane.social_konnect_backend.posts.dto.PostLikeStatusDTO;
 import com.cdcrane.social_konnect_backend.posts.dto.PostMetadataDTO;
+import com.cdcrane.social_konnect_backend.posts.dto.PostMetadataWithLikedDTO;
+import com.cdcrane.social_konnect_backend.posts.dto.PostRowDTO;
 import com.cdcrane.social_konnect_backend.posts.events.PostCreatedEvent;
 import com.cdcrane.social_konnect_backend.posts.post_media.PostMedia;
 import com.cdcrane.social_konnect_backend.users.ApplicationUser;
 import jakarta.transaction.Transactional;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.UUID;
-import java.util.stream.Collectors;
 
 @Service
 public class PostService implements PostUseCase {
@@ -32,13 +46,23 @@ public class PostService implements PostUseCase {
     private final SecurityUtils securityUtils;
     private final FileHandler fileHandler;
     private final ApplicationEventPublisher applicationEventPublisher;
+    private final PostCounterBuffer counterBuffer;
+    private final PostHydrator postHydrator;
+    private final TransactionTemplate transactionTemplate;
+
+    // Enough for the largest page of posts.
+    static final int MAX_METADATA_BATCH_SIZE = CursorPage.MAX_PAGE_SIZE;
 
     @Autowired
-    public PostService(PostRepository postRepo, SecurityUtils securityUtils, FileHandler fileHandler, ApplicationEventPublisher applicationEventPublisher) {
+    public PostService(PostRepository postRepo, SecurityUtils securityUtils, FileHandler fileHandler, ApplicationEventPublisher applicationEventPublisher,
+                       PostCounterBuffer counterBuffer, PostHydrator postHydrator, TransactionTemplate transactionTemplate) {
         this.postRepo = postRepo;
         this.securityUtils = securityUtils;
         this.fileHandler = fileHandler;
         this.applicationEventPublisher = applicationEventPublisher;
+        this.counterBuffer = counterBuffer;
+        this.postHydrator = postHydrator;
+        this.transactionTemplate = transactionTemplate;
     }
 
     // -------------------------------- Retrieve data --------------------------------
@@ -71,58 +95,54 @@ public class PostService implements PostUseCase {
 
     /**
      * Get all posts by username, paginated and ordered by creation date, newest first.
+     * Read as projections, with the media of the whole page in one query.
      * @param username The username to search by.
      * @param pageable Pageable data from request.
      * @return Page of posts created by a specific user.
      */
     @Override
-    @Transactional
-    public Page<Post> getPostsByUsername(String username, Pageable pageable) {
+    public Page<PostDTO> getPostsByUsername(String username, Pageable pageable) {
 
-        Page<Post> posts = this.postRepo.getPostsByUsernameOrderByPostedAt(username, pageable);
+        Page<PostRowDTO> postsPage = this.postRepo.getPostRowsByUsernameOrderByPostedAt(username, pageable);
 
-        if (posts.isEmpty()) {
+        if (postsPage.isEmpty()) {
             throw new ResourceNotFoundException("No posts found for user with username " + username);
         }
 
-        return posts;
+        List<PostDTO> posts = postHydrator.hydrateWithoutLikeStatus(postsPage.getContent());
+
+        return new PageImpl<>(posts, postsPage.getPageable(), postsPage.getTotalElements());
 
     }
 
     /**
-     * Retrieve a Page of PostDTO with the addition of a check if the user sending the request has liked these posts.
-     * @param pageable For pagination
-     * @return A Page of PostDTOWithLiked containing post-data and the liked boolean.
+     * Retrieve a page of PostDTO with the addition of a check if the user sending the request has liked these posts.
+     * Uses keyset pagination, so every page costs the same no matter how far the user has scrolled.
+     * @param cursor The nextCursor from the previous page, or null for the first page.
+     * @param size The number of posts to return.
+     * @param withMetadata If the like and comment counts should be embedded in each post.
+     * @return A CursorPage of PostDTOWithLiked containing post-data and the liked boolean.
      */
     @Override
-    public Page<PostDTOWithLiked> getPostsWithLiked(Pageable pageable) {
+    public CursorPage<PostDTOWithLiked> getPostsWithLiked(String cursor, int size, boolean withMetadata) {
 
-        ApplicationUser user = securityUtils.getCurrentAuth();
+        long userId = securityUtils.getCurrentUserId();
 
-        Page<Post> postsPage = this.postRepo.getPostsOrderByPostedAt(pageable);
+        PostCursor after = cursor == null ? null : PostCursor.decode(cursor);
 
-        if(postsPage.isEmpty()) {
-            throw new ResourceNotFoundException("No posts found");
-        }
+        // Fetch one extra row to know if there is a next page.
+        List<PostRowDTO> rows = after == null
+                ? this.postRepo.getFirstPostRowsOrderByPostedAt(Limit.of(size + 1))
+                : this.postRepo.getPostRowsBeforeCursorOrderByPostedAt(after.postedAt(), after.postId(), Limit.of(size + 1));
 
-        // Extract IDs
-        List<UUID> postIds = postsPage.getContent().stream()
-                .map(Post::getId)
-                .toList();
+        CursorPage<PostRowDTO> postsPage = CursorPage.fromRows(rows, size, PostCursor::of);
 
-        // Get like status of these posts
-        List<PostLikeStatusDTO> likeStatuses = postRepo.findLikeStatusByPostIds(postIds, user.getId());
-
-        Map<UUID, Boolean> likeStatusMap = likeStatuses.stream()
-                .collect(Collectors.toMap(
-                        PostLikeStatusDTO::postId,
-                        PostLikeStatusDTO::liked
-                ));
+        // An empty page after a cursor just means the end was reached, e.g. the last posts were deleted.
+        if(postsPage.isEmpty() && after == null) {
+            throw new ResourceNotFoundException("No posts found");
+        }
 
-        return postsPage.map(post -> {
-            boolean liked = likeStatusMap.getOrDefault(post.getId(), false);
-            return new PostDTOWithLiked(post, liked);
-        });
+        return postsPage.withContent(postHydrator.hydrate(postsPage.content(), userId, withMetadata));
 
     }
 
@@ -131,55 +151,73 @@ public class PostService implements PostUseCase {
      * with the addition of a check if the user sending the request has liked these posts.
      * @param username Whose posts we want to see.
      * @param pageable For pagination
+     * @param withMetadata If the like and comment counts should be embedded in each post.
      * @return A Page of PostDTOWithLiked containing post-data and the liked boolean.
      */
     @Override
-    public Page<PostDTOWithLiked> getPostsWithLikedByUsername(String username, Pageable pageable) {
+    public Page<PostDTOWithLiked> getPostsWithLikedByUsername(String username, Pageable pageable, boolean withMetadata) {
 
-        Page<Post> postsPage = this.postRepo.getPostsByUsernameOrderByPostedAt(username, pageable);
+        Page<PostRowDTO> postsPage = this.postRepo.getPostRowsByUsernameOrderByPostedAt(username, pageable);
 
         // Get the current user for the like check.
-        ApplicationUser currentAuthUser = securityUtils.getCurrentAuth();
+        long currentUserId = securityUtils.getCurrentUserId();
 
 
         if(postsPage.isEmpty()) {
             throw new ResourceNotFoundException("No posts found");
         }
 
-        // Extract IDs
-        List<UUID> postIds = postsPage.getContent().stream()
-                .map(Post::getId)
-                .toList();
-
-        // Get like status of these posts
-        List<PostLikeStatusDTO> likeStatuses = postRepo.findLikeStatusByPostIds(postIds, currentAuthUser.getId());
+        List<PostDTOWithLiked> posts = postHydrator.hydrate(postsPage.getContent(), currentUserId, withMetadata);
 
-        Map<UUID, Boolean> likeStatusMap = likeStatuses.stream()
-                .collect(Collectors.toMap(
-                        PostLikeStatusDTO::postId,
-                        PostLikeStatusDTO::liked
-                ));
-
-        return postsPage.map(post -> {
-            boolean liked = likeStatusMap.getOrDefault(post.getId(), false);
-            return new PostDTOWithLiked(post, liked);
-        });
+        return new PageImpl<>(posts, postsPage.getPageable(), postsPage.getTotalElements());
 
     }
 
     /**
      * Get the metadata of a post, including the like and comment count for now.
+     * Reads the counters stored on the post, plus any changes not yet flushed.
      * @param postId Target post-ID.
      * @return The metadata in DTO form.
      */
     @Override
     public PostMetadataDTO getPostMetadataByPostId(UUID postId) {
 
-        return this.postRepo.getPostMetadataByPostId(postId)
+        return this.postRepo.getStoredCountersByPostId(postId)
+                .map(counterBuffer::withPending)
                 .orElseThrow(() -> new ResourceNotFoundException("Post with id " + postId + " not found, cannot get metadata."));
 
     }
 
+    /**
+     * Get the metadata of many posts at once, along with whether the current user has liked each one.
+     * Made for feed pages, so the like count, comment count and like status of every post card
+     * come from one query instead of several requests per post.
+     * @param postIds The posts to get metadata for, at most MAX_METADATA_BATCH_SIZE.
+     * @return The metadata in the order the IDs were given, posts that don't exist are left out.
+     */
+    @Override
+    public List<PostMetadataWithLikedDTO> getPostMetadataWithLikedByPostIds(Collection<UUID> postIds) {
+
+        // Remove duplicates but keep the requested order.
+        Set<UUID> distinctIds = new LinkedHashSet<>(postIds);
+
+        if (distinctIds.size() > MAX_METADATA_BATCH_SIZE) {
+            throw new BatchTooLargeException("Cannot get metadata for more than " + MAX_METADATA_BATCH_SIZE + " posts at once.");
+        }
+
+        if (distinctIds.isEmpty()) {
+            return List.of();
+        }
+
+        Map<UUID, PostMetadataWithLikedDTO> metadataMap = postHydrator.getMetadataWithLikedMap(distinctIds, securityUtils.getCurrentUserId());
+
+        return distinctIds.stream()
+                .map(metadataMap::get)
+                .filter(Objects::nonNull)
+                .toList();
+
+    }
+
     /**
      * Get a specific post by ID, including if the current user has liked it or not.
      * @param postId The post ID to search by.
@@ -188,12 +226,12 @@ public class PostService implements PostUseCase {
     @Override
     public PostDTOWithLiked getPostWithLikedById(UUID postId) {
 
-        ApplicationUser user = securityUtils.getCurrentAuth();
+        long userId = securityUtils.getCurrentUserId();
 
         Post post = postRepo.findById(postId)
                 .orElseThrow(() -> new ResourceNotFoundException("Post with id " + postId + " not found."));
 
-        PostLikeStatusDTO likeStatus = postRepo.findLikeStatusByPostId(postId, user.getId());
+        PostLikeStatusDTO likeStatus = postRepo.findLikeStatusByPostId(postId, userId);
 
         return new PostDTOWithLiked(post, likeStatus.liked());
 
@@ -210,46 +248,79 @@ public class PostService implements PostUseCase {
 
     /**
      * Save a new post in the database, along with media if present.
+     * The files are stored (or, for direct uploads, checked) before the transaction opens,
+     * so a DB connection is only held for the insert itself, and are deleted again if the post cannot be saved.
      * @param createPostDTO A DTO containing Post information to persist.
      * @return The Post object saved.
      */
     @Override
-    @Transactional
     public Post savePost(CreatePostDTO createPostDTO) {
 
-        // Initialize an empty media list.
-        List<PostMedia> media = new ArrayList<>();
+        boolean hasFiles = createPostDTO.files() != null && !createPostDTO.files().isEmpty();
+        boolean hasMediaKeys = createPostDTO.mediaKeys() != null && !createPostDTO.mediaKeys().isEmpty();
 
         // If there are no files, set to null.
-        if (createPostDTO.files() == null || createPostDTO.files().isEmpty()) {
+        List<PostMedia> postMedia = hasFiles || hasMediaKeys ? new ArrayList<>() : null;
 
-            media = null;
+        try {
 
-        } else {
-            media = fileHandler.saveFiles(createPostDTO.files());
+            if (hasFiles) {
+                postMedia.addAll(fileHandler.saveFiles(createPostDTO.files()));
+            }
 
-        }
+            // If a key can't be claimed, the files stored above are deleted below.
+            if (hasMediaKeys) {
+                postMedia.addAll(fileHandler.claimDirectUploads(createPostDTO.mediaKeys(), securityUtils.getCurrentUserId()));
+            }
 
-        Post post = Post.builder()
-                .caption(createPostDTO.caption())
-                .postMedia(media)
-                .build();
+            return transactionTemplate.execute(status -> {
 
-        ApplicationUser user = securityUtils.getCurrentAuth();
+                Post post = Post.builder()
+                        .caption(createPostDTO.caption())
+                        .postMedia(postMedia)
+                        .build();
 
-        // Set the currently authed user as creator of Post.
-        post.setUser(user);
+                // Only a reference is needed to set the creator, the user is not loaded.
+                ApplicationUser user = securityUtils.getCurrentUserReference();
 
-        // Remove bad HTML tags from the caption.
-        String cleanCaption = TextInputValidator.removeHtmlTagsAllowBasic(post.getCaption());
+                // Set the currently authed user as creator of Post.
+                post.setUser(user);
 
-        post.setCaption(cleanCaption);
+                // Remove bad HTML tags from the caption.
+                String cleanCaption = TextInputValidator.removeHtmlTagsAllowBasic(post.getCaption());
+
+                post.setCaption(cleanCaption);
+
+                Post savedPost = postRepo.save(post);
+
+                applicationEventPublisher.publishEvent(new PostCreatedEvent(savedPost, user));
 
-        Post savedPost = postRepo.save(post);
+                return savedPost;
+            });
 
-        applicationEventPublisher.publishEvent(new PostCreatedEvent(savedPost, user));
+        } catch (RuntimeException e) {
+
+            // Don't leave files behind for a post that doesn't exist.
+            if (postMedia != null) {
+                for (PostMedia pm : postMedia) {
+                    fileHandler.deleteFile(pm.getFileName());
+                }
+            }
+
+            throw e;
+        }
+
+    }
+
+    /**
+     * Let the client upload a post media file straight to object storage instead of through the API.
+     * @param contentType The type of the file that will be uploaded.
+     * @return The presigned upload, its key is passed in CreatePostDTO.mediaKeys when creating the post.
+     */
+    @Override
+    public PresignedUpload createDirectMediaUpload(String contentType) {
 
-        return savedPost;
+        return fileHandler.createDirectUpload(contentType, securityUtils.getCurrentUserId());
 
     }
 
@@ -263,11 +334,11 @@ public class PostService implements PostUseCase {
     @Transactional
     public void deletePost(UUID postId) {
 
-        ApplicationUser user = securityUtils.getCurrentAuth();
+        AuthenticatedUser user = securityUtils.getCurrentUser();
 
         Post post = postRepo.findById(postId).orElseThrow(() -> new ResourceNotFoundException("Post with id " + postId + " not found, cannot delete post."));
 
-        if(post.getUser().getId() == user.getId()){
+        if(post.getUser().getId() == user.id()){
 
             List<PostMedia> postMedia = post.getPostMedia();
 
@@ -284,7 +355,7 @@ public class PostService implements PostUseCase {
 
         } else {
 
-            throw new ActionNotPermittedException("User " + user.getUsername() + " is not allowed to delete post with id " + postId + " as it does not belong to them. (Only the user who created the post can delete it.)");
+            throw new ActionNotPermittedException("User " + user.username() + " is not allowed to delete post with id " + postId + " as it does not belong to them. (Only the user who created the post can delete it.)");
         }
 
     }
@@ -301,13 +372,13 @@ public class PostService implements PostUseCase {
     @Transactional
     public Post updatePostCaption(UUID postId, String caption) {
 
-        ApplicationUser user = securityUtils.getCurrentAuth();
+        AuthenticatedUser user = securityUtils.getCurrentUser();
 
         Post post = postRepo.findById(postId).orElseThrow(() -> new ResourceNotFoundException("Post with id " + postId + " not found, cannot update caption."));
 
-        if (post.getUser().getId() != user.getId()) {
+        if (post.getUser().getId() != user.id()) {
 
-            throw new ActionNotPermittedException("User " + user.getUsername() + " is not allowed to update post with id " + postId + " as it does not belong to them. (Only the user who created the post can update it.)");
+            throw new ActionNotPermittedException("User " + user.username() + " is not allowed to update post with id " + postId + " as it does not belong to them. (Only the user who created the post can update it.)");
         }
 
         String cleanCaption = TextInputValidator.removeHtmlTagsAllowBasic(caption);
@@ -318,4 +389,4 @@ public class PostService implements PostUseCase {
 
     }
 
-}
\ No newline at end of file
+}
@@ -1,22 +1,28 @@
 package com.cdcrane.social_konnect_backend.posts;
 
+import com.cdcrane.social_konnect_backend.config.file_handling.object_storage.PresignedUpload;
+import com.cdcrane.social_konnect_backend.config.pagination.CursorPage;
 import com.cdcrane.social_konnect_backend.posts.dto.CreatePostDTO;
+import com.cdcrane.social_konnect_backend.posts.dto.PostDTO;
 import com.cdcrane.social_konnect_backend.posts.dto.PostDTOWithLiked;
 import com.cdcrane.social_konnect_backend.posts.dto.PostMetadataDTO;
+import com.cdcrane.social_konnect_backend.posts.dto.PostMetadataWithLikedDTO;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.UUID;
 
 public interface PostUseCase {
 
     Page<Post> getAllPosts(Pageable pageable);
 
-    Page<Post> getPostsByUsername(String username, Pageable pageable);
+    Page<PostDTO> getPostsByUsername(String username, Pageable pageable);
 
-    Page<PostDTOWithLiked> getPostsWithLiked(Pageable pageable);
+    CursorPage<PostDTOWithLiked> getPostsWithLiked(String cursor, int size, boolean withMetadata);
 
-    Page<PostDTOWithLiked> getPostsWithLikedByUsername(String username, Pageable pageable);
+    Page<PostDTOWithLiked> getPostsWithLikedByUsername(String username, Pageable pageable, boolean withMetadata);
 
     PostDTOWithLiked getPostWithLikedById(UUID postId);
 
@@ -24,10 +30,14 @@ public interface PostUseCase {
 
     PostMetadataDTO getPostMetadataByPostId(UUID postId);
 
+    List<PostMetadataWithLikedDTO> getPostMetadataWithLikedByPostIds(Collection<UUID> postIds);
+
     int getPostCountByUserId(long userId);
 
     Post savePost(CreatePostDTO createPostDTO);
 
+    PresignedUpload createDirectMediaUpload(String contentType);
+
     void deletePost(UUID postId);
 
     Post updatePostCaption(UUID postId, String caption);
@@ -7,6 +7,13 @@ import org.springframework.web.multipart.MultipartFile;
 
 import java.util.List;
 
+// mediaKeys are files the client already uploaded straight to object storage, see PostController.createMediaUploadUrl.
 public record CreatePostDTO(@NotBlank @Max(value = 254, message = "Post caption cannot be longer than 254 characters.") String caption,
-                            List<MultipartFile> files) {
+                            List<MultipartFile> files,
+                            List<String> mediaKeys) {
+
+    public CreatePostDTO(String caption, List<MultipartFile> files) {
+        this(caption, files, null);
+    }
+
 }
@@ -2,27 +2,40 @@ package com.cdcrane.social_konnect_backend.posts.dto;
 
 import com.cdcrane.social_konnect_backend.posts.Post;
 import com.cdcrane.social_konnect_backend.posts.post_media.dto.PostMediaDTO;
+import com.fasterxml.jackson.annotation.JsonInclude;
 
 import java.time.Instant;
 import java.util.List;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
-public record PostDTOWithLiked(UUID postId, String caption, List<PostMediaDTO> media, String username, Instant createdAt, String profilePictureUrl, boolean liked) {
+public record PostDTOWithLiked(UUID postId, String caption, List<PostMediaDTO> media, String username, Instant createdAt, String profilePictureUrl, boolean liked,
+                               @JsonInclude(JsonInclude.Include.NON_NULL) PostMetadataDTO metadata) {
 
     // Constructor for existing posts
     public PostDTOWithLiked(Post post, boolean liked) {
+        this(post, liked, null);
+    }
+
+    // Constructor for posts read as projections, media is loaded separately.
+    public PostDTOWithLiked(PostRowDTO row, List<PostMediaDTO> media, boolean liked, PostMetadataDTO metadata) {
+        this(row.postId(), row.caption(), media, row.username(), row.postedAt(), row.profilePictureUrl(), liked, metadata);
+    }
+
+    // Constructor for existing posts, with the like and comment counts embedded.
+    public PostDTOWithLiked(Post post, boolean liked, PostMetadataDTO metadata) {
         this(
                 post.getId(),
                 post.getCaption(),
                 post.getPostMedia() != null ?
                         post.getPostMedia().stream()
-                                .map(media -> new PostMediaDTO(media.getMediaUrl(), media.getMediaType()))
+                                .map(PostMediaDTO::new)
                                 .collect(Collectors.toList()) : List.of(),
                 post.getUser().getUsername(),
                 post.getPostedAt(),
                 post.getUser().getProfilePictureUrl(),
-                liked
+                liked,
+                metadata
         );
     }
 
@@ -0,0 +1,20 @@
+package com.cdcrane.social_konnect_backend.posts.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.UUID;
+
+public record PostMetadataWithLikedDTO(@JsonProperty("post_id") UUID postId, Long likes, Long comments, boolean liked) {
+
+    @JsonIgnore
+    public PostMetadataDTO getMetadata() {
+        return new PostMetadataDTO(postId, likes, comments);
+    }
+
+    @JsonIgnore
+    public PostLikeStatusDTO getLikeStatus() {
+        return new PostLikeStatusDTO(postId, liked);
+    }
+
+}
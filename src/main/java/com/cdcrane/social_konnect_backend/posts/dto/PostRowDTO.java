@@ -0,0 +1,11 @@
+package com.cdcrane.social_konnect_backend.posts.dto;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * The columns of a post and its creator needed to list it, read with a projection instead of loading the Post entity.
+ * Media is loaded separately for a whole page at once, see PostHydrator.
+ */
+public record PostRowDTO(UUID postId, String caption, Instant postedAt, String username, String profilePictureUrl) {
+}
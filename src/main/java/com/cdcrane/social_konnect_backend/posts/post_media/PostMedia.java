@@ -28,4 +28,14 @@ public class PostMedia {
     @Column(name = "file_name")
     private String fileName;
 
+    // Downscaled copies of images, null until they are generated after the post is saved, or for videos.
+    @Column(name = "thumbnail_url")
+    private String thumbnailUrl;
+
+    @Column(name = "feed_url")
+    private String feedUrl;
+
+    @Column(name = "full_url")
+    private String fullUrl;
+
 }
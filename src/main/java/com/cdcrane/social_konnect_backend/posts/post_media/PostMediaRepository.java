@@ -0,0 +1,19 @@
+package com.cdcrane.social_konnect_backend.posts.post_media;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.UUID;
+
+public interface PostMediaRepository extends JpaRepository<PostMedia, UUID> {
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE PostMedia m SET m.thumbnailUrl = :thumbnailUrl, m.feedUrl = :feedUrl, m.fullUrl = :fullUrl WHERE m.id = :mediaId")
+    int setVariantUrls(@Param("mediaId") UUID mediaId, @Param("thumbnailUrl") String thumbnailUrl,
+                       @Param("feedUrl") String feedUrl, @Param("fullUrl") String fullUrl);
+
+}
@@ -1,7 +1,22 @@
 package com.cdcrane.social_konnect_backend.posts.post_media.dto;
 
+import com.cdcrane.social_konnect_backend.posts.post_media.PostMedia;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
+// The variant URLs are left out until they are generated, clients should fall back to media_url.
 public record PostMediaDTO(@JsonProperty("media_url") String mediaUrl,
-                           @JsonProperty("media_type") String mediaType) {
+                           @JsonProperty("media_type") String mediaType,
+                           @JsonProperty("thumbnail_url") @JsonInclude(JsonInclude.Include.NON_NULL) String thumbnailUrl,
+                           @JsonProperty("feed_url") @JsonInclude(JsonInclude.Include.NON_NULL) String feedUrl,
+                           @JsonProperty("full_url") @JsonInclude(JsonInclude.Include.NON_NULL) String fullUrl) {
+
+    public PostMediaDTO(PostMedia media) {
+        this(media.getMediaUrl(), media.getMediaType(), media.getThumbnailUrl(), media.getFeedUrl(), media.getFullUrl());
+    }
+
+    public PostMediaDTO(PostMediaRowDTO row) {
+        this(row.mediaUrl(), row.mediaType(), row.thumbnailUrl(), row.feedUrl(), row.fullUrl());
+    }
+
 }
@@ -0,0 +1,7 @@
+package com.cdcrane.social_konnect_backend.posts.post_media.dto;
+
+import java.util.UUID;
+
+// A media item along with the post it belongs to, so media for many posts can be read in one query.
+public record PostMediaRowDTO(UUID postId, String mediaUrl, String mediaType, String thumbnailUrl, String feedUrl, String fullUrl) {
+}
@@ -3,8 +3,10 @@ package com.cdcrane.social_konnect_backend.users;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 import java.util.Optional;
@@ -36,4 +38,13 @@ public interface UserRepository extends JpaRepository<ApplicationUser, Long> {
     @Query("SELECT u.profilePictureUrl FROM ApplicationUser u WHERE u.username = ?1")
     String getProfilePictureUrlByUsername(String username);
 
+    /**
+     * Replace the profile picture URL, unless the user changed their picture again in the meantime.
+     * @return 1 if the URL was replaced.
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE ApplicationUser u SET u.profilePictureUrl = :newUrl WHERE u.id = :userId AND u.profilePictureUrl = :currentUrl")
+    int replaceProfilePictureUrl(@Param("userId") long userId, @Param("currentUrl") String currentUrl, @Param("newUrl") String newUrl);
+
 }
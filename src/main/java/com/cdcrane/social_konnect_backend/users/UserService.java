@@ -19,6 +19,7 @@ import com.cdcrane.social_konnect_backend.roles.exceptions.RoleNotFoundException
 import com.cdcrane.social_konnect_backend.users.dto.ChangeBioAndPfpDTO;
 import com.cdcrane.social_konnect_backend.users.dto.UserMetadataDTO;
 import com.cdcrane.social_konnect_backend.users.dto.UserSearchResultDTO;
+import com.cdcrane.social_konnect_backend.users.events.ProfilePictureChangedEvent;
 import com.cdcrane.social_konnect_backend.users.exceptions.UnableToChangePasswordException;
 import com.cdcrane.social_konnect_backend.users.exceptions.UserNotFoundException;
 import com.cdcrane.social_konnect_backend.users.exceptions.UsernameTakenException;
@@ -51,9 +52,10 @@ public class UserService implements UserUseCase {
     private final PostUseCase postUseCase;
     private final FollowUseCase followUseCase;
     private final FollowRepository followRepository;
+    private final UserSummaryCache userSummaryCache;
 
     @Autowired
-    public UserService(UserRepository userRepository, PasswordEncoder encoder, RoleRepository roleRepo, SecurityUtils securityUtils, ApplicationEventPublisher eventPublisher, FileHandler fileHandler, PostUseCase postUseCase, FollowUseCase followUseCase, FollowRepository followRepository) {
+    public UserService(UserRepository userRepository, PasswordEncoder encoder, RoleRepository roleRepo, SecurityUtils securityUtils, ApplicationEventPublisher eventPublisher, FileHandler fileHandler, PostUseCase postUseCase, FollowUseCase followUseCase, FollowRepository followRepository, UserSummaryCache userSummaryCache) {
         this.userRepository = userRepository;
         this.encoder = encoder;
         this.roleRepo = roleRepo;
@@ -63,6 +65,7 @@ public class UserService implements UserUseCase {
         this.postUseCase = postUseCase;
         this.followUseCase = followUseCase;
         this.followRepository = followRepository;
+        this.userSummaryCache = userSummaryCache;
     }
 
     @Override
@@ -186,11 +189,11 @@ public class UserService implements UserUseCase {
 
         }
 
-        ApplicationUser currentUser = securityUtils.getCurrentAuth();
+        long currentUserId = securityUtils.getCurrentUserId();
 
         List<Long> userIds = users.stream().map(ApplicationUser::getId).toList();
 
-        List<FollowStatusDTO> followStatuses = followRepository.checkFollowStatusForUsers(currentUser.getId(), userIds);
+        List<FollowStatusDTO> followStatuses = followRepository.checkFollowStatusForUsers(currentUserId, userIds);
 
         Map<Long, Boolean> followStatusMap = followStatuses.stream()
                 .collect(Collectors.toMap(
@@ -213,7 +216,7 @@ public class UserService implements UserUseCase {
     @Override
     public UserMetadataDTO getUserMetadataByUsername(String username) {
 
-        ApplicationUser currentUser = securityUtils.getCurrentAuth();
+        long currentUserId = securityUtils.getCurrentUserId();
 
         ApplicationUser targetUser = userRepository.findByUsername(username)
                 .orElseThrow(() -> new UserNotFoundException("User with username " + username + " not found"));
@@ -221,7 +224,7 @@ public class UserService implements UserUseCase {
         int postCount = postUseCase.getPostCountByUserId(targetUser.getId());
         int followerCount = followUseCase.getFollowerCountByUserId(targetUser.getId());
         int followingCount = followUseCase.getFollowingCountByUserId(targetUser.getId());
-        boolean currentUserFollowsTarget = followUseCase.existsByFollowerAndFollowed(currentUser.getId(), targetUser.getId());
+        boolean currentUserFollowsTarget = followUseCase.existsByFollowerAndFollowed(currentUserId, targetUser.getId());
 
         return new UserMetadataDTO(followerCount, followingCount, postCount, currentUserFollowsTarget);
 
@@ -234,11 +237,11 @@ public class UserService implements UserUseCase {
     @Override
     public UserMetadataDTO getCurrentUserMetadata() {
 
-        ApplicationUser currentUser = securityUtils.getCurrentAuth();
+        long currentUserId = securityUtils.getCurrentUserId();
 
-        int postCount = postUseCase.getPostCountByUserId(currentUser.getId());
-        int followerCount = followUseCase.getFollowerCountByUserId(currentUser.getId());
-        int followingCount = followUseCase.getFollowingCountByUserId(currentUser.getId());
+        int postCount = postUseCase.getPostCountByUserId(currentUserId);
+        int followerCount = followUseCase.getFollowerCountByUserId(currentUserId);
+        int followingCount = followUseCase.getFollowingCountByUserId(currentUserId);
 
         return new UserMetadataDTO(followerCount, followingCount, postCount, null);
 
@@ -353,7 +356,14 @@ public class UserService implements UserUseCase {
             user.setProfilePictureUrl(pfpUrl);
             user.setBio(dto.bio());
 
-            return userRepository.save(user);
+            ApplicationUser saved = userRepository.save(user);
+
+            // The cached identity includes the profile picture.
+            userSummaryCache.invalidate(user.getUsername());
+
+            eventPublisher.publishEvent(new ProfilePictureChangedEvent(user.getId(), user.getUsername(), pfpUrl));
+
+            return saved;
 
         } else {
 
@@ -375,9 +385,17 @@ public class UserService implements UserUseCase {
 
         ApplicationUser auth = securityUtils.getCurrentAuth();
 
+        String oldName = auth.getUsername();
+
         auth.setUsername(newName);
 
-        return userRepository.save(auth);
+        ApplicationUser saved = userRepository.save(auth);
+
+        // Identities are cached by username, so drop both the old and new name.
+        userSummaryCache.invalidate(oldName);
+        userSummaryCache.invalidate(newName);
+
+        return saved;
 
     }
 
@@ -416,6 +434,8 @@ public class UserService implements UserUseCase {
 
         userRepository.delete(user);
 
+        userSummaryCache.invalidate(user.getUsername());
+
     }
 
 }
@@ -0,0 +1,61 @@
+package com.cdcrane.social_konnect_backend.users;
+
+import com.cdcrane.social_konnect_backend.authentication.AuthenticatedUser;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Short lived cache of user identities by username, used to resolve the user behind a JWT without a database query on every request.
+ * Entries must be invalidated whenever the username or profile picture of a user changes, or the user is deleted.
+ */
+@Component
+public class UserSummaryCache {
+
+    private final UserRepository userRepository;
+
+    private final Cache<String, AuthenticatedUser> summaries;
+
+    public UserSummaryCache(UserRepository userRepository, MeterRegistry meterRegistry,
+                            @Value("${app.auth.user-summary-cache.ttl:PT1M}") Duration ttl,
+                            @Value("${app.auth.user-summary-cache.max-size:50000}") long maxSize) {
+
+        this.userRepository = userRepository;
+
+        this.summaries = Caffeine.newBuilder()
+                .expireAfterWrite(ttl)
+                .maximumSize(maxSize)
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, summaries, "auth.user-summary");
+    }
+
+    /**
+     * Get the identity of a user by their username, loading it from the database on a miss.
+     * @param username The username from the JWT.
+     * @return The identity, or empty if no user has this username.
+     */
+    public Optional<AuthenticatedUser> getByUsername(String username) {
+
+        // Misses for unknown usernames are not cached, a null from the loader leaves no entry.
+        return Optional.ofNullable(summaries.get(username, name -> userRepository.findByUsername(name)
+                .map(u -> new AuthenticatedUser(u.getId(), u.getUsername(), u.getProfilePictureUrl()))
+                .orElse(null)));
+    }
+
+    /**
+     * Remove the cached identity for a username.
+     * @param username The username to forget.
+     */
+    public void invalidate(String username) {
+        summaries.invalidate(username);
+    }
+
+}
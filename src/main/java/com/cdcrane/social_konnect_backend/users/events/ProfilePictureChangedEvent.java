@@ -0,0 +1,4 @@
+package com.cdcrane.social_konnect_backend.users.events;
+
+public record ProfilePictureChangedEvent(long userId, String username, String profilePictureUrl) {
+}
@@ -0,0 +1,83 @@
+package com.cdcrane.social_konnect_backend.authentication;
+
+import io.jsonwebtoken.Claims;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class JWTUtilTest {
+
+    private final Authentication auth = new UsernamePasswordAuthenticationToken("testuser", null, AuthorityUtils.createAuthorityList("ROLE_USER"));
+
+    private JWTUtil createJwtUtil(int expirationInMs) {
+
+        JWTUtil jwtUtil = new JWTUtil(new SimpleMeterRegistry());
+
+        ReflectionTestUtils.setField(jwtUtil, "jwtSecret", "a-test-secret-that-is-long-enough-for-hmac-sha-256");
+        ReflectionTestUtils.setField(jwtUtil, "jwtIssuer", "test");
+        ReflectionTestUtils.setField(jwtUtil, "jwtExpirationInMs", expirationInMs);
+        ReflectionTestUtils.setField(jwtUtil, "verifiedCacheMaxSize", 100L);
+        ReflectionTestUtils.invokeMethod(jwtUtil, "initializeSecretKey");
+
+        return jwtUtil;
+    }
+
+    @Test
+    void shouldValidateJwtAndServeRepeatsFromCache(){
+
+        // Given
+        JWTUtil underTest = createJwtUtil(60_000);
+        String jwt = underTest.createNewJwt(auth).token();
+
+        // When
+        Claims first = underTest.validateJwt(jwt);
+        Claims second = underTest.validateJwt(jwt);
+
+        // Then
+        assertThat(first.get("username", String.class)).isEqualTo("testuser");
+        assertThat(second).isSameAs(first); // Not parsed again
+
+    }
+
+    @Test
+    void shouldNotValidateCachedJwtOnceExpired() throws InterruptedException {
+
+        // Given a token that expires in a couple of seconds, validated (and cached) while still valid.
+        // The exp claim only has second precision, so anything shorter can already be expired when first validated.
+        JWTUtil underTest = createJwtUtil(2000);
+        String jwt = underTest.createNewJwt(auth).token();
+        underTest.validateJwt(jwt);
+
+        // When
+        Thread.sleep(2500);
+
+        // Then
+        assertThatThrownBy(() -> underTest.validateJwt(jwt)).isInstanceOf(BadCredentialsException.class);
+
+    }
+
+    @Test
+    void shouldNotValidateTamperedJwt(){
+
+        // Given
+        JWTUtil underTest = createJwtUtil(60_000);
+        String jwt = underTest.createNewJwt(auth).token();
+        underTest.validateJwt(jwt);
+
+        // Flip a character in the signature
+        char last = jwt.charAt(jwt.length() - 2);
+        String tampered = jwt.substring(0, jwt.length() - 2) + (last == 'A' ? 'B' : 'A') + jwt.charAt(jwt.length() - 1);
+
+        // Then
+        assertThatThrownBy(() -> underTest.validateJwt(tampered)).isInstanceOf(BadCredentialsException.class);
+
+    }
+
+}
@@ -0,0 +1,87 @@
+package com.cdcrane.social_konnect_backend.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AsyncConfigTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final AsyncConfig underTest = new AsyncConfig(meterRegistry);
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private ExecutorService executor;
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    void shouldDropAndCountMediaTasksWhenFull() throws Exception {
+
+        // Given one thread that is busy and a queue of one
+        executor = underTest.mediaExecutor(1, 1);
+        CountDownLatch started = new CountDownLatch(1);
+
+        executor.execute(() -> {
+            started.countDown();
+            await(release);
+        });
+        started.await(5, TimeUnit.SECONDS);
+
+        // When
+        executor.execute(() -> {});
+        executor.execute(() -> {});
+
+        // Then
+        assertThat(meterRegistry.get("executor.rejected").tag("name", "media").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("executor.queued").tag("name", "media").gauge().value()).isEqualTo(1);
+        assertThat(meterRegistry.get("executor.active").tag("name", "media").gauge().value()).isEqualTo(1);
+
+    }
+
+    @Test
+    void shouldDropFeedDrainsWhenAllThreadsAreBusy() throws Exception {
+
+        // Given one thread that is busy and one drain waiting
+        executor = underTest.feedExecutor(1);
+        CountDownLatch started = new CountDownLatch(1);
+
+        executor.execute(() -> {
+            started.countDown();
+            await(release);
+        });
+        started.await(5, TimeUnit.SECONDS);
+        executor.execute(() -> {});
+
+        // When
+        AtomicReference<Thread> ranOn = new AtomicReference<>();
+        executor.execute(() -> ranOn.set(Thread.currentThread()));
+
+        // Then the scheduler thread is never made to run a drain itself, and a skipped poll is not counted as a rejection
+        assertThat(ranOn.get()).isNull();
+        assertThat(meterRegistry.find("executor.rejected").tag("name", "feed").counter()).isNull();
+        assertThat(meterRegistry.get("executor.queued").tag("name", "feed").gauge().value()).isEqualTo(1);
+
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
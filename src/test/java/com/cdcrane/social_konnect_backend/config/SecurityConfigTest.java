@@ -0,0 +1,138 @@
+package com.cdcrane.social_konnect_backend.config;
+
+import com.cdcrane.social_konnect_backend.config.file_handling.object_storage.FileSystemObjectStorageClient;
+import com.cdcrane.social_konnect_backend.config.file_handling.object_storage.PresignedUpload;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.RequestPostProcessor;
+
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Requests through the whole security filter chain, with the JWT validator and rate limiter as they are configured.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:securityconfig;MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+        "app.backend-base-url=http://localhost:8080",
+        "app.frontend-base-url=http://localhost:4200",
+        "cors.allowed-origins=http://localhost:4200",
+        "jwt.secret=security-config-test-secret-that-is-long-enough-for-hmac-sha",
+        "jwt.issuer=test",
+        "jwt.expiration=3600000",
+        "spring.mail.username=test",
+        "spring.mail.password=test",
+        "spring.mail.host=localhost",
+        "spring.mail.port=25"
+})
+@AutoConfigureMockMvc
+class SecurityConfigTest {
+
+    @TempDir
+    static Path storageRoot;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private FileSystemObjectStorageClient storageClient;
+
+    @DynamicPropertySource
+    static void storage(DynamicPropertyRegistry registry) {
+        registry.add("app.media.object-storage.filesystem.root", () -> storageRoot.toString());
+    }
+
+    @Test
+    void shouldAcceptPresignedUploadsWithoutBearerToken() throws Exception {
+
+        // Given
+        PresignedUpload upload = storageClient.presignUpload("media/3f2a0000-0000-0000-0000-000000000001.png", "image/png", Duration.ofMinutes(5));
+        URI uri = URI.create(upload.uploadUrl());
+
+        // When
+        mockMvc.perform(put(uri.getPath() + "?" + uri.getRawQuery())
+                        .contentType(upload.contentType())
+                        .content(new byte[]{1, 2, 3}))
+                .andExpect(status().isOk());
+
+        // Then
+        assertThat(Files.readAllBytes(storageRoot.resolve(upload.key()))).containsExactly(1, 2, 3);
+
+        // The URL is still valid, but can't replace what was uploaded
+        mockMvc.perform(put(uri.getPath() + "?" + uri.getRawQuery())
+                        .contentType(upload.contentType())
+                        .content(new byte[]{9, 9}))
+                .andExpect(status().isForbidden());
+
+        assertThat(Files.readAllBytes(storageRoot.resolve(upload.key()))).containsExactly(1, 2, 3);
+
+    }
+
+    @Test
+    void shouldRejectUploadsWithABadSignatureByTheSignatureAlone() throws Exception {
+
+        mockMvc.perform(put("/api/media/objects/media/3f2a0000-0000-0000-0000-000000000002.png?expires=9999999999&signature=forged")
+                        .contentType("image/png")
+                        .content(new byte[]{1, 2, 3}))
+                .andExpect(status().isForbidden());
+
+        assertThat(storageRoot.resolve("media/3f2a0000-0000-0000-0000-000000000002.png")).doesNotExist();
+
+    }
+
+    @Test
+    void shouldStillRequireTokenForTheRestOfTheApi() throws Exception {
+
+        mockMvc.perform(get("/api/feed/following"))
+                .andExpect(status().isUnauthorized());
+
+    }
+
+    @Test
+    void shouldRateLimitRequestsWithBadTokensPerClientIp() throws Exception {
+
+        // When the JWT filter rejects every request, more than the client IP bucket holds
+        int lastStatus = 0;
+
+        for (int i = 0; i < 1000 && lastStatus != 429; i++) {
+            lastStatus = mockMvc.perform(get("/api/feed/following")
+                            .header(HttpHeaders.AUTHORIZATION, "Bearer not-a-token")
+                            .with(remoteAddr("203.0.113.7")))
+                    .andReturn().getResponse().getStatus();
+
+            assertThat(lastStatus).isIn(401, 429);
+        }
+
+        // Then
+        assertThat(lastStatus).isEqualTo(429);
+
+        // Other clients are unaffected
+        mockMvc.perform(get("/api/feed/following")
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer not-a-token")
+                        .with(remoteAddr("203.0.113.8")))
+                .andExpect(status().isUnauthorized());
+
+    }
+
+    private static RequestPostProcessor remoteAddr(String address) {
+        return request -> {
+            request.setRemoteAddr(address);
+            return request;
+        };
+    }
+
+}
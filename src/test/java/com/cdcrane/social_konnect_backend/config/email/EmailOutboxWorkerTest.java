@@ -0,0 +1,155 @@
+package com.cdcrane.social_konnect_backend.config.email;
+
+import com.icegreen.greenmail.junit5.GreenMailExtension;
+import com.icegreen.greenmail.util.GreenMailUtil;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.mail.internet.MimeMessage;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED) // The worker claims and completes emails in its own transactions.
+class EmailOutboxWorkerTest {
+
+    @RegisterExtension
+    static GreenMailExtension greenMail = new GreenMailExtension(ServerSetupTest.SMTP);
+
+    @Autowired
+    private EmailOutboxRepository outboxRepo;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private EmailService emailService;
+
+    private EmailOutboxWorker underTest;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+
+        emailService = new EmailService(outboxRepo);
+        ReflectionTestUtils.setField(emailService, "baseUrl", "http://localhost:4200");
+
+        meterRegistry = new SimpleMeterRegistry();
+
+        underTest = new EmailOutboxWorker(outboxRepo, new TransactionTemplate(transactionManager), meterRegistry);
+        ReflectionTestUtils.setField(underTest, "senderEmail", "noreply@socialkonnect.test");
+        ReflectionTestUtils.setField(underTest, "senderPassword", "");
+        ReflectionTestUtils.setField(underTest, "mailHost", "localhost");
+        ReflectionTestUtils.setField(underTest, "mailPort", ServerSetupTest.SMTP.getPort());
+        ReflectionTestUtils.setField(underTest, "smtpAuth", false);
+        ReflectionTestUtils.setField(underTest, "smtpStartTls", false);
+        ReflectionTestUtils.setField(underTest, "connectionIdleTimeout", Duration.ofSeconds(30));
+        ReflectionTestUtils.setField(underTest, "batchSize", 2);
+        ReflectionTestUtils.setField(underTest, "maxAttempts", 3);
+        ReflectionTestUtils.setField(underTest, "retryBackoff", Duration.ofSeconds(30));
+        ReflectionTestUtils.setField(underTest, "sendTimeout", Duration.ofMinutes(5));
+    }
+
+    @AfterEach
+    void tearDown() {
+        underTest.close();
+        outboxRepo.deleteAll();
+    }
+
+    @Test
+    void shouldSendQueuedEmailsInBatchesAndEmptyTheOutbox() throws Exception {
+
+        // Given
+        emailService.sendSignupVerificationEmail("a@socialkonnect.test", "alice", 123456);
+        emailService.sendSignupVerificationEmail("b@socialkonnect.test", "bob", 234567);
+        emailService.sendForgotPasswordVerificationEmail("c@socialkonnect.test", "carol", 345678, UUID.randomUUID());
+
+        assertThat(greenMail.getReceivedMessages()).isEmpty(); // Nothing is sent when queueing
+
+        // When
+        underTest.drain();
+
+        // Then
+        MimeMessage[] received = greenMail.getReceivedMessages();
+
+        assertThat(received).hasSize(3);
+        assertThat(received[0].getAllRecipients()[0].toString()).isEqualTo("a@socialkonnect.test");
+        assertThat(received[0].getSubject()).isEqualTo("Social Konnect Verification Code");
+        assertThat(GreenMailUtil.getBody(received[0])).contains("Welcome to Social Konnect alice,").contains("123456");
+        assertThat(GreenMailUtil.getBody(received[2])).contains("Welcome back to Social Konnect carol,").contains("345678");
+
+        assertThat(outboxRepo.count()).isZero();
+        assertThat(meterRegistry.get("email.outbox.sent").counter().count()).isEqualTo(3);
+
+    }
+
+    @Test
+    void shouldRetryWithBackoffWhenServerIsUnreachable() {
+
+        // Given
+        ReflectionTestUtils.setField(underTest, "mailPort", ServerSetupTest.SMTP.getPort() + 1); // Nothing listens there
+        emailService.sendSignupVerificationEmail("a@socialkonnect.test", "alice", 123456);
+
+        // When
+        Instant beforeDrain = Instant.now();
+        underTest.drain();
+        underTest.drain(); // Not due again yet
+
+        // Then
+        EmailOutboxMessage message = outboxRepo.findAll().getFirst();
+
+        assertThat(message.getStatus()).isEqualTo(EmailOutboxStatus.PENDING);
+        assertThat(message.getAttempts()).isEqualTo(1);
+        assertThat(message.getNextAttemptAt()).isAfter(beforeDrain.plusSeconds(29));
+        assertThat(message.getLastError()).isNotNull();
+
+        // When the server is back and the retry is due
+        ReflectionTestUtils.setField(underTest, "mailPort", ServerSetupTest.SMTP.getPort());
+        message.setNextAttemptAt(Instant.now());
+        outboxRepo.save(message);
+
+        underTest.drain();
+
+        // Then
+        assertThat(greenMail.getReceivedMessages()).hasSize(1);
+        assertThat(outboxRepo.count()).isZero();
+
+    }
+
+    @Test
+    void shouldGiveUpAfterMaxAttempts() {
+
+        // Given
+        ReflectionTestUtils.setField(underTest, "mailPort", ServerSetupTest.SMTP.getPort() + 1);
+        ReflectionTestUtils.setField(underTest, "retryBackoff", Duration.ZERO);
+        emailService.sendSignupVerificationEmail("a@socialkonnect.test", "alice", 123456);
+
+        // When
+        for (int i = 0; i < 5; i++) {
+            underTest.drain();
+        }
+
+        // Then
+        EmailOutboxMessage message = outboxRepo.findAll().getFirst();
+
+        assertThat(message.getStatus()).isEqualTo(EmailOutboxStatus.FAILED);
+        assertThat(message.getAttempts()).isEqualTo(3);
+        assertThat(meterRegistry.get("email.outbox.failed").counter().count()).isEqualTo(1);
+
+    }
+
+}
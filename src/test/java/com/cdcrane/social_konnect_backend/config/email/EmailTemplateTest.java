@@ -0,0 +1,49 @@
+package com.cdcrane.social_konnect_backend.config.email;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class EmailTemplateTest {
+
+    @Test
+    void shouldRenderEscapedValues(){
+
+        // Given
+        EmailTemplate template = EmailTemplate.compile("<p>Hi {{ username }}, your code is {{code}}.</p>");
+
+        // When
+        String html = template.render(Map.of("username", "<b>bob</b>", "code", "123456"));
+
+        // Then
+        assertThat(html).isEqualTo("<p>Hi &lt;b&gt;bob&lt;/b&gt;, your code is 123456.</p>");
+
+    }
+
+    @Test
+    void shouldLoadTemplatesFromClasspath(){
+
+        // When
+        String html = EmailTemplate.load("email/signup-verification.html")
+                .render(Map.of("username", "alice", "code", "123456", "url", "http://localhost:4200/auth/register?username=alice"));
+
+        // Then
+        assertThat(html).contains("Welcome to Social Konnect alice,").contains("width=\"100%\"").doesNotContain("{{");
+
+    }
+
+    @Test
+    void shouldRejectMissingValues(){
+
+        // Given
+        EmailTemplate template = EmailTemplate.compile("Hi {{username}}");
+
+        // Then
+        assertThatThrownBy(() -> template.render(Map.of())).isInstanceOf(IllegalArgumentException.class);
+
+    }
+
+}
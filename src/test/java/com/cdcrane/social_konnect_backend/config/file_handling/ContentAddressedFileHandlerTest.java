@@ -0,0 +1,148 @@
+package com.cdcrane.social_konnect_backend.config.file_handling;
+
+import com.cdcrane.social_konnect_backend.posts.post_media.PostMedia;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED) // Files are stored on other threads, which can't see a test transaction.
+class ContentAddressedFileHandlerTest {
+
+    private static final byte[] PNG_HEADER = {(byte) 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A, 0, 0, 0, 0x0D, 'I', 'H', 'D', 'R'};
+
+    @Autowired
+    private MediaBlobRepository blobRepo;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @TempDir
+    private Path uploadDir;
+
+    private ContentAddressedFileHandler underTest;
+
+    @BeforeEach
+    void setUp() {
+        underTest = new ContentAddressedFileHandler(2, blobRepo, new TransactionTemplate(transactionManager));
+        ReflectionTestUtils.setField(underTest, "uploadDir", uploadDir);
+        ReflectionTestUtils.setField(underTest, "backendBaseUrl", "http://localhost:8080");
+    }
+
+    @AfterEach
+    void tearDown() {
+        blobRepo.deleteAll();
+    }
+
+    @Test
+    void shouldStoreSameContentOnce() throws Exception {
+
+        // Given the same image uploaded under different names, in the same request and a later one
+        byte[] content = png(1, 64 * 1024);
+
+        // When
+        List<PostMedia> first = underTest.saveFiles(List.of(
+                new MockMultipartFile("files", "a.png", null, content),
+                new MockMultipartFile("files", "b.png", null, content)));
+        List<PostMedia> second = underTest.saveFiles(List.of(new MockMultipartFile("files", "c.png", null, content)));
+
+        // Then
+        String fileName = first.getFirst().getFileName();
+
+        assertThat(fileName).matches("[0-9a-f]{2}/[0-9a-f]{2}/[0-9a-f]{64}\\.png");
+        assertThat(first.getLast().getFileName()).isEqualTo(fileName);
+        assertThat(second.getFirst().getFileName()).isEqualTo(fileName);
+        assertThat(first.getFirst().getMediaUrl()).isEqualTo("http://localhost:8080/media/" + fileName);
+
+        assertThat(Files.readAllBytes(uploadDir.resolve(fileName))).isEqualTo(content);
+        assertThat(blobRepo.findById(fileName.substring(6, 70))).hasValueSatisfying(blob -> assertThat(blob.getRefCount()).isEqualTo(3));
+
+        try (var files = Files.list(uploadDir)) {
+            assertThat(files).hasSize(1); // Only the shard directory, no temp files left behind
+        }
+
+    }
+
+    @Test
+    void shouldOnlyDeleteBlobWithItsLastReference() {
+
+        // Given two posts using the same image and one with another
+        byte[] content = png(1, 16 * 1024);
+
+        String shared = underTest.saveFiles(List.of(new MockMultipartFile("files", "a.png", null, content))).getFirst().getFileName();
+        underTest.saveFiles(List.of(new MockMultipartFile("files", "b.png", null, content)));
+        String other = underTest.saveFiles(List.of(new MockMultipartFile("files", "c.png", null, png(2, 16 * 1024)))).getFirst().getFileName();
+
+        assertThat(other).isNotEqualTo(shared);
+
+        // When the first post is deleted
+        underTest.deleteFile(shared);
+
+        // Then the file is still used by the second
+        assertThat(uploadDir.resolve(shared)).exists();
+
+        // When the second is deleted too
+        underTest.deleteFile(shared);
+
+        // Then
+        assertThat(uploadDir.resolve(shared)).doesNotExist();
+        assertThat(uploadDir.resolve(other)).exists();
+        assertThat(blobRepo.count()).isEqualTo(1);
+
+    }
+
+    @Test
+    void shouldKeepTheFileUntilTheDeleteCommits() {
+
+        // Given a post with an image, deleted in a transaction like PostService.deletePost
+        String fileName = underTest.saveFiles(List.of(new MockMultipartFile("files", "a.png", null, png(1, 16 * 1024)))).getFirst().getFileName();
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+
+        // When the transaction rolls back
+        transaction.executeWithoutResult(status -> {
+            underTest.deleteFile(fileName);
+            status.setRollbackOnly();
+        });
+
+        // Then the post still has its image
+        assertThat(uploadDir.resolve(fileName)).exists();
+        assertThat(blobRepo.findById(fileName.substring(6, 70))).hasValueSatisfying(blob -> assertThat(blob.getRefCount()).isEqualTo(1));
+
+        // When it commits
+        transaction.executeWithoutResult(status -> {
+            underTest.deleteFile(fileName);
+            assertThat(uploadDir.resolve(fileName)).exists(); // Not before the commit
+        });
+
+        // Then
+        assertThat(uploadDir.resolve(fileName)).doesNotExist();
+        assertThat(blobRepo.count()).isZero();
+
+    }
+
+    private static byte[] png(int fill, int size) {
+
+        byte[] content = new byte[size];
+        Arrays.fill(content, (byte) fill);
+        System.arraycopy(PNG_HEADER, 0, content, 0, PNG_HEADER.length);
+
+        return content;
+    }
+
+}
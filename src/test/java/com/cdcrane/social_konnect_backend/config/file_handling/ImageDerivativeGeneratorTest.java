@@ -0,0 +1,131 @@
+package com.cdcrane.social_konnect_backend.config.file_handling;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ImageDerivativeGeneratorTest {
+
+    @TempDir
+    private Path uploadDir;
+
+    private ImageDerivativeGenerator underTest;
+
+    @BeforeEach
+    void setUp() {
+        underTest = new ImageDerivativeGenerator();
+        ReflectionTestUtils.setField(underTest, "uploadDir", uploadDir);
+        ReflectionTestUtils.setField(underTest, "jpegQuality", 0.8f);
+        ReflectionTestUtils.setField(underTest, "maxPixels", 40_000_000L);
+    }
+
+    @Test
+    void shouldWriteDownscaledJpegVariants() throws IOException {
+
+        // Given
+        ImageIO.write(new BufferedImage(1600, 1200, BufferedImage.TYPE_INT_ARGB), "png", uploadDir.resolve("123_photo.png").toFile());
+
+        // When
+        Map<MediaVariant, String> variants = underTest.generate("123_photo.png", EnumSet.allOf(MediaVariant.class));
+
+        // Then
+        assertThat(variants).containsEntry(MediaVariant.THUMBNAIL, "123_photo_thumb.jpg")
+                .containsEntry(MediaVariant.FEED, "123_photo_feed.jpg")
+                .containsEntry(MediaVariant.FULL, "123_photo_full.jpg");
+
+        BufferedImage thumbnail = ImageIO.read(uploadDir.resolve("123_photo_thumb.jpg").toFile());
+        assertThat(thumbnail.getWidth()).isEqualTo(320);
+        assertThat(thumbnail.getHeight()).isEqualTo(240);
+
+        // Never upscaled
+        BufferedImage full = ImageIO.read(uploadDir.resolve("123_photo_full.jpg").toFile());
+        assertThat(full.getWidth()).isEqualTo(1600);
+
+    }
+
+    @Test
+    void shouldReuseVariantWhenImageIsSmallerThanIt() throws IOException {
+
+        // Given
+        ImageIO.write(new BufferedImage(300, 200, BufferedImage.TYPE_INT_RGB), "png", uploadDir.resolve("small.png").toFile());
+
+        // When
+        Map<MediaVariant, String> variants = underTest.generate("small.png", EnumSet.allOf(MediaVariant.class));
+
+        // Then
+        assertThat(variants.values()).containsOnly("small_thumb.jpg");
+        assertThat(uploadDir.resolve("small_feed.jpg")).doesNotExist();
+
+    }
+
+    @Test
+    void shouldSkipImagesThatCannotBeDecoded() throws IOException {
+
+        // Given
+        Files.write(uploadDir.resolve("photo.heic"), new byte[]{0, 0, 0, 0x18, 'f', 't', 'y', 'p', 'h', 'e', 'i', 'c'});
+
+        // When
+        Map<MediaVariant, String> variants = underTest.generate("photo.heic", EnumSet.allOf(MediaVariant.class));
+
+        // Then
+        assertThat(variants).isEmpty();
+
+    }
+
+    @Test
+    void shouldSkipImagesWhoseHeaderDeclaresTooManyPixels() throws IOException {
+
+        // Given a tiny PNG that claims to be 100000x100000, decoding it would need 40GB
+        Files.write(uploadDir.resolve("bomb.png"), pngHeader(100_000, 100_000));
+
+        // When
+        Map<MediaVariant, String> variants = underTest.generate("bomb.png", EnumSet.allOf(MediaVariant.class));
+
+        // Then
+        assertThat(variants).isEmpty();
+        assertThat(uploadDir.resolve("bomb_thumb.jpg")).doesNotExist();
+
+    }
+
+    /**
+     * A PNG signature and IHDR chunk for an 8 bit RGB image, with no image data.
+     */
+    private static byte[] pngHeader(int width, int height) throws IOException {
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        out.write(new byte[]{(byte) 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A});
+
+        ByteArrayOutputStream chunk = new ByteArrayOutputStream();
+        DataOutputStream ihdr = new DataOutputStream(chunk);
+        ihdr.writeBytes("IHDR");
+        ihdr.writeInt(width);
+        ihdr.writeInt(height);
+        ihdr.write(new byte[]{8, 2, 0, 0, 0});
+
+        CRC32 crc = new CRC32();
+        crc.update(chunk.toByteArray());
+
+        out.writeInt(13);
+        out.write(chunk.toByteArray());
+        out.writeInt((int) crc.getValue());
+
+        return bytes.toByteArray();
+    }
+
+}
@@ -0,0 +1,152 @@
+package com.cdcrane.social_konnect_backend.config.file_handling;
+
+import com.cdcrane.social_konnect_backend.config.exceptions.FileTypeNotValidException;
+import com.cdcrane.social_konnect_backend.posts.post_media.PostMedia;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LocalFileHandlerTest {
+
+    private static final byte[] PNG_HEADER = {(byte) 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A, 0, 0, 0, 0x0D, 'I', 'H', 'D', 'R'};
+
+    private static final byte[] MP4_HEADER = {0, 0, 0, 0x18, 'f', 't', 'y', 'p', 'm', 'p', '4', '2', 0, 0, 0, 0, 'm', 'p', '4', '2', 'i', 's', 'o', 'm'};
+
+    @TempDir
+    private Path uploadDir;
+
+    private LocalFileHandler underTest;
+
+    @BeforeEach
+    void setUp() {
+        underTest = new LocalFileHandler(2);
+        ReflectionTestUtils.setField(underTest, "uploadDir", uploadDir);
+        ReflectionTestUtils.setField(underTest, "backendBaseUrl", "http://localhost:8080");
+    }
+
+    @Test
+    void shouldStreamFileIntoUploadsUnchanged() throws IOException {
+
+        // Given a file much larger than the bytes used for detection
+        byte[] content = withHeader(PNG_HEADER, 3 * 1024 * 1024 + 123);
+
+        // When
+        List<PostMedia> media = underTest.saveFiles(List.of(new MockMultipartFile("files", "my photo.png", null, content)));
+
+        // Then
+        assertThat(media).hasSize(1);
+        assertThat(media.getFirst().getMediaType()).isEqualTo(FileHandlerConstants.IMAGE_TYPE);
+        assertThat(media.getFirst().getFileName()).endsWith("_myphoto.png");
+
+        Path stored = uploadDir.resolve(media.getFirst().getFileName());
+        assertThat(Files.readAllBytes(stored)).isEqualTo(content);
+
+        try (var files = Files.list(uploadDir)) {
+            assertThat(files).containsExactly(stored); // No temp file left behind
+        }
+
+    }
+
+    @Test
+    void shouldDetectVideo() {
+
+        // Given
+        byte[] content = withHeader(MP4_HEADER, 64 * 1024);
+
+        // When
+        List<PostMedia> media = underTest.saveFiles(List.of(new MockMultipartFile("files", "clip.mp4", null, content)));
+
+        // Then
+        assertThat(media.getFirst().getMediaType()).isEqualTo(FileHandlerConstants.VIDEO_TYPE);
+
+    }
+
+    @Test
+    void shouldNotWriteAnythingForUnsupportedType() throws IOException {
+
+        // Given a text file pretending to be an image
+        MockMultipartFile file = new MockMultipartFile("files", "notes.png", null, "just some text".getBytes());
+
+        // Then
+        assertThatThrownBy(() -> underTest.saveFiles(List.of(file))).isInstanceOf(FileTypeNotValidException.class);
+
+        try (var files = Files.list(uploadDir)) {
+            assertThat(files).isEmpty();
+        }
+
+    }
+
+    @Test
+    void shouldStoreManyFilesInOrder() {
+
+        // Given
+        List<MockMultipartFile> files = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            files.add(new MockMultipartFile("files", "photo" + i + ".png", null, withHeader(PNG_HEADER, 256 * 1024)));
+        }
+
+        // When
+        List<PostMedia> media = underTest.saveFiles(new ArrayList<>(files));
+
+        // Then
+        assertThat(media).hasSize(6);
+        for (int i = 0; i < 6; i++) {
+            assertThat(media.get(i).getFileName()).endsWith("_photo" + i + ".png");
+            assertThat(uploadDir.resolve(media.get(i).getFileName())).exists();
+        }
+
+    }
+
+    @Test
+    void shouldRemoveStoredFilesWhenAnyFileFails() throws IOException {
+
+        // Given valid files around one that is not an image or video
+        List<MultipartFile> files = List.of(
+                new MockMultipartFile("files", "first.png", null, withHeader(PNG_HEADER, 256 * 1024)),
+                new MockMultipartFile("files", "notes.png", null, "just some text".getBytes()),
+                new MockMultipartFile("files", "last.mp4", null, withHeader(MP4_HEADER, 256 * 1024)));
+
+        // Then
+        assertThatThrownBy(() -> underTest.saveFiles(files)).isInstanceOf(FileTypeNotValidException.class);
+
+        try (var stored = Files.list(uploadDir)) {
+            assertThat(stored).isEmpty();
+        }
+
+    }
+
+    @Test
+    void shouldNotSaveVideoAsProfilePicture() {
+
+        // Given
+        MockMultipartFile file = new MockMultipartFile("file", "clip.mp4", null, withHeader(MP4_HEADER, 1024));
+
+        // Then
+        assertThatThrownBy(() -> underTest.saveNewProfilePicture(file)).isInstanceOf(FileTypeNotValidException.class);
+
+    }
+
+    private static byte[] withHeader(byte[] header, int size) {
+
+        byte[] content = new byte[size];
+        new Random(42).nextBytes(content);
+        System.arraycopy(header, 0, content, 0, header.length);
+
+        return Arrays.copyOf(content, size);
+    }
+
+}
@@ -0,0 +1,110 @@
+package com.cdcrane.social_konnect_backend.config.file_handling;
+
+import com.cdcrane.social_konnect_backend.config.exceptionhandlers.GlobalExceptionHandler;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+class MediaControllerTest {
+
+    private static final String DIGEST = "ab".repeat(32);
+
+    @TempDir
+    private Path uploadDir;
+
+    private MockMvc mockMvc;
+
+    private byte[] content;
+
+    @BeforeEach
+    void setUp() throws Exception {
+
+        content = new byte[100_000];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+
+        Files.createDirectories(uploadDir.resolve("ab/ab"));
+        Files.write(uploadDir.resolve("ab/ab/" + DIGEST + ".mp4"), content);
+
+        mockMvc = MockMvcBuilders.standaloneSetup(new MediaController(uploadDir))
+                .setControllerAdvice(new GlobalExceptionHandler())
+                .build();
+    }
+
+    @Test
+    void shouldServeWholeFileWithCachingHeaders() throws Exception {
+
+        MvcResult result = mockMvc.perform(get("/media/ab/ab/" + DIGEST + ".mp4"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"" + DIGEST + "\""))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "public, max-age=31536000, immutable"))
+                .andExpect(header().string(HttpHeaders.ACCEPT_RANGES, "bytes"))
+                .andExpect(content().contentType("video/mp4"))
+                .andReturn();
+
+        assertThat(result.getResponse().getContentAsByteArray()).isEqualTo(content);
+
+    }
+
+    @Test
+    void shouldServeRequestedRange() throws Exception {
+
+        MvcResult result = mockMvc.perform(get("/media/ab/ab/" + DIGEST + ".mp4").header(HttpHeaders.RANGE, "bytes=1000-1999"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 1000-1999/100000"))
+                .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, 1000))
+                .andReturn();
+
+        assertThat(result.getResponse().getContentAsByteArray()).isEqualTo(Arrays.copyOfRange(content, 1000, 2000));
+
+    }
+
+    @Test
+    void shouldRejectRangePastTheEnd() throws Exception {
+
+        mockMvc.perform(get("/media/ab/ab/" + DIGEST + ".mp4").header(HttpHeaders.RANGE, "bytes=200000-"))
+                .andExpect(status().isRequestedRangeNotSatisfiable())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes */100000"));
+
+    }
+
+    @Test
+    void shouldAnswerNotModifiedForKnownETag() throws Exception {
+
+        mockMvc.perform(get("/media/ab/ab/" + DIGEST + ".mp4").header(HttpHeaders.IF_NONE_MATCH, "\"" + DIGEST + "\""))
+                .andExpect(status().isNotModified())
+                .andExpect(content().bytes(new byte[0]));
+
+    }
+
+    @Test
+    void shouldNotServeFilesOutsideUploads() throws Exception {
+
+        Files.writeString(uploadDir.resolveSibling("secret.txt"), "secret");
+        Files.writeString(uploadDir.resolve("upload_1.part"), "half written");
+
+        mockMvc.perform(get("/media/../secret.txt"))
+                .andExpect(status().isNotFound());
+
+        mockMvc.perform(get("/media/upload_1.part"))
+                .andExpect(status().isNotFound());
+
+        mockMvc.perform(get("/media/missing.png"))
+                .andExpect(status().isNotFound());
+
+    }
+
+}
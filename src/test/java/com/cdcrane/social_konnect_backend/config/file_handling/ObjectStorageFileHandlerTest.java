@@ -0,0 +1,180 @@
+package com.cdcrane.social_konnect_backend.config.file_handling;
+
+import com.cdcrane.social_konnect_backend.config.exceptions.ActionNotPermittedException;
+import com.cdcrane.social_konnect_backend.config.exceptions.FileTypeNotValidException;
+import com.cdcrane.social_konnect_backend.config.file_handling.object_storage.FileSystemObjectStorageClient;
+import com.cdcrane.social_konnect_backend.config.file_handling.object_storage.PresignedUpload;
+import com.cdcrane.social_konnect_backend.posts.post_media.PostMedia;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED) // Keys are claimed in their own transactions.
+class ObjectStorageFileHandlerTest {
+
+    private static final long USER_A = 1L;
+
+    private static final long USER_B = 2L;
+
+    private static final byte[] PNG_HEADER = {(byte) 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A, 0, 0, 0, 0x0D, 'I', 'H', 'D', 'R'};
+
+    @TempDir
+    private Path stagingDir;
+
+    @TempDir
+    private Path storageRoot;
+
+    @Autowired
+    private DirectUploadRepository directUploadRepo;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private FileSystemObjectStorageClient storageClient;
+
+    private ObjectStorageFileHandler underTest;
+
+    @BeforeEach
+    void setUp() {
+
+        storageClient = new FileSystemObjectStorageClient(storageRoot, "http://localhost:8080", "test-secret");
+
+        underTest = new ObjectStorageFileHandler(2, storageClient, directUploadRepo, new TransactionTemplate(transactionManager));
+        ReflectionTestUtils.setField(underTest, "uploadDir", stagingDir);
+        ReflectionTestUtils.setField(underTest, "uploadUrlTtl", Duration.ofMinutes(15));
+        ReflectionTestUtils.setField(underTest, "claimWindow", Duration.ofHours(1));
+        ReflectionTestUtils.setField(underTest, "maxUploadSize", DataSize.ofMegabytes(10));
+    }
+
+    @AfterEach
+    void tearDown() {
+        directUploadRepo.deleteAll();
+    }
+
+    @Test
+    void shouldUploadFilesToStorageWithoutKeepingLocalCopies() throws Exception {
+
+        // Given
+        byte[] content = png(64 * 1024);
+
+        // When
+        List<PostMedia> media = underTest.saveFiles(List.of(new MockMultipartFile("files", "photo.png", null, content)));
+
+        // Then
+        String key = media.getFirst().getFileName();
+
+        assertThat(key).matches("media/[0-9a-f-]{36}\\.png");
+        assertThat(media.getFirst().getMediaUrl()).isEqualTo("http://localhost:8080/media/" + key);
+        assertThat(Files.readAllBytes(storageRoot.resolve(key))).isEqualTo(content);
+
+        try (var staged = Files.list(stagingDir)) {
+            assertThat(staged).isEmpty();
+        }
+
+        // When
+        underTest.deleteFile(key);
+
+        // Then
+        assertThat(storageRoot.resolve(key)).doesNotExist();
+
+    }
+
+    @Test
+    void shouldClaimValidDirectUploads() throws Exception {
+
+        // Given
+        PresignedUpload upload = underTest.createDirectUpload("image/png", USER_A);
+        storageClient.writeObject(upload.key(), new ByteArrayInputStream(png(1024)), Long.MAX_VALUE);
+
+        // When
+        List<PostMedia> media = underTest.claimDirectUploads(List.of(upload.key()), USER_A);
+
+        // Then
+        assertThat(media).hasSize(1);
+        assertThat(media.getFirst().getFileName()).isEqualTo(upload.key());
+        assertThat(media.getFirst().getMediaType()).isEqualTo(FileHandlerConstants.IMAGE_TYPE);
+
+    }
+
+    @Test
+    void shouldRejectAndDeleteDirectUploadWithWrongContent() throws Exception {
+
+        // Given a file that claimed to be an image
+        PresignedUpload upload = underTest.createDirectUpload("image/png", USER_A);
+        storageClient.writeObject(upload.key(), new ByteArrayInputStream("not an image".getBytes()), Long.MAX_VALUE);
+
+        // Then
+        assertThatThrownBy(() -> underTest.claimDirectUploads(List.of(upload.key()), USER_A)).isInstanceOf(FileTypeNotValidException.class);
+        assertThat(storageRoot.resolve(upload.key())).doesNotExist();
+
+        assertThatThrownBy(() -> underTest.claimDirectUploads(List.of("profile_pictures/x.png"), USER_A)).isInstanceOf(FileTypeNotValidException.class);
+        assertThatThrownBy(() -> underTest.createDirectUpload("text/html", USER_A)).isInstanceOf(FileTypeNotValidException.class);
+
+    }
+
+    @Test
+    void shouldRejectDirectUploadsIssuedToAnotherUser() throws Exception {
+
+        // Given user A uploaded a file directly
+        PresignedUpload upload = underTest.createDirectUpload("image/png", USER_A);
+        storageClient.writeObject(upload.key(), new ByteArrayInputStream(png(1024)), Long.MAX_VALUE);
+
+        // Then user B can't attach it to their post, and it is left alone
+        assertThatThrownBy(() -> underTest.claimDirectUploads(List.of(upload.key()), USER_B)).isInstanceOf(ActionNotPermittedException.class);
+        assertThat(storageRoot.resolve(upload.key())).exists();
+
+        // Nor can media stored through the API, which was never issued as a direct upload
+        String apiKey = underTest.saveFiles(List.of(new MockMultipartFile("files", "photo.png", null, png(1024)))).getFirst().getFileName();
+        assertThatThrownBy(() -> underTest.claimDirectUploads(List.of(apiKey), USER_B)).isInstanceOf(ActionNotPermittedException.class);
+
+        // User A can, once
+        assertThat(underTest.claimDirectUploads(List.of(upload.key()), USER_A)).hasSize(1);
+        assertThatThrownBy(() -> underTest.claimDirectUploads(List.of(upload.key()), USER_A)).isInstanceOf(ActionNotPermittedException.class);
+
+    }
+
+    @Test
+    void shouldClaimNoKeysWhenOneCannotBeClaimed() throws Exception {
+
+        // Given
+        PresignedUpload mine = underTest.createDirectUpload("image/png", USER_B);
+        PresignedUpload theirs = underTest.createDirectUpload("image/png", USER_A);
+
+        // When
+        assertThatThrownBy(() -> underTest.claimDirectUploads(List.of(mine.key(), theirs.key()), USER_B)).isInstanceOf(ActionNotPermittedException.class);
+
+        // Then
+        assertThat(directUploadRepo.findById(mine.key()).orElseThrow().getClaimedAt()).isNull();
+
+    }
+
+    private static byte[] png(int size) {
+
+        byte[] content = Arrays.copyOf(PNG_HEADER, size);
+        Arrays.fill(content, PNG_HEADER.length, size, (byte) 7);
+
+        return content;
+    }
+
+}
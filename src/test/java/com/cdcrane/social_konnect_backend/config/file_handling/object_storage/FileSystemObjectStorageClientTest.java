@@ -0,0 +1,110 @@
+package com.cdcrane.social_konnect_backend.config.file_handling.object_storage;
+
+import com.cdcrane.social_konnect_backend.config.exceptions.ObjectTooLargeException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.web.util.UriComponents;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class FileSystemObjectStorageClientTest {
+
+    @TempDir
+    private Path root;
+
+    private FileSystemObjectStorageClient underTest;
+
+    @BeforeEach
+    void setUp() {
+        underTest = new FileSystemObjectStorageClient(root, "http://localhost:8080", "test-secret");
+    }
+
+    @Test
+    void shouldAcceptOnlyMatchingPresignedUpload() {
+
+        // Given
+        PresignedUpload upload = underTest.presignUpload("media/abc.png", "image/png", Duration.ofMinutes(5));
+
+        UriComponents url = UriComponentsBuilder.fromUriString(upload.uploadUrl()).build();
+        long expires = Long.parseLong(url.getQueryParams().getFirst("expires"));
+        String signature = url.getQueryParams().getFirst("signature");
+
+        // Then
+        assertThat(url.getPath()).isEqualTo("/api/media/objects/media/abc.png");
+        assertThat(underTest.isValidUpload("media/abc.png", "image/png", expires, signature)).isTrue();
+
+        assertThat(underTest.isValidUpload("media/other.png", "image/png", expires, signature)).isFalse();
+        assertThat(underTest.isValidUpload("media/abc.png", "video/mp4", expires, signature)).isFalse();
+        assertThat(underTest.isValidUpload("media/abc.png", "image/png", expires + 3600, signature)).isFalse();
+
+    }
+
+    @Test
+    void shouldRejectExpiredUpload() {
+
+        // Given
+        PresignedUpload upload = underTest.presignUpload("media/abc.png", "image/png", Duration.ofSeconds(-10));
+
+        UriComponents url = UriComponentsBuilder.fromUriString(upload.uploadUrl()).build();
+
+        // Then
+        assertThat(underTest.isValidUpload("media/abc.png", "image/png",
+                Long.parseLong(url.getQueryParams().getFirst("expires")), url.getQueryParams().getFirst("signature"))).isFalse();
+
+    }
+
+    @Test
+    void shouldStoreObjectsAndRejectTooLargeOnes() throws Exception {
+
+        // When
+        long size = underTest.writeObject("media/a.bin", new ByteArrayInputStream(new byte[100]), 100);
+
+        // Then
+        assertThat(size).isEqualTo(100);
+        assertThat(underTest.headObject("media/a.bin")).hasValueSatisfying(o -> assertThat(o.size()).isEqualTo(100));
+        assertThat(underTest.readHead("media/a.bin", 10)).hasSize(10);
+
+        assertThatThrownBy(() -> underTest.writeObject("media/b.bin", new ByteArrayInputStream(new byte[101]), 100))
+                .isInstanceOf(ObjectTooLargeException.class);
+        assertThat(underTest.headObject("media/b.bin")).isEmpty();
+
+        try (var files = Files.list(root.resolve("media"))) {
+            assertThat(files).hasSize(1); // No temp file left behind
+        }
+
+    }
+
+    @Test
+    void shouldNotLetUploadsReplaceAnExistingObject() throws Exception {
+
+        // Given
+        underTest.writeObject("media/a.png", new ByteArrayInputStream(new byte[]{1, 2, 3}), 100);
+
+        // Then
+        assertThatThrownBy(() -> underTest.writeObject("media/a.png", new ByteArrayInputStream(new byte[]{9, 9}), 100))
+                .isInstanceOf(FileAlreadyExistsException.class);
+        assertThat(Files.readAllBytes(root.resolve("media/a.png"))).containsExactly(1, 2, 3);
+
+        try (var files = Files.list(root.resolve("media"))) {
+            assertThat(files).hasSize(1);
+        }
+
+    }
+
+    @Test
+    void shouldNotAllowKeysOutsideRoot() {
+
+        assertThatThrownBy(() -> underTest.headObject("../secret.txt")).isInstanceOf(IllegalArgumentException.class);
+
+    }
+
+}
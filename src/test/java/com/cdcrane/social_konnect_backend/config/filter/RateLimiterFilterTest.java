@@ -0,0 +1,116 @@
+package com.cdcrane.social_konnect_backend.config.filter;
+
+import com.cdcrane.social_konnect_backend.authentication.AuthenticatedUser;
+import com.cdcrane.social_konnect_backend.config.filter.rate_limit.ClientIpResolver;
+import com.cdcrane.social_konnect_backend.config.filter.rate_limit.LocalRateLimitBucketStore;
+import com.cdcrane.social_konnect_backend.config.filter.rate_limit.RateLimitBucketStore;
+import com.cdcrane.social_konnect_backend.config.filter.rate_limit.RateLimitPolicyRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class RateLimiterFilterTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final RateLimiterFilter underTest = new RateLimiterFilter(new LocalRateLimitBucketStore(),
+            new ClientIpResolver(List.of("10.0.0.1")), new RateLimitPolicyRegistry(), meterRegistry);
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void shouldLimitEachForwardedClientSeparately() throws Exception {
+
+        // When logging in costs 2 of the 20 auth tokens
+        for (int i = 0; i < 10; i++) {
+            assertEquals(200, send("POST", "/api/auth/login", "198.51.100.1").getStatus());
+        }
+
+        // Then
+        MockHttpServletResponse rejected = send("POST", "/api/auth/login", "198.51.100.1");
+
+        assertEquals(429, rejected.getStatus());
+        assertNotNull(rejected.getHeader("Retry-After"));
+        assertEquals(200, send("POST", "/api/auth/login", "198.51.100.2").getStatus()); // Same proxy, different client
+        assertEquals(200, send("GET", "/api/auth/exists/someone", "198.51.100.1").getStatus()); // Other policies are unaffected
+        assertEquals(1, meterRegistry.get("ratelimit.rejected").tag("policy", "auth").counter().count());
+
+    }
+
+    @Test
+    void shouldLimitAuthenticatedRequestsPerUser() throws Exception {
+
+        // Given
+        authenticate(1);
+
+        // When creating posts costs 5 of the 20 upload tokens
+        for (int i = 0; i < 4; i++) {
+            assertEquals(200, send("POST", "/api/post", "198.51.100.1").getStatus());
+        }
+
+        // Then
+        assertEquals(429, send("POST", "/api/post", "198.51.100.2").getStatus()); // A new IP doesn't help
+
+        authenticate(2);
+        assertEquals(200, send("POST", "/api/post", "198.51.100.1").getStatus()); // Another user behind the same IP is fine
+
+        assertEquals(1, meterRegistry.get("ratelimit.rejected").tag("policy", "uploads").counter().count());
+        assertEquals(0, meterRegistry.get("ratelimit.rejected").tag("policy", "api").counter().count());
+
+    }
+
+    @Test
+    void shouldLetRequestsThroughWhenStoreFails() throws Exception {
+
+        // Given
+        RateLimitBucketStore store = mock(RateLimitBucketStore.class);
+        when(store.resolve(anyString(), any())).thenThrow(new IllegalStateException("Database unavailable"));
+
+        RateLimiterFilter filter = new RateLimiterFilter(store, new ClientIpResolver(List.of()), new RateLimitPolicyRegistry(), meterRegistry);
+
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/post");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // When
+        filter.doFilter(request, response, new MockFilterChain());
+
+        // Then
+        assertEquals(200, response.getStatus());
+
+    }
+
+    private static void authenticate(long userId) {
+        AuthenticatedUser user = new AuthenticatedUser(userId, "user" + userId, null);
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(user, null, List.of()));
+    }
+
+    private MockHttpServletResponse send(String method, String path, String client) throws Exception {
+
+        MockHttpServletRequest request = new MockHttpServletRequest(method, path);
+        request.setRemoteAddr("10.0.0.1");
+        request.addHeader("X-Forwarded-For", client);
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        underTest.doFilter(request, response, new MockFilterChain());
+
+        return response;
+    }
+
+}
@@ -0,0 +1,96 @@
+package com.cdcrane.social_konnect_backend.config.filter.rate_limit;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ClientIpResolverTest {
+
+    private final ClientIpResolver underTest = new ClientIpResolver(List.of("10.0.0.0/8", " 192.168.1.5 "));
+
+    @Test
+    void shouldUseRemoteAddressWhenNotFromTrustedProxy(){
+
+        // Given
+        MockHttpServletRequest request = request("203.0.113.7", "198.51.100.1");
+
+        // When
+        String clientIp = underTest.resolve(request);
+
+        // Then
+        assertEquals("203.0.113.7", clientIp); // The header is ignored, the client could have made it up
+
+    }
+
+    @Test
+    void shouldUseLastUntrustedForwardedAddress(){
+
+        // Given
+        MockHttpServletRequest request = request("10.0.0.2", "1.1.1.1, 198.51.100.1, 192.168.1.5");
+
+        // When
+        String clientIp = underTest.resolve(request);
+
+        // Then
+        assertEquals("198.51.100.1", clientIp); // 1.1.1.1 was sent by the client itself
+
+    }
+
+    @Test
+    void shouldUseRemoteAddressWithoutForwardedHeader(){
+
+        // Given
+        MockHttpServletRequest request = request("10.0.0.2", null);
+
+        // When
+        String clientIp = underTest.resolve(request);
+
+        // Then
+        assertEquals("10.0.0.2", clientIp);
+
+    }
+
+    @Test
+    void shouldUseFirstAddressWhenAllAreTrusted(){
+
+        // Given
+        MockHttpServletRequest request = request("10.0.0.2", "10.1.1.1, 10.0.0.3");
+
+        // When
+        String clientIp = underTest.resolve(request);
+
+        // Then
+        assertEquals("10.1.1.1", clientIp);
+
+    }
+
+    @Test
+    void shouldNotTrustHostNames(){
+
+        // Given
+        MockHttpServletRequest request = request("10.0.0.2", "198.51.100.1, proxy.example.com");
+
+        // When
+        String clientIp = underTest.resolve(request);
+
+        // Then
+        assertEquals("proxy.example.com", clientIp);
+
+    }
+
+    private static MockHttpServletRequest request(String remoteAddr, String forwardedFor) {
+
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/post");
+        request.setRemoteAddr(remoteAddr);
+
+        if (forwardedFor != null) {
+            request.addHeader("X-Forwarded-For", forwardedFor);
+        }
+
+        return request;
+    }
+
+}
@@ -0,0 +1,46 @@
+package com.cdcrane.social_konnect_backend.config.filter.rate_limit;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RateLimitPolicyRegistryTest {
+
+    private final RateLimitPolicyRegistry underTest = new RateLimitPolicyRegistry();
+
+    @Test
+    void shouldChargeExpensiveRoutesMore(){
+
+        // When
+        RateLimitRule login = underTest.ruleFor("POST", "/api/auth/login");
+        RateLimitRule reset = underTest.ruleFor("POST", "/api/auth/resetpassword/verify");
+        RateLimitRule createPost = underTest.ruleFor("POST", "/api/post");
+        RateLimitRule likeCount = underTest.ruleFor("GET", "/api/like/count/7b1c6f0e-2a4d-4a7e-9a51-0c4b2f2d9e11");
+
+        // Then
+        assertEquals(RateLimitPolicyRegistry.AUTH, login.policy());
+        assertEquals(2, login.cost());
+        assertEquals(RateLimitPolicyRegistry.AUTH, reset.policy());
+        assertEquals(RateLimitPolicyRegistry.UPLOADS, createPost.policy());
+        assertEquals(5, createPost.cost());
+        assertEquals(RateLimitPolicyRegistry.API, likeCount.policy());
+        assertEquals(1, likeCount.cost());
+
+    }
+
+    @Test
+    void shouldMatchOnMethod(){
+
+        // When
+        RateLimitRule readPosts = underTest.ruleFor("GET", "/api/post");
+        RateLimitRule deleteLike = underTest.ruleFor("DELETE", "/api/like/7b1c6f0e-2a4d-4a7e-9a51-0c4b2f2d9e11");
+
+        // Then
+        assertEquals(RateLimitPolicyRegistry.API, readPosts.policy());
+        assertEquals(2, readPosts.cost());
+        assertEquals(RateLimitPolicyRegistry.API, deleteLike.policy());
+        assertEquals(2, deleteLike.cost());
+
+    }
+
+}
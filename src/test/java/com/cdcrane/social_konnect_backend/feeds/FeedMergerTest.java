@@ -0,0 +1,43 @@
+package com.cdcrane.social_konnect_backend.feeds;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FeedMergerTest {
+
+    @Test
+    void shouldMergeSortedSourcesInOrder(){
+
+        // Given
+        List<Integer> pushed = List.of(9, 6, 4, 1);
+        List<Integer> pulled = List.of(8, 7, 2);
+
+        // When
+        List<Integer> merged = FeedMerger.merge(List.of(pushed, pulled), Comparator.reverseOrder(), Function.identity(), 10);
+
+        // Then
+        assertThat(merged).containsExactly(9, 8, 7, 6, 4, 2, 1);
+
+    }
+
+    @Test
+    void shouldDropDuplicatesAndStopAtLimit(){
+
+        // Given
+        List<Integer> pushed = List.of(9, 7, 5);
+        List<Integer> pulled = List.of(9, 8, 7);
+
+        // When
+        List<Integer> merged = FeedMerger.merge(List.of(pushed, pulled), Comparator.reverseOrder(), Function.identity(), 3);
+
+        // Then
+        assertThat(merged).containsExactly(9, 8, 7);
+
+    }
+
+}
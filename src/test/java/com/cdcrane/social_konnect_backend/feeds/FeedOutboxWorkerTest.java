@@ -0,0 +1,300 @@
+package com.cdcrane.social_konnect_backend.feeds;
+
+import com.cdcrane.social_konnect_backend.config.pagination.PostCursor;
+import com.cdcrane.social_konnect_backend.follows.Follow;
+import com.cdcrane.social_konnect_backend.follows.FollowRepository;
+import com.cdcrane.social_konnect_backend.follows.events.UserFollowedEvent;
+import com.cdcrane.social_konnect_backend.follows.events.UserUnfollowedEvent;
+import com.cdcrane.social_konnect_backend.posts.Post;
+import com.cdcrane.social_konnect_backend.posts.PostRepository;
+import com.cdcrane.social_konnect_backend.posts.events.PostCreatedEvent;
+import com.cdcrane.social_konnect_backend.users.ApplicationUser;
+import com.cdcrane.social_konnect_backend.users.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// The fan-out inserts with ON CONFLICT DO NOTHING, which H2 only accepts in PostgreSQL mode.
+@DataJpaTest(properties = "spring.datasource.url=jdbc:h2:mem:feedoutbox;MODE=PostgreSQL;DB_CLOSE_DELAY=-1")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED) // Events are recorded and processed in their own transactions.
+class FeedOutboxWorkerTest {
+
+    @Autowired
+    private FeedOutboxRepository outboxRepo;
+
+    @Autowired
+    private FollowingFeedRepository feedRepo;
+
+    @Autowired
+    private FollowRepository followRepo;
+
+    @Autowired
+    private PostRepository postRepo;
+
+    @Autowired
+    private UserRepository userRepo;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private FeedGenerationEventListener listener;
+
+    private FeedOutboxWorker underTest;
+
+    private FeedFanOutEngine fanOutEngine;
+
+    private CelebrityRegistry celebrityRegistry;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private ApplicationUser poster;
+
+    private ApplicationUser follower1;
+
+    private ApplicationUser follower2;
+
+    @BeforeEach
+    void setUp() {
+
+        meterRegistry = new SimpleMeterRegistry();
+
+        listener = new FeedGenerationEventListener(outboxRepo);
+
+        fanOutEngine = new FeedFanOutEngine(followRepo, jdbcTemplate, meterRegistry);
+        ReflectionTestUtils.setField(fanOutEngine, "chunkSize", 1);
+        ReflectionTestUtils.setField(fanOutEngine, "deleteChunkSize", 2);
+
+        celebrityRegistry = mock(CelebrityRegistry.class);
+
+        underTest = new FeedOutboxWorker(outboxRepo, followRepo, postRepo, fanOutEngine, celebrityRegistry,
+                mock(FeedTimelineCache.class), new TransactionTemplate(transactionManager), meterRegistry);
+        ReflectionTestUtils.setField(underTest, "batchSize", 2);
+        ReflectionTestUtils.setField(underTest, "maxAttempts", 3);
+        ReflectionTestUtils.setField(underTest, "retryBackoff", Duration.ofSeconds(10));
+        ReflectionTestUtils.setField(underTest, "lease", Duration.ofMinutes(5));
+        ReflectionTestUtils.setField(underTest, "failedRetention", Duration.ofDays(7));
+
+        poster = userRepo.save(ApplicationUser.builder().username("poster").build());
+        follower1 = userRepo.save(ApplicationUser.builder().username("follower1").build());
+        follower2 = userRepo.save(ApplicationUser.builder().username("follower2").build());
+
+        follow(follower1, poster);
+        follow(follower2, poster);
+    }
+
+    @AfterEach
+    void tearDown() {
+        outboxRepo.deleteAll();
+        feedRepo.deleteAll();
+        followRepo.deleteAll();
+        postRepo.deleteAll();
+        userRepo.deleteAll();
+    }
+
+    @Test
+    void shouldFanOutRecordedPostsAndEmptyTheOutbox() {
+
+        // Given
+        Post post1 = post("Post 1");
+        Post post2 = post("Post 2");
+        Post post3 = post("Post 3");
+
+        assertThat(outboxRepo.count()).isEqualTo(3);
+        assertThat(feedRepo.count()).isZero(); // Nothing is written when recording
+
+        // When
+        underTest.drain();
+
+        // Then
+        assertThat(outboxRepo.count()).isZero();
+        assertThat(feedRepo.count()).isEqualTo(6);
+        assertThat(feedRepo.getFirstFollowingPostKeysByUserId(follower1.getId(), Limit.of(10)))
+                .extracting(PostCursor::postId)
+                .containsExactlyInAnyOrder(post1.getId(), post2.getId(), post3.getId());
+        assertThat(meterRegistry.get("feed.outbox.processed").counter().count()).isEqualTo(3);
+
+    }
+
+    @Test
+    void shouldNotDuplicateFeedRowsWhenAnEventIsProcessedAgain() {
+
+        // Given a post that was fanned out, then its event delivered again, e.g. after a lease ran out
+        Post post = post("Post");
+        underTest.drain();
+
+        listener.listenForPostCreatedAndGenerateFollowingFeed(new PostCreatedEvent(post, poster));
+
+        // When
+        underTest.drain();
+
+        // Then
+        assertThat(outboxRepo.count()).isZero();
+        assertThat(feedRepo.count()).isEqualTo(2);
+        assertThat(meterRegistry.get("feed.fanout.rows").counter().count()).isEqualTo(2);
+
+    }
+
+    @Test
+    void shouldApplyFollowChangesOnlyWhileTheyStillHold() {
+
+        // Given posts by a user that follower1 followed and then unfollowed before the follow was processed
+        ApplicationUser other = userRepo.save(ApplicationUser.builder().username("other").build());
+        postRepo.save(Post.builder().caption("Other post").user(other).build());
+
+        follow(follower1, other);
+        listener.listenForUserFollowedAndAddPostsToFollowingFeed(new UserFollowedEvent(follower1.getId(), other.getId()));
+        followRepo.deleteAll(followRepo.findAll().stream()
+                .filter(f -> f.getFollowed().getId() == other.getId())
+                .toList());
+
+        // When
+        underTest.drain();
+
+        // Then nothing was added
+        assertThat(feedRepo.count()).isZero();
+
+        // Given follower2 unfollowed the poster and followed them again before the unfollow was processed
+        post("Post");
+        underTest.drain();
+        listener.listenForUserUnfollowedAndDeletePostsFromFollowingFeed(new UserUnfollowedEvent(follower2.getId(), poster.getId()));
+
+        // When
+        underTest.drain();
+
+        // Then the post stays in their feed
+        assertThat(feedRepo.getFirstFollowingPostKeysByUserId(follower2.getId(), Limit.of(10))).hasSize(1);
+        assertThat(outboxRepo.count()).isZero();
+
+    }
+
+    @Test
+    void shouldDeleteOnlyTheUnfollowedUsersPostsInChunks() {
+
+        // Given follower1 has 5 posts by the poster and one by another user in their feed
+        for (int i = 1; i <= 5; i++) {
+            post("Post " + i);
+        }
+
+        ApplicationUser other = userRepo.save(ApplicationUser.builder().username("other").build());
+        follow(follower1, other);
+        Post otherPost = postRepo.save(Post.builder().caption("Other post").user(other).build());
+        fanOutEngine.addPostsToFeed(follower1.getId(), List.of(PostCursor.of(otherPost)));
+
+        underTest.drain();
+
+        // When follower1 unfollows the poster
+        followRepo.deleteAll(followRepo.findAll().stream()
+                .filter(f -> f.getFollower().getId() == follower1.getId() && f.getFollowed().getId() == poster.getId())
+                .toList());
+        listener.listenForUserUnfollowedAndDeletePostsFromFollowingFeed(new UserUnfollowedEvent(follower1.getId(), poster.getId()));
+        underTest.drain();
+
+        // Then
+        assertThat(feedRepo.getFirstFollowingPostKeysByUserId(follower1.getId(), Limit.of(10)))
+                .extracting(PostCursor::postId)
+                .containsExactly(otherPost.getId());
+        assertThat(feedRepo.getFirstFollowingPostKeysByUserId(follower2.getId(), Limit.of(10))).hasSize(5);
+        assertThat(meterRegistry.get("feed.cleanup.rows").counter().count()).isEqualTo(5);
+
+    }
+
+    @Test
+    void shouldRetryFailedEventsWithBackoff() {
+
+        // Given
+        when(celebrityRegistry.isCelebrity(anyLong())).thenThrow(new IllegalStateException("Registry unavailable"));
+        post("Post");
+
+        // When
+        Instant beforeDrain = Instant.now();
+        underTest.drain();
+        underTest.drain(); // Not due again yet
+
+        // Then
+        FeedOutboxEvent event = outboxRepo.findAll().getFirst();
+
+        assertThat(event.getStatus()).isEqualTo(FeedOutboxStatus.PENDING);
+        assertThat(event.getAttempts()).isEqualTo(1);
+        assertThat(event.getNextAttemptAt()).isAfter(beforeDrain.plusSeconds(9));
+        assertThat(event.getLastError()).contains("Registry unavailable");
+        assertThat(feedRepo.count()).isZero();
+
+    }
+
+    @Test
+    void shouldPurgeOnlyFailedEventsPastTheRetentionAndCountTheRest() {
+
+        // Given
+        Instant now = Instant.now();
+
+        event(FeedOutboxStatus.FAILED, now.minus(Duration.ofDays(8)));
+        FeedOutboxEvent recentFailed = event(FeedOutboxStatus.FAILED, now.minus(Duration.ofDays(1)));
+        FeedOutboxEvent oldPending = event(FeedOutboxStatus.PENDING, now.minus(Duration.ofDays(8)));
+
+        // When
+        underTest.purgeFailedEvents();
+
+        // Then
+        assertThat(outboxRepo.findAll()).extracting(FeedOutboxEvent::getId)
+                .containsExactlyInAnyOrder(recentFailed.getId(), oldPending.getId()); // Not the old failed one
+        assertThat(meterRegistry.get("feed.outbox.failed.stored").gauge().value()).isEqualTo(1);
+
+    }
+
+    private FeedOutboxEvent event(FeedOutboxStatus status, Instant createdAt) {
+
+        return outboxRepo.save(FeedOutboxEvent.builder()
+                .type(FeedOutboxEventType.USER_FOLLOWED)
+                .userId(follower1.getId())
+                .targetUserId(poster.getId())
+                .status(status)
+                .attempts(status == FeedOutboxStatus.FAILED ? 3 : 0)
+                .nextAttemptAt(createdAt)
+                .createdAt(createdAt)
+                .build());
+    }
+
+    /**
+     * Save a post by the poster and record its event, like PostService does in one transaction.
+     */
+    private Post post(String caption) {
+
+        return new TransactionTemplate(transactionManager).execute(status -> {
+
+            Post post = postRepo.save(Post.builder().caption(caption).user(poster).build());
+
+            listener.listenForPostCreatedAndGenerateFollowingFeed(new PostCreatedEvent(post, poster));
+
+            return post;
+        });
+    }
+
+    private void follow(ApplicationUser follower, ApplicationUser followed) {
+        followRepo.save(Follow.builder().follower(follower).followed(followed).build());
+    }
+
+}
@@ -0,0 +1,157 @@
+package com.cdcrane.social_konnect_backend.feeds;
+
+import com.cdcrane.social_konnect_backend.config.pagination.PostCursor;
+import com.cdcrane.social_konnect_backend.posts.Post;
+import com.cdcrane.social_konnect_backend.posts.PostRepository;
+import com.cdcrane.social_konnect_backend.users.ApplicationUser;
+import com.cdcrane.social_konnect_backend.users.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest
+class FeedRetentionEngineTest {
+
+    @Autowired
+    private PostRepository postRepo;
+
+    @Autowired
+    private UserRepository userRepo;
+
+    @Autowired
+    private FeedRetentionHorizonRepository horizonRepo;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private FeedRetentionEngine underTest;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private ApplicationUser poster;
+
+    private final Instant now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+
+    @BeforeEach
+    void setUp() {
+
+        meterRegistry = new SimpleMeterRegistry();
+
+        underTest = new FeedRetentionEngine(jdbcTemplate, horizonRepo, meterRegistry);
+        ReflectionTestUtils.setField(underTest, "maxItems", 3);
+        ReflectionTestUtils.setField(underTest, "maxAge", Duration.ofDays(30));
+        ReflectionTestUtils.setField(underTest, "batchSize", 2); // Smaller than the work, so every loop runs more than once
+
+        poster = userRepo.save(ApplicationUser.builder().username("poster").build());
+    }
+
+    @Test
+    void shouldCapFeedsAtTheNewestItemsAndRecordTheHorizon() {
+
+        // Given
+        ApplicationUser owner1 = userRepo.save(ApplicationUser.builder().username("owner1").build());
+        ApplicationUser owner2 = userRepo.save(ApplicationUser.builder().username("owner2").build());
+        ApplicationUser owner3 = userRepo.save(ApplicationUser.builder().username("owner3").build());
+
+        List<Post> posts = new ArrayList<>();
+        for (int i = 5; i >= 1; i--) {
+            posts.add(post(now.minus(i, ChronoUnit.MINUTES))); // Oldest first
+        }
+
+        for (Post post : posts) {
+            feedRow(owner1, post);
+            feedRow(owner3, post);
+        }
+        feedRow(owner2, posts.get(0));
+        feedRow(owner2, posts.get(1));
+
+        // When
+        long deleted = underTest.enforce();
+
+        // Then the two oldest posts are gone from the full feeds, the short one is untouched
+        assertThat(deleted).isEqualTo(4);
+        assertThat(feedPostIds(owner1)).containsExactlyInAnyOrder(posts.get(2).getId(), posts.get(3).getId(), posts.get(4).getId());
+        assertThat(feedPostIds(owner3)).containsExactlyInAnyOrder(posts.get(2).getId(), posts.get(3).getId(), posts.get(4).getId());
+        assertThat(feedPostIds(owner2)).hasSize(2);
+        assertThat(meterRegistry.get("feed.retention.rows").counter().count()).isEqualTo(4);
+
+        assertThat(underTest.horizonFor(owner1.getId())).isEqualTo(PostCursor.of(posts.get(2)));
+        assertThat(underTest.horizonFor(owner2.getId()).postedAt()).isBefore(now.minus(Duration.ofDays(29))); // Only the age limit applies
+
+    }
+
+    @Test
+    void shouldDeleteRowsOlderThanTheMaxAge() {
+
+        // Given
+        ApplicationUser owner = userRepo.save(ApplicationUser.builder().username("owner").build());
+
+        Post oldPost = post(now.minus(40, ChronoUnit.DAYS));
+        Post newPost = post(now.minus(1, ChronoUnit.DAYS));
+
+        feedRow(owner, oldPost);
+        feedRow(owner, newPost);
+
+        // When
+        long deleted = underTest.enforce();
+
+        // Then
+        assertThat(deleted).isEqualTo(1);
+        assertThat(feedPostIds(owner)).containsExactly(newPost.getId());
+
+    }
+
+    @Test
+    void shouldUseTheNewerOfTheCapAndAgeHorizons() {
+
+        // Given a feed that was capped long ago
+        ApplicationUser owner = userRepo.save(ApplicationUser.builder().username("owner").build());
+
+        horizonRepo.save(FeedRetentionHorizon.builder()
+                .feedOwnerId(owner.getId())
+                .postedAt(now.minus(60, ChronoUnit.DAYS))
+                .postId(UUID.randomUUID())
+                .build());
+
+        // When
+        PostCursor horizon = underTest.horizonFor(owner.getId());
+
+        // Then
+        assertThat(horizon.postedAt()).isAfter(now.minus(Duration.ofDays(31)));
+
+    }
+
+    private Post post(Instant postedAt) {
+
+        Post post = postRepo.saveAndFlush(Post.builder().caption("Post").user(poster).build());
+
+        jdbcTemplate.update("UPDATE posts SET posted_at = ? WHERE post_id = ?", Timestamp.from(postedAt), post.getId());
+        post.setPostedAt(postedAt);
+
+        return post;
+    }
+
+    private void feedRow(ApplicationUser owner, Post post) {
+        jdbcTemplate.update("INSERT INTO following_feed_items (feed_owner_id, posted_at, post_id) VALUES (?, ?, ?)",
+                owner.getId(), Timestamp.from(post.getPostedAt()), post.getId());
+    }
+
+    private List<UUID> feedPostIds(ApplicationUser owner) {
+        return jdbcTemplate.queryForList("SELECT post_id FROM following_feed_items WHERE feed_owner_id = ?", UUID.class, owner.getId());
+    }
+
+}
@@ -0,0 +1,94 @@
+package com.cdcrane.social_konnect_backend.feeds;
+
+import com.cdcrane.social_konnect_backend.config.pagination.PostCursor;
+import com.cdcrane.social_konnect_backend.follows.events.UserFollowedEvent;
+import com.cdcrane.social_konnect_backend.follows.events.UserUnfollowedEvent;
+import com.cdcrane.social_konnect_backend.posts.PostRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class RecentFollowsOverlayTest {
+
+    @Mock
+    private PostRepository postRepository;
+
+    private RecentFollowsOverlay underTest;
+
+    private final Instant now = Instant.parse("2025-01-01T12:00:00Z");
+
+    private final PostCursor newest = new PostCursor(now, UUID.randomUUID());
+    private final PostCursor middle = new PostCursor(now.minusSeconds(60), UUID.randomUUID());
+    private final PostCursor oldest = new PostCursor(now.minusSeconds(120), UUID.randomUUID());
+
+    @BeforeEach
+    void setUp() {
+        underTest = new RecentFollowsOverlay(postRepository, new SimpleMeterRegistry(), Duration.ofSeconds(30), 100);
+    }
+
+    @Test
+    void shouldMergeTheRecentPostsOfEveryUserFollowedInTheWindow() {
+
+        // Given
+        when(postRepository.getRecentPostKeysByUserIds(List.of(2L), Limit.of(FeedOutboxWorker.BACKFILL_POSTS))).thenReturn(List.of(newest, oldest));
+        when(postRepository.getRecentPostKeysByUserIds(List.of(3L), Limit.of(FeedOutboxWorker.BACKFILL_POSTS))).thenReturn(List.of(middle));
+
+        underTest.listenForUserFollowed(new UserFollowedEvent(1L, 2L));
+        underTest.listenForUserFollowed(new UserFollowedEvent(1L, 3L));
+
+        // When
+        List<PostCursor> firstPage = underTest.getPostKeys(1L, null, 10);
+        List<PostCursor> afterCursor = underTest.getPostKeys(1L, newest, 1);
+
+        // Then
+        assertThat(firstPage).containsExactly(newest, middle, oldest);
+        assertThat(afterCursor).containsExactly(middle);
+
+    }
+
+    @Test
+    void shouldForgetUnfollowedUsers() {
+
+        // Given
+        underTest.listenForUserFollowed(new UserFollowedEvent(1L, 2L));
+
+        // When
+        underTest.listenForUserUnfollowed(new UserUnfollowedEvent(1L, 2L));
+
+        // Then
+        assertThat(underTest.getPostKeys(1L, null, 10)).isEmpty();
+        verifyNoInteractions(postRepository);
+
+    }
+
+    @Test
+    void shouldNotOverlayFollowsOutsideTheWindow() {
+
+        // Given
+        underTest = new RecentFollowsOverlay(postRepository, new SimpleMeterRegistry(), Duration.ZERO, 100);
+
+        // When
+        underTest.listenForUserFollowed(new UserFollowedEvent(1L, 2L));
+
+        // Then
+        assertThat(underTest.getPostKeys(1L, null, 10)).isEmpty();
+        assertThat(underTest.getPostKeys(2L, null, 10)).isEmpty(); // Only the follower's feed is affected
+        verifyNoInteractions(postRepository);
+
+    }
+
+}
@@ -0,0 +1,59 @@
+package com.cdcrane.social_konnect_backend.feeds;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TimelineRingBufferTest {
+
+    private final Instant now = Instant.parse("2025-01-01T12:00:00Z");
+
+    @Test
+    void shouldReturnNewestFirstAndDropOldestWhenFull(){
+
+        // Given
+        TimelineRingBuffer buffer = new TimelineRingBuffer(3, true);
+        UUID p1 = UUID.randomUUID();
+        UUID p2 = UUID.randomUUID();
+        UUID p3 = UUID.randomUUID();
+        UUID p4 = UUID.randomUUID();
+
+        // When
+        buffer.add(p1, now);
+        buffer.add(p2, now.plusSeconds(1));
+        buffer.add(p3, now.plusSeconds(2));
+        buffer.add(p4, now.plusSeconds(3));
+
+        // Then
+        assertThat(buffer.newest(10)).containsExactly(p4, p3, p2);
+        assertThat(buffer.isComplete()).isFalse();
+
+    }
+
+    @Test
+    void shouldKeepOrderWhenPostArrivesLateAndIgnoreDuplicates(){
+
+        // Given
+        TimelineRingBuffer buffer = new TimelineRingBuffer(5, true);
+        UUID p1 = UUID.randomUUID();
+        UUID p2 = UUID.randomUUID();
+        UUID late = UUID.randomUUID();
+
+        // When
+        buffer.add(p1, now);
+        buffer.add(p2, now.plusSeconds(10));
+        buffer.add(late, now.plusSeconds(5));
+        buffer.add(p2, now.plusSeconds(10));
+
+        // Then
+        assertThat(buffer.newest(2)).isEqualTo(List.of(p2, late));
+        assertThat(buffer.size()).isEqualTo(3);
+        assertThat(buffer.isComplete()).isTrue();
+
+    }
+
+}
@@ -0,0 +1,96 @@
+package com.cdcrane.social_konnect_backend.posts;
+
+import com.cdcrane.social_konnect_backend.posts.dto.PostMetadataDTO;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PostCounterBufferTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private PostCounterBuffer underTest;
+
+    @BeforeEach
+    void setUp() {
+        underTest = new PostCounterBuffer(jdbcTemplate, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void shouldAddPendingChangesToStoredCounters(){
+
+        // Given
+        UUID postId = UUID.randomUUID();
+        underTest.recordLike(postId, 1);
+        underTest.recordLike(postId, 1);
+        underTest.recordComment(postId, 1);
+
+        // When
+        PostMetadataDTO result = underTest.withPending(new PostMetadataDTO(postId, 10L, 5L));
+
+        // Then
+        assertThat(result.likes()).isEqualTo(12L);
+        assertThat(result.comments()).isEqualTo(6L);
+
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void shouldFlushChangesInOneBatchAndClearThem(){
+
+        // Given
+        UUID p1 = UUID.randomUUID();
+        UUID p2 = UUID.randomUUID();
+        underTest.recordLike(p1, 1);
+        underTest.recordLike(p1, -1); // Cancels out, nothing to write for p1
+        underTest.recordComment(p2, 1);
+
+        // When
+        underTest.flush();
+
+        // Then
+        ArgumentCaptor<List<Object[]>> captor = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate).batchUpdate(anyString(), captor.capture());
+
+        List<Object[]> updates = captor.getValue();
+        assertThat(updates).hasSize(1);
+        assertThat(updates.getFirst()).containsExactly(0L, 1L, p2);
+
+        assertThat(underTest.pendingComments(p2)).isZero();
+
+    }
+
+    @Test
+    void shouldKeepChangesWhenFlushFails(){
+
+        // Given
+        UUID postId = UUID.randomUUID();
+        underTest.recordLike(postId, 1);
+        given(jdbcTemplate.batchUpdate(anyString(), anyList())).willThrow(new DataAccessResourceFailureException("Database down"));
+
+        // When
+        underTest.flush();
+
+        // Then
+        assertThat(underTest.pendingLikes(postId)).isEqualTo(1L);
+
+    }
+
+}
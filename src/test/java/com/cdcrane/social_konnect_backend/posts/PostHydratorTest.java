@@ -0,0 +1,135 @@
+package com.cdcrane.social_konnect_backend.posts;
+
+import com.cdcrane.social_konnect_backend.likes.Like;
+import com.cdcrane.social_konnect_backend.likes.LikeRepository;
+import com.cdcrane.social_konnect_backend.posts.dto.PostDTOWithLiked;
+import com.cdcrane.social_konnect_backend.posts.post_media.PostMedia;
+import com.cdcrane.social_konnect_backend.users.ApplicationUser;
+import com.cdcrane.social_konnect_backend.users.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+class PostHydratorTest {
+
+    @Autowired
+    private PostRepository postRepo;
+
+    @Autowired
+    private UserRepository userRepo;
+
+    @Autowired
+    private LikeRepository likeRepo;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    private PostHydrator underTest;
+
+    private Statistics statistics;
+
+    private ApplicationUser user;
+
+    private final List<UUID> postIds = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+
+        underTest = new PostHydrator(postRepo, new PostCounterBuffer(mock(JdbcTemplate.class), new SimpleMeterRegistry()));
+
+        statistics = entityManager.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+
+        user = userRepo.save(ApplicationUser.builder().username("testuser").profilePictureUrl("http://pfp.com").build());
+
+        // 10 posts with 2 media each, the first one liked by the user.
+        for (int i = 1; i <= 10; i++) {
+
+            Post post = postRepo.save(Post.builder()
+                    .caption("Post " + i)
+                    .user(user)
+                    .postMedia(List.of(
+                            PostMedia.builder().mediaUrl("http://media.com/" + i + "a").mediaType("IMAGE").build(),
+                            PostMedia.builder().mediaUrl("http://media.com/" + i + "b").mediaType("IMAGE").build()))
+                    .build());
+
+            postIds.add(post.getId());
+        }
+
+        likeRepo.save(Like.builder().user(user).post(postRepo.getReferenceById(postIds.getFirst())).build());
+
+        // Start from an empty persistence context, like a new request would.
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    @Test
+    void shouldHydratePostsWithMediaAndLikeStatusInIdOrder(){
+
+        // When
+        List<PostDTOWithLiked> result = underTest.hydrateByIds(postIds.reversed(), user.getId(), false);
+
+        // Then
+        assertEquals(10, result.size());
+        assertEquals(postIds.reversed(), result.stream().map(PostDTOWithLiked::postId).toList());
+
+        PostDTOWithLiked liked = result.getLast();
+        assertEquals("Post 1", liked.caption());
+        assertEquals("testuser", liked.username());
+        assertEquals("http://pfp.com", liked.profilePictureUrl());
+        assertEquals(2, liked.media().size());
+        assertTrue(liked.liked());
+
+        assertFalse(result.getFirst().liked());
+        assertNull(result.getFirst().metadata()); // Not requested
+
+    }
+
+    @Test
+    void shouldUseSameNumberOfStatementsForAnyPageSize(){
+
+        // When
+        statistics.clear();
+        underTest.hydrateByIds(postIds.subList(0, 2), user.getId(), false);
+        long statementsForTwoPosts = statistics.getPrepareStatementCount();
+
+        entityManager.clear();
+
+        statistics.clear();
+        underTest.hydrateByIds(postIds, user.getId(), false);
+        long statementsForTenPosts = statistics.getPrepareStatementCount();
+
+        // Then
+        assertEquals(3, statementsForTwoPosts); // Post rows, media and like status
+        assertEquals(statementsForTwoPosts, statementsForTenPosts);
+
+    }
+
+    @Test
+    void shouldEmbedMetadataWithoutExtraStatements(){
+
+        // When
+        statistics.clear();
+        List<PostDTOWithLiked> result = underTest.hydrateByIds(postIds, user.getId(), true);
+
+        // Then
+        assertEquals(3, statistics.getPrepareStatementCount()); // Post rows, media and metadata with like status
+        assertTrue(result.getFirst().liked());
+        assertNotNull(result.getFirst().metadata());
+
+    }
+
+}
@@ -1,17 +1,18 @@
 package com.cdcrane.social_konnect_backend.posts;
 
-import com.cdcrane.social_konnect_backend.comments.Comment;
-import com.cdcrane.social_konnect_backend.comments.CommentRepository;
 import com.cdcrane.social_konnect_backend.likes.Like;
 import com.cdcrane.social_konnect_backend.likes.LikeRepository;
 import com.cdcrane.social_konnect_backend.posts.dto.PostLikeStatusDTO;
 import com.cdcrane.social_konnect_backend.posts.dto.PostMetadataDTO;
+import com.cdcrane.social_konnect_backend.posts.dto.PostMetadataWithLikedDTO;
+import com.cdcrane.social_konnect_backend.posts.dto.PostRowDTO;
 import com.cdcrane.social_konnect_backend.users.ApplicationUser;
 import com.cdcrane.social_konnect_backend.users.UserRepository;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 
@@ -31,9 +32,6 @@ class PostRepositoryTest {
     @Autowired
     private UserRepository userRepo;
 
-    @Autowired
-    private CommentRepository commentRepo;
-
     @Autowired
     private LikeRepository likeRepo;
 
@@ -82,6 +80,30 @@ class PostRepositoryTest {
 
     }
 
+    @Test
+    void shouldGetPostsPageByPageWithKeysetCursor(){
+
+        // Given
+        ApplicationUser user = userRepo.save(ApplicationUser.builder().username("testuser").build());
+        for (int i = 1; i <= 5; i++) {
+            underTest.save(Post.builder().caption("Post " + i).user(user).build());
+        }
+
+        // When
+        List<PostRowDTO> firstPage = underTest.getFirstPostRowsOrderByPostedAt(Limit.of(2));
+        PostRowDTO last = firstPage.getLast();
+        List<PostRowDTO> secondPage = underTest.getPostRowsBeforeCursorOrderByPostedAt(last.postedAt(), last.postId(), Limit.of(2));
+        last = secondPage.getLast();
+        List<PostRowDTO> thirdPage = underTest.getPostRowsBeforeCursorOrderByPostedAt(last.postedAt(), last.postId(), Limit.of(2));
+
+        // Then
+        assertEquals(List.of("Post 5", "Post 4"), firstPage.stream().map(PostRowDTO::caption).toList());
+        assertEquals(List.of("Post 3", "Post 2"), secondPage.stream().map(PostRowDTO::caption).toList());
+        assertEquals(List.of("Post 1"), thirdPage.stream().map(PostRowDTO::caption).toList());
+        assertEquals("testuser", firstPage.getFirst().username());
+
+    }
+
     @Test
     void shouldGetPostsByUsernameOrderedByPostedAt() {
 
@@ -99,15 +121,15 @@ class PostRepositoryTest {
         underTest.save(post2);
 
         // When
-        Page<Post> results = underTest.getPostsByUsernameOrderByPostedAt(user.getUsername(), Pageable.unpaged());
+        Page<PostRowDTO> results = underTest.getPostRowsByUsernameOrderByPostedAt(user.getUsername(), Pageable.unpaged());
 
         // Then
         assertEquals(2, results.getNumberOfElements());
 
-        List<Post> resultsList = results.toList();
+        List<PostRowDTO> resultsList = results.toList();
 
-        assertEquals(user.getUsername(), resultsList.getFirst().getUser().getUsername());
-        assertEquals(post2.getCaption(), resultsList.getFirst().getCaption()); // Check that the ordering worked by making sure the first one in the list is the last posted.
+        assertEquals(user.getUsername(), resultsList.getFirst().username());
+        assertEquals(post2.getCaption(), resultsList.getFirst().caption()); // Check that the ordering worked by making sure the first one in the list is the last posted.
 
     }
 
@@ -117,7 +139,7 @@ class PostRepositoryTest {
         // Given no posts by that user
 
         // When
-        Page<Post> results = underTest.getPostsByUsernameOrderByPostedAt("testuser", Pageable.unpaged());
+        Page<PostRowDTO> results = underTest.getPostRowsByUsernameOrderByPostedAt("testuser", Pageable.unpaged());
 
         // Then
         assertEquals(0, results.getNumberOfElements());
@@ -125,75 +147,18 @@ class PostRepositoryTest {
     }
 
     @Test
-    void shouldGetPostMetadataByPostIdAndReturn1ofEach(){
-
-        // Given
-        ApplicationUser user = ApplicationUser.builder().username("testuser").build();
-        ApplicationUser savedUser = userRepo.save(user);
-
-        Post savedPost = underTest.save(Post.builder().caption("Post 1").user(savedUser).build());
-
-        Like l1 = Like.builder().user(savedUser).post(savedPost).build();
-        likeRepo.save(l1);
-
-        Comment c1 =  Comment.builder().user(savedUser).content("Comment 1").post(savedPost).build();
-        commentRepo.save(c1);
-
-        // When
-        Optional<PostMetadataDTO> data = underTest.getPostMetadataByPostId(savedPost.getId());
-
-        // Then
-        PostMetadataDTO meta = data.get();
-
-        assertEquals(1, meta.likes());
-        assertEquals(1, meta.comments());
-
-    }
-
-    @Test
-    void shouldGetPostMetadataByPostIdAndReturn2likesFromDifferentUsers(){
-
-        // Given
-        ApplicationUser savedUser1 = userRepo.save(userRepo.save(ApplicationUser.builder().username("test1").build()));
-        ApplicationUser savedUser2 = userRepo.save(userRepo.save(ApplicationUser.builder().username("test2").build()));
-
-        Post savedPost = underTest.save(Post.builder().caption("Post 1").user(savedUser1).build());
-
-        likeRepo.save(Like.builder().user(savedUser1).post(savedPost).build());
-        likeRepo.save(Like.builder().user(savedUser2).post(savedPost).build());
-
-        // When
-        Optional<PostMetadataDTO> data = underTest.getPostMetadataByPostId(savedPost.getId());
-
-        // Then
-        PostMetadataDTO meta = data.get();
-
-        assertEquals(2, meta.likes());
-        assertEquals(0, meta.comments());
-
-    }
-
-    @Test
-    void shouldGetPostMetadataByPostIdAndReturn0ofEach(){
+    void shouldGetStoredCountersStartingAtZero(){
 
         // Given
-        ApplicationUser savedUser1 = userRepo.save(userRepo.save(ApplicationUser.builder().username("test1").build()));
-        ApplicationUser savedUser2 = userRepo.save(userRepo.save(ApplicationUser.builder().username("test2").build()));
-
-        Post postWithMeta = underTest.save(Post.builder().caption("Post with 2 likes and 0 comments").user(savedUser1).build());
-        Post postWith0 = underTest.save(Post.builder().caption("Post with no likes or comments").user(savedUser1).build());
-
-        likeRepo.save(Like.builder().user(savedUser1).post(postWithMeta).build());
-        likeRepo.save(Like.builder().user(savedUser2).post(postWithMeta).build());
+        Post savedPost = underTest.save(Post.builder().caption("New post").build());
 
         // When
-        Optional<PostMetadataDTO> data = underTest.getPostMetadataByPostId(postWith0.getId());
+        Optional<PostMetadataDTO> data = underTest.getStoredCountersByPostId(savedPost.getId());
 
         // Then
-        PostMetadataDTO meta = data.get();
-
-        assertEquals(0, meta.likes());
-        assertEquals(0, meta.comments());
+        assertTrue(data.isPresent());
+        assertEquals(0L, data.get().likes());
+        assertEquals(0L, data.get().comments());
 
     }
 
@@ -250,30 +215,7 @@ class PostRepositoryTest {
     }
 
     @Test
-    void shouldGetLikeStatusByPostIdsAndReturnTrueForAll(){
-
-        // Given
-        ApplicationUser userThatLiked = userRepo.save(ApplicationUser.builder().username("Test").build());
-
-        Post likedPost1 = underTest.save(Post.builder().caption("Post liked by one user").user(userThatLiked).build());
-        Post likedPost2 = underTest.save(Post.builder().caption("Another post").user(userThatLiked).build());
-
-        likeRepo.save(Like.builder().user(userThatLiked).post(likedPost1).build());
-        likeRepo.save(Like.builder().user(userThatLiked).post(likedPost2).build());
-
-        List<UUID> postIds = List.of(likedPost1.getId(), likedPost2.getId());
-
-        // When
-        List<PostLikeStatusDTO> data =  underTest.findLikeStatusByPostIds(postIds, userThatLiked.getId());
-
-        // Then
-        assertTrue(data.getFirst().liked());
-        assertTrue(data.getLast().liked());
-
-    }
-
-    @Test
-    void shouldGetLikeStatusByPostIdsAndReturnTrueForOne(){
+    void shouldGetMetadataWithLikeStatusByPostIds(){
 
         // Given
         ApplicationUser userThatLiked = userRepo.save(ApplicationUser.builder().username("Test").build());
@@ -286,50 +228,16 @@ class PostRepositoryTest {
         List<UUID> postIds = List.of(likedPost.getId(), nonLikedPost.getId());
 
         // When
-        List<PostLikeStatusDTO> data =  underTest.findLikeStatusByPostIds(postIds, userThatLiked.getId());
+        List<PostMetadataWithLikedDTO> data = underTest.findMetadataWithLikeStatusByPostIds(postIds, userThatLiked.getId());
 
         // Then
-        PostLikeStatusDTO likedPostData = data.stream().filter(status -> status.postId().equals(likedPost.getId())).findFirst().orElse(null);
-        PostLikeStatusDTO nonLikedPostData = data.stream().filter(status -> status.postId().equals(nonLikedPost.getId())).findFirst().orElse(null);
+        PostMetadataWithLikedDTO likedPostData = data.stream().filter(m -> m.postId().equals(likedPost.getId())).findFirst().orElse(null);
+        PostMetadataWithLikedDTO nonLikedPostData = data.stream().filter(m -> m.postId().equals(nonLikedPost.getId())).findFirst().orElse(null);
 
+        assertEquals(2, data.size());
         assertTrue(likedPostData.liked());
         assertFalse(nonLikedPostData.liked());
-
-    }
-
-    @Test
-    void shouldGetLikeStatusByPostIdsAndReturnDifferentResultFor2Users(){
-
-        // Given
-        ApplicationUser userThatLikedPost1 = userRepo.save(ApplicationUser.builder().username("User 1").build());
-        ApplicationUser userThatLikedPost2 = userRepo.save(ApplicationUser.builder().username("User 2").build());
-
-        ApplicationUser postCreator =  userRepo.save(ApplicationUser.builder().username("Post Creator").build());
-
-        Post post1 = underTest.save(Post.builder().caption("Post liked by one user").user(postCreator).build());
-        Post post2 = underTest.save(Post.builder().caption("Another post").user(postCreator).build());
-
-        likeRepo.save(Like.builder().user(userThatLikedPost1).post(post1).build());
-        likeRepo.save(Like.builder().user(userThatLikedPost2).post(post2).build());
-
-        List<UUID> postIds = List.of(post1.getId(), post2.getId());
-
-        // When
-        List<PostLikeStatusDTO> dataForUser1 =  underTest.findLikeStatusByPostIds(postIds, userThatLikedPost1.getId());
-        List<PostLikeStatusDTO> dataForUser2 =  underTest.findLikeStatusByPostIds(postIds, userThatLikedPost2.getId());
-
-        // Then
-        PostLikeStatusDTO post1FromUser1Perspective = dataForUser1.stream().filter(status -> status.postId().equals(post1.getId())).findFirst().orElse(null);
-        PostLikeStatusDTO post2FromUser1Perspective = dataForUser1.stream().filter(status -> status.postId().equals(post2.getId())).findFirst().orElse(null);
-
-        PostLikeStatusDTO post1FromUser2Perspective = dataForUser2.stream().filter(status -> status.postId().equals(post1.getId())).findFirst().orElse(null);
-        PostLikeStatusDTO post2FromUser2Perspective = dataForUser2.stream().filter(status -> status.postId().equals(post2.getId())).findFirst().orElse(null);
-
-        assertTrue(post1FromUser1Perspective.liked());
-        assertFalse(post2FromUser1Perspective.liked());
-
-        assertFalse(post1FromUser2Perspective.liked());
-        assertTrue(post2FromUser2Perspective.liked());
+        assertEquals(0L, nonLikedPostData.likes()); // Counters start at zero, they are only changed by the counter buffer
 
     }
 
@@ -1,14 +1,23 @@
 package com.cdcrane.social_konnect_backend.posts;
 
+import com.cdcrane.social_konnect_backend.authentication.AuthenticatedUser;
 import com.cdcrane.social_konnect_backend.config.SecurityUtils;
 import com.cdcrane.social_konnect_backend.config.exceptions.ActionNotPermittedException;
+import com.cdcrane.social_konnect_backend.config.exceptions.BatchTooLargeException;
+import com.cdcrane.social_konnect_backend.config.exceptions.InvalidCursorException;
 import com.cdcrane.social_konnect_backend.config.exceptions.ResourceNotFoundException;
 import com.cdcrane.social_konnect_backend.config.file_handling.FileHandler;
+import com.cdcrane.social_konnect_backend.config.pagination.CursorPage;
 import com.cdcrane.social_konnect_backend.posts.dto.CreatePostDTO;
+import com.cdcrane.social_konnect_backend.posts.dto.PostDTO;
 import com.cdcrane.social_konnect_backend.posts.dto.PostDTOWithLiked;
 import com.cdcrane.social_konnect_backend.posts.dto.PostLikeStatusDTO;
 import com.cdcrane.social_konnect_backend.posts.dto.PostMetadataDTO;
+import com.cdcrane.social_konnect_backend.posts.dto.PostMetadataWithLikedDTO;
+import com.cdcrane.social_konnect_backend.posts.dto.PostRowDTO;
 import com.cdcrane.social_konnect_backend.posts.post_media.PostMedia;
+import com.cdcrane.social_konnect_backend.posts.post_media.dto.PostMediaDTO;
+import com.cdcrane.social_konnect_backend.posts.post_media.dto.PostMediaRowDTO;
 import com.cdcrane.social_konnect_backend.users.ApplicationUser;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -18,11 +27,16 @@ import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -53,10 +67,14 @@ class PostServiceTest {
     @Mock
     private ApplicationEventPublisher eventPublisher;
 
+    @Mock
+    private PostCounterBuffer counterBuffer;
+
 
     @BeforeEach
     void setUp() {
-        underTest = new PostService(postRepository, securityUtils, fileHandler, eventPublisher);
+        underTest = new PostService(postRepository, securityUtils, fileHandler, eventPublisher, counterBuffer, new PostHydrator(postRepository, counterBuffer),
+                new TransactionTemplate(mock(PlatformTransactionManager.class)));
     }
 
     @Test
@@ -140,28 +158,25 @@ class PostServiceTest {
     void shouldGetPostsByUsername() {
 
         // Given
-        ApplicationUser user = ApplicationUser.builder().username("testuser").build();
-
-        Post p1 = Post.builder()
-                .id(UUID.randomUUID())
-                .caption("Post 1")
-                .user(user)
-                .build();
+        PostRowDTO p1 = new PostRowDTO(UUID.randomUUID(), "Post 1", Instant.now(), "testuser", "http://google.com");
 
-        given(postRepository.getPostsByUsernameOrderByPostedAt(eq("testuser"), any()))
+        given(postRepository.getPostRowsByUsernameOrderByPostedAt(eq("testuser"), any()))
                 .willReturn(new PageImpl<>(List.of(p1)));
+        given(postRepository.getMediaByPostIds(any())).willReturn(List.of(new PostMediaRowDTO(p1.postId(), "http://test.com", "IMAGE", "http://test.com/thumb", null, null)));
 
         // When
-        Page<Post> results = underTest.getPostsByUsername("testuser", Pageable.unpaged());
+        Page<PostDTO> results = underTest.getPostsByUsername("testuser", Pageable.unpaged());
 
         // Then
-        verify(postRepository).getPostsByUsernameOrderByPostedAt("testuser", Pageable.unpaged());
+        verify(postRepository).getPostRowsByUsernameOrderByPostedAt("testuser", Pageable.unpaged());
+        verify(postRepository, never()).findMetadataWithLikeStatusByPostIds(any(), any()); // No like status in this listing
 
         assertThat(results.getNumberOfElements()).isEqualTo(1);
-        List<Post> resultsList = results.toList();
+        List<PostDTO> resultsList = results.toList();
 
-        assertThat(resultsList.getFirst().getCaption()).isEqualTo(p1.getCaption());
-        assertThat(resultsList.getFirst().getUser().getUsername()).isEqualTo(user.getUsername());
+        assertThat(resultsList.getFirst().caption()).isEqualTo(p1.caption());
+        assertThat(resultsList.getFirst().username()).isEqualTo("testuser");
+        assertThat(resultsList.getFirst().media()).containsExactly(new PostMediaDTO("http://test.com", "IMAGE", "http://test.com/thumb", null, null));
 
     }
 
@@ -182,7 +197,7 @@ class PostServiceTest {
     void shouldNotGetPostsByUsername(){
 
         // Given no posts
-        given(postRepository.getPostsByUsernameOrderByPostedAt(eq("testuser"), any()))
+        given(postRepository.getPostRowsByUsernameOrderByPostedAt(eq("testuser"), any()))
                 .willReturn(Page.empty());
 
         // Then
@@ -196,29 +211,97 @@ class PostServiceTest {
 
         // Given
         ApplicationUser user =  ApplicationUser.builder().username("testuser").profilePictureUrl("http://google.com").id(1L).build();
-        given(securityUtils.getCurrentAuth()).willReturn(user);
+        given(securityUtils.getCurrentUserId()).willReturn(user.getId());
 
-        Post p1 =  Post.builder().caption("Post 1").id(UUID.randomUUID()).user(user).build();
-        Post p2 =  Post.builder().caption("Post 2").id(UUID.randomUUID()).user(user).build();
-        Page<Post> posts = new PageImpl<>(List.of(p1, p2));
-        given(postRepository.getPostsOrderByPostedAt(any())).willReturn(posts);
+        PostRowDTO p1 = new PostRowDTO(UUID.randomUUID(), "Post 1", Instant.now(), user.getUsername(), user.getProfilePictureUrl());
+        PostRowDTO p2 = new PostRowDTO(UUID.randomUUID(), "Post 2", Instant.now(), user.getUsername(), user.getProfilePictureUrl());
+        given(postRepository.getFirstPostRowsOrderByPostedAt(Limit.of(11))).willReturn(List.of(p1, p2));
 
-        PostLikeStatusDTO statusP1 = new PostLikeStatusDTO(p1.getId(), true);
-        PostLikeStatusDTO statusP2 = new PostLikeStatusDTO(p2.getId(), true);
-        given(postRepository.findLikeStatusByPostIds(any(), any())).willReturn(List.of(statusP1, statusP2));
+        PostMetadataWithLikedDTO metadataP1 = new PostMetadataWithLikedDTO(p1.postId(), 3L, 1L, true);
+        PostMetadataWithLikedDTO metadataP2 = new PostMetadataWithLikedDTO(p2.postId(), 0L, 0L, true);
+        given(postRepository.findMetadataWithLikeStatusByPostIds(any(), any())).willReturn(List.of(metadataP1, metadataP2));
+        given(counterBuffer.withPending(any(PostMetadataWithLikedDTO.class))).willAnswer(invocation -> invocation.getArgument(0));
+
+        given(postRepository.getMediaByPostIds(any())).willReturn(List.of(new PostMediaRowDTO(p1.postId(), "http://test.com", "IMAGE", "http://test.com/thumb", null, null)));
 
         // When
-        Page<PostDTOWithLiked> response = underTest.getPostsWithLiked(Pageable.unpaged());
+        CursorPage<PostDTOWithLiked> response = underTest.getPostsWithLiked(null, 10, false);
 
         // Then
-        verify(postRepository).getPostsOrderByPostedAt(any());
-        verify(postRepository).findLikeStatusByPostIds(List.of(p1.getId(), p2.getId()), user.getId());
+        verify(postRepository).getFirstPostRowsOrderByPostedAt(Limit.of(11));
+        verify(postRepository).findMetadataWithLikeStatusByPostIds(List.of(p1.postId(), p2.postId()), user.getId());
+        verify(postRepository).getMediaByPostIds(List.of(p1.postId(), p2.postId())); // Media for the whole page in one query
 
-        List<PostDTOWithLiked> data = response.stream().toList();
+        List<PostDTOWithLiked> data = response.content();
 
         assertThat(data.size()).isEqualTo(2);
+        assertThat(data.getFirst().media()).containsExactly(new PostMediaDTO("http://test.com", "IMAGE", "http://test.com/thumb", null, null));
+        assertThat(data.getLast().media()).isEmpty();
         assertThat(data.getFirst().liked()).isTrue();
         assertThat(data.getLast().liked()).isTrue();
+        assertThat(data.getFirst().metadata()).isNull(); // Not requested
+        assertThat(response.hasNext()).isFalse();
+        assertThat(response.nextCursor()).isNull();
+
+    }
+
+    @Test
+    void shouldGetPostsWithLikedAndEmbeddedMetadata() {
+
+        // Given
+        ApplicationUser user =  ApplicationUser.builder().username("testuser").profilePictureUrl("http://google.com").id(1L).build();
+        given(securityUtils.getCurrentUserId()).willReturn(user.getId());
+
+        PostRowDTO p1 = new PostRowDTO(UUID.randomUUID(), "Post 1", Instant.now(), user.getUsername(), user.getProfilePictureUrl());
+        PostRowDTO p2 = new PostRowDTO(UUID.randomUUID(), "Post 2", Instant.now(), user.getUsername(), user.getProfilePictureUrl());
+        given(postRepository.getFirstPostRowsOrderByPostedAt(Limit.of(11))).willReturn(List.of(p1, p2));
+
+        PostMetadataWithLikedDTO metadataP1 = new PostMetadataWithLikedDTO(p1.postId(), 3L, 1L, true);
+        PostMetadataWithLikedDTO metadataP2 = new PostMetadataWithLikedDTO(p2.postId(), 0L, 0L, false);
+        given(postRepository.findMetadataWithLikeStatusByPostIds(any(), any())).willReturn(List.of(metadataP1, metadataP2));
+        given(counterBuffer.withPending(any(PostMetadataWithLikedDTO.class))).willAnswer(invocation -> invocation.getArgument(0));
+
+        // When
+        CursorPage<PostDTOWithLiked> response = underTest.getPostsWithLiked(null, 10, true);
+
+        // Then
+
+        List<PostDTOWithLiked> data = response.content();
+
+        assertThat(data.getFirst().liked()).isTrue();
+        assertThat(data.getFirst().metadata()).isEqualTo(new PostMetadataDTO(p1.postId(), 3L, 1L));
+        assertThat(data.getLast().liked()).isFalse();
+        assertThat(data.getLast().metadata()).isEqualTo(new PostMetadataDTO(p2.postId(), 0L, 0L));
+
+    }
+
+    @Test
+    void shouldGetPostsWithLikedAndReturnCursorForNextPage() {
+
+        // Given
+        ApplicationUser user =  ApplicationUser.builder().username("testuser").profilePictureUrl("http://google.com").id(1L).build();
+        given(securityUtils.getCurrentUserId()).willReturn(user.getId());
+
+        PostRowDTO p1 = new PostRowDTO(UUID.randomUUID(), "Post 1", Instant.now(), user.getUsername(), user.getProfilePictureUrl());
+        PostRowDTO p2 = new PostRowDTO(UUID.randomUUID(), "Post 2", Instant.now().minusSeconds(5), user.getUsername(), user.getProfilePictureUrl());
+        PostRowDTO p3 = new PostRowDTO(UUID.randomUUID(), "Post 3", Instant.now().minusSeconds(10), user.getUsername(), user.getProfilePictureUrl());
+        given(postRepository.getFirstPostRowsOrderByPostedAt(Limit.of(3))).willReturn(List.of(p1, p2, p3));
+
+        // When
+        CursorPage<PostDTOWithLiked> firstPage = underTest.getPostsWithLiked(null, 2, false);
+
+        // Then
+        assertThat(firstPage.content()).hasSize(2);
+        assertThat(firstPage.hasNext()).isTrue();
+
+        // The cursor points at the last post returned, so the next page continues from there.
+        given(postRepository.getPostRowsBeforeCursorOrderByPostedAt(p2.postedAt(), p2.postId(), Limit.of(3))).willReturn(List.of(p3));
+
+        CursorPage<PostDTOWithLiked> secondPage = underTest.getPostsWithLiked(firstPage.nextCursor(), 2, false);
+
+        assertThat(secondPage.content()).hasSize(1);
+        assertThat(secondPage.content().getFirst().postId()).isEqualTo(p3.postId());
+        assertThat(secondPage.hasNext()).isFalse();
 
     }
 
@@ -226,13 +309,23 @@ class PostServiceTest {
     void shouldNotGetPostsWithLikedBecauseNoPosts() {
 
         // Given no posts
-        given(postRepository.getPostsOrderByPostedAt(any())).willReturn(Page.empty());
+        given(postRepository.getFirstPostRowsOrderByPostedAt(any())).willReturn(List.of());
 
         // Then
-        assertThatThrownBy(() -> underTest.getPostsWithLiked(Pageable.unpaged())).isInstanceOf(ResourceNotFoundException.class);
+        assertThatThrownBy(() -> underTest.getPostsWithLiked(null, 10, false)).isInstanceOf(ResourceNotFoundException.class);
+
+        verify(postRepository, never()).findMetadataWithLikeStatusByPostIds(any(), any());
+
+
+    }
+
+    @Test
+    void shouldNotGetPostsWithLikedBecauseCursorInvalid() {
 
-        verify(postRepository, never()).findLikeStatusByPostIds(any(), any());
+        // Then
+        assertThatThrownBy(() -> underTest.getPostsWithLiked("not-a-cursor", 10, false)).isInstanceOf(InvalidCursorException.class);
 
+        verify(postRepository, never()).getPostRowsBeforeCursorOrderByPostedAt(any(), any(), any());
 
     }
 
@@ -242,23 +335,24 @@ class PostServiceTest {
         // Given
         ApplicationUser user =  ApplicationUser.builder().username("testuser").profilePictureUrl("http://google.com").id(1L).build();
 
-        Post p1 =  Post.builder().caption("Post 1").id(UUID.randomUUID()).user(user).build();
-        Post p2 =  Post.builder().caption("Post 2").id(UUID.randomUUID()).user(user).build();
-        Page<Post> posts = new PageImpl<>(List.of(p1, p2));
-        given(postRepository.getPostsByUsernameOrderByPostedAt(any(), any())).willReturn(posts);
+        PostRowDTO p1 = new PostRowDTO(UUID.randomUUID(), "Post 1", Instant.now(), user.getUsername(), user.getProfilePictureUrl());
+        PostRowDTO p2 = new PostRowDTO(UUID.randomUUID(), "Post 2", Instant.now(), user.getUsername(), user.getProfilePictureUrl());
+        Page<PostRowDTO> posts = new PageImpl<>(List.of(p1, p2));
+        given(postRepository.getPostRowsByUsernameOrderByPostedAt(any(), any())).willReturn(posts);
 
-        given(securityUtils.getCurrentAuth()).willReturn(user);
+        given(securityUtils.getCurrentUserId()).willReturn(user.getId());
 
-        PostLikeStatusDTO statusP1 = new PostLikeStatusDTO(p1.getId(), true);
-        PostLikeStatusDTO statusP2 = new PostLikeStatusDTO(p2.getId(), true);
-        given(postRepository.findLikeStatusByPostIds(any(), any())).willReturn(List.of(statusP1, statusP2));
+        PostMetadataWithLikedDTO metadataP1 = new PostMetadataWithLikedDTO(p1.postId(), 3L, 1L, true);
+        PostMetadataWithLikedDTO metadataP2 = new PostMetadataWithLikedDTO(p2.postId(), 0L, 0L, true);
+        given(postRepository.findMetadataWithLikeStatusByPostIds(any(), any())).willReturn(List.of(metadataP1, metadataP2));
+        given(counterBuffer.withPending(any(PostMetadataWithLikedDTO.class))).willAnswer(invocation -> invocation.getArgument(0));
 
         // When
-        Page<PostDTOWithLiked> response = underTest.getPostsWithLikedByUsername(any(), eq(Pageable.unpaged()));
+        Page<PostDTOWithLiked> response = underTest.getPostsWithLikedByUsername(any(), eq(Pageable.unpaged()), false);
 
         // Then
-        verify(postRepository).getPostsByUsernameOrderByPostedAt(any(), any());
-        verify(postRepository).findLikeStatusByPostIds(List.of(p1.getId(), p2.getId()), user.getId());
+        verify(postRepository).getPostRowsByUsernameOrderByPostedAt(any(), any());
+        verify(postRepository).findMetadataWithLikeStatusByPostIds(List.of(p1.postId(), p2.postId()), user.getId());
 
         List<PostDTOWithLiked> data = response.stream().toList();
 
@@ -272,12 +366,12 @@ class PostServiceTest {
     void shouldNotGetPostsWithLikedByUsernameBecauseNoPosts() {
 
         // Given no posts
-        given(postRepository.getPostsByUsernameOrderByPostedAt(any(), any())).willReturn(Page.empty());
+        given(postRepository.getPostRowsByUsernameOrderByPostedAt(any(), any())).willReturn(Page.empty());
 
         // Then
-        assertThatThrownBy(() -> underTest.getPostsWithLikedByUsername(any(), any())).isInstanceOf(ResourceNotFoundException.class);
+        assertThatThrownBy(() -> underTest.getPostsWithLikedByUsername(any(), any(), false)).isInstanceOf(ResourceNotFoundException.class);
 
-        verify(postRepository, never()).findLikeStatusByPostIds(any(), any());
+        verify(postRepository, never()).findMetadataWithLikeStatusByPostIds(any(), any());
 
     }
 
@@ -286,7 +380,7 @@ class PostServiceTest {
 
         // Given
         ApplicationUser user = ApplicationUser.builder().username("testuser").profilePictureUrl("http://google.com").id(1L).build();
-        given(securityUtils.getCurrentAuth()).willReturn(user);
+        given(securityUtils.getCurrentUserId()).willReturn(user.getId());
 
         Post p1 = Post.builder().caption("Post 1").id(UUID.randomUUID()).user(user).build();
         given(postRepository.findById(p1.getId())).willReturn(Optional.of(p1));
@@ -325,14 +419,17 @@ class PostServiceTest {
 
         // Given
         PostMetadataDTO metadata = new PostMetadataDTO(UUID.randomUUID(), 1L, 2L);
+        PostMetadataDTO withPendingLike = new PostMetadataDTO(metadata.postId(), 2L, 2L);
 
-        given(postRepository.getPostMetadataByPostId(metadata.postId())).willReturn(Optional.of(metadata));
+        given(postRepository.getStoredCountersByPostId(metadata.postId())).willReturn(Optional.of(metadata));
+        given(counterBuffer.withPending(metadata)).willReturn(withPendingLike);
 
         // When
-        underTest.getPostMetadataByPostId(metadata.postId());
+        PostMetadataDTO result = underTest.getPostMetadataByPostId(metadata.postId());
 
         // Then
-        verify(postRepository).getPostMetadataByPostId(metadata.postId());
+        verify(postRepository).getStoredCountersByPostId(metadata.postId());
+        assertThat(result).isEqualTo(withPendingLike); // Includes the change not yet flushed
 
     }
 
@@ -340,13 +437,51 @@ class PostServiceTest {
     void shouldNotGetPostMetadataByPostIdBecauseNoPost() {
 
         // Given no post
-        given(postRepository.getPostMetadataByPostId(any())).willReturn(Optional.empty());
+        given(postRepository.getStoredCountersByPostId(any())).willReturn(Optional.empty());
 
         // Then
         assertThatThrownBy(() -> underTest.getPostMetadataByPostId(UUID.randomUUID())).isInstanceOf(ResourceNotFoundException.class);
 
     }
 
+    @Test
+    void shouldGetPostMetadataForManyPostsInRequestedOrder() {
+
+        // Given
+        UUID p1 = UUID.randomUUID();
+        UUID p2 = UUID.randomUUID();
+        UUID deleted = UUID.randomUUID();
+        given(securityUtils.getCurrentUserId()).willReturn(1L);
+
+        PostMetadataWithLikedDTO metadataP1 = new PostMetadataWithLikedDTO(p1, 3L, 1L, true);
+        PostMetadataWithLikedDTO metadataP2 = new PostMetadataWithLikedDTO(p2, 0L, 2L, false);
+        given(postRepository.findMetadataWithLikeStatusByPostIds(any(), eq(1L))).willReturn(List.of(metadataP2, metadataP1));
+        given(counterBuffer.withPending(any(PostMetadataWithLikedDTO.class))).willAnswer(invocation -> invocation.getArgument(0));
+
+        // When
+        List<PostMetadataWithLikedDTO> result = underTest.getPostMetadataWithLikedByPostIds(List.of(p1, p2, deleted, p1));
+
+        // Then
+        verify(postRepository, times(1)).findMetadataWithLikeStatusByPostIds(any(), eq(1L)); // One query for the whole batch
+        assertThat(result).containsExactly(metadataP1, metadataP2); // Duplicates and missing posts left out
+
+    }
+
+    @Test
+    void shouldNotGetPostMetadataForTooManyPosts() {
+
+        // Given
+        List<UUID> postIds = new ArrayList<>();
+        for (int i = 0; i <= PostService.MAX_METADATA_BATCH_SIZE; i++) {
+            postIds.add(UUID.randomUUID());
+        }
+
+        // Then
+        assertThatThrownBy(() -> underTest.getPostMetadataWithLikedByPostIds(postIds)).isInstanceOf(BatchTooLargeException.class);
+        verify(postRepository, never()).findMetadataWithLikeStatusByPostIds(any(), any());
+
+    }
+
     @Test
     void shouldSavePostWithMedia(){
 
@@ -356,12 +491,12 @@ class PostServiceTest {
 
         CreatePostDTO dto = new CreatePostDTO("Test caption", List.of(mockFile));
 
-        PostMedia media = new PostMedia(UUID.randomUUID(), "http://test.com", "IMAGE", "generated_name.png");
+        PostMedia media = new PostMedia(UUID.randomUUID(), "http://test.com", "IMAGE", "generated_name.png", null, null, null);
 
         ApplicationUser user = ApplicationUser.builder().id(1L).username("testuser").build();
 
         given(fileHandler.saveFiles(any())).willReturn(List.of(media));
-        given(securityUtils.getCurrentAuth()).willReturn(user);
+        given(securityUtils.getCurrentUserReference()).willReturn(user);
 
         // When
         underTest.savePost(dto);
@@ -371,7 +506,7 @@ class PostServiceTest {
 
         verify(fileHandler).saveFiles(dto.files());
 
-        verify(securityUtils).getCurrentAuth();
+        verify(securityUtils).getCurrentUserReference();
 
         verify(postRepository).save(captor.capture());
 
@@ -388,6 +523,78 @@ class PostServiceTest {
 
     }
 
+    @Test
+    void shouldSavePostWithDirectUploads(){
+
+        // Given
+        CreatePostDTO dto = new CreatePostDTO("Test caption", null, List.of("media/key.png"));
+
+        PostMedia media = new PostMedia(UUID.randomUUID(), "http://test.com", "IMAGE", "media/key.png", null, null, null);
+
+        given(securityUtils.getCurrentUserId()).willReturn(1L);
+        given(fileHandler.claimDirectUploads(dto.mediaKeys(), 1L)).willReturn(List.of(media));
+        given(securityUtils.getCurrentUserReference()).willReturn(ApplicationUser.builder().id(1L).username("testuser").build());
+
+        // When
+        underTest.savePost(dto);
+
+        // Then
+        ArgumentCaptor<Post> captor = ArgumentCaptor.forClass(Post.class);
+
+        verify(fileHandler, never()).saveFiles(any());
+        verify(postRepository).save(captor.capture());
+
+        assertThat(captor.getValue().getPostMedia()).containsExactly(media);
+
+    }
+
+    @Test
+    void shouldDeleteStoredFilesWhenPostCannotBeSaved(){
+
+        // Given
+        MultipartFile mockFile = Mockito.mock(MultipartFile.class);
+
+        CreatePostDTO dto = new CreatePostDTO("Test caption", List.of(mockFile));
+
+        PostMedia media = new PostMedia(UUID.randomUUID(), "http://test.com", "IMAGE", "generated_name.png", null, null, null);
+
+        ApplicationUser user = ApplicationUser.builder().id(1L).username("testuser").build();
+
+        given(fileHandler.saveFiles(any())).willReturn(List.of(media));
+        given(securityUtils.getCurrentUserReference()).willReturn(user);
+        given(postRepository.save(any())).willThrow(new IllegalStateException("Insert failed"));
+
+        // Then
+        assertThatThrownBy(() -> underTest.savePost(dto)).isInstanceOf(IllegalStateException.class);
+
+        verify(fileHandler).deleteFile("generated_name.png");
+        verify(eventPublisher, never()).publishEvent(any());
+
+    }
+
+    @Test
+    void shouldDeleteStoredFilesWhenDirectUploadCannotBeClaimed(){
+
+        // Given
+        MultipartFile mockFile = Mockito.mock(MultipartFile.class);
+
+        CreatePostDTO dto = new CreatePostDTO("Test caption", List.of(mockFile), List.of("media/someone_elses.png"));
+
+        PostMedia media = new PostMedia(UUID.randomUUID(), "http://test.com", "IMAGE", "generated_name.png", null, null, null);
+
+        given(fileHandler.saveFiles(any())).willReturn(List.of(media));
+        given(securityUtils.getCurrentUserId()).willReturn(1L);
+        given(fileHandler.claimDirectUploads(dto.mediaKeys(), 1L)).willThrow(new ActionNotPermittedException("Not yours"));
+
+        // Then
+        assertThatThrownBy(() -> underTest.savePost(dto)).isInstanceOf(ActionNotPermittedException.class);
+
+        verify(fileHandler).deleteFile("generated_name.png");
+        verify(fileHandler, never()).deleteFile("media/someone_elses.png"); // Only what this request stored
+        verify(postRepository, never()).save(any());
+
+    }
+
     @Test
     void shouldSavePostWithoutMedia(){
 
@@ -396,7 +603,7 @@ class PostServiceTest {
 
         ApplicationUser user = ApplicationUser.builder().id(1L).username("testuser").build();
 
-        given(securityUtils.getCurrentAuth()).willReturn(user);
+        given(securityUtils.getCurrentUserReference()).willReturn(user);
 
         // When
         underTest.savePost(dto);
@@ -406,7 +613,7 @@ class PostServiceTest {
 
         verify(fileHandler, never()).saveFiles(any()); // Make sure its never called
 
-        verify(securityUtils).getCurrentAuth(); // Make sure it is called
+        verify(securityUtils).getCurrentUserReference(); // Make sure it is called
 
         verify(postRepository).save(captor.capture()); // Make sure its called
 
@@ -433,7 +640,7 @@ class PostServiceTest {
         Post p1 = Post.builder()
                 .id(UUID.randomUUID()).caption("Post 1").user(user).postMedia(List.of(media)).build();
 
-        given(securityUtils.getCurrentAuth()).willReturn(user);
+        given(securityUtils.getCurrentUser()).willReturn(asAuthenticatedUser(user));
         given(postRepository.findById(any())).willReturn(Optional.of(p1));
 
         // When
@@ -442,7 +649,7 @@ class PostServiceTest {
         // Then
         ArgumentCaptor<UUID> captor = ArgumentCaptor.forClass(UUID.class);
 
-        verify(securityUtils).getCurrentAuth();
+        verify(securityUtils).getCurrentUser();
 
         verify(postRepository).findById(p1.getId());
 
@@ -464,7 +671,7 @@ class PostServiceTest {
         Post p1 = Post.builder()
                 .id(UUID.randomUUID()).caption("Post 1").user(user).postMedia(null).build();
 
-        given(securityUtils.getCurrentAuth()).willReturn(user);
+        given(securityUtils.getCurrentUser()).willReturn(asAuthenticatedUser(user));
         given(postRepository.findById(any())).willReturn(Optional.of(p1));
 
         // When
@@ -473,7 +680,7 @@ class PostServiceTest {
         // Then
         ArgumentCaptor<UUID> captor = ArgumentCaptor.forClass(UUID.class);
 
-        verify(securityUtils).getCurrentAuth(); // Make sure it retrieves the authed user
+        verify(securityUtils).getCurrentUser(); // Make sure it retrieves the authed user
 
         verify(postRepository).findById(p1.getId()); // Make sure it finds the post
 
@@ -492,7 +699,7 @@ class PostServiceTest {
 
         // Given
         ApplicationUser user = ApplicationUser.builder().id(1L).username("testuser").build();
-        given(securityUtils.getCurrentAuth()).willReturn(user);
+        given(securityUtils.getCurrentUser()).willReturn(asAuthenticatedUser(user));
 
         given(postRepository.findById(any())).willReturn(Optional.empty());
 
@@ -518,7 +725,7 @@ class PostServiceTest {
         ApplicationUser user2 = ApplicationUser.builder().id(2L).username("testuser").build();
 
         // User2 is trying to delete
-        given(securityUtils.getCurrentAuth()).willReturn(user2);
+        given(securityUtils.getCurrentUser()).willReturn(asAuthenticatedUser(user2));
         given(postRepository.findById(any())).willReturn(Optional.of(p1));
 
         // Then
@@ -540,7 +747,7 @@ class PostServiceTest {
         Post p1 = Post.builder()
                 .id(UUID.randomUUID()).caption("Post 1").user(user).postMedia(null).build();
 
-        given(securityUtils.getCurrentAuth()).willReturn(user);
+        given(securityUtils.getCurrentUser()).willReturn(asAuthenticatedUser(user));
         given(postRepository.findById(any())).willReturn(Optional.of(p1));
 
         String newCaption = "Post 1 updated";
@@ -551,7 +758,7 @@ class PostServiceTest {
         // Then
         ArgumentCaptor<Post> captor = ArgumentCaptor.forClass(Post.class);
 
-        verify(securityUtils).getCurrentAuth();
+        verify(securityUtils).getCurrentUser();
         verify(postRepository).findById(p1.getId());
         verify(postRepository).save(captor.capture());
 
@@ -567,7 +774,7 @@ class PostServiceTest {
         // Given
         ApplicationUser user = ApplicationUser.builder().id(1L).username("testuser").build();
 
-        given(securityUtils.getCurrentAuth()).willReturn(user);
+        given(securityUtils.getCurrentUser()).willReturn(asAuthenticatedUser(user));
         given(postRepository.findById(any())).willReturn(Optional.empty());
 
         UUID id = UUID.randomUUID();
@@ -592,7 +799,7 @@ class PostServiceTest {
         ApplicationUser user2 = ApplicationUser.builder().id(2L).username("testuser").build();
 
         // User2 is trying to update
-        given(securityUtils.getCurrentAuth()).willReturn(user2);
+        given(securityUtils.getCurrentUser()).willReturn(asAuthenticatedUser(user2));
         given(postRepository.findById(any())).willReturn(Optional.of(p1));
 
         // Then
@@ -604,4 +811,8 @@ class PostServiceTest {
 
     }
 
-}
\ No newline at end of file
+    private AuthenticatedUser asAuthenticatedUser(ApplicationUser user) {
+        return new AuthenticatedUser(user.getId(), user.getUsername(), user.getProfilePictureUrl());
+    }
+
+}
@@ -7,6 +7,7 @@ import com.cdcrane.social_konnect_backend.config.SecurityUtils;
 import com.cdcrane.social_konnect_backend.config.exceptions.ActionNotPermittedException;
 import com.cdcrane.social_konnect_backend.config.exceptions.UsernameNotValidException;
 import com.cdcrane.social_konnect_backend.config.file_handling.FileHandler;
+import com.cdcrane.social_konnect_backend.follows.FollowRepository;
 import com.cdcrane.social_konnect_backend.follows.FollowUseCase;
 import com.cdcrane.social_konnect_backend.posts.PostUseCase;
 import com.cdcrane.social_konnect_backend.roles.Role;
@@ -14,6 +15,7 @@ import com.cdcrane.social_konnect_backend.roles.RoleRepository;
 import com.cdcrane.social_konnect_backend.roles.exceptions.RoleNotFoundException;
 import com.cdcrane.social_konnect_backend.users.dto.ChangeBioAndPfpDTO;
 import com.cdcrane.social_konnect_backend.users.dto.UserMetadataDTO;
+import com.cdcrane.social_konnect_backend.users.dto.UserSearchResultDTO;
 import com.cdcrane.social_konnect_backend.users.exceptions.UnableToChangePasswordException;
 import com.cdcrane.social_konnect_backend.users.exceptions.UserNotFoundException;
 import com.cdcrane.social_konnect_backend.users.exceptions.UsernameTakenException;
@@ -70,12 +72,18 @@ class UserServiceTest {
     @Mock
     PasswordEncoder passwordEncoder;
 
+    @Mock
+    FollowRepository followRepository;
+
+    @Mock
+    UserSummaryCache userSummaryCache;
+
     private UserService underTest;
 
     @BeforeEach
     void setUp(){
 
-        underTest = new UserService(userRepository, passwordEncoder, roleRepository, securityUtils, eventPublisher, fileHandler, postUseCase, followUseCase);
+        underTest = new UserService(userRepository, passwordEncoder, roleRepository, securityUtils, eventPublisher, fileHandler, postUseCase, followUseCase, followRepository, userSummaryCache);
 
     }
 
@@ -103,12 +111,12 @@ class UserServiceTest {
         given(userRepository.findByUsernameContainingIgnoreCase("t", Pageable.unpaged())).willReturn(users);
 
         // When
-        Page<ApplicationUser> result = underTest.searchUsersByUsername("t", Pageable.unpaged());
+        Page<UserSearchResultDTO> result = underTest.searchUsersByUsername("t", Pageable.unpaged());
 
         // Then
         assertThat(result).isNotEmpty();
 
-        List<ApplicationUser> resultData = result.stream().toList();
+        List<UserSearchResultDTO> resultData = result.stream().toList();
 
         assertThat(resultData)
                 .isNotEmpty()
@@ -212,7 +220,7 @@ class UserServiceTest {
         ApplicationUser currentUser = ApplicationUser.builder().id(1L).username("test1").build();
         ApplicationUser targetUser = ApplicationUser.builder().id(2L).username("test2").build();
 
-        given(securityUtils.getCurrentAuth()).willReturn(currentUser);
+        given(securityUtils.getCurrentUserId()).willReturn(currentUser.getId());
         given(userRepository.findByUsername("test2")).willReturn(Optional.of(targetUser));
         given(postUseCase.getPostCountByUserId(2L)).willReturn(1);
         given(followUseCase.getFollowerCountByUserId(2L)).willReturn(2);
@@ -248,7 +256,7 @@ class UserServiceTest {
 
         // Given
         ApplicationUser currentUser = ApplicationUser.builder().id(1L).username("test1").build();
-        given(securityUtils.getCurrentAuth()).willReturn(currentUser);
+        given(securityUtils.getCurrentUserId()).willReturn(currentUser.getId());
         given(postUseCase.getPostCountByUserId(1L)).willReturn(1);
         given(followUseCase.getFollowerCountByUserId(1L)).willReturn(2);
         given(followUseCase.getFollowingCountByUserId(1L)).willReturn(3);
@@ -291,6 +299,8 @@ class UserServiceTest {
         assertThat(result.getBio()).isEqualTo(dto.bio());
         assertThat(result.getProfilePictureUrl()).isEqualTo(newPfpUrl);
 
+        verify(userSummaryCache).invalidate("test1"); // Cached identity has the old profile picture
+
     }
 
     @Test
@@ -328,6 +338,7 @@ class UserServiceTest {
         String newPass = "12345678";
         String oldPass = "<PASSWORD>";
 
+        given(passwordEncoder.matches(oldPass, currentUser.getPassword())).willReturn(true);
         given(passwordEncoder.matches(newPass, currentUser.getPassword())).willReturn(false);
 
         // When
@@ -376,6 +387,9 @@ class UserServiceTest {
         ApplicationUser result = userCaptor.getValue();
         assertThat(result.getUsername()).isEqualTo(newUsername);
 
+        verify(userSummaryCache).invalidate("test1");
+        verify(userSummaryCache).invalidate(newUsername);
+
     }
 
     @Test